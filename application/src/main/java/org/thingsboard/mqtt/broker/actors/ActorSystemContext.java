@@ -23,11 +23,11 @@ import org.thingsboard.mqtt.broker.actors.client.ClientActorConfiguration;
 import org.thingsboard.mqtt.broker.actors.device.DeviceActorConfiguration;
 import org.thingsboard.mqtt.broker.actors.msg.TbActorMsg;
 import org.thingsboard.mqtt.broker.actors.service.ActorProcessingMetricService;
-import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
 import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
-import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.DevicePacketIdAndSerialNumberStore;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 
 import java.util.concurrent.TimeUnit;
@@ -38,9 +38,9 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class ActorSystemContext {
     private final TbActorSystem actorSystem;
-    private final DeviceMsgService deviceMsgService;
+    private final DeviceMsgWriteBehindService deviceMsgWriteBehindService;
     private final DeviceSessionCtxService deviceSessionCtxService;
-    private final DevicePacketIdAndSerialNumberService serialNumberService;
+    private final DevicePacketIdAndSerialNumberStore serialNumberStore;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
     private final ClientMqttActorManager clientMqttActorManager;
     private final ActorProcessingMetricService actorProcessingMetricService;
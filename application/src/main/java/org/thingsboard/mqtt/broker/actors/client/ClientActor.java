@@ -50,7 +50,10 @@ import org.thingsboard.mqtt.broker.actors.service.ContextAwareActor;
 import org.thingsboard.mqtt.broker.actors.shared.TimedMsg;
 import org.thingsboard.mqtt.broker.exception.FullMsgQueueException;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.limits.ChannelBackpressureService;
+import org.thingsboard.mqtt.broker.service.limits.ChannelReadPauseReason;
 import org.thingsboard.mqtt.broker.service.stats.ClientActorStats;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
 import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
 
@@ -71,6 +74,9 @@ public class ClientActor extends ContextAwareActor {
 
     private final ClientActorState state;
     private final ClientActorStats clientActorStats;
+    private final ChannelBackpressureService channelBackpressureService;
+    // written from the threads that overflow the mailbox
+    private volatile UUID overflowDisconnectSessionId;
 
     public ClientActor(ActorSystemContext systemContext, String clientId, boolean isClientIdGenerated) {
         super(systemContext);
@@ -84,6 +90,7 @@ public class ClientActor extends ContextAwareActor {
         this.actorConfiguration = systemContext.getClientActorConfiguration();
         this.state = new DefaultClientActorState(clientId, isClientIdGenerated, systemContext.getClientActorContext().getMaxPreConnectQueueSize());
         this.clientActorStats = systemContext.getClientActorContext().getStatsManager().getClientActorStats();
+        this.channelBackpressureService = systemContext.getClientActorContext().getChannelBackpressureService();
     }
 
     @Override
@@ -360,6 +367,35 @@ public class ClientActor extends ContextAwareActor {
         systemContext.scheduleMsgWithDelay(ctx, stopActorCommandMsg, delay);
     }
 
+    @Override
+    public void onMailboxOverflow(TbActorMsg msg) {
+        if (!(msg instanceof SessionDependentMsg)) {
+            return;
+        }
+        UUID sessionId = ((SessionDependentMsg) msg).getSessionId();
+        // every dropped msg of the session lands here, one disconnect is enough
+        if (sessionId.equals(overflowDisconnectSessionId)) {
+            return;
+        }
+        overflowDisconnectSessionId = sessionId;
+        log.warn("[{}][{}] Client actor mailbox is full, disconnecting the client.", state.getClientId(), sessionId);
+        ctx.tellWithHighPriority(new MqttDisconnectMsg(sessionId, new DisconnectReason(DisconnectReasonType.ON_QUOTA_EXCEEDED,
+                "Client actor mailbox is full")));
+    }
+
+    @Override
+    public void onMailboxBackpressure(boolean backpressure) {
+        ClientSessionCtx sessionCtx = state.getCurrentSessionCtx();
+        if (sessionCtx == null) {
+            return;
+        }
+        if (backpressure) {
+            channelBackpressureService.pauseReading(sessionCtx, ChannelReadPauseReason.ACTOR_MAILBOX_FULL);
+        } else {
+            channelBackpressureService.resumeReading(sessionCtx, ChannelReadPauseReason.ACTOR_MAILBOX_FULL);
+        }
+    }
+
     private boolean sessionNotMatch(TbActorMsg msg) {
         return msg instanceof SessionDependentMsg && !((SessionDependentMsg) msg).getSessionId().equals(state.getCurrentSessionId());
     }
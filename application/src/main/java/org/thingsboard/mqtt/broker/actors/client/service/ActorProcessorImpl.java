@@ -26,9 +26,6 @@ import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg
 import org.thingsboard.mqtt.broker.actors.client.service.disconnect.DisconnectService;
 import org.thingsboard.mqtt.broker.actors.client.state.ClientActorState;
 import org.thingsboard.mqtt.broker.actors.client.state.SessionState;
-import org.thingsboard.mqtt.broker.exception.AuthenticationException;
-import org.thingsboard.mqtt.broker.service.auth.AuthenticationService;
-import org.thingsboard.mqtt.broker.service.auth.providers.AuthContext;
 import org.thingsboard.mqtt.broker.service.auth.providers.AuthResponse;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
@@ -52,7 +49,6 @@ import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_REFUS
 public class ActorProcessorImpl implements ActorProcessor {
 
     private final DisconnectService disconnectService;
-    private final AuthenticationService authenticationService;
     private final MqttMessageGenerator mqttMessageGenerator;
 
     @Override
@@ -67,8 +63,8 @@ public class ActorProcessorImpl implements ActorProcessor {
             return;
         }
 
-        AuthContext authContext = buildAuthContext(state, sessionInitMsg);
-        AuthResponse authResponse = authenticateClient(authContext);
+        // the client is authenticated before the session is initialized, see MqttSessionHandler
+        AuthResponse authResponse = sessionInitMsg.getAuthResponse();
 
         if (!authResponse.isSuccess()) {
             log.warn("[{}] Connection is not established due to: {}", state.getClientId(), CONNECTION_REFUSED_NOT_AUTHORIZED);
@@ -171,27 +167,6 @@ public class ActorProcessorImpl implements ActorProcessor {
         disconnectService.disconnect(state, disconnectMsg);
     }
 
-    private AuthResponse authenticateClient(AuthContext authContext) {
-        try {
-            // TODO: make it with Plugin architecture (to be able to use LDAP, OAuth etc.)
-            return authenticationService.authenticate(authContext);
-        } catch (AuthenticationException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("[{}] Authentication failed.", authContext.getClientId(), e);
-            }
-            return AuthResponse.builder().success(false).build();
-        }
-    }
-
-    private AuthContext buildAuthContext(ClientActorState state, SessionInitMsg sessionInitMsg) {
-        return AuthContext.builder()
-                .clientId(state.getClientId())
-                .username(sessionInitMsg.getUsername())
-                .passwordBytes(sessionInitMsg.getPasswordBytes())
-                .sslHandler(sessionInitMsg.getClientSessionCtx().getSslHandler())
-                .build();
-    }
-
     private MqttDisconnectMsg newDisconnectMsg(UUID sessionId, DisconnectReason reason) {
         return new MqttDisconnectMsg(sessionId, reason);
     }
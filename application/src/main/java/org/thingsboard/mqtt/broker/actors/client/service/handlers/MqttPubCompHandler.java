@@ -39,5 +39,6 @@ public class MqttPubCompHandler {
             msgPersistenceManager.processPubComp(ctx, messageId);
         }
         retransmissionService.onPubCompReceived(ctx, messageId);
+        ctx.getPublishDeliveryLoadCtx().onPublishAcknowledged(messageId);
     }
 }
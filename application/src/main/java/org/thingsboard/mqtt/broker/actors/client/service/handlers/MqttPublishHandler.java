@@ -34,6 +34,7 @@ import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
+import org.thingsboard.mqtt.broker.service.limits.ChannelBackpressureService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgProcessor;
@@ -65,6 +66,7 @@ public class MqttPublishHandler {
     private final ClientMqttActorManager clientMqttActorManager;
     private final ClientLogger clientLogger;
     private final RetainedMsgProcessor retainedMsgProcessor;
+    private final ChannelBackpressureService channelBackpressureService;
 
     private final boolean isTraceEnabled = log.isTraceEnabled();
 
@@ -154,9 +156,11 @@ public class MqttPublishHandler {
     }
 
     void persistPubMsg(ClientSessionCtx ctx, PublishMsg publishMsg, TbActorRef actorRef) {
+        channelBackpressureService.onPublishPersistStarted(ctx);
         msgDispatcherService.persistPublishMsg(ctx.getSessionInfo(), publishMsg, new TbQueueCallback() {
             @Override
             public void onSuccess(TbQueueMsgMetadata metadata) {
+                channelBackpressureService.onPublishPersistFinished(ctx);
                 callbackProcessor.submit(() -> {
                     clientLogger.logEvent(ctx.getClientId(), this.getClass(), "PUBLISH acknowledged");
                     if (isTraceEnabled) {
@@ -168,6 +172,7 @@ public class MqttPublishHandler {
 
             @Override
             public void onFailure(Throwable t) {
+                channelBackpressureService.onPublishPersistFinished(ctx);
                 callbackProcessor.submit(() -> {
                     log.warn("[{}][{}] Failed to publish msg: {}", ctx.getClientId(), ctx.getSessionId(), publishMsg.getPacketId(), t);
                     clientMqttActorManager.disconnect(ctx.getClientId(), new MqttDisconnectMsg(
@@ -191,7 +196,7 @@ public class MqttPublishHandler {
         MqttReasonCode code = MqttReasonCodeResolver.success(ctx);
         List<Integer> finishedMsgIds = ctx.getPubResponseProcessingCtx().getQos2PubRecResponseMsgs().finishAll(msgId);
         for (var finishedMsgId : finishedMsgIds) {
-            ctx.getChannel().writeAndFlush(mqttMessageGenerator.createPubRecMsg(finishedMsgId, code));
+            ctx.getChannel().write(mqttMessageGenerator.createPubRecMsg(finishedMsgId, code));
         }
         ctx.getChannel().flush();
 
@@ -227,14 +232,15 @@ public class MqttPublishHandler {
 
     private void sendPubResponseEventToActor(TbActorRef actorRef, UUID sessionId, int packetId, MqttQoS mqttQoS) {
         try {
+            // high priority msgs are never dropped by the bounded mailbox, a lost response would block the following ones
             switch (mqttQoS) {
                 case AT_MOST_ONCE:
                     break;
                 case AT_LEAST_ONCE:
-                    actorRef.tell(new PubAckResponseMsg(sessionId, packetId));
+                    actorRef.tellWithHighPriority(new PubAckResponseMsg(sessionId, packetId));
                     break;
                 case EXACTLY_ONCE:
-                    actorRef.tell(new PubRecResponseMsg(sessionId, packetId));
+                    actorRef.tellWithHighPriority(new PubRecResponseMsg(sessionId, packetId));
                     break;
                 default:
                     throw new NotSupportedQoSLevelException("QoS level " + mqttQoS + " is not supported.");
@@ -245,7 +251,7 @@ public class MqttPublishHandler {
     }
 
     void validateClientAccess(ClientSessionCtx ctx, String topic) {
-        boolean isClientAuthorized = authorizationRuleService.isPubAuthorized(ctx.getClientId(), topic, ctx.getAuthRulePatterns());
+        boolean isClientAuthorized = authorizationRuleService.isPubAuthorized(topic, ctx.getAuthRulePatterns());
         if (!isClientAuthorized) {
             log.warn("[{}][{}][{}] Client is not authorized to publish to the topic {}",
                     ctx.getClientId(), ctx.getSessionId(), ctx.getAuthRulePatterns(), topic);
@@ -15,8 +15,8 @@
  */
 package org.thingsboard.mqtt.broker.actors.client.service.session;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
@@ -30,6 +30,7 @@ import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionPersistenceService;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
 import java.util.HashMap;
@@ -43,15 +44,28 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ClientSessionServiceImpl implements ClientSessionService {
 
     private final ClientSessionPersistenceService clientSessionPersistenceService;
     private final ServiceInfoProvider serviceInfoProvider;
     private final StatsManager statsManager;
+    private final SharedSubscriptionCacheService sharedSubscriptionCacheService;
 
     private ConcurrentMap<String, ClientSessionInfo> clientSessionMap;
 
+    /*
+        The shared subscription cache reads the client sessions from this service, hence the lazy injection
+     */
+    public ClientSessionServiceImpl(ClientSessionPersistenceService clientSessionPersistenceService,
+                                    ServiceInfoProvider serviceInfoProvider,
+                                    StatsManager statsManager,
+                                    @Lazy SharedSubscriptionCacheService sharedSubscriptionCacheService) {
+        this.clientSessionPersistenceService = clientSessionPersistenceService;
+        this.serviceInfoProvider = serviceInfoProvider;
+        this.statsManager = statsManager;
+        this.sharedSubscriptionCacheService = sharedSubscriptionCacheService;
+    }
+
     @Override
     public void init(Map<String, ClientSessionInfo> clientSessionInfos) {
         this.clientSessionMap = new ConcurrentHashMap<>(clientSessionInfos);
@@ -76,6 +90,7 @@ public class ClientSessionServiceImpl implements ClientSessionService {
 
         ClientSessionInfo clientSessionInfo = ClientSessionInfoFactory.clientSessionToClientSessionInfo(clientSession);
         clientSessionMap.put(clientId, clientSessionInfo);
+        sharedSubscriptionCacheService.processSessionUpdate(clientId);
 
         QueueProtos.ClientSessionInfoProto clientSessionInfoProto = ProtoConverter.convertToClientSessionInfoProto(clientSessionInfo);
         clientSessionPersistenceService.persistClientSessionInfoAsync(clientId, clientSessionInfoProto, callback);
@@ -94,6 +109,7 @@ public class ClientSessionServiceImpl implements ClientSessionService {
         if (removedClientSessionInfo == null) {
             log.warn("[{}] No client session found while clearing session.", clientId);
         }
+        sharedSubscriptionCacheService.processSessionUpdate(clientId);
         clientSessionPersistenceService.persistClientSessionInfoAsync(clientId, QueueConstants.EMPTY_CLIENT_SESSION_INFO_PROTO, callback);
     }
 
@@ -148,6 +164,7 @@ public class ClientSessionServiceImpl implements ClientSessionService {
             }
             clientSessionMap.put(clientId, clientSessionInfo);
         }
+        sharedSubscriptionCacheService.processSessionUpdate(clientId);
     }
 
     private boolean isPersistent(ClientSessionInfo clientSessionInfo) {
@@ -25,8 +25,6 @@ import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionPersistenceService;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
-import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessor;
-import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -48,7 +46,6 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
 
     private final SubscriptionPersistenceService subscriptionPersistenceService;
     private final SubscriptionService subscriptionService;
-    private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
     private final SharedSubscriptionCacheService sharedSubscriptionCacheService;
     private final StatsManager statsManager;
 
@@ -209,7 +206,6 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
 
     private void processSharedUnsubscribe(String clientId, TopicSubscription topicSubscription) {
         if (isSharedSubscription(topicSubscription)) {
-            unsubscribeSharedSubscription(topicSubscription);
             sharedSubscriptionCacheService.remove(clientId, topicSubscription);
         }
     }
@@ -217,12 +213,4 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
     private boolean isSharedSubscription(TopicSubscription topicSubscription) {
         return !StringUtils.isEmpty(topicSubscription.getShareName());
     }
-
-    private void unsubscribeSharedSubscription(TopicSubscription topicSubscription) {
-        sharedSubscriptionProcessor.unsubscribe(getSharedSubscriptionTopicFilter(topicSubscription));
-    }
-
-    private TopicSharedSubscription getSharedSubscriptionTopicFilter(TopicSubscription topicSubscription) {
-        return new TopicSharedSubscription(topicSubscription.getTopicFilter(), topicSubscription.getShareName());
-    }
 }
@@ -22,6 +22,7 @@ import org.thingsboard.mqtt.broker.service.subscription.ValueWithTopicFilter;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 /*
     not thread-safe for operations with the same 'clientId'
@@ -33,5 +34,11 @@ public interface SubscriptionService {
 
     List<ValueWithTopicFilter<ClientSubscription>> getSubscriptions(String topic);
 
+    /*
+        Passes the subscriptions matching the topic to the consumer without collecting them to a list first
+        (unless the lookup cache is enabled, the cached lists are reused then)
+     */
+    void getSubscriptions(String topic, Consumer<ValueWithTopicFilter<ClientSubscription>> consumer);
+
     void clearEmptyTopicNodes() throws SubscriptionTrieClearException;
 }
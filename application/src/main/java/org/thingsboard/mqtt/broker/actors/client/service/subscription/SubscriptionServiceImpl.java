@@ -22,6 +22,7 @@ import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.stats.timer.SubscriptionTimerStats;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionLookupCache;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionTrie;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.ValueWithTopicFilter;
@@ -29,17 +30,24 @@ import org.thingsboard.mqtt.broker.service.subscription.ValueWithTopicFilter;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class SubscriptionServiceImpl implements SubscriptionService {
 
     private final SubscriptionTrie<ClientSubscription> subscriptionTrie;
+    private final SubscriptionLookupCache subscriptionLookupCache;
     private final SubscriptionTimerStats subscriptionTimerStats;
 
-    public SubscriptionServiceImpl(SubscriptionTrie<ClientSubscription> subscriptionTrie, StatsManager statsManager) {
+    public SubscriptionServiceImpl(SubscriptionTrie<ClientSubscription> subscriptionTrie,
+                                   SubscriptionLookupCache subscriptionLookupCache,
+                                   StatsManager statsManager) {
         this.subscriptionTrie = subscriptionTrie;
+        this.subscriptionLookupCache = subscriptionLookupCache;
         this.subscriptionTimerStats = statsManager.getSubscriptionTimerStats();
+        // lookups cached between the change and its publishing in the trie are dropped once more
+        this.subscriptionTrie.setPublishedChangesListener(subscriptionLookupCache::invalidate);
     }
 
     @Override
@@ -56,6 +64,7 @@ public class SubscriptionServiceImpl implements SubscriptionService {
                             topicSubscription.getShareName(),
                             topicSubscription.getOptions())
             );
+            subscriptionLookupCache.invalidate(topicSubscription.getTopicFilter());
         }
     }
 
@@ -66,7 +75,9 @@ public class SubscriptionServiceImpl implements SubscriptionService {
         }
         for (String topicFilter : topicFilters) {
             boolean successfullyDeleted = subscriptionTrie.delete(topicFilter, val -> clientId.equals(val.getClientId()));
-            if (!successfullyDeleted) {
+            if (successfullyDeleted) {
+                subscriptionLookupCache.invalidate(topicFilter);
+            } else {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Client wasn't subscribed to the topic filter {}", clientId, topicFilter);
                 }
@@ -77,11 +88,22 @@ public class SubscriptionServiceImpl implements SubscriptionService {
     @Override
     public List<ValueWithTopicFilter<ClientSubscription>> getSubscriptions(String topic) {
         long startTime = System.nanoTime();
-        List<ValueWithTopicFilter<ClientSubscription>> subscriptions = subscriptionTrie.get(topic);
+        List<ValueWithTopicFilter<ClientSubscription>> subscriptions = subscriptionLookupCache.get(topic, subscriptionTrie::get);
         subscriptionTimerStats.logSubscriptionsLookup(startTime, TimeUnit.NANOSECONDS);
         return subscriptions;
     }
 
+    @Override
+    public void getSubscriptions(String topic, Consumer<ValueWithTopicFilter<ClientSubscription>> consumer) {
+        long startTime = System.nanoTime();
+        if (subscriptionLookupCache.isEnabled()) {
+            subscriptionLookupCache.get(topic, subscriptionTrie::get).forEach(consumer);
+        } else {
+            subscriptionTrie.get(topic, consumer);
+        }
+        subscriptionTimerStats.logSubscriptionsLookup(startTime, TimeUnit.NANOSECONDS);
+    }
+
     @Override
     public void clearEmptyTopicNodes() throws SubscriptionTrieClearException {
         if (log.isTraceEnabled()) {
@@ -20,6 +20,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.thingsboard.mqtt.broker.actors.ActorStatsManager;
 import org.thingsboard.mqtt.broker.actors.DefaultTbActorSystem;
+import org.thingsboard.mqtt.broker.actors.MailboxOverflowPolicy;
 import org.thingsboard.mqtt.broker.actors.TbActorSystem;
 import org.thingsboard.mqtt.broker.actors.TbActorSystemSettings;
 
@@ -31,10 +32,14 @@ public class ActorsConfiguration {
     private int maxActorInitAttempts;
     @Value("${actors.system.scheduler-pool-size:1}")
     private int schedulerPoolSize;
+    @Value("${actors.system.mailbox.capacity:0}")
+    private int mailboxCapacity;
+    @Value("${actors.system.mailbox.overflow-policy:BACKPRESSURE}")
+    private MailboxOverflowPolicy mailboxOverflowPolicy;
 
     @Bean
     public TbActorSystemSettings actorSystemSettings() {
-        return new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
+        return new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts, mailboxCapacity, mailboxOverflowPolicy);
     }
 
     @Bean(destroyMethod = "destroy")
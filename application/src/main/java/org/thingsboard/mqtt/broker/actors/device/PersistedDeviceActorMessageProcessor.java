@@ -34,21 +34,22 @@ import org.thingsboard.mqtt.broker.actors.device.messages.StopDeviceActorCommand
 import org.thingsboard.mqtt.broker.actors.shared.AbstractContextAwareMsgProcessor;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.util.DonAsynchron;
-import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
 import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
 import org.thingsboard.mqtt.broker.dao.client.device.PacketIdAndSerialNumber;
-import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
 import org.thingsboard.mqtt.broker.dto.PacketIdAndSerialNumberDto;
 import org.thingsboard.mqtt.broker.dto.SharedSubscriptionPublishPacket;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.DevicePacketIdAndSerialNumberStore;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
 import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -61,9 +62,9 @@ import java.util.concurrent.atomic.AtomicLong;
 class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProcessor {
 
     private final String clientId;
-    private final DeviceMsgService deviceMsgService;
+    private final DeviceMsgWriteBehindService deviceMsgWriteBehindService;
     private final DeviceSessionCtxService deviceSessionCtxService;
-    private final DevicePacketIdAndSerialNumberService serialNumberService;
+    private final DevicePacketIdAndSerialNumberStore serialNumberStore;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
     private final ClientMqttActorManager clientMqttActorManager;
     private final ClientLogger clientLogger;
@@ -80,9 +81,9 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
     PersistedDeviceActorMessageProcessor(ActorSystemContext systemContext, String clientId) {
         super(systemContext);
         this.clientId = clientId;
-        this.deviceMsgService = systemContext.getDeviceMsgService();
+        this.deviceMsgWriteBehindService = systemContext.getDeviceMsgWriteBehindService();
         this.deviceSessionCtxService = systemContext.getDeviceSessionCtxService();
-        this.serialNumberService = systemContext.getSerialNumberService();
+        this.serialNumberStore = systemContext.getSerialNumberStore();
         this.publishMsgDeliveryService = systemContext.getPublishMsgDeliveryService();
         this.clientMqttActorManager = systemContext.getClientMqttActorManager();
         this.clientLogger = systemContext.getClientLogger();
@@ -92,9 +93,9 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
     public void processDeviceConnect(DeviceConnectedEventMsg msg) {
         this.sessionCtx = msg.getSessionCtx();
         this.stopActorCommandUUID = null;
-        List<DevicePublishMsg> persistedMessages = deviceMsgService.findPersistedMessages(clientId);
+        List<DevicePublishMsg> persistedMessages = deviceMsgWriteBehindService.findPersistedMessages(clientId);
         try {
-            persistedMessages.forEach(this::deliverPersistedMsg);
+            persistedMessages.forEach(persistedMessage -> deliverPersistedMsg(persistedMessage, true));
         } catch (Exception e) {
             log.warn("[{}][{}] Failed to process persisted messages.", clientId, sessionCtx.getSessionId(), e);
             disconnect("Failed to process persisted messages");
@@ -102,26 +103,34 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
     }
 
     public void processingSharedSubscriptions(SharedSubscriptionEventMsg msg) {
-        PacketIdAndSerialNumber lastPacketIdAndSerialNumber = getLastPacketIdAndSerialNumber();
-
+        Map<TopicSharedSubscription, List<DevicePublishMsg>> sharedSubscriptionsMessages = new LinkedHashMap<>();
+        int msgsCount = 0;
         for (TopicSharedSubscription topicSharedSubscription : msg.getSubscriptions()) {
-            String key = topicSharedSubscription.getKey();
-            List<DevicePublishMsg> persistedMessages = deviceMsgService.findPersistedMessages(key);
-            if (CollectionUtils.isEmpty(persistedMessages)) {
-                continue;
+            List<DevicePublishMsg> persistedMessages = deviceMsgWriteBehindService.findPersistedMessages(topicSharedSubscription.getKey());
+            if (!CollectionUtils.isEmpty(persistedMessages)) {
+                sharedSubscriptionsMessages.put(topicSharedSubscription, persistedMessages);
+                msgsCount += persistedMessages.size();
             }
+        }
+        if (sharedSubscriptionsMessages.isEmpty()) {
+            return;
+        }
 
+        PacketIdAndSerialNumber lastPacketIdAndSerialNumber = reservePacketIdAndSerialNumbers(msgsCount);
+        sharedSubscriptionsMessages.forEach((topicSharedSubscription, persistedMessages) -> {
+            String key = topicSharedSubscription.getKey();
             updateMessagesBeforePublish(lastPacketIdAndSerialNumber, topicSharedSubscription, persistedMessages);
 
             try {
-                persistedMessages.forEach(this::deliverPersistedMsg);
+                // the msgs are stored by the key of the shared subscription, they don't move the serial number of the client's own msgs
+                persistedMessages.forEach(persistedMessage -> deliverPersistedMsg(persistedMessage, false));
             } catch (Exception e) {
                 log.warn("[{}][{}] Failed to process shared subscription persisted messages.", clientId, sessionCtx.getSessionId(), e);
                 disconnect("Failed to process shared subscription persisted messages");
             }
             deviceSessionCtxService.removeDeviceSessionContext(key);
-        }
-        serialNumberService.saveLastSerialNumbers(Map.of(clientId, lastPacketIdAndSerialNumber));
+            serialNumberStore.evict(key);
+        });
     }
 
     private void updateMessagesBeforePublish(PacketIdAndSerialNumber lastPacketIdAndSerialNumber, TopicSharedSubscription topicSharedSubscription,
@@ -142,9 +151,13 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         return Math.min(topicSharedSubscription.getQos(), devicePublishMessage.getQos());
     }
 
-    private PacketIdAndSerialNumber getLastPacketIdAndSerialNumber() {
+    /*
+        The partition of the client can be consumed by another node, so the numbers are reserved in the DB directly,
+        the consumer of the partition continues after them once it reserves its next numbers
+     */
+    private PacketIdAndSerialNumber reservePacketIdAndSerialNumbers(int msgsCount) {
         try {
-            return serialNumberService.getLastPacketIdAndSerialNumber(Set.of(clientId)).getOrDefault(clientId, newPacketIdAndSerialNumber());
+            return serialNumberStore.reservePacketIdAndSerialNumbersInDb(clientId, msgsCount);
         } catch (Exception e) {
             log.warn("[{}] Cannot get last packetId and serialNumbers", clientId, e);
             return newPacketIdAndSerialNumber();
@@ -162,7 +175,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         return new PacketIdAndSerialNumberDto(packetIdAtomic.get(), packetIdAndSerialNumber.getSerialNumber().incrementAndGet());
     }
 
-    private void deliverPersistedMsg(DevicePublishMsg persistedMessage) {
+    private void deliverPersistedMsg(DevicePublishMsg persistedMessage, boolean clientMsg) {
         switch (persistedMessage.getPacketType()) {
             case PUBLISH:
                 // TODO: guaranty that DUP flag is correctly set even if Device Actor is dropped
@@ -170,7 +183,9 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
                 if (!isDup) {
                     inFlightPacketIds.add(persistedMessage.getPacketId());
                 }
-                lastPersistedMsgSentSerialNumber = persistedMessage.getSerialNumber();
+                if (clientMsg) {
+                    lastPersistedMsgSentSerialNumber = persistedMessage.getSerialNumber();
+                }
                 PublishMsg pubMsg = getPublishMsg(persistedMessage, isDup);
                 publishMsgDeliveryService.sendPublishMsgToClient(sessionCtx, pubMsg);
                 break;
@@ -222,7 +237,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
 
             List<DevicePublishMsg> persistedMessages = findMissedPersistedMsgs(publishMsg, nextPersistedSerialNumber);
             try {
-                persistedMessages.forEach(this::deliverPersistedMsg);
+                persistedMessages.forEach(persistedMessage -> deliverPersistedMsg(persistedMessage, true));
             } catch (Exception e) {
                 log.warn("[{}] Failed to process missed persisted messages", clientId, e);
                 disconnect("Failed to process missed persisted messages");
@@ -231,7 +246,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
     }
 
     private List<DevicePublishMsg> findMissedPersistedMsgs(DevicePublishMsg publishMsg, long nextPersistedSerialNumber) {
-        return deviceMsgService.findPersistedMessages(clientId, nextPersistedSerialNumber, publishMsg.getSerialNumber());
+        return deviceMsgWriteBehindService.findPersistedMessages(clientId, nextPersistedSerialNumber, publishMsg.getSerialNumber());
     }
 
     private void disconnect(String message) {
@@ -257,7 +272,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         SharedSubscriptionPublishPacket packet = getSharedSubscriptionPublishPacket(msg.getPacketId());
         var targetClientId = packet.getKey();
 
-        ListenableFuture<Void> future = deviceMsgService.tryRemovePersistedMessage(targetClientId, packet.getPacketId());
+        ListenableFuture<Void> future = deviceMsgWriteBehindService.tryRemovePersistedMessage(targetClientId, packet.getPacketId());
         future.addListener(() -> {
             try {
                 inFlightPacketIds.remove(msg.getPacketId());
@@ -271,7 +286,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         SharedSubscriptionPublishPacket packet = getSharedSubscriptionPublishPacket(msg.getPacketId());
         var targetClientId = packet.getKey();
 
-        ListenableFuture<Void> future = deviceMsgService.tryUpdatePacketReceived(targetClientId, packet.getPacketId());
+        ListenableFuture<Void> future = deviceMsgWriteBehindService.tryUpdatePacketReceived(targetClientId, packet.getPacketId());
         future.addListener(() -> {
             try {
                 inFlightPacketIds.remove(msg.getPacketId());
@@ -288,7 +303,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         SharedSubscriptionPublishPacket packet = getSharedSubscriptionPublishPacket(msg.getPacketId());
         var targetClientId = packet.getKey();
 
-        ListenableFuture<Void> resultFuture = deviceMsgService.tryRemovePersistedMessage(targetClientId, packet.getPacketId());
+        ListenableFuture<Void> resultFuture = deviceMsgWriteBehindService.tryRemovePersistedMessage(targetClientId, packet.getPacketId());
         DonAsynchron.withCallback(
                 resultFuture,
                 unused -> {
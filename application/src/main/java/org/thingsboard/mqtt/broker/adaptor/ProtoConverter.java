@@ -16,6 +16,8 @@
 package org.thingsboard.mqtt.broker.adaptor;
 
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttProperties;
 import io.netty.handler.codec.mqtt.MqttProperties.UserProperties;
 import lombok.extern.slf4j.Slf4j;
@@ -100,6 +102,13 @@ public class ProtoConverter {
         return publishMsgProto != null ? publishMsgProto.getClientId() : null;
     }
 
+    /*
+        Wraps the payload without copying it, every call returns a new buffer with its own reference count
+     */
+    public static ByteBuf toPayloadByteBuf(QueueProtos.PublishMsgProto publishMsgProto) {
+        return Unpooled.wrappedBuffer(publishMsgProto.getPayload().asReadOnlyByteBuffer());
+    }
+
     public static PublishMsg convertToPublishMsg(QueueProtos.PublishMsgProto publishMsgProto, int packetId,
                                                  int qos, boolean isDup) {
         return PublishMsg.builder()
@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import org.thingsboard.mqtt.broker.service.stats.ChannelFlushStats;
+
+/*
+    Coalesces the flushes of the channel, so a burst of msgs written with a flush per msg is sent with one syscall.
+    Flushes requested while the inbound data is read are done once the read is complete, other flushes are done at the end
+    of the current event loop turn. The pending writes are flushed right away when they exceed the configured msgs or bytes limit.
+    Must be placed before the encoder, so the writes are already encoded and their size is known
+ */
+public class MqttFlushConsolidationHandler extends ChannelDuplexHandler {
+
+    private final boolean enabled;
+    private final int maxPendingMsgs;
+    private final int maxPendingBytes;
+    private final ChannelFlushStats flushStats;
+    private final Runnable flushTask;
+
+    private ChannelHandlerContext ctx;
+    private int pendingMsgs;
+    private long pendingBytes;
+    private boolean readInProgress;
+    private boolean flushRequested;
+    private boolean flushScheduled;
+
+    public MqttFlushConsolidationHandler(boolean enabled, int maxPendingMsgs, int maxPendingBytes, ChannelFlushStats flushStats) {
+        this.enabled = enabled;
+        this.maxPendingMsgs = maxPendingMsgs;
+        this.maxPendingBytes = maxPendingBytes;
+        this.flushStats = flushStats;
+        this.flushTask = () -> {
+            flushScheduled = false;
+            if (flushRequested) {
+                flushNow(ctx);
+            }
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        pendingMsgs++;
+        pendingBytes += sizeOf(msg);
+        ctx.write(msg, promise);
+        if (pendingMsgs >= maxPendingMsgs || pendingBytes >= maxPendingBytes) {
+            flushNow(ctx);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (pendingMsgs == 0) {
+            // all writes go through this handler, nothing to send
+            return;
+        }
+        if (!enabled) {
+            flushNow(ctx);
+            return;
+        }
+        flushRequested = true;
+        if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.executor().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfRequested(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isWritable()) {
+            // the outbound buffer is full, send what is pending instead of waiting for the end of the turn
+            flushIfRequested(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        flushIfRequested(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushIfRequested(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushIfRequested(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushIfRequested(ctx);
+    }
+
+    private void flushIfRequested(ChannelHandlerContext ctx) {
+        if (flushRequested) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushStats.logFlush(pendingMsgs);
+        pendingMsgs = 0;
+        pendingBytes = 0;
+        flushRequested = false;
+        ctx.flush();
+    }
+
+    private long sizeOf(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return 0;
+    }
+}
@@ -20,7 +20,11 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.auth.AsyncAuthenticationService;
+import org.thingsboard.mqtt.broker.service.limits.ChannelBackpressureService;
 import org.thingsboard.mqtt.broker.service.limits.RateLimitService;
+import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 
 @Service
@@ -30,12 +34,29 @@ public class MqttHandlerFactoryImpl implements MqttHandlerFactory {
     private final ClientMqttActorManager actorManager;
     private final ClientLogger clientLogger;
     private final RateLimitService rateLimitService;
+    private final ChannelBackpressureService channelBackpressureService;
+    private final AsyncAuthenticationService asyncAuthenticationService;
+    private final MqttMessageGenerator mqttMessageGenerator;
+    private final StatsManager statsManager;
 
     @Value("${mqtt.max-in-flight-msgs:1000}")
     private int maxInFlightMsgs;
+    @Value("${mqtt.flush-consolidation.enabled:true}")
+    private boolean flushConsolidationEnabled;
+    @Value("${mqtt.flush-consolidation.max-msgs:256}")
+    private int flushConsolidationMaxMsgs;
+    @Value("${mqtt.flush-consolidation.max-bytes:65536}")
+    private int flushConsolidationMaxBytes;
 
     @Override
     public MqttSessionHandler create(SslHandler sslHandler) {
-        return new MqttSessionHandler(actorManager, clientLogger, rateLimitService, sslHandler, maxInFlightMsgs);
+        return new MqttSessionHandler(actorManager, clientLogger, rateLimitService, channelBackpressureService,
+                asyncAuthenticationService, mqttMessageGenerator, sslHandler, maxInFlightMsgs);
+    }
+
+    @Override
+    public MqttFlushConsolidationHandler createFlushConsolidationHandler() {
+        return new MqttFlushConsolidationHandler(flushConsolidationEnabled, flushConsolidationMaxMsgs, flushConsolidationMaxBytes,
+                statsManager.getChannelFlushStats());
     }
 }
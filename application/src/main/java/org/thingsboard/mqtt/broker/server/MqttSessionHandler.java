@@ -15,10 +15,13 @@
  */
 package org.thingsboard.mqtt.broker.server;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttMessageType;
@@ -40,18 +43,28 @@ import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg
 import org.thingsboard.mqtt.broker.adaptor.NettyMqttConverter;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.exception.FullMsgQueueException;
 import org.thingsboard.mqtt.broker.exception.ProtocolViolationException;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.auth.AsyncAuthenticationService;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthContext;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthResponse;
+import org.thingsboard.mqtt.broker.service.limits.ChannelBackpressureService;
+import org.thingsboard.mqtt.broker.service.limits.ChannelReadPauseReason;
 import org.thingsboard.mqtt.broker.service.limits.RateLimitService;
+import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
 import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
 import org.thingsboard.mqtt.broker.session.SessionContext;
+import org.thingsboard.mqtt.broker.util.MqttReasonCodeResolver;
 
 import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -62,18 +75,28 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
     private final ClientMqttActorManager clientMqttActorManager;
     private final ClientLogger clientLogger;
     private final RateLimitService rateLimitService;
+    private final ChannelBackpressureService channelBackpressureService;
+    private final AsyncAuthenticationService asyncAuthenticationService;
+    private final MqttMessageGenerator mqttMessageGenerator;
     private final ClientSessionCtx clientSessionCtx;
     @Getter
     private final UUID sessionId = UUID.randomUUID();
 
     private String clientId;
     private InetSocketAddress address;
+    // not null while the client is authenticated
+    private List<MqttMessage> authPendingMsgs;
 
     public MqttSessionHandler(ClientMqttActorManager clientMqttActorManager, ClientLogger clientLogger,
-                              RateLimitService rateLimitService, SslHandler sslHandler, int maxInFlightMsgs) {
+                              RateLimitService rateLimitService, ChannelBackpressureService channelBackpressureService,
+                              AsyncAuthenticationService asyncAuthenticationService, MqttMessageGenerator mqttMessageGenerator,
+                              SslHandler sslHandler, int maxInFlightMsgs) {
         this.clientMqttActorManager = clientMqttActorManager;
         this.clientLogger = clientLogger;
         this.rateLimitService = rateLimitService;
+        this.channelBackpressureService = channelBackpressureService;
+        this.asyncAuthenticationService = asyncAuthenticationService;
+        this.mqttMessageGenerator = mqttMessageGenerator;
         this.clientSessionCtx = new ClientSessionCtx(sessionId, sslHandler, maxInFlightMsgs);
     }
 
@@ -117,8 +140,13 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
         }
 
         MqttMessageType msgType = msg.fixedHeader().messageType();
+        if (authPendingMsgs != null) {
+            authPendingMsgs.add(ReferenceCountUtil.retain(msg));
+            return;
+        }
         if (StringUtils.isEmpty(clientId) && msgType == MqttMessageType.CONNECT) {
-            initSession((MqttConnectMessage) msg);
+            authenticate((MqttConnectMessage) msg);
+            return;
         }
 
         if (StringUtils.isEmpty(clientId)) {
@@ -175,15 +203,79 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
         return rateLimitService.checkLimits(clientId, sessionId, msg);
     }
 
-    private void initSession(MqttConnectMessage connectMessage) {
-        clientId = connectMessage.payload().clientIdentifier();
-        boolean isClientIdGenerated = StringUtils.isEmpty(clientId);
-        clientId = isClientIdGenerated ? generateClientId() : clientId;
+    /*
+        The client is authenticated on the dedicated threads, the channel is not read and the msgs already read are kept
+        until the authentication ends. Then the session is initialized and the kept msgs (starting with CONNECT) are processed
+     */
+    private void authenticate(MqttConnectMessage connectMessage) {
+        String connectClientId = connectMessage.payload().clientIdentifier();
+        boolean isClientIdGenerated = StringUtils.isEmpty(connectClientId);
+        String sessionClientId = isClientIdGenerated ? generateClientId() : connectClientId;
         clientSessionCtx.setMqttVersion(getMqttVersion(connectMessage));
-        clientMqttActorManager.initSession(clientId, isClientIdGenerated, new SessionInitMsg(
-                clientSessionCtx,
-                connectMessage.payload().userName(),
-                connectMessage.payload().passwordInBytes()));
+
+        authPendingMsgs = new ArrayList<>();
+        authPendingMsgs.add(ReferenceCountUtil.retain(connectMessage));
+        channelBackpressureService.pauseReading(clientSessionCtx, ChannelReadPauseReason.AUTHENTICATION);
+
+        AuthContext authContext = AuthContext.builder()
+                .clientId(sessionClientId)
+                .username(connectMessage.payload().userName())
+                .passwordBytes(connectMessage.payload().passwordInBytes())
+                .sslHandler(clientSessionCtx.getSslHandler())
+                .build();
+        Futures.addCallback(asyncAuthenticationService.authenticate(authContext), new FutureCallback<>() {
+            @Override
+            public void onSuccess(AuthResponse authResponse) {
+                initSession(sessionClientId, isClientIdGenerated, authResponse);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof FullMsgQueueException) {
+                    refuseConnection(sessionClientId);
+                } else {
+                    log.warn("[{}][{}] Failed to authenticate client.", sessionClientId, sessionId, t);
+                    initSession(sessionClientId, isClientIdGenerated, AuthResponse.builder().success(false).build());
+                }
+            }
+        }, clientSessionCtx.getChannel().executor());
+    }
+
+    private void initSession(String sessionClientId, boolean isClientIdGenerated, AuthResponse authResponse) {
+        List<MqttMessage> pendingMsgs = finishAuthentication();
+        if (!clientSessionCtx.getChannel().channel().isActive()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}][{}] Channel was closed during authentication.", sessionClientId, sessionId);
+            }
+            pendingMsgs.forEach(ReferenceCountUtil::safeRelease);
+            return;
+        }
+        clientId = sessionClientId;
+        clientMqttActorManager.initSession(clientId, isClientIdGenerated, new SessionInitMsg(clientSessionCtx, authResponse));
+        try {
+            for (MqttMessage msg : pendingMsgs) {
+                processMqttMsg(msg);
+            }
+        } catch (Exception e) {
+            exceptionCaught(clientSessionCtx.getChannel(), e);
+        } finally {
+            pendingMsgs.forEach(ReferenceCountUtil::safeRelease);
+        }
+    }
+
+    private void refuseConnection(String sessionClientId) {
+        log.warn("[{}][{}] Too many clients are waiting for authentication, refusing the connection.", sessionClientId, sessionId);
+        finishAuthentication().forEach(ReferenceCountUtil::safeRelease);
+        MqttConnectReturnCode code = MqttReasonCodeResolver.connectionRefusedServerBusy(clientSessionCtx);
+        clientSessionCtx.getChannel().writeAndFlush(mqttMessageGenerator.createMqttConnAckMsg(code));
+        clientSessionCtx.closeChannel();
+    }
+
+    private List<MqttMessage> finishAuthentication() {
+        List<MqttMessage> pendingMsgs = authPendingMsgs;
+        authPendingMsgs = null;
+        channelBackpressureService.resumeReading(clientSessionCtx, ChannelReadPauseReason.AUTHENTICATION);
+        return pendingMsgs;
     }
 
     private String generateClientId() {
@@ -225,6 +317,7 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
 
     @Override
     public void operationComplete(Future<? super Void> future) {
+        channelBackpressureService.onChannelClosed(clientSessionCtx);
         if (clientId != null) {
             disconnect(new DisconnectReason(DisconnectReasonType.ON_CHANNEL_CLOSED));
         }
@@ -44,6 +44,7 @@ public class MqttSslChannelInitializer extends ChannelInitializer<SocketChannel>
         ChannelPipeline pipeline = ch.pipeline();
         SslHandler sslHandler = context.getSslHandlerProvider().getSslHandler();
         pipeline.addLast(sslHandler);
+        pipeline.addLast("flushConsolidation", handlerFactory.createFlushConsolidationHandler());
 
         pipeline.addLast("decoder", new MqttDecoder(context.getMaxPayloadSize(), maxClientIdLength));
         pipeline.addLast("encoder", MqttEncoder.INSTANCE);
@@ -19,8 +19,6 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.ResourceLeakDetector;
 import io.netty.util.concurrent.Future;
 import lombok.RequiredArgsConstructor;
@@ -33,6 +31,8 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -53,6 +53,16 @@ public class MqttSslServerBootstrap {
     private Integer workerGroupThreadCount;
     @Value("${listener.ssl.netty.so_keep_alive}")
     private boolean keepAlive;
+    @Value("${listener.ssl.netty.transport_type:NIO}")
+    private NettyTransportType transportType;
+    @Value("${listener.ssl.netty.acceptor_count:1}")
+    private Integer acceptorCount;
+    @Value("${listener.ssl.netty.edge_triggered:true}")
+    private boolean edgeTriggered;
+    @Value("${listener.ssl.netty.tcp_no_delay:true}")
+    private boolean tcpNoDelay;
+    @Value("${listener.ssl.netty.tcp_quick_ack:false}")
+    private boolean tcpQuickAck;
 
     @Value("${listener.ssl.netty.shutdown_quiet_period:0}")
     private Integer shutdownQuietPeriod;
@@ -61,7 +71,7 @@ public class MqttSslServerBootstrap {
 
     private final MqttSslChannelInitializer mqttSslChannelInitializer;
 
-    private Channel serverChannel;
+    private List<Channel> serverChannels = Collections.emptyList();
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
 
@@ -72,15 +82,16 @@ public class MqttSslServerBootstrap {
         ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.valueOf(leakDetectorLevel.toUpperCase()));
 
         log.info("[SSL Server] Starting MQTT server...");
-        bossGroup = new NioEventLoopGroup(bossGroupThreadCount);
-        workerGroup = new NioEventLoopGroup(workerGroupThreadCount);
-        ServerBootstrap b = new ServerBootstrap();
+        NettyServerTransport transport = new NettyServerTransport("SSL Server", transportType, acceptorCount,
+                edgeTriggered, tcpNoDelay, tcpQuickAck);
+        bossGroup = transport.newEventLoopGroup(bossGroupThreadCount);
+        workerGroup = transport.newEventLoopGroup(workerGroupThreadCount);
+        ServerBootstrap b = transport.configure(new ServerBootstrap());
         b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
                 .childHandler(mqttSslChannelInitializer)
                 .childOption(ChannelOption.SO_KEEPALIVE, keepAlive);
 
-        serverChannel = b.bind(host, port).sync().channel();
+        serverChannels = transport.bind(b, host, port);
         log.info("[SSL Server] Mqtt server started!");
     }
 
@@ -91,7 +102,7 @@ public class MqttSslServerBootstrap {
         Future<?> bossFuture = null;
         Future<?> workerFuture = null;
 
-        if (serverChannel != null) {
+        for (Channel serverChannel : serverChannels) {
             serverChannel.close().sync();
         }
 
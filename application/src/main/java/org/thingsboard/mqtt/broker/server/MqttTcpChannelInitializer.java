@@ -40,6 +40,7 @@ public class MqttTcpChannelInitializer extends ChannelInitializer<SocketChannel>
     @Override
     public void initChannel(SocketChannel ch) {
         ChannelPipeline pipeline = ch.pipeline();
+        pipeline.addLast("flushConsolidation", handlerFactory.createFlushConsolidationHandler());
         pipeline.addLast("decoder", new MqttDecoder(context.getMaxPayloadSize(), maxClientIdLength));
         pipeline.addLast("encoder", MqttEncoder.INSTANCE);
 
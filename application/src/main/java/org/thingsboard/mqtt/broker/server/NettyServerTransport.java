@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Creates event loop groups and server channels of the transport selected for the MQTT listener.
+    Native epoll allows to bind several acceptor channels to the same port with SO_REUSEPORT,
+    so the kernel balances new connections between them.
+ */
+@Slf4j
+@Getter
+public class NettyServerTransport {
+
+    private final String listenerName;
+    private final NettyTransportType type;
+    private final int acceptorCount;
+    private final boolean edgeTriggered;
+    private final boolean tcpNoDelay;
+    private final boolean tcpQuickAck;
+
+    public NettyServerTransport(String listenerName, NettyTransportType configuredType, int acceptorCount,
+                                boolean edgeTriggered, boolean tcpNoDelay, boolean tcpQuickAck) {
+        this.listenerName = listenerName;
+        this.type = resolveType(listenerName, configuredType);
+        this.acceptorCount = type == NettyTransportType.EPOLL ? Math.max(acceptorCount, 1) : 1;
+        this.edgeTriggered = edgeTriggered;
+        this.tcpNoDelay = tcpNoDelay;
+        this.tcpQuickAck = tcpQuickAck;
+        if (acceptorCount > 1 && type != NettyTransportType.EPOLL) {
+            log.warn("[{}] SO_REUSEPORT is supported only by EPOLL transport, using 1 acceptor instead of {}.", listenerName, acceptorCount);
+        }
+    }
+
+    static NettyTransportType resolveType(String listenerName, NettyTransportType configuredType) {
+        if (configuredType == null || configuredType == NettyTransportType.NIO) {
+            return NettyTransportType.NIO;
+        }
+        if (Epoll.isAvailable()) {
+            return NettyTransportType.EPOLL;
+        }
+        if (configuredType == NettyTransportType.EPOLL) {
+            log.warn("[{}] EPOLL transport is not available, falling back to NIO. Reason: {}",
+                    listenerName, Epoll.unavailabilityCause().getMessage());
+        } else {
+            log.debug("[{}] EPOLL transport is not available, using NIO.", listenerName);
+        }
+        return NettyTransportType.NIO;
+    }
+
+    public EventLoopGroup newEventLoopGroup(int threadCount) {
+        return isEpoll() ? new EpollEventLoopGroup(threadCount) : new NioEventLoopGroup(threadCount);
+    }
+
+    public Class<? extends ServerChannel> getServerChannelClass() {
+        return isEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public ServerBootstrap configure(ServerBootstrap bootstrap) {
+        bootstrap.channel(getServerChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (isEpoll()) {
+            EpollMode epollMode = edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                    .childOption(EpollChannelOption.EPOLL_MODE, epollMode)
+                    .childOption(EpollChannelOption.TCP_QUICKACK, tcpQuickAck);
+            if (acceptorCount > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+        return bootstrap;
+    }
+
+    /*
+        Binds acceptorCount server channels to the address, the channels are bound one by one
+        so the port chosen for the first channel (in case of port 0) is reused by the others
+     */
+    public List<Channel> bind(ServerBootstrap bootstrap, String host, int port) throws InterruptedException {
+        List<Channel> serverChannels = new ArrayList<>(acceptorCount);
+        try {
+            Channel first = bootstrap.bind(host, port).sync().channel();
+            serverChannels.add(first);
+            int boundPort = ((InetSocketAddress) first.localAddress()).getPort();
+            for (int i = 1; i < acceptorCount; i++) {
+                serverChannels.add(bootstrap.bind(host, boundPort).sync().channel());
+            }
+        } catch (Exception e) {
+            serverChannels.forEach(Channel::close);
+            throw e;
+        }
+        log.info("[{}] Bound {} acceptor(s) using {} transport.", listenerName, serverChannels.size(), type);
+        return serverChannels;
+    }
+
+    private boolean isEpoll() {
+        return type == NettyTransportType.EPOLL;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.auth;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
+import org.thingsboard.mqtt.broker.exception.AuthenticationException;
+import org.thingsboard.mqtt.broker.exception.FullMsgQueueException;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthContext;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthResponse;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.stats.timer.AuthenticationTimerStats;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Authenticates the connecting clients on the dedicated threads, so the credentials lookup and the password hashing
+    neither block the event loops and the client actors nor consume more CPU than the configured number of threads.
+    New clients are refused when too many of them are already waiting, e.g. during the reconnect of all clients after a restart
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DefaultAsyncAuthenticationService implements AsyncAuthenticationService {
+
+    private final AuthenticationService authenticationService;
+    private final StatsManager statsManager;
+
+    @Value("${security.mqtt.auth.threads:4}")
+    private int threadsCount;
+    @Value("${security.mqtt.auth.max-pending:10000}")
+    private int maxPendingAuths;
+
+    private ListeningExecutorService authExecutor;
+    private AtomicInteger pendingAuthsCounter;
+    private AuthenticationTimerStats timerStats;
+
+    @PostConstruct
+    public void init() {
+        this.authExecutor = MoreExecutors.listeningDecorator(ThingsBoardExecutors.initExecutorService(threadsCount, "mqtt-auth-executor"));
+        this.pendingAuthsCounter = statsManager.createPendingAuthsCounter();
+        this.timerStats = statsManager.getAuthenticationTimerStats();
+    }
+
+    @Override
+    public ListenableFuture<AuthResponse> authenticate(AuthContext authContext) {
+        int pendingAuths = pendingAuthsCounter.incrementAndGet();
+        if (maxPendingAuths > 0 && pendingAuths > maxPendingAuths) {
+            pendingAuthsCounter.decrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Too many clients are waiting for authentication, refusing the client.", authContext.getClientId());
+            }
+            return Futures.immediateFailedFuture(new FullMsgQueueException("Too many clients are waiting for authentication"));
+        }
+        long submitTime = System.nanoTime();
+        try {
+            return authExecutor.submit(() -> {
+                long startTime = System.nanoTime();
+                timerStats.logAuthQueue(submitTime, TimeUnit.NANOSECONDS);
+                try {
+                    return doAuthenticate(authContext);
+                } finally {
+                    pendingAuthsCounter.decrementAndGet();
+                    timerStats.logAuthentication(startTime, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingAuthsCounter.decrementAndGet();
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private AuthResponse doAuthenticate(AuthContext authContext) {
+        try {
+            // TODO: make it with Plugin architecture (to be able to use LDAP, OAuth etc.)
+            return authenticationService.authenticate(authContext);
+        } catch (AuthenticationException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Authentication failed.", authContext.getClientId(), e);
+            }
+            return AuthResponse.builder().success(false).build();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (authExecutor != null) {
+            authExecutor.shutdownNow();
+        }
+    }
+}
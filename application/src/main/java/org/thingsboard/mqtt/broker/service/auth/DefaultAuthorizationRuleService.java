@@ -15,8 +15,13 @@
  */
 package org.thingsboard.mqtt.broker.service.auth;
 
-import lombok.Getter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.common.data.client.credentials.BasicMqttCredentials;
@@ -24,23 +29,45 @@ import org.thingsboard.mqtt.broker.common.data.client.credentials.PubSubAuthoriz
 import org.thingsboard.mqtt.broker.common.data.client.credentials.SslMqttCredentials;
 import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
+import org.thingsboard.mqtt.broker.service.security.authorization.TopicAuthMatcher;
+import org.thingsboard.mqtt.broker.service.stats.PublishAuthCacheStats;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import javax.annotation.PostConstruct;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class DefaultAuthorizationRuleService implements AuthorizationRuleService {
 
-    @Getter
-    private final ConcurrentMap<String, ConcurrentMap<String, Boolean>> publishAuthMap = new ConcurrentHashMap<>();
+    private final StatsManager statsManager;
+
+    @Setter
+    @Value("${security.mqtt.authorization.publish-cache-max-size:100000}")
+    private long publishCacheMaxSize;
+
+    /*
+        The results of matching the publish topics with the rules that need regex evaluation.
+        The results depend only on the rules and the topic, so the clients with the same credentials share them.
+        The size is bounded, so the memory does not grow with the number of the unique topics
+     */
+    private Cache<PublishAuthKey, Boolean> publishAuthCache;
+    private PublishAuthCacheStats publishAuthCacheStats;
+
+    @PostConstruct
+    public void init() {
+        this.publishAuthCacheStats = statsManager.getPublishAuthCacheStats();
+        if (publishCacheMaxSize > 0) {
+            this.publishAuthCache = Caffeine.newBuilder().maximumSize(publishCacheMaxSize).build();
+            statsManager.registerPublishAuthCacheStats(publishAuthCache.asMap());
+        }
+    }
 
     @Override
     public List<AuthRulePatterns> parseSslAuthorizationRule(SslMqttCredentials credentials, String clientCommonName) throws AuthenticationException {
@@ -87,45 +114,49 @@ public class DefaultAuthorizationRuleService implements AuthorizationRuleService
     }
 
     @Override
-    public boolean isPubAuthorized(String clientId, String topic, List<AuthRulePatterns> authRulePatterns) {
-        ConcurrentMap<String, Boolean> topicAuthMap = publishAuthMap.get(clientId);
-        if (topicAuthMap == null) {
-            topicAuthMap = publishAuthMap.computeIfAbsent(clientId, s -> new ConcurrentHashMap<>());
+    public boolean isPubAuthorized(String topic, List<AuthRulePatterns> authRulePatterns) {
+        if (CollectionUtils.isEmpty(authRulePatterns)) {
+            return true;
         }
-        Boolean isAuthorized = topicAuthMap.get(topic);
-        if (isAuthorized == null) {
-            return topicAuthMap.computeIfAbsent(topic, s -> {
-                if (CollectionUtils.isEmpty(authRulePatterns)) {
-                    return true;
-                }
-                Stream<List<Pattern>> pubPatterns = authRulePatterns.stream().map(AuthRulePatterns::getPubPatterns);
-                return isAuthorized(topic, pubPatterns);
-            });
+        for (AuthRulePatterns rulePatterns : authRulePatterns) {
+            if (isPubAuthorized(topic, rulePatterns.getPubMatcher())) {
+                return true;
+            }
         }
-        return isAuthorized;
-    }
-
-    @Override
-    public boolean isSubAuthorized(String topic, List<AuthRulePatterns> authRulePatterns) {
-        Stream<List<Pattern>> subPatterns = authRulePatterns.stream().map(AuthRulePatterns::getSubPatterns);
-        return isAuthorized(topic, subPatterns);
+        return false;
     }
 
-    private boolean isAuthorized(String topic, Stream<List<Pattern>> stream) {
-        List<Pattern> patterns = stream.flatMap(List::stream).collect(Collectors.toList());
-        if (CollectionUtils.isEmpty(patterns)) {
-            return false;
+    private boolean isPubAuthorized(String topic, TopicAuthMatcher pubMatcher) {
+        if (publishAuthCache == null || !pubMatcher.hasPatterns()) {
+            return pubMatcher.matches(topic);
+        }
+        PublishAuthKey key = new PublishAuthKey(pubMatcher, topic);
+        Boolean isAuthorized = publishAuthCache.getIfPresent(key);
+        if (isAuthorized != null) {
+            publishAuthCacheStats.logHit();
+            return isAuthorized;
         }
-        return patterns.stream().anyMatch(pattern -> pattern.matcher(topic).matches());
+        publishAuthCacheStats.logMiss();
+        isAuthorized = pubMatcher.matches(topic);
+        publishAuthCache.put(key, isAuthorized);
+        return isAuthorized;
     }
 
     @Override
-    public void evict(String clientId) {
-        if (clientId != null) {
-            var topicAuthMap = publishAuthMap.remove(clientId);
-            if (topicAuthMap != null) {
-                topicAuthMap.clear();
+    public boolean isSubAuthorized(String topic, List<AuthRulePatterns> authRulePatterns) {
+        for (AuthRulePatterns rulePatterns : authRulePatterns) {
+            if (rulePatterns.getSubMatcher().matches(topic)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    // the matcher is compared by identity, it is created once per parsed credentials
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class PublishAuthKey {
+        private final TopicAuthMatcher matcher;
+        private final String topic;
     }
 }
@@ -15,11 +15,15 @@
  */
 package org.thingsboard.mqtt.broker.service.auth.providers;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Lazy;
@@ -29,7 +33,6 @@ import org.thingsboard.mqtt.broker.cache.CacheConstants;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 import org.thingsboard.mqtt.broker.common.data.client.credentials.BasicMqttCredentials;
 import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
-import org.thingsboard.mqtt.broker.common.util.JacksonUtil;
 import org.thingsboard.mqtt.broker.common.util.MqttClientCredentialsUtil;
 import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
 import org.thingsboard.mqtt.broker.dao.util.protocol.ProtocolUtil;
@@ -37,6 +40,7 @@ import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 
+import javax.annotation.PostConstruct;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -54,6 +58,12 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
     private BCryptPasswordEncoder passwordEncoder;
     private HashFunction hashFunction;
 
+    @Value("${security.mqtt.basic.parsed-credentials-cache-max-size:10000}")
+    private long parsedCredentialsCacheMaxSize;
+
+    // credentials id -> parsed credentials value with compiled authorization rules
+    private com.github.benmanes.caffeine.cache.Cache<String, ParsedBasicCredentials> parsedCredentialsCache;
+
     @Autowired
     public BasicMqttClientAuthProvider(AuthorizationRuleService authorizationRuleService,
                                        MqttClientCredentialsService clientCredentialsService,
@@ -66,6 +76,13 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
         this.hashFunction = Hashing.sha256();
     }
 
+    @PostConstruct
+    public void init() {
+        if (parsedCredentialsCacheMaxSize > 0) {
+            this.parsedCredentialsCache = Caffeine.newBuilder().maximumSize(parsedCredentialsCacheMaxSize).build();
+        }
+    }
+
     @Override
     public AuthResponse authenticate(AuthContext authContext) throws AuthenticationException {
         if (log.isTraceEnabled()) {
@@ -78,8 +95,12 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Authenticated with username {}", authContext.getClientId(), authContext.getUsername());
         }
-        BasicMqttCredentials credentials = JacksonUtil.fromString(basicCredentials.getCredentialsValue(), BasicMqttCredentials.class);
-        AuthRulePatterns authRulePatterns = authorizationRuleService.parseBasicAuthorizationRule(credentials);
+        ParsedBasicCredentials parsedCredentials = getParsedCredentials(basicCredentials);
+        AuthRulePatterns authRulePatterns = parsedCredentials.getAuthRulePatterns();
+        if (authRulePatterns == null) {
+            authRulePatterns = authorizationRuleService.parseBasicAuthorizationRule(parsedCredentials.getCredentials());
+            parsedCredentials.setAuthRulePatterns(authRulePatterns);
+        }
         return new AuthResponse(true, basicCredentials.getClientType(), Collections.singletonList(authRulePatterns));
     }
 
@@ -98,7 +119,7 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
         }
 
         for (MqttClientCredentials credentials : matchingCredentialsList) {
-            BasicMqttCredentials basicMqttCredentials = MqttClientCredentialsUtil.getMqttCredentials(credentials, BasicMqttCredentials.class);
+            BasicMqttCredentials basicMqttCredentials = getParsedCredentials(credentials).getCredentials();
             if (isMatchingPassword(password, basicMqttCredentials)) {
                 if (password != null && basicMqttCredentials.getPassword() != null) {
                     getCache().put(toHashString(password), credentials);
@@ -109,6 +130,27 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
         return null;
     }
 
+    /*
+        The cached value is used only while the credentials value it was parsed from is not changed,
+        so the updated credentials are parsed again on any node without an explicit invalidation
+     */
+    private ParsedBasicCredentials getParsedCredentials(MqttClientCredentials credentials) {
+        if (parsedCredentialsCache == null) {
+            return parseCredentials(credentials);
+        }
+        ParsedBasicCredentials parsedCredentials = parsedCredentialsCache.getIfPresent(credentials.getCredentialsId());
+        if (parsedCredentials == null || !parsedCredentials.getCredentialsValue().equals(credentials.getCredentialsValue())) {
+            parsedCredentials = parseCredentials(credentials);
+            parsedCredentialsCache.put(credentials.getCredentialsId(), parsedCredentials);
+        }
+        return parsedCredentials;
+    }
+
+    private ParsedBasicCredentials parseCredentials(MqttClientCredentials credentials) {
+        BasicMqttCredentials basicMqttCredentials = MqttClientCredentialsUtil.getMqttCredentials(credentials, BasicMqttCredentials.class);
+        return new ParsedBasicCredentials(credentials.getCredentialsValue(), basicMqttCredentials);
+    }
+
     private List<String> getCredentialIds(String clientId, String username) {
         List<String> credentialIds = new ArrayList<>();
         if (!StringUtils.isEmpty(username)) {
@@ -139,4 +181,14 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
     private String toHashString(String rawPassword) {
         return hashFunction.newHasher().putString(rawPassword, StandardCharsets.UTF_8).hash().toString();
     }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class ParsedBasicCredentials {
+        private final String credentialsValue;
+        private final BasicMqttCredentials credentials;
+        // compiled when the credentials are matched for the first time
+        @Setter
+        private volatile AuthRulePatterns authRulePatterns;
+    }
 }
@@ -18,5 +18,5 @@ package org.thingsboard.mqtt.broker.service.historical.stats;
 
 public interface TbMessageStatsReportClient {
 
-    void reportStats(String key);
+    void reportStats(TbMessageStatsType type);
 }
@@ -41,18 +41,17 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.time.ZoneOffset.UTC;
-import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.MSG_RELATED_HISTORICAL_KEYS;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class TbMessageStatsReportClientImpl implements TbMessageStatsReportClient {
 
+    private static final TbMessageStatsType[] STATS_TYPES = TbMessageStatsType.values();
+
     @Value("${historical-data-report.enabled:true}")
     private boolean enabled;
 
@@ -65,7 +64,11 @@ public class TbMessageStatsReportClientImpl implements TbMessageStatsReportClien
     private final HistoricalStatsTotalHelper helper;
 
     private String serviceId;
-    private ConcurrentMap<String, AtomicLong> stats;
+    /*
+        Every msg is counted by the thread that processes it, so the counters are striped and indexed by the ordinal of the type,
+        the values of all the threads are summed only when the report is sent
+     */
+    private LongAdder[] stats;
     private TbQueueProducer<TbProtoQueueMsg<QueueProtos.ToUsageStatsMsgProto>> historicalStatsProducer;
 
     @PostConstruct
@@ -75,9 +78,9 @@ public class TbMessageStatsReportClientImpl implements TbMessageStatsReportClien
 
         serviceId = serviceInfoProvider.getServiceId();
         historicalStatsProducer = historicalDataQueueFactory.createProducer(serviceId);
-        stats = new ConcurrentHashMap<>();
-        for (String key : MSG_RELATED_HISTORICAL_KEYS) {
-            stats.put(key, new AtomicLong(0));
+        stats = new LongAdder[STATS_TYPES.length];
+        for (int i = 0; i < STATS_TYPES.length; i++) {
+            stats[i] = new LongAdder();
         }
     }
 
@@ -91,18 +94,17 @@ public class TbMessageStatsReportClientImpl implements TbMessageStatsReportClien
     private void reportStats(long ts) {
         List<ToUsageStatsMsgProto> report = new ArrayList<>();
 
-        for (String key : MSG_RELATED_HISTORICAL_KEYS) {
-            long value = stats.get(key).get();
+        for (TbMessageStatsType type : STATS_TYPES) {
+            long value = stats[type.ordinal()].sumThenReset();
 
             UsageStatsKVProto.Builder statsItem = UsageStatsKVProto.newBuilder()
-                    .setKey(key)
+                    .setKey(type.getKey())
                     .setValue(value);
             ToUsageStatsMsgProto.Builder statsMsg = ToUsageStatsMsgProto.newBuilder();
             statsMsg.setServiceId(serviceId);
             statsMsg.setTs(ts);
             statsMsg.setUsageStats(statsItem.build());
             report.add(statsMsg.build());
-            stats.get(key).set(0);
         }
 
         List<ListenableFuture<Void>> futures = new ArrayList<>();
@@ -139,10 +141,9 @@ public class TbMessageStatsReportClientImpl implements TbMessageStatsReportClien
     }
 
     @Override
-    public void reportStats(String key) {
+    public void reportStats(TbMessageStatsType type) {
         if (enabled) {
-            AtomicLong al = stats.get(key);
-            al.incrementAndGet();
+            stats[type.ordinal()].increment();
         }
     }
 
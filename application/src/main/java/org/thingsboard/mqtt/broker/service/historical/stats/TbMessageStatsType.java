@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.historical.stats;
+
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+/*
+    The msg related historical keys, the ordinal is the index of the counter of the key in the report client
+ */
+public enum TbMessageStatsType {
+    INCOMING_MSGS(BrokerConstants.INCOMING_MSGS),
+    OUTGOING_MSGS(BrokerConstants.OUTGOING_MSGS),
+    DROPPED_MSGS(BrokerConstants.DROPPED_MSGS);
+
+    private final String key;
+
+    TbMessageStatsType(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Stops reading from the client channels (autoRead is turned off) while their PUBLISH msgs can not be persisted fast enough,
+    so the msgs are kept in the TCP buffers of the clients instead of the broker memory.
+    Reading is resumed when the number of the pending msgs drops to the half of the limit
+ */
+@Service
+@Slf4j
+public class ChannelBackpressureServiceImpl implements ChannelBackpressureService {
+
+    private final AtomicInteger pendingPublishesCounter;
+    private final AtomicInteger pausedChannelsCounter;
+    // sessions paused due to the global limit, they are resumed together
+    private final Set<ClientSessionCtx> globallyPausedSessions = ConcurrentHashMap.newKeySet();
+
+    @Value("${mqtt.backpressure.session-max-pending-publishes:1000}")
+    private int sessionMaxPendingPublishes;
+    @Value("${mqtt.backpressure.max-pending-publishes:100000}")
+    private int maxPendingPublishes;
+
+    public ChannelBackpressureServiceImpl(StatsManager statsManager) {
+        this.pendingPublishesCounter = statsManager.createPendingPublishesCounter();
+        this.pausedChannelsCounter = statsManager.createPausedChannelsCounter();
+    }
+
+    @Override
+    public void onPublishPersistStarted(ClientSessionCtx sessionCtx) {
+        int sessionPendingPublishes = sessionCtx.getPendingPublishPersists().incrementAndGet();
+        int pendingPublishes = pendingPublishesCounter.incrementAndGet();
+        if (sessionMaxPendingPublishes > 0 && sessionPendingPublishes >= sessionMaxPendingPublishes) {
+            pauseReading(sessionCtx, ChannelReadPauseReason.SESSION_PENDING_PUBLISHES);
+        }
+        if (maxPendingPublishes > 0 && pendingPublishes >= maxPendingPublishes) {
+            // the session closed concurrently is removed either by the close or here
+            if (globallyPausedSessions.add(sessionCtx) && isPaused(sessionCtx, ChannelReadPauseReason.CHANNEL_CLOSED)) {
+                globallyPausedSessions.remove(sessionCtx);
+            }
+            pauseReading(sessionCtx, ChannelReadPauseReason.PENDING_PUBLISHES);
+        }
+    }
+
+    @Override
+    public void onPublishPersistFinished(ClientSessionCtx sessionCtx) {
+        int sessionPendingPublishes = sessionCtx.getPendingPublishPersists().decrementAndGet();
+        int pendingPublishes = pendingPublishesCounter.decrementAndGet();
+        if (sessionPendingPublishes <= sessionMaxPendingPublishes / 2
+                && isPaused(sessionCtx, ChannelReadPauseReason.SESSION_PENDING_PUBLISHES)) {
+            resumeReading(sessionCtx, ChannelReadPauseReason.SESSION_PENDING_PUBLISHES);
+        }
+        if (pendingPublishes <= maxPendingPublishes / 2 && !globallyPausedSessions.isEmpty()) {
+            Iterator<ClientSessionCtx> iterator = globallyPausedSessions.iterator();
+            while (iterator.hasNext()) {
+                ClientSessionCtx pausedSessionCtx = iterator.next();
+                iterator.remove();
+                resumeReading(pausedSessionCtx, ChannelReadPauseReason.PENDING_PUBLISHES);
+            }
+        }
+    }
+
+    /*
+        The closed channel keeps only the CHANNEL_CLOSED reason, so the persist callbacks that come after the close
+        change neither the reasons nor the paused channels counter
+     */
+    @Override
+    public void pauseReading(ClientSessionCtx sessionCtx, ChannelReadPauseReason reason) {
+        int prevReasons = sessionCtx.getReadPauseReasons().getAndUpdate(reasons -> isClosed(reasons) ? reasons : reasons | reason.getMask());
+        if (prevReasons == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}][{}] Pausing reading from the channel, reason - {}.", sessionCtx.getClientId(), sessionCtx.getSessionId(), reason);
+            }
+            pausedChannelsCounter.incrementAndGet();
+            updateAutoRead(sessionCtx);
+        }
+    }
+
+    @Override
+    public void resumeReading(ClientSessionCtx sessionCtx, ChannelReadPauseReason reason) {
+        int prevReasons = sessionCtx.getReadPauseReasons().getAndUpdate(reasons -> isClosed(reasons) ? reasons : reasons & ~reason.getMask());
+        if (prevReasons == reason.getMask()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}][{}] Resuming reading from the channel, reason - {}.", sessionCtx.getClientId(), sessionCtx.getSessionId(), reason);
+            }
+            pausedChannelsCounter.decrementAndGet();
+            updateAutoRead(sessionCtx);
+        }
+    }
+
+    @Override
+    public void onChannelClosed(ClientSessionCtx sessionCtx) {
+        int prevReasons = sessionCtx.getReadPauseReasons().getAndSet(ChannelReadPauseReason.CHANNEL_CLOSED.getMask());
+        globallyPausedSessions.remove(sessionCtx);
+        if (prevReasons != 0 && !isClosed(prevReasons)) {
+            pausedChannelsCounter.decrementAndGet();
+        }
+    }
+
+    private boolean isPaused(ClientSessionCtx sessionCtx, ChannelReadPauseReason reason) {
+        return (sessionCtx.getReadPauseReasons().get() & reason.getMask()) != 0;
+    }
+
+    private boolean isClosed(int reasons) {
+        return (reasons & ChannelReadPauseReason.CHANNEL_CLOSED.getMask()) != 0;
+    }
+
+    private void updateAutoRead(ClientSessionCtx sessionCtx) {
+        ChannelHandlerContext channel = sessionCtx.getChannel();
+        if (channel == null) {
+            return;
+        }
+        // the pause and resume may race, the value is evaluated on the event loop to apply the latest state
+        channel.executor().execute(() -> channel.channel().config().setAutoRead(sessionCtx.getReadPauseReasons().get() == 0));
+    }
+}
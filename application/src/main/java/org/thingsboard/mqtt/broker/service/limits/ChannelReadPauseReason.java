@@ -0,0 +1,38 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+/*
+    The client channel is read only when none of the reasons is present
+ */
+public enum ChannelReadPauseReason {
+    // the mailbox of the client actor is full
+    ACTOR_MAILBOX_FULL,
+    // too many PUBLISH msgs of the session are waiting to be persisted to the queue
+    SESSION_PENDING_PUBLISHES,
+    // too many PUBLISH msgs of all sessions are waiting to be persisted to the queue
+    PENDING_PUBLISHES,
+    // the client is being authenticated, the msgs read before the authentication ends are kept by the session handler
+    AUTHENTICATION,
+    // the channel is closed, it is set only by the close and is never removed, so the session is not paused or resumed after it
+    CHANNEL_CLOSED;
+
+    private final int mask = 1 << ordinal();
+
+    public int getMask() {
+        return mask;
+    }
+}
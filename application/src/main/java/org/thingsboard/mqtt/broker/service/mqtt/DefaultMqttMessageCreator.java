@@ -16,8 +16,7 @@
 package org.thingsboard.mqtt.broker.service.mqtt;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttConnAckVariableHeader;
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
@@ -59,8 +58,6 @@ import static io.netty.handler.codec.mqtt.MqttQoS.AT_MOST_ONCE;
 @Service
 public class DefaultMqttMessageCreator implements MqttMessageGenerator {
 
-    private static final ByteBufAllocator ALLOCATOR = new UnpooledByteBufAllocator(false);
-
     @Value("${listener.tcp.netty.max_payload_size}")
     private int tcpMaxPayloadSize;
     @Value("${listener.ssl.netty.max_payload_size}")
@@ -149,22 +146,28 @@ public class DefaultMqttMessageCreator implements MqttMessageGenerator {
     @Override
     public MqttPublishMessage createPubMsg(PublishMsg pubMsg) {
         return getMqttPublishMessage(pubMsg.isDup(), pubMsg.getQosLevel(), pubMsg.isRetained(),
-                pubMsg.getTopicName(), pubMsg.getPacketId(), pubMsg.getPayload(), pubMsg.getProperties());
+                pubMsg.getTopicName(), pubMsg.getPacketId(), getPayload(pubMsg), pubMsg.getProperties());
     }
 
     @Override
     public MqttPublishMessage createPubRetainMsg(int msgId, RetainedMsg retainedMsg) {
         return getMqttPublishMessage(false, retainedMsg.getQosLevel(), true,
-                retainedMsg.getTopic(), msgId, retainedMsg.getPayload(), retainedMsg.getProperties());
+                retainedMsg.getTopic(), msgId, Unpooled.wrappedBuffer(retainedMsg.getPayload()), retainedMsg.getProperties());
+    }
+
+    /*
+        The payload bytes are wrapped, not copied, so the same msg can be sent to many clients or re-sent with a new buffer each time.
+        A msg without the payload bytes carries a buffer prepared for this single delivery, it is released after the write
+     */
+    private ByteBuf getPayload(PublishMsg pubMsg) {
+        return pubMsg.getPayload() != null ? Unpooled.wrappedBuffer(pubMsg.getPayload()) : pubMsg.getByteBuf();
     }
 
     private MqttPublishMessage getMqttPublishMessage(boolean isDup, int qos, boolean isRetain,
-                                                     String topic, int packetId, byte[] payloadBytes, MqttProperties properties) {
+                                                     String topic, int packetId, ByteBuf payload, MqttProperties properties) {
         MqttFixedHeader mqttFixedHeader =
                 new MqttFixedHeader(MqttMessageType.PUBLISH, isDup, MqttQoS.valueOf(qos), isRetain, 0);
         MqttPublishVariableHeader header = new MqttPublishVariableHeader(topic, packetId, properties);
-        ByteBuf payload = ALLOCATOR.buffer();
-        payload.writeBytes(payloadBytes);
         return new MqttPublishMessage(mqttFixedHeader, header, payload);
     }
 
@@ -15,10 +15,13 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.RetransmissionService;
@@ -31,8 +34,8 @@ import org.thingsboard.mqtt.broker.util.MqttReasonCodeResolver;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
-import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
-import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.OUTGOING_MSGS;
+import static org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsType.DROPPED_MSGS;
+import static org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsType.OUTGOING_MSGS;
 
 @Slf4j
 @Service
@@ -63,6 +66,38 @@ public class DefaultPublishMsgDeliveryService implements PublishMsgDeliveryServi
         sendPublishMsgToClient(sessionCtx, mqttPubMsg);
     }
 
+    @Override
+    public boolean sendEncodedPublishMsgToClient(ClientSessionCtx sessionCtx, SharedPublishMsg msg, int qos, boolean retain,
+                                                 PublishMsgEncodingCache encodingCache) {
+        if (retransmissionService.isRetransmissionNeeded(sessionCtx, qos)) {
+            return false;
+        }
+        QueueProtos.PublishMsgProto publishMsgProto = msg.getPublishMsgProto();
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Sending encoded Pub msg to client {}", sessionCtx.getClientId(), publishMsgProto.getTopicName());
+        }
+        int packetId = qos == MqttQoS.AT_MOST_ONCE.value() ? 0 : sessionCtx.getMsgIdSeq().nextMsgId();
+        ByteBuf encodedPubMsg = encodingCache.getEncodedPublishMsg(sessionCtx.getMqttVersion(), publishMsgProto, qos, retain, packetId);
+        tbMessageStatsReportClient.reportStats(OUTGOING_MSGS);
+        if (packetId != 0) {
+            sessionCtx.getPublishDeliveryLoadCtx().onPublishSent(packetId);
+        }
+        long startTime = System.nanoTime();
+        try {
+            // the encoder of the channel passes the already encoded bytes through
+            sessionCtx.getChannel().writeAndFlush(encodedPubMsg);
+        } catch (Exception e) {
+            log.warn("[{}][{}] Failed to send encoded PUBLISH msg to MQTT client.",
+                    sessionCtx.getClientId(), sessionCtx.getSessionId(), e);
+            if (!retain) {
+                tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+            }
+            throw e;
+        }
+        deliveryTimerStats.logDelivery(startTime, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
     @Override
     public void sendPublishMsgToClientWithoutFlush(ClientSessionCtx sessionCtx, PublishMsg pubMsg) {
         if (log.isTraceEnabled()) {
@@ -108,6 +143,9 @@ public class DefaultPublishMsgDeliveryService implements PublishMsgDeliveryServi
     }
 
     private void processSendPublish(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> processor) {
+        if (mqttPubMsg.fixedHeader().qosLevel() != MqttQoS.AT_MOST_ONCE) {
+            sessionCtx.getPublishDeliveryLoadCtx().onPublishSent(mqttPubMsg.variableHeader().packetId());
+        }
         long startTime = System.nanoTime();
         try {
             processor.accept(mqttPubMsg);
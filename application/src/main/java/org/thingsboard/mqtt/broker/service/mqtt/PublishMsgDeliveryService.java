@@ -22,6 +22,12 @@ public interface PublishMsgDeliveryService {
 
     void sendPublishMsgToClient(ClientSessionCtx sessionCtx, PublishMsg publishMsg);
 
+    /*
+        Returns false if the msg can not be sent as the shared encoded packet (e.g. it may need to be retransmitted)
+     */
+    boolean sendEncodedPublishMsgToClient(ClientSessionCtx sessionCtx, SharedPublishMsg msg, int qos, boolean retain,
+                                          PublishMsgEncodingCache encodingCache);
+
     void sendPublishMsgToClientWithoutFlush(ClientSessionCtx sessionCtx, PublishMsg publishMsg);
 
     void sendPublishRetainedMsgToClient(ClientSessionCtx sessionCtx, RetainedMsg retainedMsg);
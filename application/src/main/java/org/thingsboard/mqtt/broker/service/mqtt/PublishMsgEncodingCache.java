@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+    Keeps the encoded PUBLISH packets of one msg that is delivered to many subscribers.
+    The packets for different subscribers differ only by QoS, retain flag, MQTT version (properties are written for MQTT 5 only)
+    and packet id, so every variant is encoded once and each subscriber gets a view of the encoded bytes with its own packet id
+ */
+public class PublishMsgEncodingCache {
+
+    // the same key is used by MqttDecoder and MqttEncoder to keep the version of the channel
+    private static final AttributeKey<MqttVersion> MQTT_VERSION_KEY = AttributeKey.valueOf("NETTY_CODEC_MQTT_VERSION");
+    private static final int VARIANTS_COUNT = 2 * 3 * 2;
+    // the channel only runs the encoder, creating it for every msg costs more than the encoding itself
+    private static final FastThreadLocal<EmbeddedChannel> ENCODER_CHANNEL = new FastThreadLocal<>() {
+        @Override
+        protected EmbeddedChannel initialValue() {
+            return new EmbeddedChannel(MqttEncoder.INSTANCE);
+        }
+    };
+
+    private final AtomicReferenceArray<EncodedPublishMsg> encodedMsgs = new AtomicReferenceArray<>(VARIANTS_COUNT);
+
+    /*
+        Returns the PUBLISH packet ready to be written to the channel, the caller owns the returned buffer.
+        All msgs passed to the same cache must have the same topic, user properties and payload
+     */
+    public ByteBuf getEncodedPublishMsg(MqttVersion mqttVersion, QueueProtos.PublishMsgProto msg, int packetId) {
+        return getEncodedPublishMsg(mqttVersion, msg, msg.getQos(), msg.getRetain(), packetId);
+    }
+
+    /*
+        'qos' and 'retain' override the ones of the msg
+     */
+    public ByteBuf getEncodedPublishMsg(MqttVersion mqttVersion, QueueProtos.PublishMsgProto msg, int qos, boolean retain, int packetId) {
+        boolean mqtt5 = MqttVersion.MQTT_5 == mqttVersion;
+        int index = getVariantIndex(mqtt5, qos, retain);
+        EncodedPublishMsg encodedMsg = encodedMsgs.get(index);
+        if (encodedMsg == null) {
+            EncodedPublishMsg newEncodedMsg = encode(mqtt5 ? MqttVersion.MQTT_5 : MqttVersion.MQTT_3_1_1, msg, qos, retain);
+            if (encodedMsgs.compareAndSet(index, null, newEncodedMsg)) {
+                encodedMsg = newEncodedMsg;
+            } else {
+                newEncodedMsg.release();
+                encodedMsg = encodedMsgs.get(index);
+            }
+        }
+        return encodedMsg.withPacketId(packetId);
+    }
+
+    /*
+        Buffers returned earlier stay valid, they hold their own references to the encoded bytes
+     */
+    public void release() {
+        for (int i = 0; i < VARIANTS_COUNT; i++) {
+            EncodedPublishMsg encodedMsg = encodedMsgs.getAndSet(i, null);
+            if (encodedMsg != null) {
+                encodedMsg.release();
+            }
+        }
+    }
+
+    private int getVariantIndex(boolean mqtt5, int qos, boolean retain) {
+        return ((mqtt5 ? 1 : 0) * 3 + qos) * 2 + (retain ? 1 : 0);
+    }
+
+    private EncodedPublishMsg encode(MqttVersion mqttVersion, QueueProtos.PublishMsgProto msg, int qosValue, boolean retain) {
+        MqttQoS qos = MqttQoS.valueOf(qosValue);
+        MqttPublishMessage mqttPubMsg = new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, retain, 0),
+                new MqttPublishVariableHeader(msg.getTopicName(), 0, ProtoConverter.createMqttProperties(msg.getUserPropertiesList())),
+                ProtoConverter.toPayloadByteBuf(msg));
+
+        EmbeddedChannel channel = ENCODER_CHANNEL.get();
+        channel.attr(MQTT_VERSION_KEY).set(mqttVersion);
+        channel.writeOutbound(mqttPubMsg);
+        ByteBuf encoded = channel.readOutbound();
+        return new EncodedPublishMsg(encoded, qos == MqttQoS.AT_MOST_ONCE ? -1 : getPacketIdOffset(encoded));
+    }
+
+    private int getPacketIdOffset(ByteBuf encoded) {
+        // the fixed header byte is followed by the variable length remaining length and the topic name
+        int index = encoded.readerIndex() + 1;
+        while ((encoded.getByte(index) & 0x80) != 0) {
+            index++;
+        }
+        index++;
+        int topicLength = encoded.getUnsignedShort(index);
+        return index + 2 + topicLength - encoded.readerIndex();
+    }
+
+    private static class EncodedPublishMsg {
+
+        private final ByteBuf encoded;
+        private final int packetIdOffset;
+
+        EncodedPublishMsg(ByteBuf encoded, int packetIdOffset) {
+            this.encoded = encoded;
+            this.packetIdOffset = packetIdOffset;
+        }
+
+        ByteBuf withPacketId(int packetId) {
+            if (packetIdOffset < 0) {
+                return encoded.retainedDuplicate();
+            }
+            // only the bytes up to the packet id are copied, the properties and the payload are shared
+            int headerLength = packetIdOffset + 2;
+            ByteBuf header = Unpooled.buffer(headerLength, headerLength);
+            header.writeBytes(encoded, encoded.readerIndex(), packetIdOffset);
+            header.writeShort(packetId);
+            return Unpooled.wrappedBuffer(header,
+                    encoded.retainedSlice(encoded.readerIndex() + headerLength, encoded.readableBytes() - headerLength));
+        }
+
+        void release() {
+            encoded.release();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class PublishMsgEncodingCacheFactory {
+
+    @Value("${mqtt.shared-encoding-min-subscribers:100}")
+    private int sharedEncodingMinSubscribers;
+
+    /*
+        Returns null if the msg has too few local subscribers for the shared encoding to pay off or the shared encoding is disabled
+     */
+    public PublishMsgEncodingCache newInstanceIfNeeded(int subscribersCount) {
+        if (sharedEncodingMinSubscribers <= 0 || subscribersCount < sharedEncodingMinSubscribers) {
+            return null;
+        }
+        return new PublishMsgEncodingCache();
+    }
+}
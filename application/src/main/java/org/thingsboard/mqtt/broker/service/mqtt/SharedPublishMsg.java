@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+/*
+    PUBLISH msg delivered to the subscribers connected to this node. The subscribers differ only by QoS and retain flag,
+    so the msg is not rebuilt for them: the user properties are converted once and the payload is shared by all the PublishMsgs.
+    The same MqttProperties instance goes to every subscriber, so nothing may add per-subscriber properties to it.
+    This holds while the broker rejects SUBSCRIBE with the subscription identifier (see MqttSubscribeHandler),
+    once it is supported the properties have to be copied for the subscribers that have the identifier
+ */
+public class SharedPublishMsg {
+
+    private final QueueProtos.PublishMsgProto publishMsgProto;
+    // converted on the first delivery, concurrent deliveries could convert it twice to the same value
+    private volatile MqttProperties properties;
+
+    public SharedPublishMsg(QueueProtos.PublishMsgProto publishMsgProto) {
+        this.publishMsgProto = publishMsgProto;
+    }
+
+    public QueueProtos.PublishMsgProto getPublishMsgProto() {
+        return publishMsgProto;
+    }
+
+    /*
+        Returns the proto for the subscribers on the other nodes, it is rebuilt only if the QoS or retain flag differs
+     */
+    public QueueProtos.PublishMsgProto getPublishMsgProto(int qos, boolean retain) {
+        if (qos == publishMsgProto.getQos() && retain == publishMsgProto.getRetain()) {
+            return publishMsgProto;
+        }
+        return publishMsgProto.toBuilder()
+                .setQos(qos)
+                .setRetain(retain)
+                .build();
+    }
+
+    public PublishMsg toPublishMsg(int packetId, int qos, boolean retain) {
+        return PublishMsg.builder()
+                .packetId(packetId)
+                .topicName(publishMsgProto.getTopicName())
+                // the buffer is released after the write, every delivery wraps the payload again without copying it
+                .byteBuf(Unpooled.wrappedBuffer(publishMsgProto.getPayload().asReadOnlyByteBuffer()))
+                .qosLevel(qos)
+                .isRetained(retain)
+                .isDup(false)
+                .properties(getProperties())
+                .build();
+    }
+
+    private MqttProperties getProperties() {
+        MqttProperties properties = this.properties;
+        if (properties == null) {
+            properties = ProtoConverter.createMqttProperties(publishMsgProto.getUserPropertiesList());
+            this.properties = properties;
+        }
+        return properties;
+    }
+}
@@ -15,10 +15,10 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.keepalive;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
@@ -27,9 +27,15 @@ import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
 import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,41 +47,107 @@ public class KeepAliveServiceImpl implements KeepAliveService {
     private static final int CLEARED_KEEP_ALIVE_VALUE = -1;
 
     private final Map<UUID, KeepAliveInfo> keepAliveInfoMap = new ConcurrentHashMap<>();
+    // sessions registered since the last tick, they are put to the buckets by the monitoring thread
+    private final Queue<KeepAliveInfo> newSessions = new ConcurrentLinkedQueue<>();
+
+    /*
+        Sessions grouped by the tick of their keep-alive deadline, every tick only visits the buckets that are due.
+        Sessions are re-scheduled lazily: the packets of the client only update the last packet time,
+        the session is moved to the bucket of its new deadline when its old bucket is reached.
+        Only accessed by the monitoring thread
+     */
+    private final NavigableMap<Long, List<KeepAliveInfo>> deadlineBuckets = new TreeMap<>();
 
     private final ClientMqttActorManager clientMqttActorManager;
 
+    @Value("${mqtt.keep-alive.monitoring-delay-ms:100}")
+    private long monitoringDelayMs;
+
     @Scheduled(fixedRateString = "${mqtt.keep-alive.monitoring-delay-ms}")
-    void processKeepAlive() {
-        for (Map.Entry<UUID, KeepAliveInfo> entry : keepAliveInfoMap.entrySet()) {
-            UUID sessionId = entry.getKey();
-            KeepAliveInfo keepAliveInfo = entry.getValue();
-            long lastPacketTime = keepAliveInfo.getLastPacketTime().get();
-            if (isInactive(keepAliveInfo.getKeepAliveSeconds(), lastPacketTime)
-                    && keepAliveInfo.getLastPacketTime().compareAndSet(lastPacketTime, CLEARED_KEEP_ALIVE_VALUE)) {
-                keepAliveInfoMap.remove(sessionId);
-                if (log.isDebugEnabled()) {
-                    log.debug("[{}][{}] Closing session for inactivity, last active time - {}, keep alive seconds - {}",
-                            keepAliveInfo.getClientId(), sessionId, lastPacketTime, keepAliveInfo.getKeepAliveSeconds());
-                }
-                clientMqttActorManager.disconnect(keepAliveInfo.getClientId(), new MqttDisconnectMsg(sessionId,
-                        new DisconnectReason(DisconnectReasonType.ON_KEEP_ALIVE, "Client was inactive too long")));
+    public void processKeepAlive() {
+        long now = System.currentTimeMillis();
+        long currentTick = toTick(now);
+        KeepAliveInfo keepAliveInfo;
+        while ((keepAliveInfo = newSessions.poll()) != null) {
+            schedule(keepAliveInfo, Long.MIN_VALUE);
+        }
+        Map.Entry<Long, List<KeepAliveInfo>> bucket;
+        while ((bucket = pollDueBucket(currentTick)) != null) {
+            for (KeepAliveInfo dueKeepAliveInfo : bucket.getValue()) {
+                process(dueKeepAliveInfo, currentTick, now);
             }
         }
     }
 
+    private Map.Entry<Long, List<KeepAliveInfo>> pollDueBucket(long currentTick) {
+        Map.Entry<Long, List<KeepAliveInfo>> bucket = deadlineBuckets.firstEntry();
+        return bucket != null && bucket.getKey() <= currentTick ? deadlineBuckets.pollFirstEntry() : null;
+    }
+
+    private void process(KeepAliveInfo keepAliveInfo, long currentTick, long now) {
+        long lastPacketTime = keepAliveInfo.getLastPacketTime().get();
+        if (lastPacketTime == CLEARED_KEEP_ALIVE_VALUE) {
+            return;
+        }
+        if (isInactive(keepAliveInfo.getKeepAliveMs(), lastPacketTime, now)
+                && keepAliveInfo.getLastPacketTime().compareAndSet(lastPacketTime, CLEARED_KEEP_ALIVE_VALUE)) {
+            disconnect(keepAliveInfo, lastPacketTime);
+        } else {
+            schedule(keepAliveInfo, currentTick);
+        }
+    }
+
+    private void disconnect(KeepAliveInfo keepAliveInfo, long lastPacketTime) {
+        UUID sessionId = keepAliveInfo.getSessionId();
+        keepAliveInfoMap.remove(sessionId, keepAliveInfo);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Closing session for inactivity, last active time - {}, keep alive seconds - {}",
+                    keepAliveInfo.getClientId(), sessionId, lastPacketTime, keepAliveInfo.getKeepAliveSeconds());
+        }
+        clientMqttActorManager.disconnect(keepAliveInfo.getClientId(), new MqttDisconnectMsg(sessionId,
+                new DisconnectReason(DisconnectReasonType.ON_KEEP_ALIVE, "Client was inactive too long")));
+    }
+
+    /*
+        Puts the session to the bucket of its deadline, not earlier than the tick after 'minTick'
+     */
+    private void schedule(KeepAliveInfo keepAliveInfo, long minTick) {
+        long lastPacketTime = keepAliveInfo.getLastPacketTime().get();
+        if (lastPacketTime == CLEARED_KEEP_ALIVE_VALUE) {
+            return;
+        }
+        long deadlineTick = Math.max(toTick(lastPacketTime + keepAliveInfo.getKeepAliveMs()), minTick + 1);
+        deadlineBuckets.computeIfAbsent(deadlineTick, tick -> new ArrayList<>()).add(keepAliveInfo);
+    }
+
+    private long toTick(long timeMs) {
+        return timeMs / Math.max(1, monitoringDelayMs);
+    }
+
     boolean isInactive(int keepAliveSeconds, long lastPacketTime) {
-        long now = System.currentTimeMillis();
-        long actualKeepAliveMs = (long) (TimeUnit.SECONDS.toMillis(keepAliveSeconds) * 1.5);
+        return isInactive(getActualKeepAliveMs(keepAliveSeconds), lastPacketTime, System.currentTimeMillis());
+    }
+
+    private boolean isInactive(long actualKeepAliveMs, long lastPacketTime, long now) {
         return lastPacketTime + actualKeepAliveMs < now;
     }
 
+    private long getActualKeepAliveMs(int keepAliveSeconds) {
+        return (long) (TimeUnit.SECONDS.toMillis(keepAliveSeconds) * 1.5);
+    }
+
     @Override
     public void registerSession(String clientId, UUID sessionId, int keepAliveSeconds) throws MqttException {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Registering keep-alive session for {} seconds", sessionId, keepAliveSeconds);
         }
-        keepAliveInfoMap.put(sessionId, new KeepAliveInfo(clientId, keepAliveSeconds,
-                new AtomicLong(System.currentTimeMillis())));
+        KeepAliveInfo keepAliveInfo = new KeepAliveInfo(clientId, sessionId, keepAliveSeconds,
+                getActualKeepAliveMs(keepAliveSeconds), new AtomicLong(System.currentTimeMillis()));
+        KeepAliveInfo previous = keepAliveInfoMap.put(sessionId, keepAliveInfo);
+        if (previous != null) {
+            previous.clear();
+        }
+        newSessions.add(keepAliveInfo);
     }
 
     @Override
@@ -83,7 +155,10 @@ public class KeepAliveServiceImpl implements KeepAliveService {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Unregistering keep-alive session", sessionId);
         }
-        keepAliveInfoMap.remove(sessionId);
+        KeepAliveInfo keepAliveInfo = keepAliveInfoMap.remove(sessionId);
+        if (keepAliveInfo != null) {
+            keepAliveInfo.clear();
+        }
     }
 
     @Override
@@ -105,11 +180,18 @@ public class KeepAliveServiceImpl implements KeepAliveService {
         return keepAliveInfoMap.size();
     }
 
-    @AllArgsConstructor
+    @RequiredArgsConstructor
     @Getter
     private static class KeepAliveInfo {
         private final String clientId;
+        private final UUID sessionId;
         private final int keepAliveSeconds;
+        private final long keepAliveMs;
         private final AtomicLong lastPacketTime;
+
+        // the session is dropped when its deadline bucket is reached
+        void clear() {
+            lastPacketTime.set(CLEARED_KEEP_ALIVE_VALUE);
+        }
     }
 }
@@ -28,6 +28,7 @@ import org.thingsboard.mqtt.broker.actors.client.state.SessionState;
 import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
 import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
@@ -45,6 +46,7 @@ import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processi
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPackProcessingResult;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPersistedMsgCtx;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPersistedMsgCtxService;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPollingTask;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationProcessingDecision;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPubRelMsgCtx;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationSubmitStrategy;
@@ -75,6 +77,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -108,6 +111,8 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
 
     @Value("${queue.application-persisted-msg.threads-count}")
     private int threadsCount;
+    @Value("${queue.application-persisted-msg.blocking-threads-count:8}")
+    private int blockingThreadsCount;
     @Value("${queue.application-persisted-msg.poll-interval}")
     private long pollDuration;
     @Value("${queue.application-persisted-msg.pack-processing-timeout}")
@@ -116,13 +121,24 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
     private boolean validateSharedTopicFilter;
 
     private volatile boolean stopped = false;
-    private ExecutorService persistedMsgsConsumerExecutor;
+    /*
+        Serves the consumers of all APPLICATION clients, each client is processed by ApplicationPollingTask and doesn't own a thread
+     */
+    private ScheduledThreadPoolExecutor persistedMsgsConsumerExecutor;
+    /*
+        Runs the steps of the tasks that block: loading of the persisted context from the DB and commit of the consumer offsets
+     */
+    private ExecutorService persistedMsgsBlockingExecutor;
 
     @PostConstruct
     public void init() {
         statsManager.registerActiveApplicationProcessorsStats(processingFutures);
         statsManager.registerActiveSharedApplicationProcessorsStats(sharedSubscriptionsProcessingJobs);
-        persistedMsgsConsumerExecutor = ThingsBoardExecutors.initExecutorService(threadsCount, "application-persisted-msg-consumers");
+        int pollerThreadsCount = threadsCount > 0 ? threadsCount : Math.max(1, Runtime.getRuntime().availableProcessors());
+        persistedMsgsConsumerExecutor = new ScheduledThreadPoolExecutor(pollerThreadsCount,
+                ThingsBoardThreadFactory.forName("application-persisted-msg-consumers"));
+        persistedMsgsConsumerExecutor.setRemoveOnCancelPolicy(true);
+        persistedMsgsBlockingExecutor = ThingsBoardExecutors.initExecutorService(blockingThreadsCount, "application-persisted-msg-blocking");
     }
 
     @Override
@@ -255,74 +271,7 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
                 continue;
             }
             ApplicationSharedSubscriptionJob job = new ApplicationSharedSubscriptionJob(subscription, null, false);
-            Future<?> future = persistedMsgsConsumerExecutor.submit(() -> {
-                try {
-                    ApplicationProcessorStats stats = statsManager.createSharedApplicationProcessorStats(clientId, subscription);
-
-                    ApplicationPubRelMsgCtx applicationPubRelMsgCtx = new ApplicationPubRelMsgCtx(Sets.newConcurrentHashSet());
-                    while (isJobActive(job)) {
-                        try {
-                            List<TbProtoQueueMsg<PublishMsgProto>> publishProtoMessages = consumer.poll(pollDuration);
-                            if (publishProtoMessages.isEmpty() && applicationPubRelMsgCtx.nothingToDeliver()) {
-                                continue;
-                            }
-
-                            long packProcessingStart = System.nanoTime();
-                            ApplicationSubmitStrategy submitStrategy = submitStrategyFactory.newInstance(clientId);
-
-                            List<PersistedMsg> messagesToDeliver = getMessagesToDeliver(
-                                    applicationPubRelMsgCtx,
-                                    clientSessionCtx,
-                                    persistedMsgCtx,
-                                    publishProtoMessages,
-                                    subscription);
-                            submitStrategy.init(messagesToDeliver);
-
-                            if (isDebugEnabled) {
-                                log.debug("[{}] Start processing pack {}", clientId, messagesToDeliver);
-                            }
-
-                            applicationPubRelMsgCtx = new ApplicationPubRelMsgCtx(Sets.newConcurrentHashSet());
-                            while (isJobActive(job)) {
-                                ApplicationPackProcessingCtx ctx = newPackProcessingCtx(submitStrategy, applicationPubRelMsgCtx, stats);
-                                int totalPublishMsgs = ctx.getPublishPendingMsgMap().size();
-                                int totalPubRelMsgs = ctx.getPubRelPendingMsgMap().size();
-                                cachePackProcessingCtx(clientId, subscription, ctx);
-
-                                process(submitStrategy, clientSessionCtx, clientId);
-
-                                if (isJobActive(job)) {
-                                    ctx.await(packProcessingTimeout, TimeUnit.MILLISECONDS);
-                                }
-
-                                if (analyzeIfProcessingDone(clientId, consumer, stats, submitStrategy, ctx, totalPublishMsgs, totalPubRelMsgs))
-                                    break;
-                            }
-                            if (isTraceEnabled) {
-                                log.trace("[{}] Pack processing took {} ms, pack size - {}",
-                                        clientId, (double) (System.nanoTime() - packProcessingStart) / 1_000_000, messagesToDeliver.size());
-                            }
-                        } catch (Exception e) {
-                            if (isJobActive(job)) {
-                                log.warn("[{}] Failed to process messages from shared queue.", clientId, e);
-                                try {
-                                    Thread.sleep(pollDuration);
-                                } catch (InterruptedException e2) {
-                                    if (isTraceEnabled) {
-                                        log.trace("Failed to wait until the server has capacity to handle new requests", e2);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    if (log.isDebugEnabled()) {
-                        log.debug("[{}] Shared subs Application persisted messages consumer stopped.", clientId);
-                    }
-                } catch (Exception e) {
-                    log.warn("[{}][{}] Failed to start processing shared subs messages.", clientId, subscription, e);
-                    disconnectClient(clientId, clientSessionCtx.getSessionId());
-                }
-            });
+            Future<?> future = new SharedSubscriptionProcessingTask(clientSessionCtx, consumer, persistedMsgCtx, job).start();
             job.setFuture(future);
             List<ApplicationSharedSubscriptionJob> jobs =
                     sharedSubscriptionsProcessingJobs.computeIfAbsent(clientId, s -> new CopyOnWriteArrayList<>());
@@ -430,16 +379,7 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
             log.debug("[{}] Starting persisted messages processing.", clientId);
         }
         TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer = initConsumer(clientId, clientTopic);
-        Future<?> future = persistedMsgsConsumerExecutor.submit(() -> {
-            try {
-                processPersistedMessages(consumer, clientState);
-            } catch (Exception e) {
-                log.warn("[{}] Failed to start processing persisted messages.", clientId, e);
-                disconnectClient(clientId, clientState);
-            } finally {
-                consumer.unsubscribeAndClose();
-            }
-        });
+        Future<?> future = new ClientProcessingTask(clientState, consumer).start();
         processingFutures.put(clientId, future);
     }
 
@@ -632,78 +572,6 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
         return serviceInfoProvider.getServiceId() + "-" + clientId;
     }
 
-    private void processPersistedMessages(TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer,
-                                          ClientActorStateInfo clientState) {
-        ClientSessionCtx clientSessionCtx = clientState.getCurrentSessionCtx();
-        String clientId = clientSessionCtx.getClientId();
-        UUID sessionId = clientSessionCtx.getSessionId();
-
-        ApplicationProcessorStats stats = statsManager.createApplicationProcessorStats(clientId);
-
-        ApplicationPersistedMsgCtx persistedMsgCtx = unacknowledgedPersistedMsgCtxService.loadPersistedMsgCtx(clientId);
-        persistedMsgCtxMap.put(clientId, persistedMsgCtx);
-
-        // TODO: make consistent with logic for DEVICES
-        clientSessionCtx.getMsgIdSeq().updateMsgIdSequence(persistedMsgCtx.getLastPacketId());
-
-        ApplicationPubRelMsgCtx applicationPubRelMsgCtx = persistedMsgCtxToPubRelMsgCtx(persistedMsgCtx);
-
-        while (isClientConnected(sessionId, clientState)) {
-            try {
-                List<TbProtoQueueMsg<PublishMsgProto>> publishProtoMessages = consumer.poll(pollDuration);
-                if (publishProtoMessages.isEmpty() && applicationPubRelMsgCtx.nothingToDeliver()) {
-                    continue;
-                }
-
-                long packProcessingStart = System.nanoTime();
-                ApplicationSubmitStrategy submitStrategy = submitStrategyFactory.newInstance(clientId);
-
-                List<PersistedMsg> messagesToDeliver = getMessagesToDeliver(
-                        applicationPubRelMsgCtx,
-                        clientSessionCtx,
-                        persistedMsgCtx,
-                        publishProtoMessages,
-                        null);
-                submitStrategy.init(messagesToDeliver);
-
-                applicationPubRelMsgCtx = new ApplicationPubRelMsgCtx(Sets.newConcurrentHashSet());
-                while (isClientConnected(sessionId, clientState)) {
-                    ApplicationPackProcessingCtx ctx = newPackProcessingCtx(submitStrategy, applicationPubRelMsgCtx, stats);
-                    int totalPublishMsgs = ctx.getPublishPendingMsgMap().size();
-                    int totalPubRelMsgs = ctx.getPubRelPendingMsgMap().size();
-                    packProcessingCtxMap.put(clientId, ctx);
-
-                    process(submitStrategy, clientSessionCtx, clientId);
-
-                    if (isClientConnected(sessionId, clientState)) {
-                        ctx.await(packProcessingTimeout, TimeUnit.MILLISECONDS);
-                    }
-
-                    if (analyzeIfProcessingDone(clientId, consumer, stats, submitStrategy, ctx, totalPublishMsgs, totalPubRelMsgs))
-                        break;
-                }
-                if (isTraceEnabled) {
-                    log.trace("[{}] Pack processing took {} ms, pack size - {}",
-                            clientId, (double) (System.nanoTime() - packProcessingStart) / 1_000_000, messagesToDeliver.size());
-                }
-            } catch (Exception e) {
-                if (isClientConnected(sessionId, clientState)) {
-                    log.warn("[{}] Failed to process messages from queue.", clientId, e);
-                    try {
-                        Thread.sleep(pollDuration);
-                    } catch (InterruptedException e2) {
-                        if (isTraceEnabled) {
-                            log.trace("Failed to wait until the server has capacity to handle new requests", e2);
-                        }
-                    }
-                }
-            }
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("[{}] Application persisted messages consumer stopped.", clientId);
-        }
-    }
-
     private void process(ApplicationSubmitStrategy submitStrategy, ClientSessionCtx clientSessionCtx, String clientId) {
         if (isDebugEnabled) {
             log.debug("[{}] Start sending the pack of messages from processing ctx: {}", clientId, submitStrategy.getOrderedMessages());
@@ -778,7 +646,238 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
     }
 
     private boolean isProcessorActive() {
-        return !stopped && !Thread.interrupted();
+        return !stopped;
+    }
+
+    /*
+        Polls the consumer without blocking, sends the pack of messages to the client and waits for it to be acknowledged
+        (or for the pack processing timeout) without holding a thread. Acknowledgement of the whole pack wakes the task up.
+     */
+    private abstract class PersistedMsgProcessingTask extends ApplicationPollingTask {
+
+        protected final String clientId;
+        protected final ClientSessionCtx clientSessionCtx;
+        protected final TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer;
+        private final TopicSharedSubscription subscription;
+
+        protected ApplicationProcessorStats stats;
+        protected ApplicationPersistedMsgCtx persistedMsgCtx;
+        protected ApplicationPubRelMsgCtx applicationPubRelMsgCtx;
+        private boolean initialized;
+
+        private ApplicationSubmitStrategy submitStrategy;
+        private ApplicationPackProcessingCtx packCtx;
+        private int totalPublishMsgs;
+        private int totalPubRelMsgs;
+        private int packSize;
+        private long packProcessingStart;
+        private long packDeadlineNanos;
+
+        PersistedMsgProcessingTask(ClientSessionCtx clientSessionCtx,
+                                   TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer,
+                                   TopicSharedSubscription subscription) {
+            super(persistedMsgsConsumerExecutor, persistedMsgsBlockingExecutor);
+            this.clientId = clientSessionCtx.getClientId();
+            this.clientSessionCtx = clientSessionCtx;
+            this.consumer = consumer;
+            this.subscription = subscription;
+        }
+
+        @Override
+        protected long step() {
+            if (!initialized) {
+                init();
+                initialized = true;
+            }
+            if (!isActive()) {
+                return STOP;
+            }
+            return packCtx == null ? pollAndSubmitPack() : analyzePack();
+        }
+
+        private long pollAndSubmitPack() {
+            List<TbProtoQueueMsg<PublishMsgProto>> publishProtoMessages = consumer.poll(0);
+            if (publishProtoMessages.isEmpty() && applicationPubRelMsgCtx.nothingToDeliver()) {
+                return pollDuration;
+            }
+
+            packProcessingStart = System.nanoTime();
+            submitStrategy = submitStrategyFactory.newInstance(clientId);
+
+            List<PersistedMsg> messagesToDeliver = getMessagesToDeliver(
+                    applicationPubRelMsgCtx,
+                    clientSessionCtx,
+                    persistedMsgCtx,
+                    publishProtoMessages,
+                    subscription);
+            submitStrategy.init(messagesToDeliver);
+            packSize = messagesToDeliver.size();
+
+            if (isDebugEnabled) {
+                log.debug("[{}] Start processing pack {}", clientId, messagesToDeliver);
+            }
+
+            applicationPubRelMsgCtx = new ApplicationPubRelMsgCtx(Sets.newConcurrentHashSet());
+            return submitPack();
+        }
+
+        private long submitPack() {
+            ApplicationPackProcessingCtx ctx = newPackProcessingCtx(submitStrategy, applicationPubRelMsgCtx, stats);
+            totalPublishMsgs = ctx.getPublishPendingMsgMap().size();
+            totalPubRelMsgs = ctx.getPubRelPendingMsgMap().size();
+            cachePackProcessingCtx(ctx);
+            packCtx = ctx;
+            packDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(packProcessingTimeout);
+
+            process(submitStrategy, clientSessionCtx, clientId);
+
+            ctx.setOnProcessed(this::wakeUp);
+            return packProcessingTimeout;
+        }
+
+        private long analyzePack() {
+            long remainingNanos = packDeadlineNanos - System.nanoTime();
+            if (!packCtx.isProcessed() && remainingNanos > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            }
+            if (!analyzeIfProcessingDone(clientId, consumer, stats, submitStrategy, packCtx, totalPublishMsgs, totalPubRelMsgs)) {
+                return submitPack();
+            }
+            packCtx = null;
+            if (isTraceEnabled) {
+                log.trace("[{}] Pack processing took {} ms, pack size - {}",
+                        clientId, (double) (System.nanoTime() - packProcessingStart) / 1_000_000, packSize);
+            }
+            return 0;
+        }
+
+        @Override
+        protected long onStepFailure(Throwable t) {
+            if (!initialized) {
+                onStartFailure(t);
+                return STOP;
+            }
+            packCtx = null;
+            if (isActive()) {
+                log.warn("[{}] Failed to process messages from {}.", clientId, subscription == null ? "queue" : "shared queue", t);
+                return pollDuration;
+            }
+            return STOP;
+        }
+
+        @Override
+        protected boolean isReady() {
+            return packCtx != null && packCtx.isProcessed();
+        }
+
+        /*
+            The first step loads the persisted context, the step that finishes the pack commits the offsets
+         */
+        @Override
+        protected boolean isBlockingStep() {
+            return !initialized || (packCtx != null && (packCtx.isProcessed() || System.nanoTime() >= packDeadlineNanos));
+        }
+
+        protected abstract void init();
+
+        protected abstract boolean isActive();
+
+        protected abstract void cachePackProcessingCtx(ApplicationPackProcessingCtx ctx);
+
+        protected abstract void onStartFailure(Throwable t);
+    }
+
+    private class ClientProcessingTask extends PersistedMsgProcessingTask {
+
+        private final ClientActorStateInfo clientState;
+        private final UUID sessionId;
+
+        ClientProcessingTask(ClientActorStateInfo clientState,
+                             TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer) {
+            super(clientState.getCurrentSessionCtx(), consumer, null);
+            this.clientState = clientState;
+            this.sessionId = clientSessionCtx.getSessionId();
+        }
+
+        @Override
+        protected void init() {
+            stats = statsManager.createApplicationProcessorStats(clientId);
+
+            persistedMsgCtx = unacknowledgedPersistedMsgCtxService.loadPersistedMsgCtx(clientId);
+            persistedMsgCtxMap.put(clientId, persistedMsgCtx);
+
+            // TODO: make consistent with logic for DEVICES
+            clientSessionCtx.getMsgIdSeq().updateMsgIdSequence(persistedMsgCtx.getLastPacketId());
+
+            applicationPubRelMsgCtx = persistedMsgCtxToPubRelMsgCtx(persistedMsgCtx);
+        }
+
+        @Override
+        protected boolean isActive() {
+            return !isCancelled() && isClientConnected(sessionId, clientState);
+        }
+
+        @Override
+        protected void cachePackProcessingCtx(ApplicationPackProcessingCtx ctx) {
+            packProcessingCtxMap.put(clientId, ctx);
+        }
+
+        @Override
+        protected void onStartFailure(Throwable t) {
+            log.warn("[{}] Failed to start processing persisted messages.", clientId, t);
+            disconnectClient(clientId, clientState);
+        }
+
+        @Override
+        protected void onFinish() {
+            consumer.unsubscribeAndClose();
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Application persisted messages consumer stopped.", clientId);
+            }
+        }
+    }
+
+    private class SharedSubscriptionProcessingTask extends PersistedMsgProcessingTask {
+
+        private final ApplicationSharedSubscriptionJob job;
+
+        SharedSubscriptionProcessingTask(ClientSessionCtx clientSessionCtx,
+                                         TbQueueControlledOffsetConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer,
+                                         ApplicationPersistedMsgCtx persistedMsgCtx,
+                                         ApplicationSharedSubscriptionJob job) {
+            super(clientSessionCtx, consumer, job.getSubscription());
+            this.job = job;
+            this.persistedMsgCtx = persistedMsgCtx;
+        }
+
+        @Override
+        protected void init() {
+            stats = statsManager.createSharedApplicationProcessorStats(clientId, job.getSubscription());
+            applicationPubRelMsgCtx = new ApplicationPubRelMsgCtx(Sets.newConcurrentHashSet());
+        }
+
+        @Override
+        protected boolean isActive() {
+            return !isCancelled() && isJobActive(job);
+        }
+
+        @Override
+        protected void cachePackProcessingCtx(ApplicationPackProcessingCtx ctx) {
+            ApplicationPersistenceProcessorImpl.this.cachePackProcessingCtx(clientId, job.getSubscription(), ctx);
+        }
+
+        @Override
+        protected void onStartFailure(Throwable t) {
+            log.warn("[{}][{}] Failed to start processing shared subs messages.", clientId, job.getSubscription(), t);
+            disconnectClient(clientId, clientSessionCtx.getSessionId());
+        }
+
+        @Override
+        protected void onFinish() {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Shared subs Application persisted messages consumer stopped.", clientId);
+            }
+        }
     }
 
     @PreDestroy
@@ -795,19 +894,20 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
                 log.warn("[{}] Failed to save APPLICATION context.", clientId);
             }
         });
-        shutdownExecutor();
+        shutdownExecutor(persistedMsgsConsumerExecutor, "consumers'");
+        shutdownExecutor(persistedMsgsBlockingExecutor, "blocking");
     }
 
-    private void shutdownExecutor() {
-        if (persistedMsgsConsumerExecutor == null) {
+    private void shutdownExecutor(ExecutorService executor, String executorName) {
+        if (executor == null) {
             return;
         }
-        persistedMsgsConsumerExecutor.shutdown();
+        executor.shutdown();
         try {
-            boolean terminationSuccessful = persistedMsgsConsumerExecutor.awaitTermination(3, TimeUnit.SECONDS);
-            log.info("Application persistence consumers' executor termination is: [{}]", terminationSuccessful ? "successful" : "failed");
+            boolean terminationSuccessful = executor.awaitTermination(3, TimeUnit.SECONDS);
+            log.info("Application persistence {} executor termination is: [{}]", executorName, terminationSuccessful ? "successful" : "failed");
         } catch (InterruptedException e) {
-            log.warn("Failed to stop application persistence consumers' executor gracefully due to interruption!", e);
+            log.warn("Failed to stop application persistence {} executor gracefully due to interruption!", executorName, e);
         }
     }
 }
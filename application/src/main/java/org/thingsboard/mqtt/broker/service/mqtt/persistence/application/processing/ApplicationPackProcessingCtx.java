@@ -24,6 +24,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 public class ApplicationPackProcessingCtx {
@@ -37,6 +38,7 @@ public class ApplicationPackProcessingCtx {
     private final ApplicationProcessorStats stats;
     private final long processingStartTimeNanos;
     private final CountDownLatch processingTimeoutLatch;
+    private final AtomicReference<Runnable> onProcessed = new AtomicReference<>();
     @Getter
     private final ApplicationPubRelMsgCtx pubRelMsgCtx;
     private final boolean isDebugEnabled = log.isDebugEnabled();
@@ -72,8 +74,32 @@ public class ApplicationPackProcessingCtx {
         this.processingTimeoutLatch = new CountDownLatch(publishPendingMsgMap.size() + pubRelPendingMsgMap.size());
     }
 
-    public boolean await(long packProcessingTimeout, TimeUnit timeUnit) throws InterruptedException {
-        return processingTimeoutLatch.await(packProcessingTimeout, timeUnit);
+    public boolean isProcessed() {
+        return processingTimeoutLatch == null || processingTimeoutLatch.getCount() == 0;
+    }
+
+    /*
+        The callback is called once, by the thread that acknowledges the last message of the pack
+     */
+    public void setOnProcessed(Runnable callback) {
+        onProcessed.set(callback);
+        if (isProcessed()) {
+            notifyProcessed();
+        }
+    }
+
+    private void countDown() {
+        processingTimeoutLatch.countDown();
+        if (processingTimeoutLatch.getCount() == 0) {
+            notifyProcessed();
+        }
+    }
+
+    private void notifyProcessed() {
+        Runnable callback = onProcessed.getAndSet(null);
+        if (callback != null) {
+            callback.run();
+        }
     }
 
     // TODO: save only messages with higher offset (InFlightMessagesCtx)
@@ -85,7 +111,7 @@ public class ApplicationPackProcessingCtx {
                 log.debug("Found PUBLISH packet {} to process PubAck msg.", packetId);
             }
             stats.logPubAckLatency(processingStartTimeNanos, TimeUnit.NANOSECONDS);
-            processingTimeoutLatch.countDown();
+            countDown();
             return true;
         } else {
             if (isDebugEnabled) {
@@ -118,7 +144,7 @@ public class ApplicationPackProcessingCtx {
     private void onPublishMsgSuccess(Integer packetId) {
         PersistedPublishMsg msg = publishPendingMsgMap.remove(packetId);
         if (msg != null) {
-            processingTimeoutLatch.countDown();
+            countDown();
         } else {
             if (isDebugEnabled) {
                 log.debug("[{}] Couldn't find PUBLISH packet {} to process PubRec msg successfully from {}.", clientId, packetId, publishPendingMsgMap.keySet());
@@ -133,7 +159,7 @@ public class ApplicationPackProcessingCtx {
                 log.debug("Found PubRel packet {} to process PubComp msg.", packetId);
             }
             stats.logPubCompLatency(processingStartTimeNanos, TimeUnit.NANOSECONDS);
-            processingTimeoutLatch.countDown();
+            countDown();
             return true;
         } else {
             if (isDebugEnabled) {
@@ -0,0 +1,185 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Processing of one APPLICATION consumer that shares a few scheduler threads with all the other consumers instead of owning a thread.
+    Every run makes one short step and puts the task back to the scheduler queue, so the consumers are served in turn
+    and the number of clients is not limited by the number of threads.
+    The steps that block (DB reads, offset commits) are run on a separate executor, so they don't hold the scheduler threads
+    that the other consumers are waiting for.
+ */
+@Slf4j
+public abstract class ApplicationPollingTask {
+
+    public static final long STOP = -1;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor blockingExecutor;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    /*
+        Every scheduled run gets its own token, a run is made only if its token is still the pending one.
+        So a run that was rescheduled by wakeUp() is skipped even if it has already been started by the scheduler
+     */
+    private Object pendingRun;
+    private ScheduledFuture<?> pendingRunFuture;
+
+    protected ApplicationPollingTask(ScheduledExecutorService scheduler, Executor blockingExecutor) {
+        this.scheduler = scheduler;
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /*
+        Cancelling the returned future stops the task, the task finishes on the scheduler thread
+     */
+    public Future<?> start() {
+        future.whenComplete((result, throwable) -> wakeUp());
+        schedule(0);
+        return future;
+    }
+
+    private void run(Object token) {
+        synchronized (this) {
+            if (token != pendingRun) {
+                return;
+            }
+            pendingRun = null;
+            pendingRunFuture = null;
+        }
+        if (future.isDone()) {
+            finish();
+            return;
+        }
+        if (!isBlockingStep()) {
+            runStep();
+            return;
+        }
+        /*
+            Nothing is scheduled while the step is running on the blocking executor, so wakeUp() does nothing
+            and the next step is scheduled only after this one is done
+         */
+        try {
+            blockingExecutor.execute(this::runStep);
+        } catch (RejectedExecutionException e) {
+            log.debug("Blocking executor is stopped, finishing the task.");
+            future.cancel(false);
+            finish();
+        }
+    }
+
+    private void runStep() {
+        long delayMs;
+        try {
+            delayMs = step();
+        } catch (Throwable t) {
+            delayMs = onStepFailure(t);
+        }
+        if (delayMs == STOP || future.isDone()) {
+            future.complete(null);
+            finish();
+            return;
+        }
+        schedule(delayMs);
+        if (isReady()) {
+            wakeUp();
+        }
+    }
+
+    /*
+        Runs the task right away if it is waiting for its next run
+     */
+    public void wakeUp() {
+        synchronized (this) {
+            if (pendingRun != null) {
+                ScheduledFuture<?> previousRunFuture = pendingRunFuture;
+                scheduleOrFinish(0);
+                if (previousRunFuture != null) {
+                    previousRunFuture.cancel(false);
+                }
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return future.isDone();
+    }
+
+    private void schedule(long delayMs) {
+        synchronized (this) {
+            scheduleOrFinish(delayMs);
+        }
+    }
+
+    private void scheduleOrFinish(long delayMs) {
+        Object token = new Object();
+        pendingRun = token;
+        try {
+            pendingRunFuture = scheduler.schedule(() -> run(token), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Scheduler is stopped, finishing the task.");
+            pendingRun = null;
+            pendingRunFuture = null;
+            future.cancel(false);
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            try {
+                onFinish();
+            } catch (Exception e) {
+                log.warn("Failed to finish the task.", e);
+            }
+        }
+    }
+
+    /*
+        Makes one step of processing without blocking for long. Returns the delay before the next step in milliseconds or STOP
+     */
+    protected abstract long step() throws Exception;
+
+    /*
+        Returns the delay before the next step in milliseconds or STOP
+     */
+    protected abstract long onStepFailure(Throwable t);
+
+    /*
+        Checked after scheduling the next step, to not wait for the delay if something already happened in between
+     */
+    protected abstract boolean isReady();
+
+    /*
+        Checked before every step, the step is run on the blocking executor if it may block
+     */
+    protected boolean isBlockingStep() {
+        return false;
+    }
+
+    protected abstract void onFinish();
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device;
+
+import org.thingsboard.mqtt.broker.dao.client.device.PacketIdAndSerialNumber;
+
+import java.util.Map;
+
+/*
+    Keeps the last packet id and serial number of the DEVICE clients of the partitions consumed by this node in memory.
+    The numbers are reserved in the DB before they are used, so two nodes that use the numbers of the same client,
+    e.g. the old and the new owner of the partition or the node where the client is connected, never use the same numbers
+ */
+public interface DevicePacketIdAndSerialNumberStore {
+
+    /*
+        Returns the counters the caller increments, at most as many times as the count of the msgs of the client
+     */
+    Map<String, PacketIdAndSerialNumber> reservePacketIdAndSerialNumbers(Map<String, Integer> clientsMsgsCount);
+
+    /*
+        For the callers that don't consume the partition of the client, the numbers are read from the DB and are not kept in memory.
+        Returns the counter the caller increments, at most 'msgsCount' times
+     */
+    PacketIdAndSerialNumber reservePacketIdAndSerialNumbersInDb(String clientId, int msgsCount);
+
+    void evict(String clientId);
+
+    void evictAll();
+}
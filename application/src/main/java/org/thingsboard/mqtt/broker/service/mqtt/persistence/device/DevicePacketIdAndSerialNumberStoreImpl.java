@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.DeviceSessionCtx;
+import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
+import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
+import org.thingsboard.mqtt.broker.dao.client.device.PacketIdAndSerialNumber;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Every write to the DB reserves the numbers the node is going to use, 'reserve-size' numbers ahead of the needed ones,
+    so the DB is written once per 'reserve-size' msgs of a client.
+    The numbers are read from device_session_ctx directly and not from the cache of DevicePacketIdAndSerialNumberService,
+    the cache is local to the node and doesn't see the reservations made by the other nodes.
+    When the DB keeps a reservation made by another node, this node continues after it
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DevicePacketIdAndSerialNumberStoreImpl implements DevicePacketIdAndSerialNumberStore {
+
+    // packet ids go from 1 to 65534, see the increment of the packet id
+    private static final int PACKET_IDS_COUNT = 0xfffe;
+
+    private final DevicePacketIdAndSerialNumberService serialNumberService;
+    private final DeviceSessionCtxService deviceSessionCtxService;
+
+    @Value("${mqtt.persistent-session.device.persisted-messages.serial-numbers.reserve-size:1000}")
+    private int reserveSize;
+    @Value("${mqtt.persistent-session.device.persisted-messages.serial-numbers.max-clients:100000}")
+    private int maxClients;
+
+    private Cache<String, ClientNumbers> clientsNumbers;
+
+    @PostConstruct
+    public void init() {
+        this.clientsNumbers = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .build();
+    }
+
+    @Override
+    public Map<String, PacketIdAndSerialNumber> reservePacketIdAndSerialNumbers(Map<String, Integer> clientsMsgsCount) {
+        Map<String, PacketIdAndSerialNumber> result = new HashMap<>();
+        Map<String, Integer> clientsToReserve = new HashMap<>();
+        clientsMsgsCount.forEach((clientId, msgsCount) -> {
+            ClientNumbers clientNumbers = clientsNumbers.getIfPresent(clientId);
+            if (clientNumbers != null && clientNumbers.getLastSerialNumber() + msgsCount <= clientNumbers.reservedSerialNumber) {
+                result.put(clientId, clientNumbers.lastNumbers);
+            } else {
+                clientsToReserve.put(clientId, msgsCount);
+            }
+        });
+        if (clientsToReserve.isEmpty()) {
+            return result;
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("Reserving serial numbers for clients: {}", clientsToReserve.keySet());
+        }
+        Map<String, DeviceSessionCtx> deviceSessionContexts = findDeviceSessionContexts(clientsToReserve.keySet());
+        Map<String, PacketIdAndSerialNumber> lastNumbers = new HashMap<>();
+        Map<String, PacketIdAndSerialNumber> reservedNumbers = new HashMap<>();
+        clientsToReserve.forEach((clientId, msgsCount) -> {
+            PacketIdAndSerialNumber clientLastNumbers = getLastNumbers(clientsNumbers.getIfPresent(clientId), deviceSessionContexts.get(clientId));
+            lastNumbers.put(clientId, clientLastNumbers);
+            reservedNumbers.put(clientId, advance(clientLastNumbers, msgsCount + reserveSize));
+        });
+        serialNumberService.saveLastSerialNumbers(reservedNumbers);
+
+        lastNumbers.forEach((clientId, clientLastNumbers) -> {
+            ClientNumbers clientNumbers = new ClientNumbers(clientLastNumbers, reservedNumbers.get(clientId).getSerialNumber().get());
+            clientsNumbers.put(clientId, clientNumbers);
+            result.put(clientId, clientNumbers.lastNumbers);
+        });
+        return result;
+    }
+
+    @Override
+    public PacketIdAndSerialNumber reservePacketIdAndSerialNumbersInDb(String clientId, int msgsCount) {
+        PacketIdAndSerialNumber lastNumbers = getLastNumbers(null, findDeviceSessionContexts(Set.of(clientId)).get(clientId));
+        if (msgsCount > 0) {
+            serialNumberService.saveLastSerialNumbers(Map.of(clientId, advance(lastNumbers, msgsCount)));
+        }
+        return lastNumbers;
+    }
+
+    @Override
+    public void evict(String clientId) {
+        clientsNumbers.invalidate(clientId);
+    }
+
+    @Override
+    public void evictAll() {
+        if (log.isDebugEnabled()) {
+            log.debug("Evicting PacketIdAndSerialNumbers of {} clients", clientsNumbers.estimatedSize());
+        }
+        clientsNumbers.invalidateAll();
+    }
+
+    private Map<String, DeviceSessionCtx> findDeviceSessionContexts(Set<String> clientIds) {
+        Collection<DeviceSessionCtx> deviceSessionContexts = deviceSessionCtxService.findAllContexts(clientIds);
+        Map<String, DeviceSessionCtx> result = new HashMap<>();
+        for (DeviceSessionCtx deviceSessionCtx : deviceSessionContexts) {
+            result.put(deviceSessionCtx.getClientId(), deviceSessionCtx);
+        }
+        return result;
+    }
+
+    /*
+        The numbers in memory are the latest ones while the DB keeps the reservation of this node (or lower numbers, when
+        the row was removed and written again), otherwise another node has reserved numbers after it and the node continues after them
+     */
+    private PacketIdAndSerialNumber getLastNumbers(ClientNumbers clientNumbers, DeviceSessionCtx deviceSessionCtx) {
+        if (deviceSessionCtx == null) {
+            return clientNumbers != null ?
+                    PacketIdAndSerialNumber.newInstance(clientNumbers.getLastPacketId(), clientNumbers.getLastSerialNumber()) :
+                    PacketIdAndSerialNumber.newInstance(0, -1L);
+        }
+        long dbSerialNumber = deviceSessionCtx.getLastSerialNumber();
+        if (clientNumbers != null && (dbSerialNumber == clientNumbers.reservedSerialNumber || dbSerialNumber <= clientNumbers.getLastSerialNumber())) {
+            return PacketIdAndSerialNumber.newInstance(clientNumbers.getLastPacketId(), clientNumbers.getLastSerialNumber());
+        }
+        return PacketIdAndSerialNumber.newInstance(deviceSessionCtx.getLastPacketId(), deviceSessionCtx.getLastSerialNumber());
+    }
+
+    private PacketIdAndSerialNumber advance(PacketIdAndSerialNumber numbers, int count) {
+        return PacketIdAndSerialNumber.newInstance(advancePacketId(numbers.getPacketId().get(), count), numbers.getSerialNumber().get() + count);
+    }
+
+    static int advancePacketId(int packetId, int count) {
+        return (int) ((packetId - 1 + (long) count) % PACKET_IDS_COUNT) + 1;
+    }
+
+    private static class ClientNumbers {
+        private final PacketIdAndSerialNumber lastNumbers;
+        // the numbers up to this one can be used without writing to the DB
+        private final long reservedSerialNumber;
+
+        ClientNumbers(PacketIdAndSerialNumber lastNumbers, long reservedSerialNumber) {
+            this.lastNumbers = lastNumbers;
+            this.reservedSerialNumber = reservedSerialNumber;
+        }
+
+        int getLastPacketId() {
+            return lastNumbers.getPacketId().get();
+        }
+
+        long getLastSerialNumber() {
+            return lastNumbers.getSerialNumber().get();
+        }
+    }
+}
@@ -22,7 +22,7 @@ import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.cache.CacheConstants;
 import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
-import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 
@@ -33,17 +33,19 @@ import java.util.Set;
 @RequiredArgsConstructor
 public class DevicePersistenceProcessorImpl implements DevicePersistenceProcessor {
 
-    private final DeviceMsgService deviceMsgService;
+    private final DeviceMsgWriteBehindService deviceMsgWriteBehindService;
     private final DeviceSessionCtxService deviceSessionCtxService;
     private final DeviceActorManager deviceActorManager;
     private final CacheManager cacheManager;
+    private final DevicePacketIdAndSerialNumberStore serialNumberStore;
 
     @Override
     public void clearPersistedMsgs(String clientId) {
         // TODO: think about marking messages as 'deleted' and clear them once a day
         // TODO: think about moving this code (could do async but delete only if msg.time < currentTime)
-        deviceMsgService.removePersistedMessages(clientId);
+        deviceMsgWriteBehindService.removePersistedMessages(clientId);
         deviceSessionCtxService.removeDeviceSessionContext(clientId);
+        serialNumberStore.evict(clientId);
         evictCache(clientId);
     }
 
@@ -75,6 +77,7 @@ public class DevicePersistenceProcessorImpl implements DevicePersistenceProcesso
     @Override
     public void stopProcessingPersistedMessages(String clientId) {
         deviceActorManager.notifyClientDisconnected(clientId);
+        deviceMsgWriteBehindService.flushPendingMsgs(clientId);
     }
 
     private void evictCache(String clientId) {
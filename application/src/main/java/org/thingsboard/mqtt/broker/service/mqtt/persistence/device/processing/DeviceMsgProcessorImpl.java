@@ -25,7 +25,6 @@ import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
 import org.thingsboard.mqtt.broker.dao.DbConnectionChecker;
-import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
 import org.thingsboard.mqtt.broker.dao.client.device.PacketIdAndSerialNumber;
 import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
 import org.thingsboard.mqtt.broker.dto.PacketIdAndSerialNumberDto;
@@ -33,9 +32,12 @@ import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.DevicePacketIdAndSerialNumberStore;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.service.processing.downlink.DownLinkProxy;
 import org.thingsboard.mqtt.broker.service.stats.DeviceProcessorStats;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,7 +59,8 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
     private final DownLinkProxy downLinkProxy;
     private final DeviceMsgAcknowledgeStrategyFactory ackStrategyFactory;
     private final DeviceMsgService deviceMsgService;
-    private final DevicePacketIdAndSerialNumberService serialNumberService;
+    private final DevicePacketIdAndSerialNumberStore serialNumberStore;
+    private final DeviceMsgWriteBehindService deviceMsgWriteBehindService;
 
     @Override
     public List<DevicePublishMsg> persistMessages(List<TbProtoQueueMsg<PublishMsgProto>> messages, DeviceProcessorStats stats, String consumerId) {
@@ -70,7 +73,7 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
 
         Map<String, PacketIdAndSerialNumber> lastPacketIdAndSerialNumbers = null;
         boolean isDbConnected = dbConnectionChecker.isDbConnected()
-                && (lastPacketIdAndSerialNumbers = tryGetLastPacketIdAndSerialNumber(clientIds)) != null;
+                && (lastPacketIdAndSerialNumbers = tryReservePacketIdAndSerialNumbers(messages)) != null;
         if (isDbConnected) {
             persistDeviceMsgs(devicePublishMessages, lastPacketIdAndSerialNumbers, consumerId, stats);
         }
@@ -118,6 +121,8 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
                                    Map<String, PacketIdAndSerialNumber> lastPacketIdAndSerialNumbers,
                                    String consumerId, DeviceProcessorStats stats) {
         setPacketIdAndSerialNumber(devicePublishMessages, lastPacketIdAndSerialNumbers);
+        // the msgs of the clients connected to this node are written later, unless they are acknowledged before
+        List<DevicePublishMsg> msgsToSave = deviceMsgWriteBehindService.addPendingMsgs(devicePublishMessages);
 
         DeviceAckStrategy ackStrategy = ackStrategyFactory.newInstance(consumerId);
         DevicePackProcessingContext ctx = new DevicePackProcessingContext(devicePublishMessages);
@@ -125,8 +130,9 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
             try {
                 // TODO: think if we need transaction here
                 // TODO: think about case when client is 'clearing session' at this moment
-                serialNumberService.saveLastSerialNumbers(lastPacketIdAndSerialNumbers);
-                deviceMsgService.save(devicePublishMessages, ctx.detectMsgDuplication());
+                if (!msgsToSave.isEmpty()) {
+                    deviceMsgService.save(msgsToSave, ctx.detectMsgDuplication());
+                }
                 ctx.onSuccess();
             } catch (DuplicateKeyException e) {
                 log.warn("[{}] Duplicate serial number detected, will save with rewrite", consumerId, e);
@@ -157,9 +163,13 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
         }
     }
 
-    private Map<String, PacketIdAndSerialNumber> tryGetLastPacketIdAndSerialNumber(Set<String> clientIds) {
+    private Map<String, PacketIdAndSerialNumber> tryReservePacketIdAndSerialNumbers(List<TbProtoQueueMsg<PublishMsgProto>> messages) {
+        Map<String, Integer> clientsMsgsCount = new HashMap<>();
+        for (TbProtoQueueMsg<PublishMsgProto> msg : messages) {
+            clientsMsgsCount.merge(msg.getKey(), 1, Integer::sum);
+        }
         try {
-            return serialNumberService.getLastPacketIdAndSerialNumber(clientIds);
+            return serialNumberStore.reservePacketIdAndSerialNumbers(clientsMsgsCount);
         } catch (DataAccessResourceFailureException e) {
             log.warn("Cannot get last packetId and serialNumbers since database connection is lost.");
             return null;
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.persistence.device.queue;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,16 +25,23 @@ import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.DevicePersistenceMsgQueueFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.DevicePacketIdAndSerialNumberStore;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.processing.DeviceMsgProcessor;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.service.stats.DeviceProcessorStats;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 @Slf4j
@@ -47,6 +55,8 @@ public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
     private final DeviceMsgProcessor deviceMsgProcessor;
     private final StatsManager statsManager;
     private final ServiceInfoProvider serviceInfoProvider;
+    private final DevicePacketIdAndSerialNumberStore serialNumberStore;
+    private final DeviceMsgWriteBehindService deviceMsgWriteBehindService;
 
     @Value("${queue.device-persisted-msg.consumers-count}")
     private int consumersCount;
@@ -67,31 +77,32 @@ public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
     public void startConsuming() {
         for (int i = 0; i < consumersCount; i++) {
             String consumerId = serviceInfoProvider.getServiceId() + "-" + i;
-            TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer = devicePersistenceMsgQueueFactory.createConsumer(consumerId);
+            TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer = devicePersistenceMsgQueueFactory.createConsumer(consumerId,
+                    // the clients of the revoked partitions could get msgs on the other nodes
+                    serialNumberStore::evictAll);
             consumers.add(consumer);
             consumer.subscribe();
             launchConsumer(consumerId, consumer);
         }
     }
 
-    private void launchConsumer(String consumerId, TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer) {
+    private void launchConsumer(String consumerId, TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer) {
         DeviceProcessorStats stats = statsManager.createDeviceProcessorStats(consumerId);
         consumersExecutor.submit(() -> {
+            // the packs with the msgs that are not written to the DB yet, in the order they were polled
+            Deque<PendingPack> pendingPacks = new ArrayDeque<>();
             while (!stopped) {
                 try {
                     // TODO: corner case: if Kafka rebalances partitions while node is processing - multiple nodes can persist same msg multiple times
                     List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs = consumer.poll(pollDuration);
                     if (msgs.isEmpty()) {
+                        commitWrittenPacks(consumerId, consumer, pendingPacks);
                         continue;
                     }
 
                     List<DevicePublishMsg> devicePublishMessages = deviceMsgProcessor.persistMessages(msgs, stats, consumerId);
-
-                    try {
-                        consumer.commitSync();
-                    } catch (Exception e) {
-                        log.warn("[{}] Failed to commit polled messages.", consumerId, e);
-                    }
+                    pendingPacks.add(new PendingPack(msgs, deviceMsgWriteBehindService.getWrittenFuture(devicePublishMessages)));
+                    commitWrittenPacks(consumerId, consumer, pendingPacks);
 
                     deviceMsgProcessor.deliverMessages(devicePublishMessages);
                 } catch (Exception e) {
@@ -109,6 +120,30 @@ public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
         });
     }
 
+    /*
+        The offsets are committed only after the msgs are in the DB, the msgs kept by the write-behind service are consumed
+        again after a crash. When all the polled msgs are written, the positions of the consumer are committed
+     */
+    private void commitWrittenPacks(String consumerId, TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer,
+                                    Deque<PendingPack> pendingPacks) {
+        Map<Integer, Long> writtenOffsets = new HashMap<>();
+        while (!pendingPacks.isEmpty() && pendingPacks.peek().writtenFuture.isDone()) {
+            pendingPacks.poll().nextOffsets.forEach((partition, offset) -> writtenOffsets.merge(partition, offset, Math::max));
+        }
+        if (writtenOffsets.isEmpty()) {
+            return;
+        }
+        try {
+            if (pendingPacks.isEmpty()) {
+                consumer.commitSync();
+            } else {
+                writtenOffsets.forEach(consumer::commit);
+            }
+        } catch (Exception e) {
+            log.warn("[{}] Failed to commit polled messages.", consumerId, e);
+        }
+    }
+
     @PreDestroy
     public void destroy() {
         stopped = true;
@@ -118,4 +153,16 @@ public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
         }
     }
 
+    private static class PendingPack {
+        private final Map<Integer, Long> nextOffsets = new HashMap<>();
+        private final ListenableFuture<Void> writtenFuture;
+
+        PendingPack(List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs, ListenableFuture<Void> writtenFuture) {
+            for (TbProtoQueueMsg<QueueProtos.PublishMsgProto> msg : msgs) {
+                nextOffsets.merge(msg.getPartition(), msg.getOffset() + 1, Math::max);
+            }
+            this.writtenFuture = writtenFuture;
+        }
+    }
+
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+
+import java.util.List;
+
+/*
+    Keeps the persisted msgs of the DEVICE clients connected to this node in memory for a short time before writing them to the DB,
+    the msgs acknowledged in this time are never written
+ */
+public interface DeviceMsgWriteBehindService {
+
+    /*
+        Returns the msgs that were not taken and must be saved to the DB by the caller
+     */
+    List<DevicePublishMsg> addPendingMsgs(List<DevicePublishMsg> devicePublishMessages);
+
+    /*
+        Completes once the given msgs that were taken are in the DB or are not going to be written, e.g. were acknowledged
+     */
+    ListenableFuture<Void> getWrittenFuture(List<DevicePublishMsg> devicePublishMessages);
+
+    ListenableFuture<Void> tryRemovePersistedMessage(String clientId, int packetId);
+
+    ListenableFuture<Void> tryUpdatePacketReceived(String clientId, int packetId);
+
+    List<DevicePublishMsg> findPersistedMessages(String clientId);
+
+    List<DevicePublishMsg> findPersistedMessages(String clientId, long fromSerialNumber, long toSerialNumber);
+
+    void removePersistedMessages(String clientId);
+
+    void flushPendingMsgs(String clientId);
+}
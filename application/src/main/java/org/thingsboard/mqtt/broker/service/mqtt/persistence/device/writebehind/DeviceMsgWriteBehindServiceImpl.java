@@ -0,0 +1,450 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+    Only the msgs of the clients connected to this node are kept, the acknowledgements of the other clients come to the other nodes.
+    A msg is written to the DB once it is older than the write delay, the acknowledgements that come while the msg is written
+    are applied to the DB right after it.
+    When the client disconnects, its msgs are written before the session is handed over and the msgs of the closed session
+    that come after it are written directly, so the other node finds all of them in the DB
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceMsgWriteBehindServiceImpl implements DeviceMsgWriteBehindService {
+
+    private final DeviceMsgService deviceMsgService;
+    private final ClientSessionCache clientSessionCache;
+    private final ServiceInfoProvider serviceInfoProvider;
+    private final StatsManager statsManager;
+
+    private final ConcurrentMap<String, ClientPendingMsgs> clientsPendingMsgs = new ConcurrentHashMap<>();
+    // writes never overlap, so all the msgs taken for writing before the lock is acquired are already in the DB
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${mqtt.persistent-session.device.persisted-messages.write-behind.enabled:false}")
+    private boolean enabled;
+    @Value("${mqtt.persistent-session.device.persisted-messages.write-behind.write-delay-ms:500}")
+    private long writeDelayMs;
+    @Value("${mqtt.persistent-session.device.persisted-messages.write-behind.flush-interval-ms:100}")
+    private long flushIntervalMs;
+    @Value("${mqtt.persistent-session.device.persisted-messages.write-behind.client-max-pending-msgs:1000}")
+    private int clientMaxPendingMsgs;
+    @Value("${mqtt.persistent-session.device.persisted-messages.write-behind.max-pending-msgs:100000}")
+    private int maxPendingMsgs;
+
+    private ScheduledExecutorService flushScheduler;
+    private AtomicInteger pendingMsgsCounter;
+    private AtomicLong collapsedMsgsCounter;
+
+    @PostConstruct
+    public void init() {
+        this.pendingMsgsCounter = statsManager.createPendingDeviceMsgsCounter();
+        this.collapsedMsgsCounter = statsManager.createCollapsedDeviceMsgsCounter();
+        if (enabled) {
+            this.flushScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("device-msg-write-behind-scheduler"));
+            flushScheduler.scheduleWithFixedDelay(this::flushReadyMsgs, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public List<DevicePublishMsg> addPendingMsgs(List<DevicePublishMsg> devicePublishMessages) {
+        if (!enabled) {
+            return devicePublishMessages;
+        }
+        List<DevicePublishMsg> msgsToSave = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (DevicePublishMsg devicePublishMsg : devicePublishMessages) {
+            ClientSessionInfo clientSessionInfo = clientSessionCache.getClientSessionInfo(devicePublishMsg.getClientId());
+            if (!isConnectedToThisNode(clientSessionInfo) || !tryAddPendingMsg(devicePublishMsg, clientSessionInfo.getSessionId(), now)) {
+                msgsToSave.add(devicePublishMsg);
+            }
+        }
+        return msgsToSave;
+    }
+
+    @Override
+    public ListenableFuture<Void> getWrittenFuture(List<DevicePublishMsg> devicePublishMessages) {
+        if (!enabled) {
+            return Futures.immediateFuture(null);
+        }
+        List<ListenableFuture<Void>> pendingFutures = new ArrayList<>();
+        for (DevicePublishMsg devicePublishMsg : devicePublishMessages) {
+            ClientPendingMsgs clientMsgs = clientsPendingMsgs.get(devicePublishMsg.getClientId());
+            if (clientMsgs != null) {
+                ListenableFuture<Void> writtenFuture = clientMsgs.getWrittenFuture(devicePublishMsg);
+                if (writtenFuture != null) {
+                    pendingFutures.add(writtenFuture);
+                }
+            }
+        }
+        if (pendingFutures.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        return Futures.transform(Futures.allAsList(pendingFutures), writtenMsgs -> null, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public ListenableFuture<Void> tryRemovePersistedMessage(String clientId, int packetId) {
+        ClientPendingMsgs clientMsgs = clientsPendingMsgs.get(clientId);
+        if (clientMsgs != null && clientMsgs.acknowledge(packetId)) {
+            return Futures.immediateFuture(null);
+        }
+        return deviceMsgService.tryRemovePersistedMessage(clientId, packetId);
+    }
+
+    @Override
+    public ListenableFuture<Void> tryUpdatePacketReceived(String clientId, int packetId) {
+        ClientPendingMsgs clientMsgs = clientsPendingMsgs.get(clientId);
+        if (clientMsgs != null && clientMsgs.markReceived(packetId)) {
+            return Futures.immediateFuture(null);
+        }
+        return deviceMsgService.tryUpdatePacketReceived(clientId, packetId);
+    }
+
+    @Override
+    public List<DevicePublishMsg> findPersistedMessages(String clientId) {
+        flushClientMsgs(clientId);
+        return deviceMsgService.findPersistedMessages(clientId);
+    }
+
+    @Override
+    public List<DevicePublishMsg> findPersistedMessages(String clientId, long fromSerialNumber, long toSerialNumber) {
+        flushClientMsgs(clientId);
+        return deviceMsgService.findPersistedMessages(clientId, fromSerialNumber, toSerialNumber);
+    }
+
+    @Override
+    public void removePersistedMessages(String clientId) {
+        if (enabled) {
+            flushLock.lock();
+            try {
+                ClientPendingMsgs clientMsgs = clientsPendingMsgs.remove(clientId);
+                if (clientMsgs != null) {
+                    clientMsgs.discard();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        deviceMsgService.removePersistedMessages(clientId);
+    }
+
+    /*
+        Called when the client disconnects, before the session is handed over, so the msgs are in the DB
+        in case the client connects to another node. The msgs are written on the calling thread
+     */
+    @Override
+    public void flushPendingMsgs(String clientId) {
+        if (!enabled) {
+            return;
+        }
+        ClientSessionInfo clientSessionInfo = clientSessionCache.getClientSessionInfo(clientId);
+        if (isConnectedToThisNode(clientSessionInfo)) {
+            closeSession(clientId, clientSessionInfo.getSessionId());
+        }
+        flushClientMsgs(clientId);
+    }
+
+    private boolean isConnectedToThisNode(ClientSessionInfo clientSessionInfo) {
+        return clientSessionInfo != null && clientSessionInfo.isConnected()
+                && serviceInfoProvider.getServiceId().equals(clientSessionInfo.getServiceId());
+    }
+
+    /*
+        The msgs that were added before the session is closed are taken by the following flush, the later ones are not added
+     */
+    private void closeSession(String clientId, UUID sessionId) {
+        while (true) {
+            ClientPendingMsgs clientMsgs = clientsPendingMsgs.computeIfAbsent(clientId, ClientPendingMsgs::new);
+            synchronized (clientMsgs) {
+                if (!clientMsgs.discarded) {
+                    clientMsgs.closedSessionId = sessionId;
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean tryAddPendingMsg(DevicePublishMsg devicePublishMsg, UUID sessionId, long now) {
+        if (pendingMsgsCounter.get() >= maxPendingMsgs) {
+            return false;
+        }
+        while (true) {
+            ClientPendingMsgs clientMsgs = clientsPendingMsgs.computeIfAbsent(devicePublishMsg.getClientId(), ClientPendingMsgs::new);
+            synchronized (clientMsgs) {
+                // the msgs were flushed and the holder was removed from the map after it was got from it
+                if (clientMsgs.discarded) {
+                    continue;
+                }
+                if (clientMsgs.closedSessionId != null) {
+                    if (clientMsgs.closedSessionId.equals(sessionId)) {
+                        return false;
+                    }
+                    // the client connected to this node again
+                    clientMsgs.closedSessionId = null;
+                }
+                if (clientMsgs.msgs.size() >= clientMaxPendingMsgs || clientMsgs.msgs.containsKey(devicePublishMsg.getPacketId())) {
+                    return false;
+                }
+                clientMsgs.msgs.put(devicePublishMsg.getPacketId(), new PendingMsg(devicePublishMsg, now));
+            }
+            pendingMsgsCounter.incrementAndGet();
+            return true;
+        }
+    }
+
+    private void flushReadyMsgs() {
+        try {
+            flush(clientsPendingMsgs.values(), System.currentTimeMillis() - writeDelayMs);
+            removeClosedSessions();
+        } catch (Exception e) {
+            log.warn("Failed to flush pending device msgs", e);
+        }
+    }
+
+    /*
+        The closed session is kept only while the client session cache shows it as connected to this node
+     */
+    private void removeClosedSessions() {
+        for (ClientPendingMsgs clientMsgs : clientsPendingMsgs.values()) {
+            UUID closedSessionId = clientMsgs.closedSessionId;
+            if (closedSessionId == null) {
+                continue;
+            }
+            ClientSessionInfo clientSessionInfo = clientSessionCache.getClientSessionInfo(clientMsgs.clientId);
+            if (!isConnectedToThisNode(clientSessionInfo) || !closedSessionId.equals(clientSessionInfo.getSessionId())) {
+                clientMsgs.removeIfClosed(closedSessionId);
+            }
+        }
+    }
+
+    private void flushClientMsgs(String clientId) {
+        if (!enabled) {
+            return;
+        }
+        ClientPendingMsgs clientMsgs = clientsPendingMsgs.get(clientId);
+        if (clientMsgs != null) {
+            flush(Collections.singletonList(clientMsgs), Long.MAX_VALUE);
+        }
+    }
+
+    private void flush(Collection<ClientPendingMsgs> clientsMsgs, long addedBefore) {
+        flushLock.lock();
+        try {
+            Map<ClientPendingMsgs, List<PendingMsg>> flushingMsgs = new HashMap<>();
+            List<DevicePublishMsg> msgsToSave = new ArrayList<>();
+            for (ClientPendingMsgs clientMsgs : clientsMsgs) {
+                List<PendingMsg> readyMsgs = clientMsgs.takeForFlush(addedBefore);
+                if (!readyMsgs.isEmpty()) {
+                    flushingMsgs.put(clientMsgs, readyMsgs);
+                    readyMsgs.forEach(pendingMsg -> msgsToSave.add(pendingMsg.msg));
+                }
+            }
+            if (msgsToSave.isEmpty()) {
+                return;
+            }
+            boolean saved = save(msgsToSave);
+            flushingMsgs.forEach((clientMsgs, readyMsgs) -> clientMsgs.onFlushed(readyMsgs, saved));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean save(List<DevicePublishMsg> msgsToSave) {
+        try {
+            // the serial numbers were reserved when the msgs were taken, so rows with the same keys can only be left by a failed write
+            deviceMsgService.save(msgsToSave, false);
+            if (log.isTraceEnabled()) {
+                log.trace("Flushed {} pending device msgs", msgsToSave.size());
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to save {} pending device msgs, will retry", msgsToSave.size(), e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+        }
+        if (enabled) {
+            flush(clientsPendingMsgs.values(), Long.MAX_VALUE);
+        }
+    }
+
+    private static class PendingMsg {
+        private final DevicePublishMsg msg;
+        private final long addedTime;
+        private boolean flushing;
+        private boolean acknowledged;
+        private boolean received;
+        // set once the msg is in the DB or is not going to be written
+        private final SettableFuture<Void> writtenFuture = SettableFuture.create();
+
+        PendingMsg(DevicePublishMsg msg, long addedTime) {
+            this.msg = msg;
+            this.addedTime = addedTime;
+        }
+    }
+
+    private class ClientPendingMsgs {
+        private final String clientId;
+        // packet ids of the pending msgs do not repeat since there are much fewer pending msgs of a client than packet ids
+        private final Map<Integer, PendingMsg> msgs = new LinkedHashMap<>();
+        private boolean discarded;
+        private volatile UUID closedSessionId;
+
+        ClientPendingMsgs(String clientId) {
+            this.clientId = clientId;
+        }
+
+        synchronized boolean acknowledge(int packetId) {
+            PendingMsg pendingMsg = msgs.get(packetId);
+            if (pendingMsg == null) {
+                return false;
+            }
+            if (pendingMsg.flushing) {
+                pendingMsg.acknowledged = true;
+            } else {
+                removePendingMsg(packetId, pendingMsg);
+                collapsedMsgsCounter.incrementAndGet();
+            }
+            return true;
+        }
+
+        synchronized ListenableFuture<Void> getWrittenFuture(DevicePublishMsg devicePublishMsg) {
+            PendingMsg pendingMsg = msgs.get(devicePublishMsg.getPacketId());
+            return pendingMsg != null && pendingMsg.msg == devicePublishMsg ? pendingMsg.writtenFuture : null;
+        }
+
+        synchronized boolean markReceived(int packetId) {
+            PendingMsg pendingMsg = msgs.get(packetId);
+            if (pendingMsg == null) {
+                return false;
+            }
+            if (pendingMsg.flushing) {
+                pendingMsg.received = true;
+            } else {
+                pendingMsg.msg.setPacketType(PersistedPacketType.PUBREL);
+            }
+            return true;
+        }
+
+        synchronized List<PendingMsg> takeForFlush(long addedBefore) {
+            List<PendingMsg> readyMsgs = new ArrayList<>();
+            for (PendingMsg pendingMsg : msgs.values()) {
+                // the msgs are kept in the order they were added
+                if (pendingMsg.addedTime > addedBefore) {
+                    break;
+                }
+                if (!pendingMsg.flushing) {
+                    pendingMsg.flushing = true;
+                    readyMsgs.add(pendingMsg);
+                }
+            }
+            return readyMsgs;
+        }
+
+        synchronized void onFlushed(List<PendingMsg> flushedMsgs, boolean saved) {
+            for (PendingMsg pendingMsg : flushedMsgs) {
+                int packetId = pendingMsg.msg.getPacketId();
+                if (saved) {
+                    removePendingMsg(packetId, pendingMsg);
+                    if (pendingMsg.acknowledged) {
+                        deviceMsgService.tryRemovePersistedMessage(clientId, packetId);
+                    } else if (pendingMsg.received) {
+                        deviceMsgService.tryUpdatePacketReceived(clientId, packetId);
+                    }
+                } else {
+                    pendingMsg.flushing = false;
+                    if (pendingMsg.acknowledged) {
+                        removePendingMsg(packetId, pendingMsg);
+                        collapsedMsgsCounter.incrementAndGet();
+                    } else if (pendingMsg.received) {
+                        pendingMsg.received = false;
+                        pendingMsg.msg.setPacketType(PersistedPacketType.PUBREL);
+                    }
+                }
+            }
+            // the holder of the closed session stays, so the msgs of the session are not added again
+            if (msgs.isEmpty() && closedSessionId == null) {
+                discarded = true;
+                clientsPendingMsgs.remove(clientId, this);
+            }
+        }
+
+        synchronized void removeIfClosed(UUID sessionId) {
+            if (msgs.isEmpty() && sessionId.equals(closedSessionId)) {
+                discarded = true;
+                clientsPendingMsgs.remove(clientId, this);
+            }
+        }
+
+        synchronized void discard() {
+            discarded = true;
+            pendingMsgsCounter.addAndGet(-msgs.size());
+            msgs.values().forEach(pendingMsg -> pendingMsg.writtenFuture.set(null));
+            msgs.clear();
+        }
+
+        private void removePendingMsg(int packetId, PendingMsg pendingMsg) {
+            if (msgs.remove(packetId, pendingMsg)) {
+                pendingMsgsCounter.decrementAndGet();
+                pendingMsg.writtenFuture.set(null);
+            }
+        }
+    }
+}
@@ -17,26 +17,19 @@ package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
-import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 @Service
@@ -44,16 +37,13 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
 
     private final AtomicInteger size;
     private final AtomicLong nodesCount;
+    private final AtomicLong reclaimedNodesCount;
     private final Node<T> root = new Node<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-
-    @Setter
-    @Value("${mqtt.retain-msg-trie.wait-for-clear-lock-ms}")
-    private int waitForClearLockMs;
 
     public ConcurrentMapRetainMsgTrie(StatsManager statsManager) {
         this.size = statsManager.createRetainMsgSizeCounter();
         this.nodesCount = statsManager.createRetainMsgTrieNodesCounter();
+        this.reclaimedNodesCount = statsManager.createRetainMsgTrieReclaimedNodesCounter();
     }
 
     @EqualsAndHashCode
@@ -61,6 +51,10 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         private final AtomicReference<T> value = new AtomicReference<>();
         private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<>();
         private String key;
+        /*
+            Set under the locks of the node and its parent when the node is unlinked from the trie
+         */
+        private volatile boolean removed;
 
         public Node() {
         }
@@ -135,27 +129,52 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         if (topic == null || val == null) {
             throw new IllegalArgumentException("Topic or value cannot be null");
         }
-        lock.readLock().lock();
-        try {
-            put(root, topic, val, 0);
-        } finally {
-            lock.readLock().unlock();
+        while (!tryPut(topic, val)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Node for [{}] was reclaimed concurrently, retrying put", topic);
+            }
         }
     }
 
-    private void put(Node<T> x, String topic, T val, int prevDelimiterIndex) {
-        if (prevDelimiterIndex >= topic.length()) {
+    /*
+        Returns false if the target node got reclaimed before the value was set, in this case the caller retries from the root
+     */
+    private boolean tryPut(String topic, T val) {
+        Node<T> x = root;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topic.length()) {
+            String segment = getSegment(topic, prevDelimiterIndex);
+            x = getOrCreateChild(x, segment);
+            if (x == null) {
+                return false;
+            }
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        synchronized (x) {
+            if (x.removed) {
+                return false;
+            }
             T prevValue = x.value.getAndSet(val);
             if (prevValue == null) {
                 size.getAndIncrement();
             }
-        } else {
-            String segment = getSegment(topic, prevDelimiterIndex);
-            Node<T> nextNode = x.children.computeIfAbsent(segment, s -> {
+        }
+        return true;
+    }
+
+    private Node<T> getOrCreateChild(Node<T> x, String segment) {
+        Node<T> child = x.children.get(segment);
+        if (child != null && !child.removed) {
+            return child;
+        }
+        synchronized (x) {
+            if (x.removed) {
+                return null;
+            }
+            return x.children.computeIfAbsent(segment, s -> {
                 nodesCount.incrementAndGet();
-                return new Node<>(segment);
+                return new Node<>(s);
             });
-            put(nextNode, topic, val, prevDelimiterIndex + segment.length() + 1);
         }
     }
 
@@ -165,22 +184,31 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         if (topic == null) {
             throw new IllegalArgumentException("Topic cannot be null");
         }
-        Node<T> x = getNode(root, topic, 0);
-        if (x != null) {
-            T prevValue = x.value.getAndSet(null);
+        List<Node<T>> path = getPath(topic);
+        if (path != null) {
+            T prevValue = path.get(path.size() - 1).value.getAndSet(null);
             if (prevValue != null) {
                 size.decrementAndGet();
+                reclaimEmptyNodes(path);
             }
         }
     }
 
-    private Node<T> getNode(Node<T> x, String topic, int prevDelimiterIndex) {
-        if (x == null) return null;
-        if (prevDelimiterIndex >= topic.length()) {
-            return x;
+    private List<Node<T>> getPath(String topic) {
+        List<Node<T>> path = new ArrayList<>();
+        Node<T> x = root;
+        path.add(x);
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topic.length()) {
+            String segment = getSegment(topic, prevDelimiterIndex);
+            x = x.children.get(segment);
+            if (x == null) {
+                return null;
+            }
+            path.add(x);
+            prevDelimiterIndex += segment.length() + 1;
         }
-        String segment = getSegment(topic, prevDelimiterIndex);
-        return getNode(x.children.get(segment), topic, prevDelimiterIndex + segment.length() + 1);
+        return path;
     }
 
     @Override
@@ -188,10 +216,13 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         return size.get();
     }
 
+    /*
+        Empty nodes are already reclaimed on delete, the sweep is kept as a safety net.
+        It goes one subtree at a time and doesn't block concurrent lookups or puts to other nodes.
+     */
     @Override
-    public void clearEmptyNodes() throws RetainMsgTrieClearException {
+    public void clearEmptyNodes() {
         log.trace("Executing clearEmptyNodes");
-        acquireClearTrieLock();
         long nodesBefore = nodesCount.get();
         long clearStartTime = System.currentTimeMillis();
         try {
@@ -206,38 +237,40 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
             long nodesAfter = nodesCount.get();
             log.error("Failed on clearing empty nodes. Managed to clear {} nodes.",
                     nodesBefore - nodesAfter, e);
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
-    private boolean clearEmptyChildren(ConcurrentMapRetainMsgTrie.Node<T> node) {
-        boolean isNodeEmpty = node.value.get() == null;
-        for (Map.Entry<String, ConcurrentMapRetainMsgTrie.Node<T>> entry : node.children.entrySet()) {
-            ConcurrentMapRetainMsgTrie.Node<T> value = entry.getValue();
-            boolean isChildEmpty = clearEmptyChildren(value);
-            if (isChildEmpty) {
-                node.children.remove(entry.getKey());
-                nodesCount.decrementAndGet();
-            } else {
-                isNodeEmpty = false;
-            }
+    private void clearEmptyChildren(Node<T> node) {
+        for (Node<T> child : node.children.values()) {
+            clearEmptyChildren(child);
+            tryReclaim(node, child);
         }
-
-        return isNodeEmpty;
     }
 
-    private void acquireClearTrieLock() throws RetainMsgTrieClearException {
-        boolean successfullyAcquiredLock = false;
-        try {
-            successfullyAcquiredLock = lock.writeLock().tryLock(waitForClearLockMs, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            log.warn("Acquiring lock was interrupted.");
+    private void reclaimEmptyNodes(List<Node<T>> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            if (!tryReclaim(path.get(i - 1), path.get(i))) {
+                return;
+            }
         }
-        if (!successfullyAcquiredLock) {
-            throw new RetainMsgTrieClearException("Couldn't acquire lock for clearing trie. " +
-                    "There are a lot of clients sending retained messages right now.");
+    }
+
+    /*
+        Locks are always taken parent first, while put holds only one node lock at a time
+     */
+    private boolean tryReclaim(Node<T> parent, Node<T> child) {
+        synchronized (parent) {
+            synchronized (child) {
+                if (child.removed || child.value.get() != null || !child.children.isEmpty()) {
+                    return false;
+                }
+                child.removed = true;
+                parent.children.remove(child.key, child);
+            }
         }
+        nodesCount.decrementAndGet();
+        reclaimedNodesCount.incrementAndGet();
+        return true;
     }
 
     private String getSegment(String key, int prevDelimiterIndex) {
@@ -16,82 +16,132 @@
 package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
 import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageType;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.function.BiConsumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@Getter
+/*
+    In-flight msg of the session. The msg has no timer of its own: the session keeps the retransmission times
+    of its pending msgs in the RetransmissionQueue, acknowledging the msg cancels the retransmission
+ */
 @Slf4j
 public class MqttPendingPublish {
 
-    private final ClientSessionCtx sessionCtx;
+    @Getter
     private final int packetId;
+    @Getter
     private final ByteBuf payload;
+    @Getter
     private final MqttQoS qos;
+    private final MqttPublishMessage publishMessage;
     private final int retransmissionInitDelay;
     private final int retransmissionPeriod;
+    private final AtomicInteger pendingRetransmissionsCounter;
 
-    private final RetransmissionHandler<MqttPublishMessage> publishRetransmissionHandler;
-    private final RetransmissionHandler<MqttMessage> pubRelRetransmissionHandler;
-
-    @Setter
-    private boolean sent = false;
+    private MqttMessage pubRelMessage;
+    private boolean payloadReleased;
+    // time of the next retransmission in ms, 0 if the msg does not wait for the retransmission
+    private long retransmissionTime;
+    // seconds, increased by the period after every retransmission
+    private int retransmissionDelay;
 
-    public MqttPendingPublish(ClientSessionCtx sessionCtx, int packetId, ByteBuf payload, MqttQoS qos,
-                              MqttPublishMessage message, int retransmissionInitDelay, int retransmissionPeriod) {
-        this.sessionCtx = sessionCtx;
+    public MqttPendingPublish(int packetId, ByteBuf payload, MqttQoS qos, MqttPublishMessage publishMessage,
+                              int retransmissionInitDelay, int retransmissionPeriod, AtomicInteger pendingRetransmissionsCounter) {
         this.packetId = packetId;
         this.payload = payload;
         this.qos = qos;
+        this.publishMessage = publishMessage;
         this.retransmissionInitDelay = retransmissionInitDelay;
         this.retransmissionPeriod = retransmissionPeriod;
+        this.pendingRetransmissionsCounter = pendingRetransmissionsCounter;
+    }
 
-        PendingOperation operation = () -> !sessionCtx.getPendingPublishes().containsKey(packetId);
+    synchronized long startPublishRetransmission(long now) {
+        return startRetransmission(now);
+    }
 
-        this.publishRetransmissionHandler = new RetransmissionHandler<>(operation, retransmissionInitDelay, retransmissionPeriod);
-        this.publishRetransmissionHandler.setOriginalMessage(message);
-        this.pubRelRetransmissionHandler = new RetransmissionHandler<>(operation, retransmissionInitDelay, retransmissionPeriod);
+    synchronized long startPubRelRetransmission(MqttMessage pubRelMessage, long now) {
+        this.pubRelMessage = pubRelMessage;
+        return startRetransmission(now);
     }
 
-    public void startPublishRetransmissionTimer(ScheduledExecutorService scheduler, BiConsumer<ClientSessionCtx, MqttMessage> sendPacket) {
-        this.publishRetransmissionHandler.setHandler(((fixedHeader, originalMessage) ->
-                sendPacket.accept(sessionCtx, new MqttPublishMessage(fixedHeader, originalMessage.variableHeader(), this.payload.retain()))));
-        this.publishRetransmissionHandler.start(scheduler);
+    private long startRetransmission(long now) {
+        if (retransmissionTime == 0) {
+            pendingRetransmissionsCounter.incrementAndGet();
+        }
+        retransmissionDelay = retransmissionInitDelay;
+        retransmissionTime = now + TimeUnit.SECONDS.toMillis(retransmissionDelay);
+        return retransmissionTime;
     }
 
-    void onPubAckReceived() {
-        this.publishRetransmissionHandler.stop();
+    synchronized long getRetransmissionTime() {
+        return retransmissionTime;
     }
 
-    public void setPubRelMessage(MqttMessage pubRelMessage) {
-        this.pubRelRetransmissionHandler.setOriginalMessage(pubRelMessage);
+    /*
+        Returns the msg to resend if the retransmission is due and moves the retransmission time forward, null otherwise
+     */
+    synchronized MqttMessage getRetransmissionMsgIfDue(long now) {
+        if (retransmissionTime == 0 || retransmissionTime > now) {
+            return null;
+        }
+        retransmissionDelay += retransmissionPeriod;
+        retransmissionTime = now + TimeUnit.SECONDS.toMillis(retransmissionDelay);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Resending msg...", packetId, pubRelMessage != null ? MqttMessageType.PUBREL : MqttMessageType.PUBLISH);
+        }
+        if (pubRelMessage != null) {
+            return new MqttMessage(newMqttFixedHeader(pubRelMessage, pubRelMessage.fixedHeader().isDup()), pubRelMessage.variableHeader());
+        }
+        boolean isDup = publishMessage.fixedHeader().isDup() || publishMessage.fixedHeader().qosLevel() != MqttQoS.AT_MOST_ONCE;
+        return new MqttPublishMessage(newMqttFixedHeader(publishMessage, isDup), publishMessage.variableHeader(), payload.retain());
     }
 
-    public void startPubRelRetransmissionTimer(ScheduledExecutorService scheduler, BiConsumer<ClientSessionCtx, MqttMessage> sendPacket) {
-        this.pubRelRetransmissionHandler.setHandler((fixedHeader, originalMessage) ->
-                sendPacket.accept(sessionCtx, new MqttMessage(fixedHeader, originalMessage.variableHeader())));
-        this.pubRelRetransmissionHandler.start(scheduler);
+    private MqttFixedHeader newMqttFixedHeader(MqttMessage originalMessage, boolean isDup) {
+        return new MqttFixedHeader(
+                originalMessage.fixedHeader().messageType(),
+                isDup,
+                originalMessage.fixedHeader().qosLevel(),
+                originalMessage.fixedHeader().isRetain(),
+                originalMessage.fixedHeader().remainingLength());
     }
 
-    public void onPubCompReceived() {
-        this.pubRelRetransmissionHandler.stop();
+    synchronized void onPubAckReceived() {
+        stopRetransmission();
+        releasePayload();
     }
 
-    public void onChannelClosed() {
-        if (this.publishRetransmissionHandler != null) {
-            this.publishRetransmissionHandler.stop();
-        }
-        if (this.pubRelRetransmissionHandler != null) {
-            this.pubRelRetransmissionHandler.stop();
+    synchronized void onPubRecReceived() {
+        stopRetransmission();
+    }
+
+    synchronized void onPubCompReceived() {
+        stopRetransmission();
+        releasePayload();
+    }
+
+    public synchronized void onChannelClosed() {
+        stopRetransmission();
+        releasePayload();
+    }
+
+    private void stopRetransmission() {
+        if (retransmissionTime != 0) {
+            retransmissionTime = 0;
+            pendingRetransmissionsCounter.decrementAndGet();
         }
-        if (payload != null) {
+    }
+
+    private void releasePayload() {
+        if (payload != null && !payloadReleased) {
+            payloadReleased = true;
             payload.release();
         }
     }
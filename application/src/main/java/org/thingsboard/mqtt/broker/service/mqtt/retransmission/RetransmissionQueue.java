@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
+
+import java.util.PriorityQueue;
+
+/*
+    Retransmission times of the pending msgs of the session ordered by time, accessed only from the event loop of the channel.
+    An entry is not removed when the msg is acknowledged or rescheduled, it is skipped when its time doesn't match the msg any more
+ */
+public class RetransmissionQueue {
+
+    private final PriorityQueue<Entry> entries = new PriorityQueue<>();
+
+    void add(MqttPendingPublish pendingPublish, long retransmissionTime) {
+        entries.add(new Entry(pendingPublish, retransmissionTime));
+    }
+
+    /*
+        Returns the msg whose retransmission is due at the given time, null when the earliest retransmission is later
+     */
+    MqttPendingPublish pollDue(long now) {
+        while (!entries.isEmpty() && entries.peek().retransmissionTime <= now) {
+            Entry entry = entries.poll();
+            if (entry.pendingPublish.getRetransmissionTime() == entry.retransmissionTime) {
+                return entry.pendingPublish;
+            }
+        }
+        return null;
+    }
+
+    /*
+        Returns the time of the earliest retransmission, 0 if there is none
+     */
+    long getEarliestRetransmissionTime() {
+        return entries.isEmpty() ? 0 : entries.peek().retransmissionTime;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final MqttPendingPublish pendingPublish;
+        private final long retransmissionTime;
+
+        private Entry(MqttPendingPublish pendingPublish, long retransmissionTime) {
+            this.pendingPublish = pendingPublish;
+            this.retransmissionTime = retransmissionTime;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(retransmissionTime, other.retransmissionTime);
+        }
+    }
+}
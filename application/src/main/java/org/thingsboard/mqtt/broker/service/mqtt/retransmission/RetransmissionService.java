@@ -33,4 +33,6 @@ public interface RetransmissionService {
 
     void onPubCompReceived(ClientSessionCtx ctx, int messageId);
 
+    boolean isRetransmissionNeeded(ClientSessionCtx sessionCtx, int qos);
+
 }
@@ -16,57 +16,41 @@
 package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
 
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.util.concurrent.ScheduledFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.service.stats.RetransmissionStats;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class RetransmissionServiceImpl implements RetransmissionService {
 
+    private final RetransmissionStats retransmissionStats;
+    private final AtomicInteger pendingRetransmissionsCounter;
+
     @Value("${mqtt.retransmission.enabled:true}")
     private boolean retransmissionEnabled;
-    @Value("${mqtt.retransmission.scheduler-pool-size:0}")
-    private int schedulerPoolSize;
     @Value("${mqtt.retransmission.initial-delay:10}")
     private int retransmissionInitDelay;
     @Value("${mqtt.retransmission.period:5}")
     private int retransmissionPeriod;
 
-    private ScheduledExecutorService scheduler;
-
-    @PostConstruct
-    public void init() {
-        if (retransmissionEnabled) {
-            this.scheduler = Executors.newScheduledThreadPool(getCorePoolSize(), ThingsBoardThreadFactory.forName("retransmission-scheduler"));
-        }
-    }
-
-    private int getCorePoolSize() {
-        if (schedulerPoolSize == 0) {
-            return Math.max(1, Runtime.getRuntime().availableProcessors() * 2);
-        }
-        return schedulerPoolSize;
-    }
-
-    @PreDestroy
-    public void destroy() {
-        if (this.scheduler != null) {
-            this.scheduler.shutdownNow();
-        }
+    public RetransmissionServiceImpl(StatsManager statsManager) {
+        this.retransmissionStats = statsManager.getRetransmissionStats();
+        this.pendingRetransmissionsCounter = statsManager.createPendingRetransmissionsCounter();
     }
 
     @Override
@@ -92,52 +76,105 @@ public class RetransmissionServiceImpl implements RetransmissionService {
         }
         ConcurrentMap<Integer, MqttPendingPublish> pendingPublishes = sessionCtx.getPendingPublishes();
 
-        MqttPendingPublish pendingPublish = newMqttPendingPublish(sessionCtx, mqttPubMsg);
+        MqttPendingPublish pendingPublish = newMqttPendingPublish(mqttPubMsg);
         pendingPublishes.put(pendingPublish.getPacketId(), pendingPublish);
 
         ChannelFuture channelFuture = sessionCtx.getChannel().writeAndFlush(mqttPubMsg);
         channelFuture.addListener(result -> {
-            pendingPublish.setSent(true);
-            if (result.cause() != null) {
+            if (result.cause() != null || pendingPublish.getQos() == MqttQoS.AT_MOST_ONCE) {
                 pendingPublishes.remove(pendingPublish.getPacketId());
             } else {
-                if (pendingPublish.isSent() && pendingPublish.getQos() == MqttQoS.AT_MOST_ONCE) {
-                    pendingPublishes.remove(pendingPublish.getPacketId());
-                } else if (pendingPublish.isSent()) {
-                    pendingPublish.startPublishRetransmissionTimer(this.scheduler, this::sendAndFlush);
-                } else {
-                    pendingPublishes.remove(pendingPublish.getPacketId());
-                }
+                long retransmissionTime = pendingPublish.startPublishRetransmission(System.currentTimeMillis());
+                scheduleRetransmission(sessionCtx, pendingPublish, retransmissionTime);
             }
         });
     }
 
-    private void sendAndFlush(ClientSessionCtx sessionCtx, MqttMessage mqttMsg) {
-        sessionCtx.getChannel().writeAndFlush(mqttMsg);
+    /*
+        Every session has at most one scheduled task on the event loop of its channel, at the earliest retransmission time
+        of its pending msgs. The task takes the due msgs from the queue ordered by the retransmission time, resends them
+        with one flush and schedules itself for the next earliest time, so the msgs that are not due are not visited
+     */
+    private void scheduleRetransmission(ClientSessionCtx sessionCtx, MqttPendingPublish pendingPublish, long retransmissionTime) {
+        ChannelHandlerContext channel = sessionCtx.getChannel();
+        if (channel.executor().inEventLoop()) {
+            addRetransmission(sessionCtx, pendingPublish, retransmissionTime);
+        } else {
+            channel.executor().execute(() -> addRetransmission(sessionCtx, pendingPublish, retransmissionTime));
+        }
+    }
+
+    private void addRetransmission(ClientSessionCtx sessionCtx, MqttPendingPublish pendingPublish, long retransmissionTime) {
+        sessionCtx.getRetransmissionQueue().add(pendingPublish, retransmissionTime);
+        doScheduleRetransmission(sessionCtx, retransmissionTime);
     }
 
-    private MqttPendingPublish newMqttPendingPublish(ClientSessionCtx sessionCtx,
-                                                     MqttPublishMessage mqttPubMsg) {
+    private void doScheduleRetransmission(ClientSessionCtx sessionCtx, long retransmissionTime) {
+        ScheduledFuture<?> retransmissionFuture = sessionCtx.getRetransmissionFuture();
+        if (retransmissionFuture != null) {
+            if (sessionCtx.getRetransmissionTime() <= retransmissionTime) {
+                return;
+            }
+            retransmissionFuture.cancel(false);
+        }
+        long delay = Math.max(0, retransmissionTime - System.currentTimeMillis());
+        sessionCtx.setRetransmissionTime(retransmissionTime);
+        sessionCtx.setRetransmissionFuture(sessionCtx.getChannel().executor()
+                .schedule(() -> retransmit(sessionCtx), delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void retransmit(ClientSessionCtx sessionCtx) {
+        sessionCtx.setRetransmissionFuture(null);
+        RetransmissionQueue retransmissionQueue = sessionCtx.getRetransmissionQueue();
+        if (!sessionCtx.getChannel().channel().isActive()) {
+            retransmissionQueue.clear();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int retransmittedCount = 0;
+        MqttPendingPublish pendingPublish;
+        while ((pendingPublish = retransmissionQueue.pollDue(now)) != null) {
+            MqttMessage mqttMsg = pendingPublish.getRetransmissionMsgIfDue(now);
+            if (mqttMsg != null) {
+                sessionCtx.getChannel().write(mqttMsg);
+                retransmittedCount++;
+                // the msg can be acknowledged concurrently
+                long retransmissionTime = pendingPublish.getRetransmissionTime();
+                if (retransmissionTime != 0) {
+                    retransmissionQueue.add(pendingPublish, retransmissionTime);
+                }
+            }
+        }
+        if (retransmittedCount > 0) {
+            sessionCtx.getChannel().flush();
+            retransmissionStats.logRetransmitted(retransmittedCount);
+        }
+        long nextRetransmissionTime = retransmissionQueue.getEarliestRetransmissionTime();
+        if (nextRetransmissionTime != 0) {
+            doScheduleRetransmission(sessionCtx, nextRetransmissionTime);
+        }
+    }
+
+    private MqttPendingPublish newMqttPendingPublish(MqttPublishMessage mqttPubMsg) {
         return new MqttPendingPublish(
-                sessionCtx,
                 mqttPubMsg.variableHeader().packetId(),
                 mqttPubMsg.payload().retain(),
                 mqttPubMsg.fixedHeader().qosLevel(),
                 mqttPubMsg,
                 retransmissionInitDelay,
-                retransmissionPeriod);
+                retransmissionPeriod,
+                pendingRetransmissionsCounter);
     }
 
-    private MqttPendingPublish newMqttPendingPublish(ClientSessionCtx sessionCtx,
-                                                     MqttMessage mqttPubRelMsg) {
+    private MqttPendingPublish newMqttPendingPublish(MqttMessage mqttPubRelMsg) {
         return new MqttPendingPublish(
-                sessionCtx,
                 ((MqttMessageIdVariableHeader) mqttPubRelMsg.variableHeader()).messageId(),
                 null,
                 mqttPubRelMsg.fixedHeader().qosLevel(),
                 null,
                 retransmissionInitDelay,
-                retransmissionPeriod);
+                retransmissionPeriod,
+                pendingRetransmissionsCounter);
     }
 
     @Override
@@ -148,12 +185,10 @@ public class RetransmissionServiceImpl implements RetransmissionService {
         if (isRetransmissionNotNeeded(ctx)) {
             return;
         }
-        MqttPendingPublish pendingPublish = ctx.getPendingPublishes().get(messageId);
+        MqttPendingPublish pendingPublish = ctx.getPendingPublishes().remove(messageId);
         if (pendingPublish == null) {
             return;
         }
-        pendingPublish.getPayload().release();
-        ctx.getPendingPublishes().remove(messageId);
         pendingPublish.onPubAckReceived();
     }
 
@@ -187,15 +222,15 @@ public class RetransmissionServiceImpl implements RetransmissionService {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Sending persisted PUBREL packet {}", ctx.getClientId(), pubRelMsg);
             }
-            pendingPublish = newMqttPendingPublish(ctx, pubRelMsg);
+            pendingPublish = newMqttPendingPublish(pubRelMsg);
             ctx.getPendingPublishes().put(pendingPublish.getPacketId(), pendingPublish);
         } else {
-            pendingPublish.onPubAckReceived();
+            pendingPublish.onPubRecReceived();
         }
         ctx.getChannel().writeAndFlush(pubRelMsg);
 
-        pendingPublish.setPubRelMessage(pubRelMsg);
-        pendingPublish.startPubRelRetransmissionTimer(this.scheduler, this::sendAndFlush);
+        long retransmissionTime = pendingPublish.startPubRelRetransmission(pubRelMsg, System.currentTimeMillis());
+        scheduleRetransmission(ctx, pendingPublish, retransmissionTime);
     }
 
     @Override
@@ -206,17 +241,18 @@ public class RetransmissionServiceImpl implements RetransmissionService {
         if (isRetransmissionNotNeeded(ctx)) {
             return;
         }
-        MqttPendingPublish pendingPublish = ctx.getPendingPublishes().get(messageId);
+        MqttPendingPublish pendingPublish = ctx.getPendingPublishes().remove(messageId);
         if (pendingPublish == null) {
             return;
         }
-        if (pendingPublish.getPayload() != null) {
-            pendingPublish.getPayload().release();
-        }
-        ctx.getPendingPublishes().remove(messageId);
         pendingPublish.onPubCompReceived();
     }
 
+    @Override
+    public boolean isRetransmissionNeeded(ClientSessionCtx sessionCtx, int qos) {
+        return qos != MqttQoS.AT_MOST_ONCE.value() && !isRetransmissionNotNeeded(sessionCtx);
+    }
+
     private boolean isRetransmissionNotNeeded(ClientSessionCtx sessionCtx) {
         return !retransmissionEnabled || isMqtt5(sessionCtx);
     }
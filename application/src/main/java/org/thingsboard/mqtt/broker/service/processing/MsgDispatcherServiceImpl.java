@@ -22,6 +22,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.actors.client.service.subscription.SubscriptionService;
 import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.data.ClientInfo;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.data.ClientType;
@@ -29,15 +30,20 @@ import org.thingsboard.mqtt.broker.common.data.MqttQoS;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 import org.thingsboard.mqtt.broker.common.stats.MessagesStats;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.ClientPublishTargetProto;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCacheFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
 import org.thingsboard.mqtt.broker.service.processing.data.MsgSubscriptions;
 import org.thingsboard.mqtt.broker.service.processing.data.PersistentMsgSubscriptions;
+import org.thingsboard.mqtt.broker.service.processing.data.RemoteMsgTargets;
 import org.thingsboard.mqtt.broker.service.processing.downlink.DownLinkProxy;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
@@ -45,11 +51,10 @@ import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
 import org.thingsboard.mqtt.broker.service.subscription.ValueWithTopicFilter;
-import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionGroup;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategy;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategyFactory;
-import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptions;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
@@ -61,12 +66,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
-import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
-import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.INCOMING_MSGS;
+import static org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsType.DROPPED_MSGS;
+import static org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsType.INCOMING_MSGS;
 
 @Service
 @Slf4j
@@ -83,17 +89,25 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
     private final SharedSubscriptionProcessingStrategyFactory sharedSubscriptionProcessingStrategyFactory;
     private final SharedSubscriptionCacheService sharedSubscriptionCacheService;
     private final TbMessageStatsReportClient tbMessageStatsReportClient;
+    private final ServiceInfoProvider serviceInfoProvider;
+    private final PublishMsgEncodingCacheFactory publishMsgEncodingCacheFactory;
 
     private MessagesStats producerStats;
     private PublishMsgProcessingTimerStats publishMsgProcessingTimerStats;
+    private SharedSubscriptionProcessingStrategy sharedSubscriptionProcessingStrategy;
 
     @Value("${mqtt.msg-subscriptions-parallel-processing:false}")
     private boolean processSubscriptionsInParallel;
+    @Value("${queue.basic-downlink-msg.multicast.enabled:false}")
+    private boolean multicastEnabled;
+    @Value("${queue.basic-downlink-msg.multicast.max-clients-per-msg:1000}")
+    private int multicastMaxClientsPerMsg;
 
     @PostConstruct
     public void init() {
         this.producerStats = statsManager.createMsgDispatcherPublishStats();
         this.publishMsgProcessingTimerStats = statsManager.getPublishMsgProcessingTimerStats();
+        this.sharedSubscriptionProcessingStrategy = sharedSubscriptionProcessingStrategyFactory.newInstance();
     }
 
     @Override
@@ -145,21 +159,32 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         List<Subscription> applicationSubscriptions = null;
         List<Subscription> deviceSubscriptions = null;
         long startTime = System.nanoTime();
+        PublishMsgEncodingCache encodingCache = newEncodingCacheIfNeeded(msgSubscriptions);
+        RemoteMsgTargets remoteTargets = multicastEnabled ? new RemoteMsgTargets() : null;
+        SharedPublishMsg sharedPublishMsg = new SharedPublishMsg(publishMsgProto);
+        try {
+            if (!CollectionUtils.isEmpty(msgSubscriptions.getCommonSubscriptions())) {
+                int commonSubsSize = msgSubscriptions.getCommonSubscriptions().size();
+                applicationSubscriptions = initArrayList(commonSubsSize);
+                deviceSubscriptions = initArrayList(commonSubsSize);
+                processSubscriptions(msgSubscriptions.getCommonSubscriptions(), sharedPublishMsg,
+                        applicationSubscriptions, deviceSubscriptions, encodingCache, remoteTargets);
+            }
 
-        if (!CollectionUtils.isEmpty(msgSubscriptions.getCommonSubscriptions())) {
-            int commonSubsSize = msgSubscriptions.getCommonSubscriptions().size();
-            applicationSubscriptions = initArrayList(commonSubsSize);
-            deviceSubscriptions = initArrayList(commonSubsSize);
-            processSubscriptions(msgSubscriptions.getCommonSubscriptions(), publishMsgProto,
-                    applicationSubscriptions, deviceSubscriptions);
-        }
-
-        if (!CollectionUtils.isEmpty(msgSubscriptions.getTargetDeviceSharedSubscriptions())) {
-            int targetDeviceSharedSubsSize = msgSubscriptions.getTargetDeviceSharedSubscriptions().size();
-            applicationSubscriptions = initSubscriptionListIfNull(applicationSubscriptions, targetDeviceSharedSubsSize);
-            deviceSubscriptions = initSubscriptionListIfNull(deviceSubscriptions, targetDeviceSharedSubsSize);
-            processSubscriptions(msgSubscriptions.getTargetDeviceSharedSubscriptions(), publishMsgProto,
-                    applicationSubscriptions, deviceSubscriptions);
+            if (!CollectionUtils.isEmpty(msgSubscriptions.getTargetDeviceSharedSubscriptions())) {
+                int targetDeviceSharedSubsSize = msgSubscriptions.getTargetDeviceSharedSubscriptions().size();
+                applicationSubscriptions = initSubscriptionListIfNull(applicationSubscriptions, targetDeviceSharedSubsSize);
+                deviceSubscriptions = initSubscriptionListIfNull(deviceSubscriptions, targetDeviceSharedSubsSize);
+                processSubscriptions(msgSubscriptions.getTargetDeviceSharedSubscriptions(), sharedPublishMsg,
+                        applicationSubscriptions, deviceSubscriptions, encodingCache, remoteTargets);
+            }
+            if (remoteTargets != null) {
+                sendToRemoteNodes(sharedPublishMsg, remoteTargets);
+            }
+        } finally {
+            if (encodingCache != null) {
+                encodingCache.release();
+            }
         }
 
         if (publishMsgProcessingTimerStats != null) {
@@ -172,44 +197,58 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         );
     }
 
-    private void processSubscriptions(List<Subscription> subscriptions, PublishMsgProto publishMsgProto,
-                                      List<Subscription> applicationSubscriptions, List<Subscription> deviceSubscriptions) {
-        boolean nonPersistentByPubQos = publishMsgProto.getQos() == MqttQoS.AT_MOST_ONCE.value();
+    /*
+        Local subscribers of a msg with many subscribers get the PUBLISH packet encoded once per variant
+     */
+    private PublishMsgEncodingCache newEncodingCacheIfNeeded(MsgSubscriptions msgSubscriptions) {
+        int subscriptionsCount = sizeOf(msgSubscriptions.getCommonSubscriptions()) + sizeOf(msgSubscriptions.getTargetDeviceSharedSubscriptions());
+        return publishMsgEncodingCacheFactory.newInstanceIfNeeded(subscriptionsCount);
+    }
+
+    private int sizeOf(List<Subscription> subscriptions) {
+        return subscriptions == null ? 0 : subscriptions.size();
+    }
+
+    private void processSubscriptions(List<Subscription> subscriptions, SharedPublishMsg publishMsg,
+                                      List<Subscription> applicationSubscriptions, List<Subscription> deviceSubscriptions,
+                                      PublishMsgEncodingCache encodingCache, RemoteMsgTargets remoteTargets) {
+        boolean nonPersistentByPubQos = publishMsg.getPublishMsgProto().getQos() == MqttQoS.AT_MOST_ONCE.value();
         if (nonPersistentByPubQos) {
             if (subscriptions.size() == 1) {
                 Subscription subscription = subscriptions.get(0);
-                deliver(publishMsgProto, subscription);
+                deliver(publishMsg, subscription, encodingCache, remoteTargets);
                 return;
             }
             if (processSubscriptionsInParallel) {
                 subscriptions
                         .parallelStream()
-                        .forEach(subscription -> deliver(publishMsgProto, subscription));
+                        .forEach(subscription -> deliver(publishMsg, subscription, encodingCache, remoteTargets));
             } else {
                 for (Subscription subscription : subscriptions) {
-                    deliver(publishMsgProto, subscription);
+                    deliver(publishMsg, subscription, encodingCache, remoteTargets);
                 }
             }
         } else {
             if (subscriptions.size() == 1) {
                 Subscription subscription = subscriptions.get(0);
-                processSubscription(subscription, publishMsgProto, applicationSubscriptions, deviceSubscriptions);
+                processSubscription(subscription, publishMsg, applicationSubscriptions, deviceSubscriptions, encodingCache, remoteTargets);
                 return;
             }
             if (processSubscriptionsInParallel) {
                 subscriptions
                         .parallelStream()
-                        .forEach(subscription -> processSubscription(subscription, publishMsgProto, applicationSubscriptions, deviceSubscriptions));
+                        .forEach(subscription -> processSubscription(subscription, publishMsg, applicationSubscriptions, deviceSubscriptions, encodingCache, remoteTargets));
             } else {
                 for (Subscription subscription : subscriptions) {
-                    processSubscription(subscription, publishMsgProto, applicationSubscriptions, deviceSubscriptions);
+                    processSubscription(subscription, publishMsg, applicationSubscriptions, deviceSubscriptions, encodingCache, remoteTargets);
                 }
             }
         }
     }
 
-    private void processSubscription(Subscription subscription, PublishMsgProto publishMsgProto,
-                                     List<Subscription> applicationSubscriptions, List<Subscription> deviceSubscriptions) {
+    private void processSubscription(Subscription subscription, SharedPublishMsg publishMsg,
+                                     List<Subscription> applicationSubscriptions, List<Subscription> deviceSubscriptions,
+                                     PublishMsgEncodingCache encodingCache, RemoteMsgTargets remoteTargets) {
         if (isPersistentBySubInfo(subscription)) {
             if (ClientType.APPLICATION == subscription.getClientSessionInfo().getType()) {
                 applicationSubscriptions.add(subscription);
@@ -217,7 +256,7 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
                 deviceSubscriptions.add(subscription);
             }
         } else {
-            deliver(publishMsgProto, subscription);
+            deliver(publishMsg, subscription, encodingCache, remoteTargets);
         }
     }
 
@@ -229,75 +268,73 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return processSubscriptionsInParallel ? Collections.synchronizedList(new ArrayList<>(size)) : new ArrayList<>(size);
     }
 
-    private Set<TopicSharedSubscription> initTopicSharedSubscriptionSetIfNull(Set<TopicSharedSubscription> topicSharedSubscriptions) {
-        return topicSharedSubscriptions == null ? new HashSet<>() : topicSharedSubscriptions;
-    }
-
     MsgSubscriptions getAllSubscriptionsForPubMsg(PublishMsgProto publishMsgProto, String senderClientId) {
-        List<ValueWithTopicFilter<ClientSubscription>> clientSubscriptions =
-                subscriptionService.getSubscriptions(publishMsgProto.getTopicName());
-        int clientSubscriptionsSize = clientSubscriptions.size();
-        if (clientSubscriptionsSize == 0) {
+        MatchedClientSubscriptions matchedSubscriptions = new MatchedClientSubscriptions();
+        subscriptionService.getSubscriptions(publishMsgProto.getTopicName(), matchedSubscriptions);
+        if (matchedSubscriptions.isEmpty()) {
             return null;
         }
 
-        Set<TopicSharedSubscription> topicSharedSubscriptions = null;
-        List<ValueWithTopicFilter<ClientSubscription>> commonClientSubscriptions = new ArrayList<>(clientSubscriptionsSize);
-
-        if (clientSubscriptionsSize == 1) {
-            ValueWithTopicFilter<ClientSubscription> clientSubscription = clientSubscriptions.get(0);
-            topicSharedSubscriptions = addSubscription(clientSubscription, commonClientSubscriptions, topicSharedSubscriptions);
-        } else {
-            for (ValueWithTopicFilter<ClientSubscription> clientSubscription : clientSubscriptions) {
-                topicSharedSubscriptions = addSubscription(clientSubscription, commonClientSubscriptions, topicSharedSubscriptions);
-            }
-        }
-
-        SharedSubscriptions sharedSubscriptions = sharedSubscriptionCacheService.get(topicSharedSubscriptions);
+        List<SharedSubscriptionGroup> sharedSubscriptionGroups = getSharedSubscriptionGroups(matchedSubscriptions.topicSharedSubscriptions);
 
         return new MsgSubscriptions(
-                collectCommonSubscriptions(commonClientSubscriptions, senderClientId),
-                sharedSubscriptions == null ? null : sharedSubscriptions.getApplicationSubscriptions(),
-                getTargetDeviceSharedSubscriptions(sharedSubscriptions, publishMsgProto.getQos())
+                collectCommonSubscriptions(matchedSubscriptions.commonClientSubscriptions, senderClientId),
+                getApplicationSharedSubscriptions(sharedSubscriptionGroups),
+                getTargetDeviceSharedSubscriptions(sharedSubscriptionGroups, publishMsgProto)
         );
     }
 
-    private Set<TopicSharedSubscription> addSubscription(ValueWithTopicFilter<ClientSubscription> clientSubscription,
-                                                         List<ValueWithTopicFilter<ClientSubscription>> commonClientSubscriptions,
-                                                         Set<TopicSharedSubscription> topicSharedSubscriptions) {
-        var topicFilter = clientSubscription.getTopicFilter();
-        var shareName = clientSubscription.getValue().getShareName();
-
-        if (!StringUtils.isEmpty(shareName)) {
-            topicSharedSubscriptions = initTopicSharedSubscriptionSetIfNull(topicSharedSubscriptions);
-            topicSharedSubscriptions.add(new TopicSharedSubscription(topicFilter, shareName));
-        } else {
-            commonClientSubscriptions.add(clientSubscription);
+    private List<SharedSubscriptionGroup> getSharedSubscriptionGroups(Set<TopicSharedSubscription> topicSharedSubscriptions) {
+        if (topicSharedSubscriptions == null) {
+            return null;
         }
-        return topicSharedSubscriptions;
+        List<SharedSubscriptionGroup> sharedSubscriptionGroups = new ArrayList<>(topicSharedSubscriptions.size());
+        for (TopicSharedSubscription topicSharedSubscription : topicSharedSubscriptions) {
+            SharedSubscriptionGroup sharedSubscriptionGroup = sharedSubscriptionCacheService.get(topicSharedSubscription);
+            if (sharedSubscriptionGroup != null) {
+                sharedSubscriptionGroups.add(sharedSubscriptionGroup);
+            }
+        }
+        return sharedSubscriptionGroups;
     }
 
-    private List<Subscription> getTargetDeviceSharedSubscriptions(SharedSubscriptions sharedSubscriptions, int qos) {
-        if (sharedSubscriptions == null || CollectionUtils.isEmpty(sharedSubscriptions.getDeviceSubscriptions())) {
+    private Set<Subscription> getApplicationSharedSubscriptions(List<SharedSubscriptionGroup> sharedSubscriptionGroups) {
+        if (sharedSubscriptionGroups == null) {
             return null;
         }
-        List<SharedSubscription> sharedSubscriptionList = toSharedSubscriptionList(sharedSubscriptions.getDeviceSubscriptions());
-        return collectOneSubscriptionFromEveryDeviceSharedSubscription(sharedSubscriptionList, qos);
+        Set<Subscription> result = null;
+        for (SharedSubscriptionGroup sharedSubscriptionGroup : sharedSubscriptionGroups) {
+            if (!sharedSubscriptionGroup.getApplicationSubscriptions().isEmpty()) {
+                if (result == null) {
+                    result = new HashSet<>();
+                }
+                result.addAll(sharedSubscriptionGroup.getApplicationSubscriptions());
+            }
+        }
+        return result;
     }
 
-    List<SharedSubscription> toSharedSubscriptionList(Set<Subscription> sharedSubscriptions) {
-        return sharedSubscriptions.stream()
-                .collect(Collectors.groupingBy(subscription ->
-                        new TopicSharedSubscription(subscription.getTopicFilter(), subscription.getShareName(), subscription.getQos())))
-                .entrySet().stream()
-                .map(entry -> new SharedSubscription(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+    private List<Subscription> getTargetDeviceSharedSubscriptions(List<SharedSubscriptionGroup> sharedSubscriptionGroups,
+                                                                  PublishMsgProto publishMsgProto) {
+        if (sharedSubscriptionGroups == null) {
+            return null;
+        }
+        List<Subscription> result = null;
+        for (SharedSubscriptionGroup sharedSubscriptionGroup : sharedSubscriptionGroups) {
+            if (sharedSubscriptionGroup.hasDeviceSubscriptions()) {
+                if (result == null) {
+                    result = new ArrayList<>(sharedSubscriptionGroups.size());
+                }
+                result.add(getSubscription(sharedSubscriptionGroup, publishMsgProto));
+            }
+        }
+        return result;
     }
 
     private List<Subscription> collectCommonSubscriptions(
             List<ValueWithTopicFilter<ClientSubscription>> clientSubscriptionWithTopicFilterList, String senderClientId) {
 
-        if (clientSubscriptionWithTopicFilterList.size() == 0) {
+        if (CollectionUtils.isEmpty(clientSubscriptionWithTopicFilterList)) {
             return null;
         }
 
@@ -309,48 +346,27 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return msgSubscriptions;
     }
 
-    private List<Subscription> collectOneSubscriptionFromEveryDeviceSharedSubscription(List<SharedSubscription> sharedSubscriptions, int qos) {
-        List<Subscription> result = new ArrayList<>(sharedSubscriptions.size());
-        for (SharedSubscription sharedSubscription : sharedSubscriptions) {
-            result.add(getSubscription(sharedSubscription, qos));
+    private Subscription getSubscription(SharedSubscriptionGroup sharedSubscriptionGroup, PublishMsgProto publishMsgProto) {
+        Subscription subscription = sharedSubscriptionProcessingStrategy.analyze(sharedSubscriptionGroup, publishMsgProto);
+        if (subscription == null) {
+            log.info("[{}] No active subscription found for shared subscription - all are persisted and disconnected", sharedSubscriptionGroup.getTopicSharedSubscription());
+            return createDummySubscription(sharedSubscriptionGroup.getTopicSharedSubscription(), publishMsgProto.getQos());
         }
-        return result;
-    }
-
-    private Subscription getSubscription(SharedSubscription sharedSubscription, int qos) {
-        Subscription anyActive = findAnyConnectedSubscription(sharedSubscription.getSubscriptions());
-        if (anyActive == null) {
-            log.info("[{}] No active subscription found for shared subscription - all are persisted and disconnected", sharedSubscription.getTopicSharedSubscription());
-            return createDummySubscription(sharedSubscription, qos);
-        } else {
-            SharedSubscriptionProcessingStrategy strategy = sharedSubscriptionProcessingStrategyFactory.newInstance();
-            return strategy.analyze(sharedSubscription);
-        }
-    }
-
-    Subscription findAnyConnectedSubscription(List<Subscription> subscriptions) {
-        if (CollectionUtils.isEmpty(subscriptions)) {
-            return null;
-        }
-        return subscriptions
-                .stream()
-                .filter(subscription -> subscription.getClientSessionInfo().isConnected())
-                .findAny()
-                .orElse(null);
+        return subscription;
     }
 
-    private Subscription createDummySubscription(SharedSubscription sharedSubscription, int qos) {
+    private Subscription createDummySubscription(TopicSharedSubscription topicSharedSubscription, int qos) {
         return new Subscription(
-                sharedSubscription.getTopicSharedSubscription().getTopic(),
+                topicSharedSubscription.getTopic(),
                 qos,
-                createDummyClientSession(sharedSubscription),
-                sharedSubscription.getTopicSharedSubscription().getShareName(),
+                createDummyClientSession(topicSharedSubscription),
+                topicSharedSubscription.getShareName(),
                 SubscriptionOptions.newInstance()
         );
     }
 
-    private ClientSessionInfo createDummyClientSession(SharedSubscription sharedSubscription) {
-        ClientInfo clientInfo = ClientSessionInfoFactory.getClientInfo(sharedSubscription.getTopicSharedSubscription().getKey());
+    private ClientSessionInfo createDummyClientSession(TopicSharedSubscription topicSharedSubscription) {
+        ClientInfo clientInfo = ClientSessionInfoFactory.getClientInfo(topicSharedSubscription.getKey());
         return ClientSessionInfo.builder()
                 .connected(false)
                 .clientId(clientInfo.getClientId())
@@ -455,23 +471,76 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return subscription.getClientSessionInfo().isPersistent() && subscription.getQos() != MqttQoS.AT_MOST_ONCE.value();
     }
 
-    private void sendToNode(PublishMsgProto publishMsgProto, Subscription subscription) {
+    /*
+        The subscriber's QoS and retain flag are passed along with the shared msg, the proto is not rebuilt for the subscribers of this node
+     */
+    private void deliver(SharedPublishMsg publishMsg, Subscription subscription, PublishMsgEncodingCache encodingCache,
+                         RemoteMsgTargets remoteTargets) {
+        PublishMsgProto publishMsgProto = publishMsg.getPublishMsgProto();
         var targetServiceId = subscription.getClientSessionInfo().getServiceId();
         var clientId = subscription.getClientSessionInfo().getClientId();
-        downLinkProxy.sendBasicMsg(targetServiceId, clientId, publishMsgProto);
-    }
-
-    private PublishMsgProto createBasicPublishMsg(Subscription subscription, PublishMsgProto publishMsgProto) {
         var minQos = Math.min(subscription.getQos(), publishMsgProto.getQos());
         var retain = subscription.getOptions().isRetain(publishMsgProto);
-        return publishMsgProto.toBuilder()
-                .setQos(minQos)
-                .setRetain(retain)
-                .build();
+        if (remoteTargets != null && !serviceInfoProvider.getServiceId().equals(targetServiceId)) {
+            remoteTargets.add(targetServiceId, clientId, minQos, retain);
+            return;
+        }
+        downLinkProxy.sendBasicMsg(targetServiceId, clientId, publishMsg, minQos, retain, encodingCache);
     }
 
-    private void deliver(PublishMsgProto publishMsgProto, Subscription subscription) {
-        PublishMsgProto publishMsg = createBasicPublishMsg(subscription, publishMsgProto);
-        sendToNode(publishMsg, subscription);
+    /*
+        The subscribers connected to the same node get one record with the payload instead of a record per subscriber
+     */
+    private void sendToRemoteNodes(SharedPublishMsg publishMsg, RemoteMsgTargets remoteTargets) {
+        PublishMsgProto publishMsgProto = publishMsg.getPublishMsgProto();
+        for (Map.Entry<String, Queue<ClientPublishTargetProto>> entry : remoteTargets.getTargetsByServiceId().entrySet()) {
+            String targetServiceId = entry.getKey();
+            Queue<ClientPublishTargetProto> targets = entry.getValue();
+            if (targets.size() == 1) {
+                ClientPublishTargetProto target = targets.peek();
+                downLinkProxy.sendBasicMsg(targetServiceId, target.getClientId(), publishMsg.getPublishMsgProto(target.getQos(), target.getRetain()));
+                continue;
+            }
+            List<ClientPublishTargetProto> targetsPack = new ArrayList<>(Math.min(targets.size(), multicastMaxClientsPerMsg));
+            for (ClientPublishTargetProto target : targets) {
+                targetsPack.add(target);
+                if (targetsPack.size() == multicastMaxClientsPerMsg) {
+                    downLinkProxy.sendBasicMsg(targetServiceId, publishMsgProto, targetsPack);
+                    targetsPack = new ArrayList<>(multicastMaxClientsPerMsg);
+                }
+            }
+            if (!targetsPack.isEmpty()) {
+                downLinkProxy.sendBasicMsg(targetServiceId, publishMsgProto, targetsPack);
+            }
+        }
+    }
+
+    /*
+        Sorts the subscriptions as the trie matches them, so the lookup doesn't build the intermediate list of all matches
+     */
+    private static class MatchedClientSubscriptions implements Consumer<ValueWithTopicFilter<ClientSubscription>> {
+
+        private List<ValueWithTopicFilter<ClientSubscription>> commonClientSubscriptions;
+        private Set<TopicSharedSubscription> topicSharedSubscriptions;
+
+        @Override
+        public void accept(ValueWithTopicFilter<ClientSubscription> clientSubscription) {
+            var shareName = clientSubscription.getValue().getShareName();
+            if (!StringUtils.isEmpty(shareName)) {
+                if (topicSharedSubscriptions == null) {
+                    topicSharedSubscriptions = new HashSet<>();
+                }
+                topicSharedSubscriptions.add(new TopicSharedSubscription(clientSubscription.getTopicFilter(), shareName));
+            } else {
+                if (commonClientSubscriptions == null) {
+                    commonClientSubscriptions = new ArrayList<>();
+                }
+                commonClientSubscriptions.add(clientSubscription);
+            }
+        }
+
+        boolean isEmpty() {
+            return commonClientSubscriptions == null && topicSharedSubscriptions == null;
+        }
     }
 }
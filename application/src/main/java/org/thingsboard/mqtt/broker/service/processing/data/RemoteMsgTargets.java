@@ -0,0 +1,45 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.data;
+
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+    Subscribers of one msg that are connected to the other nodes, grouped by the node.
+    Subscriptions could be processed in parallel, so the targets are added concurrently
+ */
+public class RemoteMsgTargets {
+
+    private final Map<String, Queue<QueueProtos.ClientPublishTargetProto>> targetsByServiceId = new ConcurrentHashMap<>();
+
+    public void add(String serviceId, String clientId, int qos, boolean retain) {
+        targetsByServiceId.computeIfAbsent(serviceId, id -> new ConcurrentLinkedQueue<>())
+                .add(QueueProtos.ClientPublishTargetProto.newBuilder()
+                        .setClientId(clientId)
+                        .setQos(qos)
+                        .setRetain(retain)
+                        .build());
+    }
+
+    public Map<String, Queue<QueueProtos.ClientPublishTargetProto>> getTargetsByServiceId() {
+        return targetsByServiceId;
+    }
+}
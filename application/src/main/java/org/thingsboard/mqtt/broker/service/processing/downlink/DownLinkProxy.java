@@ -16,9 +16,24 @@
 package org.thingsboard.mqtt.broker.service.processing.downlink;
 
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
+
+import java.util.Collection;
 
 public interface DownLinkProxy {
     void sendBasicMsg(String targetServiceId, String clientId, QueueProtos.PublishMsgProto msg);
 
+    /*
+        'qos' and 'retain' override the ones of the msg, the msg is rebuilt only when it goes to the other node
+     */
+    void sendBasicMsg(String targetServiceId, String clientId, SharedPublishMsg msg, int qos, boolean retain,
+                      PublishMsgEncodingCache encodingCache);
+
+    /*
+        Sends one msg to many clients of the target node, every target overrides QoS and retain flag of the msg
+     */
+    void sendBasicMsg(String targetServiceId, QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets);
+
     void sendPersistentMsg(String targetServiceId, String clientId, QueueProtos.DevicePublishMsgProto msg);
 }
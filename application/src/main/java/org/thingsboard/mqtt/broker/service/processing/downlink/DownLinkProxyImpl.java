@@ -20,9 +20,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
 import org.thingsboard.mqtt.broker.service.processing.downlink.basic.BasicDownLinkProcessor;
 import org.thingsboard.mqtt.broker.service.processing.downlink.persistent.PersistentDownLinkProcessor;
 
+import java.util.Collection;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -42,6 +46,25 @@ public class DownLinkProxyImpl implements DownLinkProxy {
         }
     }
 
+    @Override
+    public void sendBasicMsg(String targetServiceId, String clientId, SharedPublishMsg msg, int qos, boolean retain,
+                             PublishMsgEncodingCache encodingCache) {
+        if (belongsToThisNode(targetServiceId)) {
+            basicDownLinkProcessor.process(clientId, msg, qos, retain, encodingCache);
+        } else {
+            queuePublisher.publishBasicMsg(targetServiceId, clientId, msg.getPublishMsgProto(qos, retain));
+        }
+    }
+
+    @Override
+    public void sendBasicMsg(String targetServiceId, QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets) {
+        if (belongsToThisNode(targetServiceId)) {
+            basicDownLinkProcessor.process(msg, targets);
+        } else {
+            queuePublisher.publishBasicMsg(targetServiceId, msg, targets);
+        }
+    }
+
     @Override
     public void sendPersistentMsg(String targetServiceId, String clientId, QueueProtos.DevicePublishMsgProto msg) {
         if (belongsToThisNode(targetServiceId)) {
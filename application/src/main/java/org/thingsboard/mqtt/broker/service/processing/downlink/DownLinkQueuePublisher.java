@@ -17,8 +17,12 @@ package org.thingsboard.mqtt.broker.service.processing.downlink;
 
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 
+import java.util.Collection;
+
 interface DownLinkQueuePublisher {
     void publishBasicMsg(String targetServiceId, String clientId, QueueProtos.PublishMsgProto msg);
 
+    void publishBasicMsg(String targetServiceId, QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets);
+
     void publishPersistentMsg(String targetServiceId, String clientId, QueueProtos.DevicePublishMsgProto msg);
 }
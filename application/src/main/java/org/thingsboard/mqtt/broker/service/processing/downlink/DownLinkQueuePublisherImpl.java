@@ -30,6 +30,7 @@ import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.Collection;
 
 @Slf4j
 @Service
@@ -87,6 +88,32 @@ class DownLinkQueuePublisherImpl implements DownLinkQueuePublisher {
         );
     }
 
+    @Override
+    public void publishBasicMsg(String targetServiceId, QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets) {
+        String topic = downLinkPublisherHelper.getBasicDownLinkServiceTopic(targetServiceId);
+        QueueProtos.ClientPublishMsgProto clientPublishMsgProto = QueueProtos.ClientPublishMsgProto.newBuilder()
+                .setPublishMsg(msg)
+                .addAllTargets(targets)
+                .build();
+        int targetsCount = targets.size();
+        basicPublisher.send(new TbProtoQueueMsg<>(msg.getTopicName(), clientPublishMsgProto),
+                new TbQueueCallback() {
+                    @Override
+                    public void onSuccess(TbQueueMsgMetadata metadata) {
+                        if (log.isTraceEnabled()) {
+                            log.trace("Successfully published BASIC msg for {} clients to {} service.", targetsCount, targetServiceId);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        log.warn("Failed to publish BASIC msg for {} clients to {} service.", targetsCount, targetServiceId, t);
+                    }
+                },
+                topic
+        );
+    }
+
     @Override
     public void publishPersistentMsg(String targetServiceId, String clientId, QueueProtos.DevicePublishMsgProto msg) {
         String topic = downLinkPublisherHelper.getPersistentDownLinkServiceTopic(targetServiceId);
@@ -88,7 +88,11 @@ public class BasicDownLinkConsumerImpl implements BasicDownLinkConsumer {
 
                     for (TbProtoQueueMsg<QueueProtos.ClientPublishMsgProto> msg : msgs) {
                         QueueProtos.ClientPublishMsgProto clientPublishMsgProto = msg.getValue();
-                        processor.process(clientPublishMsgProto.getClientId(), clientPublishMsgProto.getPublishMsg());
+                        if (clientPublishMsgProto.getTargetsCount() > 0) {
+                            processor.process(clientPublishMsgProto.getPublishMsg(), clientPublishMsgProto.getTargetsList());
+                        } else {
+                            processor.process(clientPublishMsgProto.getClientId(), clientPublishMsgProto.getPublishMsg());
+                        }
                     }
                     consumer.commitSync();
                 } catch (Exception e) {
@@ -16,7 +16,22 @@
 package org.thingsboard.mqtt.broker.service.processing.downlink.basic;
 
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
+
+import java.util.Collection;
 
 public interface BasicDownLinkProcessor {
     void process(String clientId, QueueProtos.PublishMsgProto msg);
+
+    /*
+        'qos' and 'retain' override the ones of the msg.
+        'encodingCache' is shared by all subscribers of the msg, may be null
+     */
+    void process(String clientId, SharedPublishMsg msg, int qos, boolean retain, PublishMsgEncodingCache encodingCache);
+
+    /*
+        Delivers the msg to every target with the QoS and retain flag of the target
+     */
+    void process(QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets);
 }
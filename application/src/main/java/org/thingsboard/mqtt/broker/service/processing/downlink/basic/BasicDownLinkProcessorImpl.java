@@ -19,17 +19,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
-import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCacheFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
 import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
 
+import java.util.Collection;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -39,9 +43,15 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
     private final ClientMqttActorManager clientMqttActorManager;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
     private final ClientLogger clientLogger;
+    private final PublishMsgEncodingCacheFactory publishMsgEncodingCacheFactory;
 
     @Override
     public void process(String clientId, QueueProtos.PublishMsgProto msg) {
+        process(clientId, new SharedPublishMsg(msg), msg.getQos(), msg.getRetain(), null);
+    }
+
+    @Override
+    public void process(String clientId, SharedPublishMsg msg, int qos, boolean retain, PublishMsgEncodingCache encodingCache) {
         ClientSessionCtx clientSessionCtx = clientSessionCtxService.getClientSessionCtx(clientId);
         if (clientSessionCtx == null) {
             if (log.isTraceEnabled()) {
@@ -50,8 +60,10 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
             return;
         }
         try {
-            PublishMsg publishMsg = getPublishMsg(clientSessionCtx, msg);
-            publishMsgDeliveryService.sendPublishMsgToClient(clientSessionCtx, publishMsg);
+            if (encodingCache == null || !publishMsgDeliveryService.sendEncodedPublishMsgToClient(clientSessionCtx, msg, qos, retain, encodingCache)) {
+                PublishMsg publishMsg = msg.toPublishMsg(clientSessionCtx.getMsgIdSeq().nextMsgId(), qos, retain);
+                publishMsgDeliveryService.sendPublishMsgToClient(clientSessionCtx, publishMsg);
+            }
             clientLogger.logEvent(clientId, this.getClass(), "Delivered msg to basic client");
         } catch (Exception e) {
             log.warn("[{}] Failed to deliver msg to client.", clientId, e);
@@ -59,6 +71,21 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
         }
     }
 
+    @Override
+    public void process(QueueProtos.PublishMsgProto msg, Collection<QueueProtos.ClientPublishTargetProto> targets) {
+        PublishMsgEncodingCache encodingCache = publishMsgEncodingCacheFactory.newInstanceIfNeeded(targets.size());
+        SharedPublishMsg sharedMsg = new SharedPublishMsg(msg);
+        try {
+            for (QueueProtos.ClientPublishTargetProto target : targets) {
+                process(target.getClientId(), sharedMsg, target.getQos(), target.getRetain(), encodingCache);
+            }
+        } finally {
+            if (encodingCache != null) {
+                encodingCache.release();
+            }
+        }
+    }
+
     private void disconnect(String clientId, ClientSessionCtx clientSessionCtx) {
         clientMqttActorManager.disconnect(
                 clientId,
@@ -67,16 +94,4 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
                         new DisconnectReason(DisconnectReasonType.ON_ERROR, "Failed to deliver PUBLISH msg")));
     }
 
-    private PublishMsg getPublishMsg(ClientSessionCtx clientSessionCtx, QueueProtos.PublishMsgProto msg) {
-        return PublishMsg.builder()
-                .packetId(clientSessionCtx.getMsgIdSeq().nextMsgId())
-                .topicName(msg.getTopicName())
-                .payload(msg.getPayload().toByteArray())
-                .qosLevel(msg.getQos())
-                .isRetained(msg.getRetain())
-                .isDup(false)
-                .properties(ProtoConverter.createMqttProperties(msg.getUserPropertiesList()))
-                .build();
-    }
-
 }
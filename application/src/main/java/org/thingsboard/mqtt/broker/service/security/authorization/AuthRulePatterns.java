@@ -15,20 +15,29 @@
  */
 package org.thingsboard.mqtt.broker.service.security.authorization;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 
 import java.util.List;
 import java.util.regex.Pattern;
 
-@AllArgsConstructor
 @Getter
 @ToString
 public class AuthRulePatterns {
 
     private final List<Pattern> pubPatterns;
     private final List<Pattern> subPatterns;
+    @ToString.Exclude
+    private final TopicAuthMatcher pubMatcher;
+    @ToString.Exclude
+    private final TopicAuthMatcher subMatcher;
+
+    public AuthRulePatterns(List<Pattern> pubPatterns, List<Pattern> subPatterns) {
+        this.pubPatterns = pubPatterns;
+        this.subPatterns = subPatterns;
+        this.pubMatcher = new TopicAuthMatcher(pubPatterns);
+        this.subMatcher = new TopicAuthMatcher(subPatterns);
+    }
 
     public static AuthRulePatterns newInstance(List<Pattern> patterns) {
         return new AuthRulePatterns(patterns, patterns);
@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.security.authorization;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/*
+    Matches a topic against all authorization rules of one credentials at once.
+    Rules without regex special characters are looked up in a set, 'prefix.*' rules are checked with startsWith
+    and the rest are combined into a single alternation, so the cost does not grow with the number of plain rules
+ */
+public class TopicAuthMatcher {
+
+    private static final String REGEX_SPECIAL_CHARS = "\\^$.|?*+()[]{}";
+    private static final String ANY_SUFFIX = ".*";
+
+    private final Set<String> topics = new HashSet<>();
+    private final List<String> topicPrefixes = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    public TopicAuthMatcher(List<Pattern> authRulePatterns) {
+        List<Pattern> regexPatterns = new ArrayList<>();
+        for (Pattern pattern : authRulePatterns) {
+            String regex = pattern.pattern();
+            if (pattern.flags() != 0) {
+                regexPatterns.add(pattern);
+            } else if (isLiteral(regex)) {
+                topics.add(regex);
+            } else if (regex.endsWith(ANY_SUFFIX) && isLiteral(regex.substring(0, regex.length() - ANY_SUFFIX.length()))) {
+                topicPrefixes.add(regex.substring(0, regex.length() - ANY_SUFFIX.length()));
+            } else {
+                regexPatterns.add(pattern);
+            }
+        }
+        patterns.addAll(combine(regexPatterns));
+    }
+
+    /*
+        Returns true when the result can not be found without evaluating regular expressions
+     */
+    public boolean hasPatterns() {
+        return !patterns.isEmpty();
+    }
+
+    public boolean matches(String topic) {
+        if (topics.contains(topic)) {
+            return true;
+        }
+        for (String topicPrefix : topicPrefixes) {
+            // '.' does not match line terminators
+            if (topic.startsWith(topicPrefix) && !containsLineTerminator(topic, topicPrefix.length())) {
+                return true;
+            }
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(topic).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Pattern> combine(List<Pattern> regexPatterns) {
+        if (regexPatterns.size() < 2) {
+            return regexPatterns;
+        }
+        List<Pattern> separatePatterns = new ArrayList<>();
+        List<Pattern> combinedPatterns = new ArrayList<>();
+        for (Pattern pattern : regexPatterns) {
+            // the group numbers change in the alternation, so the rules with back references are kept as is
+            if (pattern.flags() != 0 || hasBackReference(pattern.pattern())) {
+                separatePatterns.add(pattern);
+            } else {
+                combinedPatterns.add(pattern);
+            }
+        }
+        if (combinedPatterns.size() > 1) {
+            try {
+                String combinedRegex = combinedPatterns.stream()
+                        .map(pattern -> "(?:" + pattern.pattern() + ")")
+                        .collect(Collectors.joining("|"));
+                separatePatterns.add(Pattern.compile(combinedRegex));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same group name is used in several rules
+                separatePatterns.addAll(combinedPatterns);
+            }
+        } else {
+            separatePatterns.addAll(combinedPatterns);
+        }
+        return separatePatterns;
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_SPECIAL_CHARS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasBackReference(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                char next = regex.charAt(i + 1);
+                if (Character.isDigit(next) || next == 'k') {
+                    return true;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsLineTerminator(String topic, int fromIndex) {
+        for (int i = fromIndex; i < topic.length(); i++) {
+            char c = topic.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
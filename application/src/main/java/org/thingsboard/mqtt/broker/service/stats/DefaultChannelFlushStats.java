@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.stats;
+
+import org.thingsboard.mqtt.broker.common.stats.StatsCounter;
+import org.thingsboard.mqtt.broker.common.stats.StatsFactory;
+
+import java.util.List;
+
+import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.FLUSHED_MSGS;
+import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.FLUSHES;
+
+public class DefaultChannelFlushStats implements ChannelFlushStats {
+
+    private final List<StatsCounter> counters;
+
+    private final StatsCounter flushesCounter;
+    private final StatsCounter flushedMsgsCounter;
+
+    public DefaultChannelFlushStats(StatsFactory statsFactory) {
+        String statsKey = StatsType.CHANNEL_FLUSH.getPrintName();
+        this.flushesCounter = statsFactory.createStatsCounter(statsKey, FLUSHES);
+        this.flushedMsgsCounter = statsFactory.createStatsCounter(statsKey, FLUSHED_MSGS);
+
+        counters = List.of(flushesCounter, flushedMsgsCounter);
+    }
+
+    @Override
+    public void logFlush(int flushedMsgsCount) {
+        flushesCounter.increment();
+        flushedMsgsCounter.add(flushedMsgsCount);
+    }
+
+    @Override
+    public double getAvgMsgsPerFlush() {
+        int flushes = flushesCounter.get();
+        return flushes == 0 ? 0 : (double) flushedMsgsCounter.get() / flushes;
+    }
+
+    @Override
+    public List<StatsCounter> getStatsCounters() {
+        return counters;
+    }
+
+    @Override
+    public void reset() {
+        counters.forEach(StatsCounter::clear);
+    }
+}
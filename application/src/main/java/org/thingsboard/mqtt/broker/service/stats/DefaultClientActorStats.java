@@ -21,16 +21,19 @@ import org.thingsboard.mqtt.broker.actors.shared.TimedMsg;
 import org.thingsboard.mqtt.broker.common.stats.ResettableTimer;
 import org.thingsboard.mqtt.broker.common.stats.StatsFactory;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class DefaultClientActorStats implements ClientActorStats {
     private static final String MSG_TYPE_TAG = "msgType";
     private final String statsKey = StatsType.CLIENT_ACTOR.getPrintName();
 
-    private final ConcurrentMap<String, ResettableTimer> timers = new ConcurrentHashMap<>();
+    private static final MsgType[] MSG_TYPES = MsgType.values();
+
+    // indexed by the ordinal of the msg type, the timers are created on the first msg of the type
+    private final AtomicReferenceArray<ResettableTimer> timers = new AtomicReferenceArray<>(MSG_TYPES.length);
     private final ResettableTimer queueTimer;
 
     private final StatsFactory statsFactory;
@@ -42,10 +45,19 @@ public class DefaultClientActorStats implements ClientActorStats {
 
     @Override
     public void logMsgProcessingTime(MsgType msgType, long startTime, TimeUnit unit) {
-        String msgTypeStr = msgType.toString();
         long amount = System.nanoTime() - startTime;
-        timers.computeIfAbsent(msgTypeStr, s -> new ResettableTimer(statsFactory.createTimer(statsKey + ".processing.time", MSG_TYPE_TAG, msgTypeStr)))
-                .logTime(amount, unit);
+        getOrCreateTimer(msgType).logTime(amount, unit);
+    }
+
+    private ResettableTimer getOrCreateTimer(MsgType msgType) {
+        int index = msgType.ordinal();
+        ResettableTimer timer = timers.get(index);
+        if (timer == null) {
+            // the micrometer registry returns the same timer for the same id, so the timer that lost the race is simply dropped
+            ResettableTimer newTimer = new ResettableTimer(statsFactory.createTimer(statsKey + ".processing.time", MSG_TYPE_TAG, msgType.toString()));
+            timer = timers.compareAndSet(index, null, newTimer) ? newTimer : timers.get(index);
+        }
+        return timer;
     }
 
     @Override
@@ -56,7 +68,14 @@ public class DefaultClientActorStats implements ClientActorStats {
 
     @Override
     public Map<String, ResettableTimer> getTimers() {
-        return timers;
+        Map<String, ResettableTimer> timersMap = new LinkedHashMap<>();
+        for (int i = 0; i < MSG_TYPES.length; i++) {
+            ResettableTimer timer = timers.get(i);
+            if (timer != null) {
+                timersMap.put(MSG_TYPES[i].toString(), timer);
+            }
+        }
+        return timersMap;
     }
 
     @Override
@@ -76,7 +95,12 @@ public class DefaultClientActorStats implements ClientActorStats {
 
     @Override
     public void reset() {
-        timers.forEach((msgType, timer) -> timer.reset());
+        for (int i = 0; i < MSG_TYPES.length; i++) {
+            ResettableTimer timer = timers.get(i);
+            if (timer != null) {
+                timer.reset();
+            }
+        }
         queueTimer.reset();
     }
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.stats;
+
+import org.thingsboard.mqtt.broker.common.stats.StatsCounter;
+import org.thingsboard.mqtt.broker.common.stats.StatsFactory;
+
+import java.util.List;
+
+import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.CACHE_HITS;
+import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.CACHE_MISSES;
+import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.INVALIDATED_TOPICS;
+
+public class DefaultSubscriptionLookupCacheStats implements SubscriptionLookupCacheStats {
+
+    private final List<StatsCounter> counters;
+
+    private final StatsCounter hitsCounter;
+    private final StatsCounter missesCounter;
+    private final StatsCounter invalidatedTopicsCounter;
+
+    public DefaultSubscriptionLookupCacheStats(StatsFactory statsFactory) {
+        String statsKey = StatsType.SUBSCRIPTION_LOOKUP_CACHE.getPrintName();
+        this.hitsCounter = statsFactory.createStatsCounter(statsKey, CACHE_HITS);
+        this.missesCounter = statsFactory.createStatsCounter(statsKey, CACHE_MISSES);
+        this.invalidatedTopicsCounter = statsFactory.createStatsCounter(statsKey, INVALIDATED_TOPICS);
+
+        counters = List.of(hitsCounter, missesCounter, invalidatedTopicsCounter);
+    }
+
+    @Override
+    public void logHit() {
+        hitsCounter.increment();
+    }
+
+    @Override
+    public void logMiss() {
+        missesCounter.increment();
+    }
+
+    @Override
+    public void logInvalidated(int invalidatedTopicsCount) {
+        invalidatedTopicsCounter.add(invalidatedTopicsCount);
+    }
+
+    @Override
+    public double getHitRatio() {
+        int hits = hitsCounter.get();
+        int total = hits + missesCounter.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public List<StatsCounter> getStatsCounters() {
+        return counters;
+    }
+
+    @Override
+    public void reset() {
+        counters.forEach(StatsCounter::clear);
+    }
+}
@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.service.stats;
 
 import org.thingsboard.mqtt.broker.common.stats.MessagesStats;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.service.stats.timer.AuthenticationTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -46,6 +47,14 @@ public interface StatsManager {
 
     RetainedMsgConsumerStats getRetainedMsgConsumerStats();
 
+    SubscriptionLookupCacheStats getSubscriptionLookupCacheStats();
+
+    PublishAuthCacheStats getPublishAuthCacheStats();
+
+    RetransmissionStats getRetransmissionStats();
+
+    ChannelFlushStats getChannelFlushStats();
+
     void clearApplicationProcessorStats(String clientId);
 
     void clearSharedApplicationProcessorStats(String clientId);
@@ -60,6 +69,22 @@ public interface StatsManager {
 
     AtomicLong createRetainMsgTrieNodesCounter();
 
+    AtomicLong createSubscriptionTrieReclaimedNodesCounter();
+
+    AtomicLong createRetainMsgTrieReclaimedNodesCounter();
+
+    AtomicInteger createPendingRetransmissionsCounter();
+
+    AtomicInteger createPendingPublishesCounter();
+
+    AtomicInteger createPausedChannelsCounter();
+
+    AtomicInteger createPendingAuthsCounter();
+
+    AtomicInteger createPendingDeviceMsgsCounter();
+
+    AtomicLong createCollapsedDeviceMsgsCounter();
+
     void registerLastWillStats(Map<?, ?> lastWillMsgsMap);
 
     void registerActiveSessionsStats(Map<?, ?> sessionsMap);
@@ -70,6 +95,10 @@ public interface StatsManager {
 
     void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap);
 
+    void registerSubscriptionLookupCacheStats(Map<?, ?> cachedTopicsMap);
+
+    void registerPublishAuthCacheStats(Map<?, ?> cachedVerdictsMap);
+
     void registerActiveApplicationProcessorsStats(Map<?, ?> processingFuturesMap);
 
     void registerActiveSharedApplicationProcessorsStats(Map<?, ?> processingFuturesMap);
@@ -82,5 +111,7 @@ public interface StatsManager {
 
     DeliveryTimerStats getDeliveryTimerStats();
 
+    AuthenticationTimerStats getAuthenticationTimerStats();
+
     ClientActorStats getClientActorStats();
 }
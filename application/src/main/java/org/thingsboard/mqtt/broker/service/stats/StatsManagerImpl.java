@@ -26,6 +26,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.actors.ActorStatsManager;
+import org.thingsboard.mqtt.broker.actors.TbActorMailbox;
 import org.thingsboard.mqtt.broker.common.stats.MessagesStats;
 import org.thingsboard.mqtt.broker.common.stats.ResettableTimer;
 import org.thingsboard.mqtt.broker.common.stats.StatsConstantNames;
@@ -36,6 +37,7 @@ import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
 import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.Timer;
+import org.thingsboard.mqtt.broker.service.stats.timer.AuthenticationTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -45,6 +47,7 @@ import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscr
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -75,6 +78,10 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
 
     private ClientSubscriptionConsumerStats managedClientSubscriptionConsumerStats;
     private RetainedMsgConsumerStats retainedMsgConsumerStats;
+    private SubscriptionLookupCacheStats subscriptionLookupCacheStats;
+    private PublishAuthCacheStats publishAuthCacheStats;
+    private RetransmissionStats retransmissionStats;
+    private ChannelFlushStats channelFlushStats;
     private ClientActorStats clientActorStats;
 
     @Value("${stats.application-processor.enabled}")
@@ -87,6 +94,10 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         this.timerStats = new TimerStats(statsFactory);
         this.managedClientSubscriptionConsumerStats = new DefaultClientSubscriptionConsumerStats(statsFactory);
         this.retainedMsgConsumerStats = new DefaultRetainedMsgConsumerStats(statsFactory);
+        this.subscriptionLookupCacheStats = new DefaultSubscriptionLookupCacheStats(statsFactory);
+        this.publishAuthCacheStats = new DefaultPublishAuthCacheStats(statsFactory);
+        this.retransmissionStats = new DefaultRetransmissionStats(statsFactory);
+        this.channelFlushStats = new DefaultChannelFlushStats(statsFactory);
         this.clientActorStats = new DefaultClientActorStats(statsFactory);
     }
 
@@ -183,6 +194,26 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return retainedMsgConsumerStats;
     }
 
+    @Override
+    public SubscriptionLookupCacheStats getSubscriptionLookupCacheStats() {
+        return subscriptionLookupCacheStats;
+    }
+
+    @Override
+    public PublishAuthCacheStats getPublishAuthCacheStats() {
+        return publishAuthCacheStats;
+    }
+
+    @Override
+    public RetransmissionStats getRetransmissionStats() {
+        return retransmissionStats;
+    }
+
+    @Override
+    public ChannelFlushStats getChannelFlushStats() {
+        return channelFlushStats;
+    }
+
     @Override
     public void clearApplicationProcessorStats(String clientId) {
         if (log.isTraceEnabled()) {
@@ -296,6 +327,24 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         gauges.add(new Gauge(StatsType.RETAINED_MESSAGES.getPrintName(), retainedMessagesMap::size));
     }
 
+    @Override
+    public void registerSubscriptionLookupCacheStats(Map<?, ?> cachedTopicsMap) {
+        if (log.isTraceEnabled()) {
+            log.trace("Registering SubscriptionLookupCacheStats.");
+        }
+        statsFactory.createGauge(StatsType.SUBSCRIPTION_LOOKUP_CACHE_SIZE.getPrintName(), cachedTopicsMap, Map::size);
+        gauges.add(new Gauge(StatsType.SUBSCRIPTION_LOOKUP_CACHE_SIZE.getPrintName(), cachedTopicsMap::size));
+    }
+
+    @Override
+    public void registerPublishAuthCacheStats(Map<?, ?> cachedVerdictsMap) {
+        if (log.isTraceEnabled()) {
+            log.trace("Registering PublishAuthCacheStats.");
+        }
+        statsFactory.createGauge(StatsType.PUBLISH_AUTH_CACHE_SIZE.getPrintName(), cachedVerdictsMap, Map::size);
+        gauges.add(new Gauge(StatsType.PUBLISH_AUTH_CACHE_SIZE.getPrintName(), cachedVerdictsMap::size));
+    }
+
     @Override
     public void registerActiveApplicationProcessorsStats(Map<?, ?> processingFuturesMap) {
         if (log.isTraceEnabled()) {
@@ -323,6 +372,43 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         gauges.add(new Gauge(StatsType.RUNNING_ACTORS.getPrintName(), actorsMap::size));
     }
 
+    @Override
+    public void registerActorMailboxesStats(Collection<TbActorMailbox> mailboxes) {
+        if (log.isTraceEnabled()) {
+            log.trace("Registering ActorMailboxesStats.");
+        }
+        statsFactory.createGauge(StatsType.ACTOR_MAILBOX_MSGS.getPrintName(), mailboxes, StatsManagerImpl::getTotalMailboxMsgs);
+        gauges.add(new Gauge(StatsType.ACTOR_MAILBOX_MSGS.getPrintName(), () -> getTotalMailboxMsgs(mailboxes)));
+        statsFactory.createGauge(StatsType.ACTOR_MAILBOX_MAX_MSGS.getPrintName(), mailboxes, StatsManagerImpl::getMaxMailboxMsgs);
+        gauges.add(new Gauge(StatsType.ACTOR_MAILBOX_MAX_MSGS.getPrintName(), () -> getMaxMailboxMsgs(mailboxes)));
+    }
+
+    private static long getTotalMailboxMsgs(Collection<TbActorMailbox> mailboxes) {
+        long total = 0;
+        for (TbActorMailbox mailbox : mailboxes) {
+            total += mailbox.getMsgsCount();
+        }
+        return total;
+    }
+
+    private static int getMaxMailboxMsgs(Collection<TbActorMailbox> mailboxes) {
+        int max = 0;
+        for (TbActorMailbox mailbox : mailboxes) {
+            max = Math.max(max, mailbox.getMsgsCount());
+        }
+        return max;
+    }
+
+    @Override
+    public AtomicLong createMailboxOverflowsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating MailboxOverflowsCounter.");
+        }
+        AtomicLong counterGauge = statsFactory.createGauge(StatsType.ACTOR_MAILBOX_OVERFLOWS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.ACTOR_MAILBOX_OVERFLOWS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
     @Override
     public AtomicLong createSubscriptionTrieNodesCounter() {
         if (log.isTraceEnabled()) {
@@ -343,6 +429,86 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return sizeGauge;
     }
 
+    @Override
+    public AtomicLong createSubscriptionTrieReclaimedNodesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SubscriptionTrieReclaimedNodesCounter.");
+        }
+        AtomicLong counterGauge = statsFactory.createGauge(StatsType.SUBSCRIPTION_TRIE_RECLAIMED_NODES.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SUBSCRIPTION_TRIE_RECLAIMED_NODES.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicLong createRetainMsgTrieReclaimedNodesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating RetainMsgTrieReclaimedNodesCounter.");
+        }
+        AtomicLong counterGauge = statsFactory.createGauge(StatsType.RETAIN_MSG_TRIE_RECLAIMED_NODES.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.RETAIN_MSG_TRIE_RECLAIMED_NODES.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicInteger createPendingRetransmissionsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating PendingRetransmissionsCounter.");
+        }
+        AtomicInteger counterGauge = statsFactory.createGauge(StatsType.PENDING_RETRANSMISSIONS.getPrintName(), new AtomicInteger(0));
+        gauges.add(new Gauge(StatsType.PENDING_RETRANSMISSIONS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicInteger createPendingPublishesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating PendingPublishesCounter.");
+        }
+        AtomicInteger counterGauge = statsFactory.createGauge(StatsType.PENDING_PUBLISHES.getPrintName(), new AtomicInteger(0));
+        gauges.add(new Gauge(StatsType.PENDING_PUBLISHES.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicInteger createPausedChannelsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating PausedChannelsCounter.");
+        }
+        AtomicInteger counterGauge = statsFactory.createGauge(StatsType.PAUSED_CHANNELS.getPrintName(), new AtomicInteger(0));
+        gauges.add(new Gauge(StatsType.PAUSED_CHANNELS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicInteger createPendingAuthsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating PendingAuthsCounter.");
+        }
+        AtomicInteger counterGauge = statsFactory.createGauge(StatsType.PENDING_AUTHS.getPrintName(), new AtomicInteger(0));
+        gauges.add(new Gauge(StatsType.PENDING_AUTHS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicInteger createPendingDeviceMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating PendingDeviceMsgsCounter.");
+        }
+        AtomicInteger counterGauge = statsFactory.createGauge(StatsType.PENDING_DEVICE_MSGS.getPrintName(), new AtomicInteger(0));
+        gauges.add(new Gauge(StatsType.PENDING_DEVICE_MSGS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
+    @Override
+    public AtomicLong createCollapsedDeviceMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating CollapsedDeviceMsgsCounter.");
+        }
+        AtomicLong counterGauge = statsFactory.createGauge(StatsType.COLLAPSED_DEVICE_MSGS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.COLLAPSED_DEVICE_MSGS.getPrintName(), counterGauge::get));
+        return counterGauge;
+    }
+
     @Override
     public MessagesStats createSqlQueueStats(String queueName, int queueIndex) {
         if (log.isTraceEnabled()) {
@@ -390,6 +556,11 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return timerStats;
     }
 
+    @Override
+    public AuthenticationTimerStats getAuthenticationTimerStats() {
+        return timerStats;
+    }
+
     @Override
     public ClientActorStats getClientActorStats() {
         return clientActorStats;
@@ -461,6 +632,33 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         log.info("[{}] Stats: {}", StatsType.RETAINED_MSG_CONSUMER.getPrintName(), retainedMsgStatsStr);
         retainedMsgConsumerStats.reset();
 
+        String subscriptionLookupCacheStatsStr = subscriptionLookupCacheStats.getStatsCounters().stream()
+                .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
+                .collect(Collectors.joining(" "));
+        log.info("[{}] Stats: {} hitRatio = [{}]", StatsType.SUBSCRIPTION_LOOKUP_CACHE.getPrintName(), subscriptionLookupCacheStatsStr,
+                String.format("%.3f", subscriptionLookupCacheStats.getHitRatio()));
+        subscriptionLookupCacheStats.reset();
+
+        String publishAuthCacheStatsStr = publishAuthCacheStats.getStatsCounters().stream()
+                .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
+                .collect(Collectors.joining(" "));
+        log.info("[{}] Stats: {} hitRatio = [{}]", StatsType.PUBLISH_AUTH_CACHE.getPrintName(), publishAuthCacheStatsStr,
+                String.format("%.3f", publishAuthCacheStats.getHitRatio()));
+        publishAuthCacheStats.reset();
+
+        String retransmissionStatsStr = retransmissionStats.getStatsCounters().stream()
+                .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
+                .collect(Collectors.joining(" "));
+        log.info("[{}] Stats: {}", StatsType.RETRANSMISSION.getPrintName(), retransmissionStatsStr);
+        retransmissionStats.reset();
+
+        String channelFlushStatsStr = channelFlushStats.getStatsCounters().stream()
+                .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
+                .collect(Collectors.joining(" "));
+        log.info("[{}] Stats: {} msgsPerFlush = [{}]", StatsType.CHANNEL_FLUSH.getPrintName(), channelFlushStatsStr,
+                String.format("%.3f", channelFlushStats.getAvgMsgsPerFlush()));
+        channelFlushStats.reset();
+
         StringBuilder gaugeLogBuilder = new StringBuilder();
         for (Gauge gauge : gauges) {
             gaugeLogBuilder.append(gauge.getName()).append(" = [").append(gauge.getValueSupplier().get().intValue()).append("] ");
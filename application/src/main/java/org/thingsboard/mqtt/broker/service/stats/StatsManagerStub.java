@@ -19,12 +19,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.actors.ActorStatsManager;
+import org.thingsboard.mqtt.broker.actors.TbActorMailbox;
 import org.thingsboard.mqtt.broker.common.stats.MessagesStats;
 import org.thingsboard.mqtt.broker.common.stats.StubMessagesStats;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.Timer;
+import org.thingsboard.mqtt.broker.service.stats.timer.AuthenticationTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -32,6 +34,7 @@ import org.thingsboard.mqtt.broker.service.stats.timer.StubTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.SubscriptionTimerStats;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -87,6 +90,26 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return StubRetainedMsgConsumerStats.STUB_RETAINED_MSG_CONSUMER_STATS;
     }
 
+    @Override
+    public SubscriptionLookupCacheStats getSubscriptionLookupCacheStats() {
+        return StubSubscriptionLookupCacheStats.STUB_SUBSCRIPTION_LOOKUP_CACHE_STATS;
+    }
+
+    @Override
+    public PublishAuthCacheStats getPublishAuthCacheStats() {
+        return StubPublishAuthCacheStats.STUB_PUBLISH_AUTH_CACHE_STATS;
+    }
+
+    @Override
+    public RetransmissionStats getRetransmissionStats() {
+        return StubRetransmissionStats.STUB_RETRANSMISSION_STATS;
+    }
+
+    @Override
+    public ChannelFlushStats getChannelFlushStats() {
+        return StubChannelFlushStats.STUB_CHANNEL_FLUSH_STATS;
+    }
+
     @Override
     public void clearApplicationProcessorStats(String clientId) {
     }
@@ -132,6 +155,14 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
     public void registerClientSubscriptionsStats(Map<?, ?> clientSubscriptionsMap) {
     }
 
+    @Override
+    public void registerSubscriptionLookupCacheStats(Map<?, ?> cachedTopicsMap) {
+    }
+
+    @Override
+    public void registerPublishAuthCacheStats(Map<?, ?> cachedVerdictsMap) {
+    }
+
     @Override
     public void registerActiveApplicationProcessorsStats(Map<?, ?> processingFuturesMap) {
     }
@@ -161,6 +192,11 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return timerStats;
     }
 
+    @Override
+    public AuthenticationTimerStats getAuthenticationTimerStats() {
+        return timerStats;
+    }
+
     @Override
     public ClientActorStats getClientActorStats() {
         return StubClientActorStats.STUB_CLIENT_ACTOR_STATS;
@@ -170,6 +206,15 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
     public void registerActorsStats(Map<?, ?> actorsMap) {
     }
 
+    @Override
+    public void registerActorMailboxesStats(Collection<TbActorMailbox> mailboxes) {
+    }
+
+    @Override
+    public AtomicLong createMailboxOverflowsCounter() {
+        return new AtomicLong(0);
+    }
+
     @Override
     public AtomicLong createSubscriptionTrieNodesCounter() {
         return new AtomicLong(0);
@@ -180,6 +225,46 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return new AtomicLong(0);
     }
 
+    @Override
+    public AtomicLong createSubscriptionTrieReclaimedNodesCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createRetainMsgTrieReclaimedNodesCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicInteger createPendingRetransmissionsCounter() {
+        return new AtomicInteger(0);
+    }
+
+    @Override
+    public AtomicInteger createPendingPublishesCounter() {
+        return new AtomicInteger(0);
+    }
+
+    @Override
+    public AtomicInteger createPausedChannelsCounter() {
+        return new AtomicInteger(0);
+    }
+
+    @Override
+    public AtomicInteger createPendingAuthsCounter() {
+        return new AtomicInteger(0);
+    }
+
+    @Override
+    public AtomicInteger createPendingDeviceMsgsCounter() {
+        return new AtomicInteger(0);
+    }
+
+    @Override
+    public AtomicLong createCollapsedDeviceMsgsCounter() {
+        return new AtomicLong(0);
+    }
+
     @Override
     public Timer createSendTimer(String clientId) {
         return (amount, unit) -> {
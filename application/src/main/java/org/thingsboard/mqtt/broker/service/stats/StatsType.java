@@ -28,15 +28,34 @@ public enum StatsType {
     RETAINED_MESSAGES("retainedMessages"),
     SUBSCRIPTION_TRIE_NODES("subscriptionTrieNodes"),
     RETAIN_MSG_TRIE_NODES("retainMsgTrieNodes"),
+    SUBSCRIPTION_TRIE_RECLAIMED_NODES("subscriptionTrieReclaimedNodes"),
+    RETAIN_MSG_TRIE_RECLAIMED_NODES("retainMsgTrieReclaimedNodes"),
     ACTIVE_APP_PROCESSORS("activeAppProcessors"),
     ACTIVE_SHARED_APP_PROCESSORS("activeSharedAppProcessors"),
     APP_PROCESSOR("appProcessor"),
     DEVICE_PROCESSOR("deviceProcessor"),
     RUNNING_ACTORS("runningActors"),
+    ACTOR_MAILBOX_MSGS("actorMailboxMsgs"),
+    ACTOR_MAILBOX_MAX_MSGS("actorMailboxMaxMsgs"),
+    ACTOR_MAILBOX_OVERFLOWS("actorMailboxOverflows"),
     SQL_QUEUE("sqlQueue"),
     CLIENT_SUBSCRIPTIONS_CONSUMER("clientSubscriptionsConsumer"),
     RETAINED_MSG_CONSUMER("retainedMsgConsumer"),
     CLIENT_ACTOR("clientActor"),
+    SUBSCRIPTION_LOOKUP_CACHE("subscriptionLookupCache"),
+    SUBSCRIPTION_LOOKUP_CACHE_SIZE("subscriptionLookupCacheSize"),
+    RETRANSMISSION("retransmission"),
+    PENDING_RETRANSMISSIONS("pendingRetransmissions"),
+    CHANNEL_FLUSH("channelFlush"),
+    PENDING_PUBLISHES("pendingPublishes"),
+    PAUSED_CHANNELS("pausedChannels"),
+    AUTH_QUEUE("authQueue"),
+    AUTHENTICATION("authentication"),
+    PENDING_AUTHS("pendingAuths"),
+    PENDING_DEVICE_MSGS("pendingDeviceMsgs"),
+    COLLAPSED_DEVICE_MSGS("collapsedDeviceMsgs"),
+    PUBLISH_AUTH_CACHE("publishAuthCache"),
+    PUBLISH_AUTH_CACHE_SIZE("publishAuthCacheSize"),
 
     SUBSCRIPTION_LOOKUP("subscriptionLookup"),
     RETAINED_MSG_LOOKUP("retainedMsgLookup"),
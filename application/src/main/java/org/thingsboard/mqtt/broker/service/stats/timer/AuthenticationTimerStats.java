@@ -13,10 +13,12 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
+package org.thingsboard.mqtt.broker.service.stats.timer;
 
-public interface PendingOperation {
+import java.util.concurrent.TimeUnit;
 
-    boolean isCanceled();
+public interface AuthenticationTimerStats {
+    void logAuthQueue(long startTime, TimeUnit unit);
 
+    void logAuthentication(long startTime, TimeUnit unit);
 }
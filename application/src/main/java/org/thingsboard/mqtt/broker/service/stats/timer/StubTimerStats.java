@@ -17,7 +17,8 @@ package org.thingsboard.mqtt.broker.service.stats.timer;
 
 import java.util.concurrent.TimeUnit;
 
-public class StubTimerStats implements SubscriptionTimerStats, PublishMsgProcessingTimerStats, DeliveryTimerStats, RetainedMsgTimerStats {
+public class StubTimerStats implements SubscriptionTimerStats, PublishMsgProcessingTimerStats, DeliveryTimerStats, RetainedMsgTimerStats,
+        AuthenticationTimerStats {
 
     @Override
     public void logSubscriptionsLookup(long startTime, TimeUnit unit) {
@@ -44,4 +45,12 @@ public class StubTimerStats implements SubscriptionTimerStats, PublishMsgProcess
     public void logRetainedMsgLookup(long startTime, TimeUnit unit) {
 
     }
+
+    @Override
+    public void logAuthQueue(long startTime, TimeUnit unit) {
+    }
+
+    @Override
+    public void logAuthentication(long startTime, TimeUnit unit) {
+    }
 }
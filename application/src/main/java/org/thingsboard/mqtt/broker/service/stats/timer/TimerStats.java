@@ -24,7 +24,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-public class TimerStats implements SubscriptionTimerStats, PublishMsgProcessingTimerStats, DeliveryTimerStats, RetainedMsgTimerStats {
+public class TimerStats implements SubscriptionTimerStats, PublishMsgProcessingTimerStats, DeliveryTimerStats, RetainedMsgTimerStats,
+        AuthenticationTimerStats {
     private final List<ResettableTimer> timers;
 
     private final ResettableTimer subscriptionLookupTimer;
@@ -33,6 +34,8 @@ public class TimerStats implements SubscriptionTimerStats, PublishMsgProcessingT
     private final ResettableTimer notPersistentMessagesProcessingTimer;
     private final ResettableTimer persistentMessagesProcessingTimer;
     private final ResettableTimer deliveryTimer;
+    private final ResettableTimer authQueueTimer;
+    private final ResettableTimer authenticationTimer;
 
     public TimerStats(StatsFactory statsFactory) {
         this.subscriptionLookupTimer = new ResettableTimer(statsFactory.createTimer(StatsType.SUBSCRIPTION_LOOKUP.getPrintName()));
@@ -41,10 +44,13 @@ public class TimerStats implements SubscriptionTimerStats, PublishMsgProcessingT
         this.notPersistentMessagesProcessingTimer = new ResettableTimer(statsFactory.createTimer(StatsType.NOT_PERSISTENT_MESSAGES_PROCESSING.getPrintName()));
         this.persistentMessagesProcessingTimer = new ResettableTimer(statsFactory.createTimer(StatsType.PERSISTENT_MESSAGES_PROCESSING.getPrintName()));
         this.deliveryTimer = new ResettableTimer(statsFactory.createTimer(StatsType.DELIVERY.getPrintName()));
+        this.authQueueTimer = new ResettableTimer(statsFactory.createTimer(StatsType.AUTH_QUEUE.getPrintName()));
+        this.authenticationTimer = new ResettableTimer(statsFactory.createTimer(StatsType.AUTHENTICATION.getPrintName()));
 
         this.timers = Arrays.asList(
                 subscriptionLookupTimer, retainedMsgLookupTimer, clientSessionsLookupTimer,
-                notPersistentMessagesProcessingTimer, persistentMessagesProcessingTimer, deliveryTimer
+                notPersistentMessagesProcessingTimer, persistentMessagesProcessingTimer, deliveryTimer,
+                authQueueTimer, authenticationTimer
         );
     }
 
@@ -88,6 +94,18 @@ public class TimerStats implements SubscriptionTimerStats, PublishMsgProcessingT
         retainedMsgLookupTimer.logTime(amount, unit);
     }
 
+    @Override
+    public void logAuthQueue(long startTime, TimeUnit unit) {
+        long amount = getAmount(startTime);
+        authQueueTimer.logTime(amount, unit);
+    }
+
+    @Override
+    public void logAuthentication(long startTime, TimeUnit unit) {
+        long amount = getAmount(startTime);
+        authenticationTimer.logTime(amount, unit);
+    }
+
     private long getAmount(long startTime) {
         return System.nanoTime() - startTime;
     }
@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Trie of cached topics used to find the ones a changed topic filter can match.
+    Topics are split into segments the same way SubscriptionTrie does it. Matching may return more topics than
+    the SubscriptionTrie would match (e.g. '$' topics for '#'), that only results in extra invalidations.
+ */
+class CachedTopicsIndex {
+
+    private final Node root = new Node();
+
+    synchronized void add(String topic) {
+        Node node = root;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topic.length()) {
+            String segment = getSegment(topic, prevDelimiterIndex);
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        node.topics.add(topic);
+    }
+
+    synchronized void remove(String topic) {
+        List<Node> path = new ArrayList<>();
+        List<String> segments = new ArrayList<>();
+        Node node = root;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topic.length()) {
+            String segment = getSegment(topic, prevDelimiterIndex);
+            path.add(node);
+            segments.add(segment);
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        node.topics.remove(topic);
+        for (int i = path.size() - 1; i >= 0 && node.isEmpty(); i--) {
+            Node parent = path.get(i);
+            parent.children.remove(segments.get(i));
+            node = parent;
+        }
+    }
+
+    synchronized List<String> findMatchingTopics(String topicFilter) {
+        List<String> result = new ArrayList<>();
+        collectMatchingTopics(root, topicFilter, 0, result);
+        return result;
+    }
+
+    synchronized int size() {
+        return countTopics(root);
+    }
+
+    private void collectMatchingTopics(Node node, String topicFilter, int prevDelimiterIndex, List<String> result) {
+        if (prevDelimiterIndex >= topicFilter.length()) {
+            result.addAll(node.topics);
+            return;
+        }
+        String segment = getSegment(topicFilter, prevDelimiterIndex);
+        int nextDelimiterIndex = prevDelimiterIndex + segment.length() + 1;
+        if (BrokerConstants.MULTI_LEVEL_WILDCARD.equals(segment)) {
+            collectAllTopics(node, result);
+        } else if (BrokerConstants.SINGLE_LEVEL_WILDCARD.equals(segment)) {
+            for (Node child : node.children.values()) {
+                collectMatchingTopics(child, topicFilter, nextDelimiterIndex, result);
+            }
+        } else {
+            Node child = node.children.get(segment);
+            if (child != null) {
+                collectMatchingTopics(child, topicFilter, nextDelimiterIndex, result);
+            }
+        }
+    }
+
+    private void collectAllTopics(Node node, List<String> result) {
+        result.addAll(node.topics);
+        for (Node child : node.children.values()) {
+            collectAllTopics(child, result);
+        }
+    }
+
+    private int countTopics(Node node) {
+        int count = node.topics.size();
+        for (Node child : node.children.values()) {
+            count += countTopics(child);
+        }
+        return count;
+    }
+
+    private String getSegment(String key, int prevDelimiterIndex) {
+        int nextDelimitedIndex = key.indexOf(BrokerConstants.TOPIC_DELIMITER, prevDelimiterIndex);
+
+        return nextDelimitedIndex == -1 ?
+                key.substring(prevDelimiterIndex)
+                : key.substring(prevDelimiterIndex, nextDelimitedIndex);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        // usually one topic, several only for topics that differ by a trailing delimiter
+        private final Set<String> topics = new HashSet<>(2);
+
+        private boolean isEmpty() {
+            return children.isEmpty() && topics.isEmpty();
+        }
+    }
+}
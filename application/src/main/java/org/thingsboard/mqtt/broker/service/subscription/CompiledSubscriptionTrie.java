@@ -0,0 +1,706 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+    Read-optimized SubscriptionTrie.
+    Lookups walk an immutable snapshot made of sorted arrays of interned segment ids without any locking.
+    Writes are applied under the write lock to a draft that copies only the touched paths and is kept between the writes.
+    The draft is published as the new snapshot after max-pending-operations writes or every publish-interval-ms,
+    empty nodes are pruned on the way. Until then lookups don't see the writes, the listener of published changes
+    is notified once they do. Without the publishing scheduler every write is published right away.
+    Values of a node are kept in chunks, so adding or removing one value copies a chunk and the array of chunks, not all the values.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "mqtt.subscription-trie", value = "type", havingValue = "COMPILED")
+public class CompiledSubscriptionTrie<T> implements SubscriptionTrie<T> {
+
+    private static final int MULTI_LEVEL_WILDCARD_ID = 0;
+    private static final int SINGLE_LEVEL_WILDCARD_ID = 1;
+
+    private static final int VALUES_CHUNK_SHIFT = 6;
+    private static final int VALUES_CHUNK_MASK = (1 << VALUES_CHUNK_SHIFT) - 1;
+    // positions of the values are indexed for the nodes with more values than this, the index is dropped below the half of it
+    private static final int INDEXED_VALUES_MIN_COUNT = 32;
+
+    private static final int[] EMPTY_IDS = new int[0];
+    private static final Object[] EMPTY_CHILDREN = new Object[0];
+    private static final ValueWithTopicFilter<?>[][] EMPTY_VALUE_CHUNKS = new ValueWithTopicFilter<?>[0][];
+
+    private final AtomicInteger size;
+    private final AtomicLong nodesCount;
+    private final AtomicLong reclaimedNodesCount;
+
+    /*
+        Segment ids are never reused and a segment keeps its id while it is in the table, so a lookup that works
+        with an older snapshot can't match a wrong node. The ids of the removed segments stay in the table
+        until there are more of them than of the used ones, then a table without them is published with the next snapshot.
+        A lookup resolves the segments with the table of the snapshot it walks
+     */
+    private ConcurrentMap<String, Integer> segmentIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> segmentRefCounts = new HashMap<>();
+    private int nextSegmentId = SINGLE_LEVEL_WILDCARD_ID + 1;
+    private int removedSegmentsCount;
+
+    @Setter
+    @Value("${mqtt.subscription-trie.compiled.max-pending-operations:1000}")
+    private int maxPendingOperations;
+    @Setter
+    @Value("${mqtt.subscription-trie.compiled.publish-interval-ms:10}")
+    private long publishIntervalMs;
+
+    private final Lock writeLock = new ReentrantLock();
+    // guarded by the write lock
+    private DraftNode<T> draftRoot;
+    private int pendingOperationsCount;
+    private final Set<String> pendingTopicFilters = new LinkedHashSet<>();
+
+    private volatile Snapshot<T> snapshot;
+    private volatile Consumer<String> publishedChangesListener;
+    private ScheduledExecutorService publishScheduler;
+
+    public CompiledSubscriptionTrie(StatsManager statsManager) {
+        this.size = statsManager.createSubscriptionSizeCounter();
+        this.nodesCount = statsManager.createSubscriptionTrieNodesCounter();
+        this.reclaimedNodesCount = statsManager.createSubscriptionTrieReclaimedNodesCounter();
+        this.segmentIds.put(BrokerConstants.MULTI_LEVEL_WILDCARD, MULTI_LEVEL_WILDCARD_ID);
+        this.segmentIds.put(BrokerConstants.SINGLE_LEVEL_WILDCARD, SINGLE_LEVEL_WILDCARD_ID);
+        SnapshotNode<T> root = new SnapshotNode<>(BrokerConstants.EMPTY_STR, EMPTY_IDS, EMPTY_CHILDREN, emptyValueChunks(), 0, null);
+        this.snapshot = new Snapshot<>(root, segmentIds);
+        this.draftRoot = new DraftNode<>(root);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (publishIntervalMs > 0 && maxPendingOperations > 1) {
+            this.publishScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("subscription-trie-publisher"));
+            publishScheduler.scheduleWithFixedDelay(this::publishPendingOperations, publishIntervalMs, publishIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (publishScheduler != null) {
+            publishScheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void setPublishedChangesListener(Consumer<String> listener) {
+        this.publishedChangesListener = listener;
+    }
+
+    @Override
+    public List<ValueWithTopicFilter<T>> get(String topic) {
+        List<ValueWithTopicFilter<T>> result = new ArrayList<>();
+        get(topic, result::add);
+        return result;
+    }
+
+    @Override
+    public void get(String topic, Consumer<ValueWithTopicFilter<T>> consumer) {
+        if (topic == null) {
+            throw new IllegalArgumentException("Topic cannot be null");
+        }
+        TopicTraversalState state = TopicTraversalState.acquire();
+        try {
+            get(snapshot, topic, consumer, state);
+        } finally {
+            state.release();
+        }
+    }
+    @SuppressWarnings("unchecked")
+    private void get(Snapshot<T> snapshot, String topic, Consumer<ValueWithTopicFilter<T>> consumer, TopicTraversalState state) {
+        Map<String, Integer> snapshotSegmentIds = snapshot.segmentIds;
+        TopicSegment segment = state.getSegment();
+        state.push(snapshot.root, 0);
+
+        while (!state.isEmpty()) {
+            state.pop();
+            SnapshotNode<T> node = (SnapshotNode<T>) state.node();
+            int prevDelimiterIndex = state.index();
+            if (prevDelimiterIndex >= topic.length()) {
+                acceptValues(node, consumer);
+                continue;
+            }
+            int[] childIds = node.childIds;
+            if (childIds.length == 0) {
+                continue;
+            }
+            segment.wrap(topic, prevDelimiterIndex);
+            int nextDelimiterIndex = segment.getEnd() + 1;
+
+            if (notStartingWith$(topic, prevDelimiterIndex)) {
+                // wildcard ids are the smallest ones, so their nodes are always first in the sorted arrays
+                int pos = 0;
+                if (childIds[pos] == MULTI_LEVEL_WILDCARD_ID) {
+                    acceptValues((SnapshotNode<T>) node.children[pos], consumer);
+                    pos++;
+                }
+                if (pos < childIds.length && childIds[pos] == SINGLE_LEVEL_WILDCARD_ID) {
+                    state.push(node.children[pos], nextDelimiterIndex);
+                }
+            }
+
+            Integer segmentId = snapshotSegmentIds.get(segment);
+            if (segmentId != null && segmentId > SINGLE_LEVEL_WILDCARD_ID) {
+                int pos = Arrays.binarySearch(childIds, segmentId);
+                if (pos >= 0) {
+                    state.push(node.children[pos], nextDelimiterIndex);
+                }
+            }
+        }
+    }
+
+    private boolean notStartingWith$(String topic, int prevDelimiterIndex) {
+        return prevDelimiterIndex != 0 || topic.charAt(0) != '$';
+    }
+
+    private void acceptValues(SnapshotNode<T> node, Consumer<ValueWithTopicFilter<T>> consumer) {
+        for (ValueWithTopicFilter<T>[] chunk : node.valueChunks) {
+            for (ValueWithTopicFilter<T> value : chunk) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    @Override
+    public void put(String topicFilter, T val) {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing put [{}] [{}]", topicFilter, val);
+        }
+        if (topicFilter == null || val == null) {
+            throw new IllegalArgumentException("Topic filter or value cannot be null");
+        }
+        List<String> publishedTopicFilters;
+        writeLock.lock();
+        try {
+            applyPut(topicFilter, val);
+            publishedTopicFilters = onOperationApplied(topicFilter);
+        } finally {
+            writeLock.unlock();
+        }
+        notifyPublishedChanges(publishedTopicFilters);
+    }
+
+    @Override
+    public boolean delete(String topicFilter, Predicate<T> deletionFilter) {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing delete [{}]", topicFilter);
+        }
+        if (topicFilter == null || deletionFilter == null) {
+            throw new IllegalArgumentException("Topic filter or deletionFilter cannot be null");
+        }
+        List<String> publishedTopicFilters;
+        writeLock.lock();
+        try {
+            if (!applyDelete(topicFilter, deletionFilter)) {
+                return false;
+            }
+            publishedTopicFilters = onOperationApplied(topicFilter);
+        } finally {
+            writeLock.unlock();
+        }
+        notifyPublishedChanges(publishedTopicFilters);
+        return true;
+    }
+
+    @Override
+    public void clearEmptyNodes() {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing clearEmptyNodes");
+        }
+        // empty nodes are pruned every time a new snapshot is published
+    }
+
+    private List<String> onOperationApplied(String topicFilter) {
+        pendingTopicFilters.add(topicFilter);
+        pendingOperationsCount++;
+        if (publishScheduler == null || pendingOperationsCount >= maxPendingOperations) {
+            return publish();
+        }
+        return Collections.emptyList();
+    }
+
+    private void publishPendingOperations() {
+        try {
+            List<String> publishedTopicFilters;
+            writeLock.lock();
+            try {
+                publishedTopicFilters = pendingOperationsCount > 0 ? publish() : Collections.emptyList();
+            } finally {
+                writeLock.unlock();
+            }
+            notifyPublishedChanges(publishedTopicFilters);
+        } catch (Exception e) {
+            log.error("Failed to publish pending subscription trie operations.", e);
+        }
+    }
+
+    /*
+        Returns the topic filters changed by the published operations
+     */
+    private List<String> publish() {
+        SnapshotNode<T> root = freeze(draftRoot, true);
+        if (removedSegmentsCount > segmentRefCounts.size()) {
+            segmentIds = copyUsedSegmentIds();
+            removedSegmentsCount = 0;
+        }
+        snapshot = new Snapshot<>(root, segmentIds);
+        draftRoot = new DraftNode<>(root);
+        if (log.isTraceEnabled()) {
+            log.trace("Published new snapshot with {} operations", pendingOperationsCount);
+        }
+        pendingOperationsCount = 0;
+        List<String> publishedTopicFilters = new ArrayList<>(pendingTopicFilters);
+        pendingTopicFilters.clear();
+        return publishedTopicFilters;
+    }
+
+    private void notifyPublishedChanges(List<String> publishedTopicFilters) {
+        Consumer<String> listener = publishedChangesListener;
+        if (listener != null) {
+            publishedTopicFilters.forEach(listener);
+        }
+    }
+
+    private void applyPut(String topicFilter, T value) {
+        DraftNode<T> node = draftRoot;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topicFilter.length()) {
+            String segment = getSegment(topicFilter, prevDelimiterIndex);
+            node = getOrCreateChild(node, segment);
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        if (node.putValue(value)) {
+            size.getAndIncrement();
+        }
+    }
+
+    private boolean applyDelete(String topicFilter, Predicate<T> deletionFilter) {
+        int pos = findValueToDelete(topicFilter, deletionFilter);
+        if (pos < 0) {
+            return false;
+        }
+        DraftNode<T> node = draftRoot;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topicFilter.length()) {
+            String segment = getSegment(topicFilter, prevDelimiterIndex);
+            node = node.getDraftChild(segmentIds.get(segment));
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        int deleted = node.removeValues(deletionFilter, pos);
+        if (deleted > 1) {
+            log.error("There are more than one value to delete!");
+        }
+        size.addAndGet(-deleted);
+        return true;
+    }
+
+    /*
+        Checks the path without copying it to the draft, so deleting a missing subscription doesn't copy anything.
+        Returns the position of the first value to delete or -1
+     */
+    @SuppressWarnings("unchecked")
+    private int findValueToDelete(String topicFilter, Predicate<T> deletionFilter) {
+        Object node = draftRoot;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topicFilter.length()) {
+            String segment = getSegment(topicFilter, prevDelimiterIndex);
+            Integer segmentId = segmentIds.get(segment);
+            node = segmentId == null ? null : childOf(node, segmentId);
+            if (node == null) {
+                return -1;
+            }
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        ValueWithTopicFilter<T>[][] valueChunks = node instanceof DraftNode ?
+                ((DraftNode<T>) node).valueChunks : ((SnapshotNode<T>) node).valueChunks;
+        int pos = 0;
+        for (ValueWithTopicFilter<T>[] chunk : valueChunks) {
+            for (ValueWithTopicFilter<T> value : chunk) {
+                if (deletionFilter.test(value.getValue())) {
+                    return pos;
+                }
+                pos++;
+            }
+        }
+        return -1;
+    }
+    private Object childOf(Object node, int segmentId) {
+        if (node instanceof DraftNode) {
+            DraftNode<?> draftNode = (DraftNode<?>) node;
+            int pos = Arrays.binarySearch(draftNode.childIds, segmentId);
+            return pos >= 0 ? draftNode.children[pos] : null;
+        }
+        SnapshotNode<?> snapshotNode = (SnapshotNode<?>) node;
+        int pos = Arrays.binarySearch(snapshotNode.childIds, segmentId);
+        return pos >= 0 ? snapshotNode.children[pos] : null;
+    }
+
+    private DraftNode<T> getOrCreateChild(DraftNode<T> node, String segment) {
+        Integer segmentId = segmentIds.get(segment);
+        if (segmentId != null) {
+            DraftNode<T> child = node.getDraftChild(segmentId);
+            if (child != null) {
+                return child;
+            }
+        } else {
+            segmentId = nextSegmentId++;
+            segmentIds.put(segment, segmentId);
+        }
+        segmentRefCounts.merge(segment, 1, Integer::sum);
+        nodesCount.incrementAndGet();
+        return node.addChild(segmentId, new DraftNode<>(appendSegment(node.topicFilter, segment)));
+    }
+
+    private void releaseSegment(String topicFilter) {
+        String segment = topicFilter.substring(topicFilter.lastIndexOf(BrokerConstants.TOPIC_DELIMITER) + 1);
+        Integer refCount = segmentRefCounts.merge(segment, -1, Integer::sum);
+        if (refCount != null && refCount <= 0) {
+            segmentRefCounts.remove(segment);
+            if (!isWildcard(segment)) {
+                removedSegmentsCount++;
+            }
+        }
+        nodesCount.decrementAndGet();
+        reclaimedNodesCount.incrementAndGet();
+    }
+
+    /*
+        The table of the previous snapshots is left as it is, the lookups that still walk them can resolve the removed segments
+     */
+    private ConcurrentMap<String, Integer> copyUsedSegmentIds() {
+        ConcurrentMap<String, Integer> usedSegmentIds = new ConcurrentHashMap<>();
+        usedSegmentIds.put(BrokerConstants.MULTI_LEVEL_WILDCARD, MULTI_LEVEL_WILDCARD_ID);
+        usedSegmentIds.put(BrokerConstants.SINGLE_LEVEL_WILDCARD, SINGLE_LEVEL_WILDCARD_ID);
+        segmentRefCounts.keySet().forEach(segment -> usedSegmentIds.put(segment, segmentIds.get(segment)));
+        return usedSegmentIds;
+    }
+
+    private boolean isWildcard(String segment) {
+        return BrokerConstants.MULTI_LEVEL_WILDCARD.equals(segment) || BrokerConstants.SINGLE_LEVEL_WILDCARD.equals(segment);
+    }
+
+    /*
+        Converts the touched nodes back to immutable ones, untouched subtrees are shared with the previous snapshot.
+        The arrays of the draft are handed over to the snapshot node, the children are copied only if some of them are pruned.
+        Returns null for non-root nodes without values and children
+     */
+    @SuppressWarnings("unchecked")
+    private SnapshotNode<T> freeze(DraftNode<T> draftNode, boolean isRoot) {
+        int[] childIds = draftNode.childIds;
+        Object[] children = draftNode.children;
+        int childrenCount = children.length;
+        if (draftNode.ownsChildren) {
+            // only a draft with its own array of children can have draft children
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] instanceof DraftNode) {
+                    DraftNode<T> draftChild = (DraftNode<T>) children[i];
+                    children[i] = freeze(draftChild, false);
+                    if (children[i] == null) {
+                        releaseSegment(draftChild.topicFilter);
+                        childrenCount--;
+                    }
+                }
+            }
+        }
+        if (!isRoot && childrenCount == 0 && draftNode.valuesCount == 0) {
+            return null;
+        }
+        if (childrenCount < children.length) {
+            int[] usedChildIds = childrenCount == 0 ? EMPTY_IDS : new int[childrenCount];
+            Object[] usedChildren = childrenCount == 0 ? EMPTY_CHILDREN : new Object[childrenCount];
+            int pos = 0;
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != null) {
+                    usedChildIds[pos] = childIds[i];
+                    usedChildren[pos] = children[i];
+                    pos++;
+                }
+            }
+            childIds = usedChildIds;
+            children = usedChildren;
+        }
+        return new SnapshotNode<>(draftNode.topicFilter, childIds, children,
+                draftNode.valueChunks, draftNode.valuesCount, draftNode.valuePositions);
+    }
+
+    private String getSegment(String key, int prevDelimiterIndex) {
+        int nextDelimitedIndex = key.indexOf(BrokerConstants.TOPIC_DELIMITER, prevDelimiterIndex);
+
+        return nextDelimitedIndex == -1 ?
+                key.substring(prevDelimiterIndex)
+                : key.substring(prevDelimiterIndex, nextDelimitedIndex);
+    }
+
+    private String appendSegment(String topicFilter, String segment) {
+        return topicFilter.isEmpty() ? segment : topicFilter + BrokerConstants.TOPIC_DELIMITER + segment;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ValueWithTopicFilter<T>[][] emptyValueChunks() {
+        return (ValueWithTopicFilter<T>[][]) EMPTY_VALUE_CHUNKS;
+    }
+
+    private static final class Snapshot<T> {
+        private final SnapshotNode<T> root;
+        private final Map<String, Integer> segmentIds;
+
+        private Snapshot(SnapshotNode<T> root, Map<String, Integer> segmentIds) {
+            this.root = root;
+            this.segmentIds = segmentIds;
+        }
+    }
+
+    /*
+        All the chunks of values except the last one are full, the last one has exactly the remaining values
+     */
+    private static final class SnapshotNode<T> {
+        private final String topicFilter;
+        private final int[] childIds;
+        private final Object[] children;
+        private final ValueWithTopicFilter<T>[][] valueChunks;
+        private final int valuesCount;
+        // value -> position, used only by the writer and passed from one version of the node to the next one
+        private final Map<T, Integer> valuePositions;
+
+        private SnapshotNode(String topicFilter, int[] childIds, Object[] children,
+                             ValueWithTopicFilter<T>[][] valueChunks, int valuesCount, Map<T, Integer> valuePositions) {
+            this.topicFilter = topicFilter;
+            this.childIds = childIds;
+            this.children = children;
+            this.valueChunks = valueChunks;
+            this.valuesCount = valuesCount;
+            this.valuePositions = valuePositions;
+        }
+    }
+
+    /*
+        Mutable version of a snapshot node, its children are either untouched SnapshotNodes or DraftNodes.
+        It shares the arrays of the snapshot node and copies them only on the first change
+     */
+    private static final class DraftNode<T> {
+        private final String topicFilter;
+        private int[] childIds;
+        private Object[] children;
+        private boolean ownsChildren;
+        private ValueWithTopicFilter<T>[][] valueChunks;
+        private boolean ownsValueChunks;
+        private int valuesCount;
+        private Map<T, Integer> valuePositions;
+
+        private DraftNode(String topicFilter) {
+            this.topicFilter = topicFilter;
+            this.childIds = EMPTY_IDS;
+            this.children = EMPTY_CHILDREN;
+            this.valueChunks = emptyValueChunks();
+        }
+
+        private DraftNode(SnapshotNode<T> snapshotNode) {
+            this.topicFilter = snapshotNode.topicFilter;
+            this.childIds = snapshotNode.childIds;
+            this.children = snapshotNode.children;
+            this.valueChunks = snapshotNode.valueChunks;
+            this.valuesCount = snapshotNode.valuesCount;
+            this.valuePositions = snapshotNode.valuePositions;
+        }
+
+        @SuppressWarnings("unchecked")
+        private DraftNode<T> getDraftChild(Integer segmentId) {
+            int pos = segmentId == null ? -1 : Arrays.binarySearch(childIds, segmentId);
+            if (pos < 0) {
+                return null;
+            }
+            Object child = children[pos];
+            if (child instanceof SnapshotNode) {
+                child = new DraftNode<>((SnapshotNode<T>) child);
+                if (!ownsChildren) {
+                    children = children.clone();
+                    ownsChildren = true;
+                }
+                children[pos] = child;
+            }
+            return (DraftNode<T>) child;
+        }
+
+        private DraftNode<T> addChild(int segmentId, DraftNode<T> child) {
+            int pos = -(Arrays.binarySearch(childIds, segmentId) + 1);
+            int[] newChildIds = new int[childIds.length + 1];
+            Object[] newChildren = new Object[children.length + 1];
+            System.arraycopy(childIds, 0, newChildIds, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            newChildIds[pos] = segmentId;
+            newChildren[pos] = child;
+            System.arraycopy(childIds, pos, newChildIds, pos + 1, childIds.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+            this.childIds = newChildIds;
+            this.children = newChildren;
+            this.ownsChildren = true;
+            return child;
+        }
+
+        /*
+            Returns true if the value is new, an equal value is replaced
+         */
+        private boolean putValue(T value) {
+            ValueWithTopicFilter<T> newValue = new ValueWithTopicFilter<>(value, topicFilter);
+            int pos = indexOf(value);
+            if (pos >= 0) {
+                setValue(pos, newValue);
+                return false;
+            }
+            appendValue(newValue);
+            if (valuePositions != null) {
+                valuePositions.put(value, valuesCount - 1);
+            } else if (valuesCount > INDEXED_VALUES_MIN_COUNT) {
+                valuePositions = indexValues();
+            }
+            return true;
+        }
+
+        /*
+            Removes the matching values starting from the position, the last value is moved to the place of the removed one
+         */
+        private int removeValues(Predicate<T> deletionFilter, int fromPos) {
+            int deleted = 0;
+            int pos = fromPos;
+            while (pos < valuesCount) {
+                T value = getValue(pos).getValue();
+                if (!deletionFilter.test(value)) {
+                    pos++;
+                    continue;
+                }
+                ValueWithTopicFilter<T> lastValue = removeLastValue();
+                if (pos < valuesCount) {
+                    setValue(pos, lastValue);
+                    if (valuePositions != null) {
+                        valuePositions.put(lastValue.getValue(), pos);
+                    }
+                }
+                if (valuePositions != null) {
+                    valuePositions.remove(value);
+                }
+                deleted++;
+            }
+            if (valuePositions != null && valuesCount <= INDEXED_VALUES_MIN_COUNT / 2) {
+                valuePositions = null;
+            }
+            return deleted;
+        }
+
+        private int indexOf(T value) {
+            if (valuePositions != null) {
+                Integer pos = valuePositions.get(value);
+                return pos == null ? -1 : pos;
+            }
+            for (int pos = 0; pos < valuesCount; pos++) {
+                if (getValue(pos).getValue().equals(value)) {
+                    return pos;
+                }
+            }
+            return -1;
+        }
+
+        private Map<T, Integer> indexValues() {
+            Map<T, Integer> positions = new HashMap<>();
+            for (int pos = 0; pos < valuesCount; pos++) {
+                positions.put(getValue(pos).getValue(), pos);
+            }
+            return positions;
+        }
+
+        private ValueWithTopicFilter<T> getValue(int pos) {
+            return valueChunks[pos >>> VALUES_CHUNK_SHIFT][pos & VALUES_CHUNK_MASK];
+        }
+
+        private void setValue(int pos, ValueWithTopicFilter<T> value) {
+            int chunkIndex = pos >>> VALUES_CHUNK_SHIFT;
+            ValueWithTopicFilter<T>[] chunk = valueChunks[chunkIndex].clone();
+            chunk[pos & VALUES_CHUNK_MASK] = value;
+            ownValueChunks()[chunkIndex] = chunk;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void appendValue(ValueWithTopicFilter<T> value) {
+            int posInChunk = valuesCount & VALUES_CHUNK_MASK;
+            if (posInChunk == 0) {
+                valueChunks = Arrays.copyOf(valueChunks, valueChunks.length + 1);
+                ownsValueChunks = true;
+                valueChunks[valueChunks.length - 1] = (ValueWithTopicFilter<T>[]) new ValueWithTopicFilter<?>[]{value};
+            } else {
+                int chunkIndex = valueChunks.length - 1;
+                ValueWithTopicFilter<T>[] chunk = Arrays.copyOf(valueChunks[chunkIndex], posInChunk + 1);
+                chunk[posInChunk] = value;
+                ownValueChunks()[chunkIndex] = chunk;
+            }
+            valuesCount++;
+        }
+
+        private ValueWithTopicFilter<T> removeLastValue() {
+            int chunkIndex = valueChunks.length - 1;
+            ValueWithTopicFilter<T>[] chunk = valueChunks[chunkIndex];
+            if (chunk.length == 1) {
+                valueChunks = Arrays.copyOf(valueChunks, chunkIndex);
+                ownsValueChunks = true;
+            } else {
+                ownValueChunks()[chunkIndex] = Arrays.copyOf(chunk, chunk.length - 1);
+            }
+            valuesCount--;
+            return chunk[chunk.length - 1];
+        }
+
+        private ValueWithTopicFilter<T>[][] ownValueChunks() {
+            if (!ownsValueChunks) {
+                valueChunks = valueChunks.clone();
+                ownsValueChunks = true;
+            }
+            return valueChunks;
+        }
+    }
+}
@@ -15,102 +15,106 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription;
 
-import com.google.common.collect.Sets;
-import lombok.AllArgsConstructor;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
-import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(prefix = "mqtt.subscription-trie", value = "type", havingValue = "CONCURRENT_MAP", matchIfMissing = true)
 public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
 
     private final AtomicInteger size;
     private final AtomicLong nodesCount;
-    private final Node<T> root = new Node<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-
-    @Setter
-    @Value("${mqtt.subscription-trie.wait-for-clear-lock-ms}")
-    private int waitForClearLockMs;
+    private final AtomicLong reclaimedNodesCount;
+    private final Node<T> root = new Node<>(BrokerConstants.EMPTY_STR, BrokerConstants.EMPTY_STR);
 
     public ConcurrentMapSubscriptionTrie(StatsManager statsManager) {
         this.size = statsManager.createSubscriptionSizeCounter();
         this.nodesCount = statsManager.createSubscriptionTrieNodesCounter();
+        this.reclaimedNodesCount = statsManager.createSubscriptionTrieReclaimedNodesCounter();
     }
 
     @Override
     public List<ValueWithTopicFilter<T>> get(String topic) {
+        List<ValueWithTopicFilter<T>> result = new ArrayList<>();
+        get(topic, result::add);
+        return result;
+    }
+
+    @Override
+    public void get(String topic, Consumer<ValueWithTopicFilter<T>> consumer) {
         if (topic == null) {
             throw new IllegalArgumentException("Topic cannot be null");
         }
-        List<ValueWithTopicFilter<T>> result = new ArrayList<>();
-        Stack<TopicPosition<T>> topicPositions = new Stack<>();
-        topicPositions.add(new TopicPosition<>(BrokerConstants.EMPTY_STR, 0, root));
+        TopicTraversalState state = TopicTraversalState.acquire();
+        try {
+            get(topic, consumer, state);
+        } finally {
+            state.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void get(String topic, Consumer<ValueWithTopicFilter<T>> consumer, TopicTraversalState state) {
+        TopicSegment segment = state.getSegment();
+        state.push(root, 0);
 
-        while (!topicPositions.isEmpty()) {
-            TopicPosition<T> topicPosition = topicPositions.pop();
-            if (topicPosition.prevDelimiterIndex >= topic.length()) {
-                result.addAll(wrapValuesWithTopicFilter(topicPosition.prevTopicFilter, topicPosition.node.values));
+        while (!state.isEmpty()) {
+            state.pop();
+            Node<T> node = (Node<T>) state.node();
+            int prevDelimiterIndex = state.index();
+            if (prevDelimiterIndex >= topic.length()) {
+                acceptValues(node, consumer);
                 continue;
             }
-            ConcurrentMap<String, Node<T>> childNodes = topicPosition.node.children;
-            String segment = getSegment(topic, topicPosition.prevDelimiterIndex);
-            int nextDelimiterIndex = topicPosition.prevDelimiterIndex + segment.length() + 1;
+            ConcurrentMap<String, Node<T>> childNodes = node.children;
+            segment.wrap(topic, prevDelimiterIndex);
+            int nextDelimiterIndex = segment.getEnd() + 1;
 
-            if (notStartingWith$(topic, topicPosition)) {
+            if (notStartingWith$(topic, prevDelimiterIndex)) {
                 Node<T> multiLevelWildcardSubs = childNodes.get(BrokerConstants.MULTI_LEVEL_WILDCARD);
                 if (multiLevelWildcardSubs != null) {
-                    String currentTopicFilter = appendSegment(topicPosition.prevTopicFilter, BrokerConstants.MULTI_LEVEL_WILDCARD);
-                    result.addAll(wrapValuesWithTopicFilter(currentTopicFilter, multiLevelWildcardSubs.values));
+                    acceptValues(multiLevelWildcardSubs, consumer);
                 }
                 Node<T> singleLevelWildcardSubs = childNodes.get(BrokerConstants.SINGLE_LEVEL_WILDCARD);
                 if (singleLevelWildcardSubs != null) {
-                    String currentTopicFilter = appendSegment(topicPosition.prevTopicFilter, BrokerConstants.SINGLE_LEVEL_WILDCARD);
-                    topicPositions.add(new TopicPosition<>(currentTopicFilter, nextDelimiterIndex, singleLevelWildcardSubs));
+                    state.push(singleLevelWildcardSubs, nextDelimiterIndex);
                 }
             }
 
             Node<T> segmentNode = childNodes.get(segment);
             if (segmentNode != null) {
-                String currentTopicFilter = appendSegment(topicPosition.prevTopicFilter, segment);
-                topicPositions.add(new TopicPosition<>(currentTopicFilter, nextDelimiterIndex, segmentNode));
+                state.push(segmentNode, nextDelimiterIndex);
             }
         }
-        return result;
     }
 
-    private boolean notStartingWith$(String topic, TopicPosition<T> topicPosition) {
-        return topicPosition.prevDelimiterIndex != 0 || topic.charAt(0) != '$';
+    private boolean notStartingWith$(String topic, int prevDelimiterIndex) {
+        return prevDelimiterIndex != 0 || topic.charAt(0) != '$';
     }
 
-    private List<ValueWithTopicFilter<T>> wrapValuesWithTopicFilter(String topicFilter, Collection<T> values) {
-        List<ValueWithTopicFilter<T>> result = new ArrayList<>(values.size());
-        for (T value : values) {
-            result.add(new ValueWithTopicFilter<>(value, topicFilter));
+    /*
+        No isEmpty() shortcuts here, the size of ConcurrentHashMap isn't a snapshot and can be off while other threads modify it
+     */
+    private void acceptValues(Node<T> node, Consumer<ValueWithTopicFilter<T>> consumer) {
+        for (ValueWithTopicFilter<T> value : node.values.values()) {
+            consumer.accept(value);
         }
-        return result;
     }
 
     @Override
@@ -121,32 +125,55 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         if (topicFilter == null || val == null) {
             throw new IllegalArgumentException("Topic filter or value cannot be null");
         }
-        lock.readLock().lock();
-        try {
-            put(root, topicFilter, val, 0);
-        } finally {
-            lock.readLock().unlock();
+        while (!tryPut(topicFilter, val)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Node for [{}] was reclaimed concurrently, retrying put", topicFilter);
+            }
         }
     }
 
-    private void put(Node<T> x, String key, T val, int prevDelimiterIndex) {
-        if (prevDelimiterIndex >= key.length()) {
-            addOrReplace(x.values, val);
-        } else {
+    /*
+        Returns false if the target node got reclaimed before the value was added, in this case the caller retries from the root
+     */
+    private boolean tryPut(String key, T val) {
+        Node<T> x = root;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < key.length()) {
             String segment = getSegment(key, prevDelimiterIndex);
-            Node<T> nextNode = x.children.computeIfAbsent(segment, s -> {
+            x = getOrCreateChild(x, segment);
+            if (x == null) {
+                return false;
+            }
+            prevDelimiterIndex += segment.length() + 1;
+        }
+        synchronized (x) {
+            if (x.removed) {
+                return false;
+            }
+            addOrReplace(x, val);
+        }
+        return true;
+    }
+
+    private Node<T> getOrCreateChild(Node<T> x, String segment) {
+        Node<T> child = x.children.get(segment);
+        if (child != null && !child.removed) {
+            return child;
+        }
+        synchronized (x) {
+            if (x.removed) {
+                return null;
+            }
+            return x.children.computeIfAbsent(segment, s -> {
                 nodesCount.incrementAndGet();
-                return new Node<>();
+                return new Node<>(s, appendSegment(x.topicFilter, s));
             });
-            put(nextNode, key, val, prevDelimiterIndex + segment.length() + 1);
         }
     }
 
-    private void addOrReplace(Set<T> values, T val) {
-        if (!values.add(val)) {
-            values.remove(val);
-            values.add(val);
-        } else {
+    private void addOrReplace(Node<T> x, T val) {
+        ValueWithTopicFilter<T> prevValue = x.values.put(val, new ValueWithTopicFilter<>(val, x.topicFilter));
+        if (prevValue == null) {
             size.getAndIncrement();
         }
     }
@@ -159,30 +186,35 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         if (topicFilter == null || deletionFilter == null) {
             throw new IllegalArgumentException("Topic filter or deletionFilter cannot be null");
         }
-        Node<T> x = getNode(root, topicFilter, 0);
-        if (x != null) {
-            Set<T> valuesToDelete = x.values.stream().filter(deletionFilter).collect(Collectors.toSet());
+        List<Node<T>> path = getPath(topicFilter);
+        if (path != null) {
+            Node<T> x = path.get(path.size() - 1);
+            Set<T> valuesToDelete = x.values.values().stream().map(ValueWithTopicFilter::getValue).filter(deletionFilter).collect(Collectors.toSet());
             if (valuesToDelete.isEmpty()) {
                 return false;
             }
             if (valuesToDelete.size() > 1) {
                 log.error("There are more than one value to delete!");
             }
-            boolean deleted = x.values.removeAll(valuesToDelete);
+            boolean deleted = x.values.keySet().removeAll(valuesToDelete);
             if (deleted) {
                 size.decrementAndGet();
+                reclaimEmptyNodes(path);
             }
             return deleted;
         }
         return false;
     }
 
+    /*
+        Empty nodes are already reclaimed on delete, the sweep is kept as a safety net.
+        It goes one subtree at a time and doesn't block concurrent lookups or puts to other nodes.
+     */
     @Override
-    public void clearEmptyNodes() throws SubscriptionTrieClearException {
+    public void clearEmptyNodes() {
         if (log.isTraceEnabled()) {
             log.trace("Executing clearEmptyNodes");
         }
-        acquireClearTrieLock();
         long nodesBefore = nodesCount.get();
         long clearStartTime = System.currentTimeMillis();
         try {
@@ -196,47 +228,61 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         } catch (Exception e) {
             long nodesAfter = nodesCount.get();
             log.error("Failed on clearing empty nodes. Managed to clear {} nodes.", nodesBefore - nodesAfter, e);
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
-    private void acquireClearTrieLock() throws SubscriptionTrieClearException {
-        boolean successfullyAcquiredLock = false;
-        try {
-            successfullyAcquiredLock = lock.writeLock().tryLock(waitForClearLockMs, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            log.warn("Acquiring lock was interrupted.");
-        }
-        if (!successfullyAcquiredLock) {
-            throw new SubscriptionTrieClearException("Couldn't acquire lock for clearing trie. " +
-                    "There are a lot of clients subscribing right now.");
+    private void clearEmptyChildren(Node<T> node) {
+        for (Node<T> child : node.children.values()) {
+            clearEmptyChildren(child);
+            tryReclaim(node, child);
         }
     }
 
-    private boolean clearEmptyChildren(Node<T> node) {
-        boolean isNodeEmpty = node.values.isEmpty();
-        for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
-            Node<T> value = entry.getValue();
-            boolean isChildEmpty = clearEmptyChildren(value);
-            if (isChildEmpty) {
-                node.children.remove(entry.getKey());
-                nodesCount.decrementAndGet();
-            } else {
-                isNodeEmpty = false;
+    /*
+        Reclaims the emptied nodes bottom-up starting from the last node of the path, stops at the first node that is still in use
+     */
+    private void reclaimEmptyNodes(List<Node<T>> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            if (!tryReclaim(path.get(i - 1), path.get(i))) {
+                return;
             }
         }
+    }
 
-        return isNodeEmpty;
+    /*
+        Locks are always taken parent first, while put holds only one node lock at a time.
+        A node is marked as removed and unlinked atomically, so put never adds to a node that is not reachable from the root.
+     */
+    private boolean tryReclaim(Node<T> parent, Node<T> child) {
+        synchronized (parent) {
+            synchronized (child) {
+                if (child.removed || !child.values.isEmpty() || !child.children.isEmpty()) {
+                    return false;
+                }
+                child.removed = true;
+                parent.children.remove(child.segment, child);
+            }
+        }
+        nodesCount.decrementAndGet();
+        reclaimedNodesCount.incrementAndGet();
+        return true;
     }
 
-    private Node<T> getNode(Node<T> x, String key, int prevDelimiterIndex) {
-        if (x == null) return null;
-        if (prevDelimiterIndex >= key.length()) {
-            return x;
+    private List<Node<T>> getPath(String key) {
+        List<Node<T>> path = new ArrayList<>();
+        Node<T> x = root;
+        path.add(x);
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < key.length()) {
+            String segment = getSegment(key, prevDelimiterIndex);
+            x = x.children.get(segment);
+            if (x == null) {
+                return null;
+            }
+            path.add(x);
+            prevDelimiterIndex += segment.length() + 1;
         }
-        String segment = getSegment(key, prevDelimiterIndex);
-        return getNode(x.children.get(segment), key, prevDelimiterIndex + segment.length() + 1);
+        return path;
     }
 
     private String getSegment(String key, int prevDelimiterIndex) {
@@ -253,9 +299,20 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
 
     private static class Node<T> {
         private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<>();
-        private final Set<T> values = Sets.newConcurrentHashSet();
+        /*
+            Values are stored already wrapped with the topic filter of the node, so lookups don't allocate per match
+         */
+        private final ConcurrentMap<T, ValueWithTopicFilter<T>> values = new ConcurrentHashMap<>();
+        private final String segment;
+        private final String topicFilter;
+        /*
+            Set under the locks of the node and its parent when the node is unlinked from the trie
+         */
+        private volatile boolean removed;
 
-        public Node() {
+        public Node(String segment, String topicFilter) {
+            this.segment = segment;
+            this.topicFilter = topicFilter;
         }
 
         @Override
@@ -273,11 +330,4 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         }
     }
 
-    @AllArgsConstructor
-    private static class TopicPosition<T> {
-        private final String prevTopicFilter;
-        private final int prevDelimiterIndex;
-        private final Node<T> node;
-    }
-
 }
\ No newline at end of file
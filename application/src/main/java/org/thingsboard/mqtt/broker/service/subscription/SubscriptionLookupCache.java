@@ -0,0 +1,34 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import java.util.List;
+import java.util.function.Function;
+
+/*
+    Cache of topic -> subscriptions matched in the SubscriptionTrie
+ */
+public interface SubscriptionLookupCache {
+
+    boolean isEnabled();
+
+    List<ValueWithTopicFilter<ClientSubscription>> get(String topic, Function<String, List<ValueWithTopicFilter<ClientSubscription>>> lookup);
+
+    /*
+        Must be called after every change of the topic filter in the SubscriptionTrie
+     */
+    void invalidate(String topicFilter);
+}
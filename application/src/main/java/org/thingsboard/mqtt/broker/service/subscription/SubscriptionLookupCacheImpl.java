@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.stats.SubscriptionLookupCacheStats;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SubscriptionLookupCacheImpl implements SubscriptionLookupCache {
+
+    private final StatsManager statsManager;
+
+    /*
+        Incremented on every invalidation, a lookup result computed concurrently with a change is not kept in the cache
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final CachedTopicsIndex cachedTopicsIndex = new CachedTopicsIndex();
+
+    @Getter
+    @Setter
+    @Value("${mqtt.subscription-trie.lookup-cache.enabled:false}")
+    private boolean enabled;
+    @Setter
+    @Value("${mqtt.subscription-trie.lookup-cache.max-size:100000}")
+    private long maxSize;
+
+    private Cache<String, List<ValueWithTopicFilter<ClientSubscription>>> cache;
+    private SubscriptionLookupCacheStats stats;
+
+    @PostConstruct
+    public void init() {
+        this.stats = statsManager.getSubscriptionLookupCacheStats();
+        if (!enabled) {
+            return;
+        }
+        // the writer is called atomically with the cache operation on the key, so the index never misses a cached topic
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .writer(new CacheWriter<String, List<ValueWithTopicFilter<ClientSubscription>>>() {
+                    @Override
+                    public void write(String topic, List<ValueWithTopicFilter<ClientSubscription>> value) {
+                        cachedTopicsIndex.add(topic);
+                    }
+
+                    @Override
+                    public void delete(String topic, List<ValueWithTopicFilter<ClientSubscription>> value, RemovalCause cause) {
+                        cachedTopicsIndex.remove(topic);
+                    }
+                })
+                .build();
+        statsManager.registerSubscriptionLookupCacheStats(cache.asMap());
+    }
+
+    @Override
+    public List<ValueWithTopicFilter<ClientSubscription>> get(String topic, Function<String, List<ValueWithTopicFilter<ClientSubscription>>> lookup) {
+        if (!enabled) {
+            return lookup.apply(topic);
+        }
+        List<ValueWithTopicFilter<ClientSubscription>> subscriptions = cache.getIfPresent(topic);
+        if (subscriptions != null) {
+            stats.logHit();
+            return subscriptions;
+        }
+        stats.logMiss();
+
+        long lookupGeneration = generation.get();
+        subscriptions = Collections.unmodifiableList(lookup.apply(topic));
+        cache.put(topic, subscriptions);
+        if (generation.get() != lookupGeneration) {
+            // the trie was changed during the lookup, and the invalidation may have missed the topic that wasn't cached yet
+            cache.invalidate(topic);
+        }
+        return subscriptions;
+    }
+
+    @Override
+    public void invalidate(String topicFilter) {
+        if (!enabled) {
+            return;
+        }
+        generation.incrementAndGet();
+        List<String> topics = cachedTopicsIndex.findMatchingTopics(topicFilter);
+        if (topics.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Invalidating {} cached topics", topicFilter, topics.size());
+        }
+        cache.invalidateAll(topics);
+        stats.logInvalidated(topics.size());
+    }
+}
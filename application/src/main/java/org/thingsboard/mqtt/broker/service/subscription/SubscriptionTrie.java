@@ -18,6 +18,7 @@ package org.thingsboard.mqtt.broker.service.subscription;
 import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
 
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 public interface SubscriptionTrie<T> {
@@ -27,9 +28,21 @@ public interface SubscriptionTrie<T> {
      */
     List<ValueWithTopicFilter<T>> get(String topic);
 
+    /*
+        Allocation-free variant of get(topic): every match is handed to the consumer as soon as it is found
+     */
+    void get(String topic, Consumer<ValueWithTopicFilter<T>> consumer);
+
     void put(String topicFilter, T val);
 
     boolean delete(String topicFilter, Predicate<T> deletionFilter);
 
     void clearEmptyNodes() throws SubscriptionTrieClearException;
+
+    /*
+        For the tries that make writes visible to lookups later than put/delete return:
+        the listener is called with every changed topic filter once lookups can see the change
+     */
+    default void setPublishedChangesListener(Consumer<String> listener) {
+    }
 }
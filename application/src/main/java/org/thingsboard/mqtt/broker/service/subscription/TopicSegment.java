@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+/*
+    Mutable view of one topic level used as a lookup key in String-keyed maps instead of a substring.
+    The hash code is computed the same way as String.hashCode() and equals() accepts Strings,
+    which is all ConcurrentHashMap.get() needs since it calls both methods on the lookup key.
+ */
+final class TopicSegment implements CharSequence {
+    private String source;
+    private int start;
+    private int end;
+    private int hash;
+
+    void wrap(String topic, int prevDelimiterIndex) {
+        int nextDelimiterIndex = topic.indexOf(BrokerConstants.TOPIC_DELIMITER, prevDelimiterIndex);
+        this.source = topic;
+        this.start = prevDelimiterIndex;
+        this.end = nextDelimiterIndex == -1 ? topic.length() : nextDelimiterIndex;
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + topic.charAt(i);
+        }
+        this.hash = h;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    void clear() {
+        this.source = null;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return source.substring(start + from, start + to);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof String) {
+            String str = (String) o;
+            return str.length() == length() && source.regionMatches(start, str, 0, str.length());
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return source.substring(start, end);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import java.util.Arrays;
+
+/*
+    Per-thread stack of (node, prevDelimiterIndex) pairs and the segment key reused by every topic lookup
+ */
+final class TopicTraversalState {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final ThreadLocal<TopicTraversalState> THREAD_STATE = ThreadLocal.withInitial(TopicTraversalState::new);
+
+    private final TopicSegment segment = new TopicSegment();
+    private Object[] nodes = new Object[INITIAL_CAPACITY];
+    private int[] indexes = new int[INITIAL_CAPACITY];
+    private int size;
+    private boolean inUse;
+
+    private TopicTraversalState() {
+    }
+
+    /*
+        Must be paired with release(). A nested lookup made from a match consumer gets its own state
+     */
+    static TopicTraversalState acquire() {
+        TopicTraversalState state = THREAD_STATE.get();
+        if (state.inUse) {
+            state = new TopicTraversalState();
+        }
+        state.inUse = true;
+        return state;
+    }
+
+    void release() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        segment.clear();
+        inUse = false;
+    }
+
+    TopicSegment getSegment() {
+        return segment;
+    }
+
+    void push(Object node, int prevDelimiterIndex) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        nodes[size] = node;
+        indexes[size] = prevDelimiterIndex;
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+        Removes the top pair, its node and index are available via node() and index() until the next push
+     */
+    void pop() {
+        size--;
+    }
+
+    Object node() {
+        return nodes[size];
+    }
+
+    int index() {
+        return indexes[size];
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+
+/*
+    Msgs of one publisher go to the same member, so the member receives them in the publishing order
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class ClientIdConsistentHashStrategy implements SharedSubscriptionProcessingStrategy {
+
+    private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
+
+    @Override
+    public Subscription analyze(SharedSubscriptionGroup sharedSubscriptionGroup, PublishMsgProto publishMsgProto) {
+        return sharedSubscriptionProcessor.processConsistentHash(sharedSubscriptionGroup, publishMsgProto.getClientId());
+    }
+
+}
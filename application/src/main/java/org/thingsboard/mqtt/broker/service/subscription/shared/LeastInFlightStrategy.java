@@ -15,21 +15,20 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
-import java.util.List;
-
-@Data
 @RequiredArgsConstructor
 @Slf4j
-@EqualsAndHashCode
-public class SharedSubscription {
+public class LeastInFlightStrategy implements SharedSubscriptionProcessingStrategy {
+
+    private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
 
-    private final TopicSharedSubscription topicSharedSubscription;
-    private final List<Subscription> subscriptions;
+    @Override
+    public Subscription analyze(SharedSubscriptionGroup sharedSubscriptionGroup, PublishMsgProto publishMsgProto) {
+        return sharedSubscriptionProcessor.processLeastInFlight(sharedSubscriptionGroup);
+    }
 
 }
@@ -18,7 +18,6 @@ package org.thingsboard.mqtt.broker.service.subscription.shared;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.Collection;
-import java.util.Set;
 
 public interface SharedSubscriptionCacheService {
 
@@ -26,6 +25,8 @@ public interface SharedSubscriptionCacheService {
 
     void remove(String clientId, TopicSubscription topicSubscription);
 
-    SharedSubscriptions get(Set<TopicSharedSubscription> topicSharedSubscription);
+    SharedSubscriptionGroup get(TopicSharedSubscription topicSharedSubscription);
+
+    void processSessionUpdate(String clientId);
 
 }
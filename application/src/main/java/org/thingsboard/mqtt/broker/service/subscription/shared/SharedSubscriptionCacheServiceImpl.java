@@ -15,7 +15,6 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
-import com.google.common.collect.Sets;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,15 +27,20 @@ import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCach
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/*
+    Keeps the members of every shared subscription group and the snapshot of the group used for the msg processing.
+    The snapshot is rebuilt when a member subscribes/unsubscribes, when the session of a member changes
+    only the subscription of that member is replaced in the copy of the snapshot
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -45,6 +49,9 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
     private final ClientSessionCache clientSessionCache;
     @Getter
     private final ConcurrentMap<TopicSharedSubscription, SharedSubscriptions> sharedSubscriptionsMap = new ConcurrentHashMap<>();
+    @Getter
+    private final ConcurrentMap<TopicSharedSubscription, SharedSubscriptionGroup> sharedSubscriptionGroupsMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<TopicSharedSubscription>> clientSharedSubscriptionsMap = new ConcurrentHashMap<>();
 
     @Override
     public void put(String clientId, Collection<TopicSubscription> topicSubscriptions) {
@@ -67,12 +74,15 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
         for (TopicSubscription topicSubscription : sharedTopicSubscriptions) {
             Subscription subscription = newSubscription(topicSubscription, clientSessionInfo);
 
-            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.computeIfAbsent(getKey(topicSubscription), tss -> SharedSubscriptions.newInstance());
+            TopicSharedSubscription key = getKey(topicSubscription);
+            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.computeIfAbsent(key, tss -> SharedSubscriptions.newInstance());
             if (ClientType.APPLICATION == clientSessionInfo.getType()) {
                 updateSharedSubscriptions(sharedSubscriptions.getApplicationSubscriptions(), clientId, topicSubscription, subscription);
             } else {
                 updateSharedSubscriptions(sharedSubscriptions.getDeviceSubscriptions(), clientId, topicSubscription, subscription);
             }
+            clientSharedSubscriptionsMap.computeIfAbsent(clientId, id -> ConcurrentHashMap.newKeySet()).add(key);
+            rebuildGroup(key);
         }
     }
 
@@ -96,6 +106,10 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
     @Override
     public void remove(String clientId, TopicSubscription topicSubscription) {
         TopicSharedSubscription key = getKey(topicSubscription);
+        clientSharedSubscriptionsMap.computeIfPresent(clientId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
         SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(key);
         if (sharedSubscriptions == null) {
             return;
@@ -114,59 +128,76 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
         if (sharedSubscriptions.isEmpty()) {
             sharedSubscriptionsMap.remove(key);
         }
+        rebuildGroup(key);
     }
 
     @Override
-    public SharedSubscriptions get(Set<TopicSharedSubscription> topicSharedSubscriptions) {
-        if (CollectionUtils.isEmpty(topicSharedSubscriptions)) {
-            return null;
-        }
-        SharedSubscriptions subscriptions = collectAllSubscriptions(topicSharedSubscriptions);
+    public SharedSubscriptionGroup get(TopicSharedSubscription topicSharedSubscription) {
+        return sharedSubscriptionGroupsMap.get(topicSharedSubscription);
+    }
 
-        Set<Subscription> applicationSubscriptions = Sets.newConcurrentHashSet(filterSubscriptions(subscriptions.getApplicationSubscriptions()));
-        Set<Subscription> deviceSubscriptions = Sets.newConcurrentHashSet(filterSubscriptions(subscriptions.getDeviceSubscriptions()));
+    @Override
+    public void processSessionUpdate(String clientId) {
+        Set<TopicSharedSubscription> keys = clientSharedSubscriptionsMap.get(clientId);
+        if (keys == null) {
+            return;
+        }
+        for (TopicSharedSubscription key : keys) {
+            updateMemberSession(key, clientId);
+        }
+    }
 
-        return new SharedSubscriptions(applicationSubscriptions, deviceSubscriptions);
+    /*
+        The group is rebuilt from the current members and sessions after every change, so concurrent changes
+        of the same group end with the snapshot that reflects the latest of them
+     */
+    private void rebuildGroup(TopicSharedSubscription key) {
+        sharedSubscriptionGroupsMap.compute(key, (tss, previous) -> {
+            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(tss);
+            if (sharedSubscriptions == null || sharedSubscriptions.isEmpty()) {
+                return null;
+            }
+            return buildGroup(tss, previous, sharedSubscriptions);
+        });
     }
 
-    private Collection<Subscription> filterSubscriptions(Set<Subscription> subscriptions) {
-        if (subscriptions.isEmpty()) {
-            return subscriptions;
-        }
-        return subscriptions.stream()
-                .map(subscription -> {
-                    var clientSessionInfo = findClientSessionInfo(subscription.getClientSessionInfo().getClientId());
-                    if (clientSessionInfo == null) {
-                        return null;
-                    }
-                    return newSubscription(subscription, clientSessionInfo);
-                }).filter(Objects::nonNull)
-                .collect(Collectors.toMap(
-                        subscription -> subscription.getClientSessionInfo().getClientId(),
-                        Function.identity(),
-                        this::getSubscriptionWithHigherQos)
-                )
-                .values();
+    /*
+        The session is read inside the compute of the group, so concurrent updates of the same member
+        end with its latest session. The group is rebuilt if it doesn't have the member yet,
+        e.g. the session of the member wasn't found on the previous change
+     */
+    private void updateMemberSession(TopicSharedSubscription key, String clientId) {
+        sharedSubscriptionGroupsMap.compute(key, (tss, previous) -> {
+            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(tss);
+            if (sharedSubscriptions == null || sharedSubscriptions.isEmpty()) {
+                return null;
+            }
+            SharedSubscriptionGroup group = previous == null ? null : previous.withMemberSession(clientId, findClientSessionInfo(clientId));
+            return group != null ? group : buildGroup(tss, previous, sharedSubscriptions);
+        });
     }
 
-    private SharedSubscriptions collectAllSubscriptions(Set<TopicSharedSubscription> topicSharedSubscriptions) {
-        SharedSubscriptions result = SharedSubscriptions.newInstance();
+    private SharedSubscriptionGroup buildGroup(TopicSharedSubscription key, SharedSubscriptionGroup previous,
+                                               SharedSubscriptions sharedSubscriptions) {
+        return SharedSubscriptionGroup.newVersion(
+                previous,
+                key,
+                new HashSet<>(refreshSubscriptions(sharedSubscriptions.getApplicationSubscriptions())),
+                refreshSubscriptions(sharedSubscriptions.getDeviceSubscriptions()).toArray(Subscription[]::new)
+        );
+    }
 
-        for (TopicSharedSubscription topicSharedSubscription : topicSharedSubscriptions) {
-            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(topicSharedSubscription);
-            if (sharedSubscriptions == null) {
-                continue;
+    private List<Subscription> refreshSubscriptions(Set<Subscription> subscriptions) {
+        List<Subscription> result = new ArrayList<>(subscriptions.size());
+        for (Subscription subscription : subscriptions) {
+            var clientSessionInfo = findClientSessionInfo(subscription.getClientSessionInfo().getClientId());
+            if (clientSessionInfo != null) {
+                result.add(newSubscription(subscription, clientSessionInfo));
             }
-            result.getApplicationSubscriptions().addAll(sharedSubscriptions.getApplicationSubscriptions());
-            result.getDeviceSubscriptions().addAll(sharedSubscriptions.getDeviceSubscriptions());
         }
         return result;
     }
 
-    private Subscription getSubscriptionWithHigherQos(Subscription first, Subscription second) {
-        return first.getQos() > second.getQos() ? first : second;
-    }
-
     private TopicSharedSubscription getKey(TopicSubscription topicSubscription) {
         return new TopicSharedSubscription(topicSubscription.getTopicFilter(), topicSubscription.getShareName());
     }
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import lombok.Getter;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Immutable snapshot of the members of one shared subscription group. A new version is built on every subscribe/unsubscribe
+    of a member and on every connect/disconnect of a member, so the msg processing only reads the arrays prepared in advance.
+    The cursor is passed from one version to the next one to keep the round-robin order when the members change
+ */
+@Getter
+public class SharedSubscriptionGroup {
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final TopicSharedSubscription topicSharedSubscription;
+    private final long version;
+    private final Set<Subscription> applicationSubscriptions;
+    private final Subscription[] deviceSubscriptions;
+    private final Subscription[] connectedDeviceSubscriptions;
+    private final AtomicInteger cursor;
+
+    private SharedSubscriptionGroup(TopicSharedSubscription topicSharedSubscription, long version,
+                                    Set<Subscription> applicationSubscriptions, Subscription[] deviceSubscriptions,
+                                    Subscription[] connectedDeviceSubscriptions, AtomicInteger cursor) {
+        this.topicSharedSubscription = topicSharedSubscription;
+        this.version = version;
+        this.applicationSubscriptions = applicationSubscriptions;
+        this.deviceSubscriptions = deviceSubscriptions;
+        this.connectedDeviceSubscriptions = connectedDeviceSubscriptions;
+        this.cursor = cursor;
+    }
+
+    public static SharedSubscriptionGroup newInstance(TopicSharedSubscription topicSharedSubscription,
+                                                      Set<Subscription> applicationSubscriptions,
+                                                      Subscription[] deviceSubscriptions) {
+        return newVersion(null, topicSharedSubscription, applicationSubscriptions, deviceSubscriptions);
+    }
+
+    /*
+        'previous' may be null for the first version of the group
+     */
+    public static SharedSubscriptionGroup newVersion(SharedSubscriptionGroup previous, TopicSharedSubscription topicSharedSubscription,
+                                                     Set<Subscription> applicationSubscriptions, Subscription[] deviceSubscriptions) {
+        return new SharedSubscriptionGroup(
+                topicSharedSubscription,
+                previous == null ? 1 : previous.version + 1,
+                Collections.unmodifiableSet(applicationSubscriptions),
+                deviceSubscriptions,
+                filterConnected(deviceSubscriptions),
+                previous == null ? new AtomicInteger() : previous.cursor
+        );
+    }
+
+    /*
+        Returns the next version with only the subscription of the member changed: its session is replaced,
+        or the subscription is removed if the session is null. The other members are shared with this version.
+        Returns null if the group has no subscription of the member to replace
+     */
+    public SharedSubscriptionGroup withMemberSession(String clientId, ClientSessionInfo clientSessionInfo) {
+        Set<Subscription> newApplicationSubscriptions = replaceMember(applicationSubscriptions, clientId, clientSessionInfo);
+        Subscription[] newDeviceSubscriptions = replaceMember(deviceSubscriptions, clientId, clientSessionInfo);
+        if (newApplicationSubscriptions == null && newDeviceSubscriptions == null) {
+            return clientSessionInfo == null ? this : null;
+        }
+        return new SharedSubscriptionGroup(
+                topicSharedSubscription,
+                version + 1,
+                newApplicationSubscriptions == null ? applicationSubscriptions : Collections.unmodifiableSet(newApplicationSubscriptions),
+                newDeviceSubscriptions == null ? deviceSubscriptions : newDeviceSubscriptions,
+                newDeviceSubscriptions == null ? connectedDeviceSubscriptions : filterConnected(newDeviceSubscriptions),
+                cursor
+        );
+    }
+
+    public boolean hasDeviceSubscriptions() {
+        return deviceSubscriptions.length > 0;
+    }
+
+    public boolean hasConnectedDeviceSubscriptions() {
+        return connectedDeviceSubscriptions.length > 0;
+    }
+
+    /*
+        Returns the next connected device member or null if all device members are disconnected
+     */
+    public Subscription nextConnectedDeviceSubscription() {
+        Subscription[] connected = connectedDeviceSubscriptions;
+        if (connected.length == 0) {
+            return null;
+        }
+        return connected[Math.floorMod(cursor.getAndIncrement(), connected.length)];
+    }
+
+    private static Subscription[] filterConnected(Subscription[] subscriptions) {
+        int connectedCount = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.getClientSessionInfo().isConnected()) {
+                connectedCount++;
+            }
+        }
+        if (connectedCount == subscriptions.length) {
+            return subscriptions;
+        }
+        if (connectedCount == 0) {
+            return NO_SUBSCRIPTIONS;
+        }
+        Subscription[] connected = new Subscription[connectedCount];
+        int i = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.getClientSessionInfo().isConnected()) {
+                connected[i++] = subscription;
+            }
+        }
+        return connected;
+    }
+
+    private static Set<Subscription> replaceMember(Set<Subscription> subscriptions, String clientId, ClientSessionInfo clientSessionInfo) {
+        for (Subscription subscription : subscriptions) {
+            if (isMember(subscription, clientId)) {
+                Set<Subscription> result = new HashSet<>(subscriptions);
+                result.remove(subscription);
+                if (clientSessionInfo != null) {
+                    result.add(withSession(subscription, clientSessionInfo));
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static Subscription[] replaceMember(Subscription[] subscriptions, String clientId, ClientSessionInfo clientSessionInfo) {
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (isMember(subscriptions[i], clientId)) {
+                if (clientSessionInfo != null) {
+                    Subscription[] result = subscriptions.clone();
+                    result[i] = withSession(subscriptions[i], clientSessionInfo);
+                    return result;
+                }
+                Subscription[] result = new Subscription[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, result, 0, i);
+                System.arraycopy(subscriptions, i + 1, result, i, subscriptions.length - i - 1);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMember(Subscription subscription, String clientId) {
+        return clientId.equals(subscription.getClientSessionInfo().getClientId());
+    }
+
+    private static Subscription withSession(Subscription subscription, ClientSessionInfo clientSessionInfo) {
+        return new Subscription(
+                subscription.getTopicFilter(),
+                subscription.getQos(),
+                clientSessionInfo,
+                subscription.getShareName(),
+                subscription.getOptions()
+        );
+    }
+}
@@ -15,10 +15,14 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
 public interface SharedSubscriptionProcessingStrategy {
 
-    Subscription analyze(SharedSubscription sharedSubscription);
+    /*
+        Returns null if no member of the group is connected
+     */
+    Subscription analyze(SharedSubscriptionGroup sharedSubscriptionGroup, PublishMsgProto publishMsgProto);
 
 }
@@ -31,10 +31,20 @@ public class SharedSubscriptionProcessingStrategyFactory {
     private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
 
     public SharedSubscriptionProcessingStrategy newInstance() {
-        if (SharedSubscriptionProcessingType.ROUND_ROBIN == type) {
-            return new RoundRobinStrategy(sharedSubscriptionProcessor);
+        switch (type) {
+            case ROUND_ROBIN:
+                return new RoundRobinStrategy(sharedSubscriptionProcessor);
+            case LEAST_IN_FLIGHT:
+                return new LeastInFlightStrategy(sharedSubscriptionProcessor);
+            case ACK_LATENCY_WEIGHTED:
+                return new AckLatencyWeightedStrategy(sharedSubscriptionProcessor);
+            case CONSISTENT_HASH_BY_CLIENT_ID:
+                return new ClientIdConsistentHashStrategy(sharedSubscriptionProcessor);
+            case CONSISTENT_HASH_BY_TOPIC:
+                return new TopicConsistentHashStrategy(sharedSubscriptionProcessor);
+            default:
+                throw new RuntimeException("SharedSubscriptionProcessingType " + type + " is not supported!");
         }
-        throw new RuntimeException("SharedSubscriptionProcessingType " + type + " is not supported!");
     }
 
 }
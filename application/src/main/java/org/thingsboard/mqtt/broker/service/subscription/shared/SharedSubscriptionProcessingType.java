@@ -17,6 +17,10 @@ package org.thingsboard.mqtt.broker.service.subscription.shared;
 
 public enum SharedSubscriptionProcessingType {
 
-    ROUND_ROBIN
+    ROUND_ROBIN,
+    LEAST_IN_FLIGHT,
+    ACK_LATENCY_WEIGHTED,
+    CONSISTENT_HASH_BY_CLIENT_ID,
+    CONSISTENT_HASH_BY_TOPIC
 
 }
@@ -19,8 +19,12 @@ import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
 public interface SharedSubscriptionProcessor {
 
-    Subscription processRoundRobin(SharedSubscription sharedSubscription);
+    Subscription processRoundRobin(SharedSubscriptionGroup sharedSubscriptionGroup);
 
-    void unsubscribe(TopicSharedSubscription topicSharedSubscription);
+    Subscription processLeastInFlight(SharedSubscriptionGroup sharedSubscriptionGroup);
+
+    Subscription processAckLatencyWeighted(SharedSubscriptionGroup sharedSubscriptionGroup);
+
+    Subscription processConsistentHash(SharedSubscriptionGroup sharedSubscriptionGroup, String key);
 
 }
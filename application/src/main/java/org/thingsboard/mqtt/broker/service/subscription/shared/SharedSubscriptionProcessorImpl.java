@@ -15,73 +15,162 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
-import com.google.common.collect.Iterables;
-import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.PublishDeliveryLoadCtx;
 
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
+/*
+    All methods choose among the connected members of the group and return null when the whole group is disconnected.
+    The load of a member is known only when the member is connected to this node, members connected to the other nodes
+    are assumed to be loaded as the least loaded known member (least in-flight) or as the average known member (ack latency)
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class SharedSubscriptionProcessorImpl implements SharedSubscriptionProcessor {
 
-    private final ConcurrentMap<TopicSharedSubscription, SharedSubscriptionIterator> sharedSubscriptionIteratorsMap = new ConcurrentHashMap<>();
+    private static final int UNKNOWN_LOAD = -1;
+    // latencies below this are treated as equal, otherwise a member with a few fast samples takes all msgs
+    private static final long MIN_ACK_LATENCY_NANOS = 100_000;
+
+    private final ClientSessionCtxService clientSessionCtxService;
 
     @Override
-    public Subscription processRoundRobin(SharedSubscription sharedSubscription) {
-        TopicSharedSubscription key = sharedSubscription.getTopicSharedSubscription();
-        Iterator<Subscription> iterator = getIterator(key, sharedSubscription);
-        return getOneSubscription(iterator);
+    public Subscription processRoundRobin(SharedSubscriptionGroup sharedSubscriptionGroup) {
+        return sharedSubscriptionGroup.nextConnectedDeviceSubscription();
     }
 
+    /*
+        Scans the members starting from the round-robin cursor, so members with the same load still take turns
+     */
     @Override
-    public void unsubscribe(TopicSharedSubscription topicSharedSubscription) {
-        sharedSubscriptionIteratorsMap.remove(topicSharedSubscription);
+    public Subscription processLeastInFlight(SharedSubscriptionGroup sharedSubscriptionGroup) {
+        Subscription[] connected = sharedSubscriptionGroup.getConnectedDeviceSubscriptions();
+        if (connected.length <= 1) {
+            return connected.length == 0 ? null : connected[0];
+        }
+        int minInFlight = Integer.MAX_VALUE;
+        for (Subscription subscription : connected) {
+            int inFlight = getInFlightMsgs(subscription);
+            if (inFlight != UNKNOWN_LOAD && inFlight < minInFlight) {
+                minInFlight = inFlight;
+            }
+        }
+        int start = nextStart(sharedSubscriptionGroup, connected.length);
+        for (int i = 0; i < connected.length; i++) {
+            Subscription subscription = connected[(start + i) % connected.length];
+            int inFlight = getInFlightMsgs(subscription);
+            if (inFlight == UNKNOWN_LOAD || inFlight <= minInFlight) {
+                return subscription;
+            }
+        }
+        return connected[start];
     }
 
-    private Iterator<Subscription> getIterator(TopicSharedSubscription key, SharedSubscription sharedSubscription) {
-        if (sharedSubscriptionIteratorsMap.containsKey(key)) {
-            SharedSubscriptionIterator subscriptionIterator = sharedSubscriptionIteratorsMap.get(key);
-            if (subscriptionIterator.getSharedSubscription().equals(sharedSubscription)) {
-                return subscriptionIterator.getIterator();
-            } else {
-                return createIteratorAndPutToMap(key, sharedSubscription);
+    /*
+        Chooses a member with the probability inversely proportional to its ack latency
+     */
+    @Override
+    public Subscription processAckLatencyWeighted(SharedSubscriptionGroup sharedSubscriptionGroup) {
+        Subscription[] connected = sharedSubscriptionGroup.getConnectedDeviceSubscriptions();
+        if (connected.length <= 1) {
+            return connected.length == 0 ? null : connected[0];
+        }
+        long knownLatencySum = 0;
+        int knownCount = 0;
+        for (Subscription subscription : connected) {
+            long latency = getAckLatencyNanos(subscription);
+            if (latency != UNKNOWN_LOAD) {
+                knownLatencySum += latency;
+                knownCount++;
             }
-        } else {
-            return createIteratorAndPutToMap(key, sharedSubscription);
         }
+        if (knownCount == 0) {
+            return processRoundRobin(sharedSubscriptionGroup);
+        }
+        long defaultLatency = knownLatencySum / knownCount;
+
+        double totalWeight = 0;
+        for (Subscription subscription : connected) {
+            totalWeight += getWeight(subscription, defaultLatency);
+        }
+        double point = ThreadLocalRandom.current().nextDouble(totalWeight);
+        for (Subscription subscription : connected) {
+            point -= getWeight(subscription, defaultLatency);
+            if (point < 0) {
+                return subscription;
+            }
+        }
+        return connected[connected.length - 1];
     }
 
-    private Iterator<Subscription> createIteratorAndPutToMap(TopicSharedSubscription key, SharedSubscription sharedSubscription) {
-        Iterator<Subscription> iterator = createIterator(sharedSubscription.getSubscriptions());
-        sharedSubscriptionIteratorsMap.put(key, new SharedSubscriptionIterator(sharedSubscription, iterator));
-        return iterator;
+    /*
+        Rendezvous hashing: every member gets a score for the key and the highest score wins, so msgs with the same key
+        go to the same member while it stays connected, and a member leaving the group moves only its own keys
+     */
+    @Override
+    public Subscription processConsistentHash(SharedSubscriptionGroup sharedSubscriptionGroup, String key) {
+        Subscription[] connected = sharedSubscriptionGroup.getConnectedDeviceSubscriptions();
+        if (connected.length <= 1) {
+            return connected.length == 0 ? null : connected[0];
+        }
+        int keyHash = key == null ? 0 : key.hashCode();
+        Subscription result = null;
+        long maxScore = Long.MIN_VALUE;
+        for (Subscription subscription : connected) {
+            long score = mix(((long) keyHash << 32) | (subscription.getClientSessionInfo().getClientId().hashCode() & 0xffffffffL));
+            if (result == null || score > maxScore) {
+                result = subscription;
+                maxScore = score;
+            }
+        }
+        return result;
     }
 
-    Iterator<Subscription> createIterator(List<Subscription> subscriptions) {
-        return Iterables.cycle(subscriptions).iterator();
+    private int nextStart(SharedSubscriptionGroup sharedSubscriptionGroup, int length) {
+        return Math.floorMod(sharedSubscriptionGroup.getCursor().getAndIncrement(), length);
     }
 
-    Subscription getOneSubscription(Iterator<Subscription> iterator) {
-        while (true) {
-            Subscription next = iterator.next();
-            if (next.getClientSessionInfo().isConnected()) {
-                return next;
-            }
+    private int getInFlightMsgs(Subscription subscription) {
+        PublishDeliveryLoadCtx loadCtx = findLoadCtx(subscription);
+        return loadCtx == null ? UNKNOWN_LOAD : loadCtx.getInFlightMsgs();
+    }
+
+    /*
+        Local members that have not acknowledged anything yet are unknown as well
+     */
+    private long getAckLatencyNanos(Subscription subscription) {
+        PublishDeliveryLoadCtx loadCtx = findLoadCtx(subscription);
+        if (loadCtx == null) {
+            return UNKNOWN_LOAD;
         }
+        long latency = loadCtx.getAckLatencyNanos();
+        return latency == 0 ? UNKNOWN_LOAD : Math.max(latency, MIN_ACK_LATENCY_NANOS);
+    }
+
+    private double getWeight(Subscription subscription, long defaultLatency) {
+        long latency = getAckLatencyNanos(subscription);
+        return 1.0 / Math.max(latency == UNKNOWN_LOAD ? defaultLatency : latency, MIN_ACK_LATENCY_NANOS);
+    }
+
+    private PublishDeliveryLoadCtx findLoadCtx(Subscription subscription) {
+        ClientSessionCtx clientSessionCtx = clientSessionCtxService.getClientSessionCtx(subscription.getClientSessionInfo().getClientId());
+        return clientSessionCtx == null ? null : clientSessionCtx.getPublishDeliveryLoadCtx();
     }
 
-    @Data
-    @RequiredArgsConstructor
-    static class SharedSubscriptionIterator {
-        private final SharedSubscription sharedSubscription;
-        private final Iterator<Subscription> iterator;
+    // the finalizer of MurmurHash3, spreads the bits of the key and the member over the whole score
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9a64c936b53L;
+        value ^= value >>> 33;
+        return value;
     }
 }
@@ -18,6 +18,7 @@ package org.thingsboard.mqtt.broker.session;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.mqtt.MqttVersion;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.ScheduledFuture;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -25,6 +26,7 @@ import org.thingsboard.mqtt.broker.actors.client.state.PubResponseProcessingCtx;
 import org.thingsboard.mqtt.broker.common.data.ClientType;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.MqttPendingPublish;
+import org.thingsboard.mqtt.broker.service.mqtt.retransmission.RetransmissionQueue;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 
 import java.net.InetSocketAddress;
@@ -32,6 +34,7 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class ClientSessionCtx implements SessionContext {
@@ -48,6 +51,14 @@ public class ClientSessionCtx implements SessionContext {
     private final AwaitingPubRelPacketsCtx awaitingPubRelPacketsCtx = new AwaitingPubRelPacketsCtx();
     @Getter
     private final ConcurrentMap<Integer, MqttPendingPublish> pendingPublishes = new ConcurrentHashMap<>();
+    // PUBLISH msgs of the session sent to the queue and not yet acknowledged by it
+    @Getter
+    private final AtomicInteger pendingPublishPersists = new AtomicInteger();
+    // bits of ChannelReadPauseReason, the channel is read only when none is set
+    @Getter
+    private final AtomicInteger readPauseReasons = new AtomicInteger();
+    @Getter
+    private final PublishDeliveryLoadCtx publishDeliveryLoadCtx = new PublishDeliveryLoadCtx();
 
     @Getter
     @Setter
@@ -68,6 +79,16 @@ public class ClientSessionCtx implements SessionContext {
     @Getter
     private ChannelHandlerContext channel;
 
+    // the next retransmission of the pending msgs, accessed only from the event loop of the channel
+    @Getter
+    @Setter
+    private ScheduledFuture<?> retransmissionFuture;
+    @Getter
+    @Setter
+    private long retransmissionTime;
+    @Getter
+    private final RetransmissionQueue retransmissionQueue = new RetransmissionQueue();
+
     public ClientSessionCtx(UUID sessionId, SslHandler sslHandler, int maxInFlightMsgs) {
         this.sessionId = sessionId;
         this.sslHandler = sslHandler;
@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.session;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Load of the session as seen by the shared subscriptions: QoS 1/2 PUBLISH msgs sent to the client and not acknowledged yet,
+    and the smoothed time the client takes to acknowledge them.
+    The latency is measured on one sampled packet at a time, so the session keeps no per-packet state
+ */
+public class PublishDeliveryLoadCtx {
+
+    private static final int NO_SAMPLE = -1;
+    // weight of the newest sample in the moving average, 1/8 as in the TCP round-trip time estimation
+    private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+    private final AtomicInteger inFlightMsgs = new AtomicInteger();
+    private final AtomicInteger sampledPacketId = new AtomicInteger(NO_SAMPLE);
+    private volatile long sampleSentTime;
+    private volatile long ackLatencyNanos;
+
+    /*
+        Must be called before the msg is written to the channel, so the acknowledgement can't outrun it
+     */
+    public void onPublishSent(int packetId) {
+        inFlightMsgs.incrementAndGet();
+        if (sampledPacketId.get() == NO_SAMPLE && sampledPacketId.compareAndSet(NO_SAMPLE, packetId)) {
+            sampleSentTime = System.nanoTime();
+        }
+    }
+
+    /*
+        Acknowledgements of one session are processed by its actor only
+     */
+    public void onPublishAcknowledged(int packetId) {
+        // duplicate or unexpected acknowledgements must not push the counter below zero
+        inFlightMsgs.getAndUpdate(count -> count > 0 ? count - 1 : 0);
+        if (sampledPacketId.get() == packetId) {
+            long sentTime = sampleSentTime;
+            sampleSentTime = 0;
+            sampledPacketId.set(NO_SAMPLE);
+            if (sentTime != 0) {
+                updateAckLatency(System.nanoTime() - sentTime);
+            }
+        }
+    }
+
+    public int getInFlightMsgs() {
+        return inFlightMsgs.get();
+    }
+
+    /*
+        Returns 0 until the first acknowledgement is measured. A sample that waits for its acknowledgement longer than
+        the average counts as the current latency, so a client that stopped acknowledging is seen as slow right away
+     */
+    public long getAckLatencyNanos() {
+        long latency = ackLatencyNanos;
+        long sentTime = sampleSentTime;
+        if (sentTime != 0) {
+            latency = Math.max(latency, System.nanoTime() - sentTime);
+        }
+        return latency;
+    }
+
+    private void updateAckLatency(long sampleNanos) {
+        long latency = ackLatencyNanos;
+        ackLatencyNanos = latency == 0 ? sampleNanos : latency + ((sampleNanos - latency) >> LATENCY_SMOOTHING_SHIFT);
+    }
+}
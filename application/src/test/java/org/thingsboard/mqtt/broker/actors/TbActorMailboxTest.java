@@ -0,0 +1,204 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.actors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.actors.msg.MsgType;
+import org.thingsboard.mqtt.broker.actors.msg.TbActorMsg;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbActorMailboxTest {
+
+    static final String DISPATCHER_ID = "test-dispatcher";
+    static final TbActorMsg MSG = () -> MsgType.MQTT_PUBLISH_MSG;
+
+    ManualExecutor executor;
+    AtomicLong overflowsCounter;
+    DefaultTbActorSystem actorSystem;
+    RecordingActor actor;
+    TbActorRef actorRef;
+
+    @After
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Test
+    public void testMsgsAreDroppedWhenMailboxIsFull() {
+        init(3, MailboxOverflowPolicy.DROP);
+
+        for (int i = 0; i < 5; i++) {
+            actorRef.tell(MSG);
+        }
+        actorRef.tellWithHighPriority(MSG);
+        executor.runAll();
+
+        assertEquals(4, actor.processedMsgs);
+        assertEquals(2, overflowsCounter.get());
+        assertEquals(0, actor.overflowMsgs.size());
+    }
+
+    @Test
+    public void testActorIsNotifiedAboutDroppedMsgs() {
+        init(3, MailboxOverflowPolicy.DISCONNECT);
+
+        for (int i = 0; i < 5; i++) {
+            actorRef.tell(MSG);
+        }
+        executor.runAll();
+
+        assertEquals(3, actor.processedMsgs);
+        assertEquals(2, overflowsCounter.get());
+        assertEquals(2, actor.overflowMsgs.size());
+    }
+
+    @Test
+    public void testBackpressureIsSignaledUntilMailboxIsDrained() {
+        init(4, MailboxOverflowPolicy.BACKPRESSURE);
+
+        for (int i = 0; i < 6; i++) {
+            actorRef.tell(MSG);
+        }
+        executor.runAll();
+
+        assertEquals(6, actor.processedMsgs);
+        assertEquals(1, overflowsCounter.get());
+        assertEquals(List.of(true, false), actor.backpressureSignals);
+        // paused before the first msg is processed, resumed once no more than 2 msgs are left
+        assertEquals(List.of(0, 4), actor.backpressureSignalsProcessedMsgs);
+    }
+
+    @Test
+    public void testMailboxIsUnboundedByDefault() {
+        init(0, MailboxOverflowPolicy.DROP);
+
+        for (int i = 0; i < 100; i++) {
+            actorRef.tell(MSG);
+        }
+        assertEquals(100, ((TbActorMailbox) actorRef).getMsgsCount());
+        executor.runAll();
+
+        assertEquals(100, actor.processedMsgs);
+        assertEquals(0, ((TbActorMailbox) actorRef).getMsgsCount());
+        assertEquals(0, overflowsCounter.get());
+    }
+
+    private void init(int mailboxCapacity, MailboxOverflowPolicy overflowPolicy) {
+        ActorStatsManager statsManager = mock(ActorStatsManager.class);
+        overflowsCounter = new AtomicLong();
+        when(statsManager.createMailboxOverflowsCounter()).thenReturn(overflowsCounter);
+        actorSystem = new DefaultTbActorSystem(new TbActorSystemSettings(5, 1, 1, mailboxCapacity, overflowPolicy), statsManager);
+        executor = new ManualExecutor();
+        actorSystem.createDispatcher(DISPATCHER_ID, executor);
+        actor = new RecordingActor();
+        // the actor is initialized by the first task, so the msgs told before running the tasks stay in the mailbox
+        actorRef = actorSystem.createRootActor(DISPATCHER_ID, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return new TbStringActorId("test-actor");
+            }
+
+            @Override
+            public TbActor createActor() {
+                return actor;
+            }
+        });
+    }
+
+    private static class RecordingActor extends AbstractTbActor {
+
+        int processedMsgs;
+        final List<TbActorMsg> overflowMsgs = new ArrayList<>();
+        final List<Boolean> backpressureSignals = new ArrayList<>();
+        final List<Integer> backpressureSignalsProcessedMsgs = new ArrayList<>();
+
+        @Override
+        public boolean process(TbActorMsg msg) {
+            processedMsgs++;
+            return true;
+        }
+
+        @Override
+        public void onMailboxOverflow(TbActorMsg msg) {
+            overflowMsgs.add(msg);
+        }
+
+        @Override
+        public void onMailboxBackpressure(boolean backpressure) {
+            backpressureSignals.add(backpressure);
+            backpressureSignalsProcessedMsgs.add(processedMsgs);
+        }
+    }
+
+    private static class ManualExecutor extends AbstractExecutorService {
+
+        private final Queue<Runnable> tasks = new LinkedList<>();
+        private boolean shutdown;
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return new ArrayList<>(tasks);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.thingsboard.mqtt.broker.actors.client.state.PubResponseProcessingCtx;
 import org.thingsboard.mqtt.broker.exception.MqttException;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
+import org.thingsboard.mqtt.broker.service.limits.ChannelBackpressureService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgProcessor;
@@ -68,6 +69,8 @@ public class MqttPublishHandlerTest {
     ClientLogger clientLogger;
     @MockBean
     RetainedMsgProcessor retainedMsgProcessor;
+    @MockBean
+    ChannelBackpressureService channelBackpressureService;
 
     @SpyBean
     MqttPublishHandler mqttPublishHandler;
@@ -89,13 +92,13 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testValidateClientAccess() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
         mqttPublishHandler.validateClientAccess(ctx, "topic/1");
     }
 
     @Test(expected = MqttException.class)
     public void testValidateClientAccessFail() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(false);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(false);
         when(ctx.getAuthRulePatterns()).thenReturn(List.of(AuthRulePatterns.newInstance(Collections.emptyList())));
         mqttPublishHandler.validateClientAccess(ctx, "topic/1");
     }
@@ -120,7 +123,7 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testProcess() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
 
         PublishMsg publishMsg = getPublishMsg(1, 2);
 
@@ -136,7 +139,7 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testProcessRetainMsg() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
 
         PublishMsg publishMsg = getPublishMsg(1, 2, true);
 
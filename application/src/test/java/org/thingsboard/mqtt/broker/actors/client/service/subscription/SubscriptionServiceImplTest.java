@@ -19,34 +19,43 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionLookupCache;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionTrie;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @Slf4j
 @RunWith(MockitoJUnitRunner.class)
 public class SubscriptionServiceImplTest {
 
     SubscriptionTrie<ClientSubscription> subscriptionTrie;
+    SubscriptionLookupCache subscriptionLookupCache;
     StatsManager statsManager;
     SubscriptionService subscriptionService;
 
     @Before
     public void setUp() {
         subscriptionTrie = mock(SubscriptionTrie.class);
+        subscriptionLookupCache = mock(SubscriptionLookupCache.class);
         statsManager = mock(StatsManager.class);
         subscriptionService = spy(new SubscriptionServiceImpl(
                 subscriptionTrie,
+                subscriptionLookupCache,
                 statsManager));
     }
 
@@ -57,11 +66,31 @@ public class SubscriptionServiceImplTest {
                 new TopicSubscription("topic2", 2)
         ));
         verify(subscriptionTrie, times(2)).put(any(), any());
+        verify(subscriptionLookupCache, times(1)).invalidate("topic1");
+        verify(subscriptionLookupCache, times(1)).invalidate("topic2");
     }
 
     @Test
     public void givenClientTopics_whenUnsubscribe_thenOk() {
         subscriptionService.unsubscribe("clientId", Set.of("topic1", "topic2"));
         verify(subscriptionTrie, times(2)).delete(any(), any());
+        verify(subscriptionLookupCache, never()).invalidate(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenSubscribedClientTopic_whenUnsubscribe_thenLookupCacheInvalidated() {
+        when(subscriptionTrie.delete(eq("topic1"), any())).thenReturn(true);
+        subscriptionService.unsubscribe("clientId", Set.of("topic1"));
+        verify(subscriptionLookupCache, times(1)).invalidate("topic1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenTrieChangesPublished_thenLookupCacheInvalidated() {
+        ArgumentCaptor<Consumer<String>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(subscriptionTrie).setPublishedChangesListener(listenerCaptor.capture());
+
+        listenerCaptor.getValue().accept("topic1");
+        verify(subscriptionLookupCache, times(1)).invalidate("topic1");
+    }
+}
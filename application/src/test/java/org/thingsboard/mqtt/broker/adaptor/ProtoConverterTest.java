@@ -15,6 +15,8 @@
  */
 package org.thingsboard.mqtt.broker.adaptor;
 
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -27,6 +29,7 @@ import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
 import java.util.UUID;
 
@@ -134,4 +137,21 @@ public class ProtoConverterTest {
 
         assertEquals(input, output);
     }
+
+    @Test
+    public void givenPublishMsgProto_whenWrapPayloadForSeveralClients_thenBuffersAreIndependent() {
+        QueueProtos.PublishMsgProto publishMsgProto = QueueProtos.PublishMsgProto.newBuilder()
+                .setTopicName("test/topic")
+                .setPayload(ByteString.copyFrom("payload", StandardCharsets.UTF_8))
+                .build();
+
+        ByteBuf first = ProtoConverter.toPayloadByteBuf(publishMsgProto);
+        ByteBuf second = ProtoConverter.toPayloadByteBuf(publishMsgProto);
+
+        Assert.assertTrue(first.release());
+        Assert.assertEquals(1, second.refCnt());
+        Assert.assertEquals("payload", second.toString(StandardCharsets.UTF_8));
+        Assert.assertEquals("payload", publishMsgProto.getPayload().toStringUtf8());
+        second.release();
+    }
 }
@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+import java.nio.charset.StandardCharsets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueueUtilTest {
+
+    @Test
+    public void givenSerializedPublishMsg_whenParseWithAliasing_thenPayloadIsViewOfData() throws InvalidProtocolBufferException {
+        byte[] data = QueueProtos.PublishMsgProto.newBuilder()
+                .setTopicName("test/topic")
+                .setQos(1)
+                .setPayload(ByteString.copyFrom("payload", StandardCharsets.UTF_8))
+                .build()
+                .toByteArray();
+
+        QueueProtos.PublishMsgProto publishMsgProto = QueueUtil.parseWithAliasing(QueueProtos.PublishMsgProto.parser(), data);
+
+        Assert.assertEquals("test/topic", publishMsgProto.getTopicName());
+        Assert.assertEquals(1, publishMsgProto.getQos());
+        Assert.assertEquals("payload", publishMsgProto.getPayload().toStringUtf8());
+
+        int payloadIndex = new String(data, StandardCharsets.ISO_8859_1).indexOf("payload");
+        data[payloadIndex] = 'P';
+        Assert.assertEquals("Payload", publishMsgProto.getPayload().toStringUtf8());
+    }
+
+    @Test(expected = InvalidProtocolBufferException.class)
+    public void givenCorruptedData_whenParseWithAliasing_thenThrowException() throws InvalidProtocolBufferException {
+        QueueUtil.parseWithAliasing(QueueProtos.PublishMsgProto.parser(), new byte[]{10, 50, 1});
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.stats.ChannelFlushStats;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MqttFlushConsolidationHandlerTest {
+
+    ChannelFlushStats flushStats;
+    ChannelHandlerContext ctx;
+    EventExecutor executor;
+
+    @Before
+    public void setUp() {
+        flushStats = mock(ChannelFlushStats.class);
+        ctx = mock(ChannelHandlerContext.class);
+        executor = mock(EventExecutor.class);
+    }
+
+    @Test
+    public void testFlushesAreCoalescedWithinEventLoopTurn() {
+        when(ctx.executor()).thenReturn(executor);
+        MqttFlushConsolidationHandler handler = newHandler(true, 100, 100_000);
+
+        for (int i = 0; i < 10; i++) {
+            handler.write(ctx, newMsg(), mock(ChannelPromise.class));
+            handler.flush(ctx);
+        }
+        verify(ctx, never()).flush();
+
+        ArgumentCaptor<Runnable> flushTaskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(1)).execute(flushTaskCaptor.capture());
+        flushTaskCaptor.getValue().run();
+
+        verify(ctx, times(1)).flush();
+        verify(flushStats).logFlush(10);
+    }
+
+    @Test
+    public void testFlushesAreDoneOnReadComplete() {
+        MqttFlushConsolidationHandler handler = newHandler(true, 100, 100_000);
+
+        handler.channelRead(ctx, Unpooled.EMPTY_BUFFER);
+        handler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        handler.flush(ctx);
+        handler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        handler.flush(ctx);
+        verify(ctx, never()).flush();
+
+        handler.channelReadComplete(ctx);
+
+        verify(ctx, times(1)).flush();
+        verify(flushStats).logFlush(2);
+        verify(executor, never()).execute(any());
+    }
+
+    @Test
+    public void testPendingWritesAreFlushedOnLimits() {
+        MqttFlushConsolidationHandler msgsLimitedHandler = newHandler(true, 3, 100_000);
+        for (int i = 0; i < 7; i++) {
+            msgsLimitedHandler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        }
+        verify(ctx, times(2)).flush();
+
+        MqttFlushConsolidationHandler bytesLimitedHandler = newHandler(true, 100, 25);
+        for (int i = 0; i < 3; i++) {
+            bytesLimitedHandler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        }
+        verify(ctx, times(3)).flush();
+        verify(flushStats, times(3)).logFlush(3);
+    }
+
+    @Test
+    public void testFlushWithoutPendingWritesIsSkipped() {
+        MqttFlushConsolidationHandler handler = newHandler(true, 100, 100_000);
+
+        handler.flush(ctx);
+
+        verify(ctx, never()).flush();
+        verify(executor, never()).execute(any());
+        verify(flushStats, never()).logFlush(0);
+    }
+
+    @Test
+    public void testEveryFlushIsDoneWhenDisabled() {
+        MqttFlushConsolidationHandler handler = newHandler(false, 100, 100_000);
+
+        handler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        handler.flush(ctx);
+        handler.write(ctx, newMsg(), mock(ChannelPromise.class));
+        handler.flush(ctx);
+
+        verify(ctx, times(2)).flush();
+        verify(flushStats, times(2)).logFlush(1);
+    }
+
+    private MqttFlushConsolidationHandler newHandler(boolean enabled, int maxPendingMsgs, int maxPendingBytes) {
+        MqttFlushConsolidationHandler handler = new MqttFlushConsolidationHandler(enabled, maxPendingMsgs, maxPendingBytes, flushStats);
+        handler.handlerAdded(ctx);
+        return handler;
+    }
+
+    private ByteBuf newMsg() {
+        return Unpooled.wrappedBuffer(new byte[10]);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NettyServerTransportTest {
+
+    @Test
+    public void testNioTransport() {
+        NettyServerTransport transport = new NettyServerTransport("Test", NettyTransportType.NIO, 4, true, true, false);
+
+        Assert.assertEquals(NettyTransportType.NIO, transport.getType());
+        Assert.assertEquals(1, transport.getAcceptorCount());
+        Assert.assertEquals(NioServerSocketChannel.class, transport.getServerChannelClass());
+        EventLoopGroup group = transport.newEventLoopGroup(1);
+        try {
+            Assert.assertTrue(group instanceof NioEventLoopGroup);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testAutoTransport() {
+        NettyTransportType expected = Epoll.isAvailable() ? NettyTransportType.EPOLL : NettyTransportType.NIO;
+
+        Assert.assertEquals(expected, NettyServerTransport.resolveType("Test", NettyTransportType.AUTO));
+        Assert.assertEquals(expected, NettyServerTransport.resolveType("Test", NettyTransportType.EPOLL));
+        Assert.assertEquals(NettyTransportType.NIO, NettyServerTransport.resolveType("Test", null));
+    }
+
+    @Test
+    public void testEpollTransportWithSeveralAcceptors() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+
+        NettyServerTransport transport = new NettyServerTransport("Test", NettyTransportType.EPOLL, 3, true, true, true);
+        Assert.assertEquals(EpollServerSocketChannel.class, transport.getServerChannelClass());
+
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(3);
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(1);
+        Assert.assertTrue(bossGroup instanceof EpollEventLoopGroup);
+        try {
+            ServerBootstrap bootstrap = transport.configure(new ServerBootstrap())
+                    .group(bossGroup, workerGroup)
+                    .childHandler(new ChannelInboundHandlerAdapter());
+
+            List<Channel> serverChannels = transport.bind(bootstrap, "127.0.0.1", 0);
+
+            Assert.assertEquals(3, serverChannels.size());
+            int port = ((InetSocketAddress) serverChannels.get(0).localAddress()).getPort();
+            for (Channel serverChannel : serverChannels) {
+                Assert.assertEquals(port, ((InetSocketAddress) serverChannel.localAddress()).getPort());
+            }
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                Assert.assertTrue(socket.isConnected());
+            }
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.close().sync();
+            }
+        } finally {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+        }
+    }
+}
@@ -26,6 +26,8 @@ import org.thingsboard.mqtt.broker.common.data.client.credentials.PubSubAuthoriz
 import org.thingsboard.mqtt.broker.common.data.client.credentials.SslMqttCredentials;
 import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
+import org.thingsboard.mqtt.broker.service.security.authorization.TopicAuthMatcher;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
 
 import java.util.Collections;
 import java.util.List;
@@ -44,7 +46,8 @@ public class AuthRulePatternsServiceSuiteTest {
 
     @Before
     public void init() {
-        this.authorizationRuleService = new DefaultAuthorizationRuleService();
+        this.authorizationRuleService = new DefaultAuthorizationRuleService(new StatsManagerStub());
+        this.authorizationRuleService.init();
     }
 
     /*
@@ -150,12 +153,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("2/.*")))
         );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -164,12 +167,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -178,11 +181,11 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(Collections.emptyList()),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -191,12 +194,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 new AuthRulePatterns(List.of(Pattern.compile("2/.*")), List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -215,17 +218,69 @@ public class AuthRulePatternsServiceSuiteTest {
     }
 
     @Test
-    public void testPubAuthAndEvict() {
+    public void testPubAuthCache() {
+        authorizationRuleService.setPublishCacheMaxSize(10);
+        authorizationRuleService.init();
+
         List<AuthRulePatterns> authRulePatterns = List.of(
-                AuthRulePatterns.newInstance(List.of(Pattern.compile(".*")))
+                AuthRulePatterns.newInstance(List.of(Pattern.compile("1/.*/a"), Pattern.compile("2/[0-9]+")))
         );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/123/a", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/123/a", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("2/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/abc", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/abc", authRulePatterns));
+    }
+
+    /*
+        TopicAuthMatcher tests
+     */
+    @Test
+    public void testTopicAuthMatcher_PlainAndPrefixRules() {
+        TopicAuthMatcher matcher = new TopicAuthMatcher(List.of(
+                Pattern.compile("a/b"), Pattern.compile("c/.*"), Pattern.compile("d/[0-9]+"), Pattern.compile("e/(x|y)")));
+
+        Assert.assertTrue(matcher.hasPatterns());
+        Assert.assertTrue(matcher.matches("a/b"));
+        Assert.assertFalse(matcher.matches("a/bc"));
+        Assert.assertTrue(matcher.matches("c/"));
+        Assert.assertTrue(matcher.matches("c/1/2"));
+        Assert.assertFalse(matcher.matches("c/1\n2"));
+        Assert.assertFalse(matcher.matches("cc/1"));
+        Assert.assertTrue(matcher.matches("d/12"));
+        Assert.assertFalse(matcher.matches("d/12a"));
+        Assert.assertTrue(matcher.matches("e/y"));
+        Assert.assertFalse(matcher.matches("e/z"));
+    }
 
-        Assert.assertEquals(1, authorizationRuleService.getPublishAuthMap().size());
-        Assert.assertTrue(authorizationRuleService.getPublishAuthMap().get(CLIENT_ID).get("1/"));
+    @Test
+    public void testTopicAuthMatcher_NoRegexRules() {
+        TopicAuthMatcher matcher = new TopicAuthMatcher(List.of(Pattern.compile("a/b"), Pattern.compile("c/.*")));
+
+        Assert.assertFalse(matcher.hasPatterns());
+        Assert.assertTrue(matcher.matches("a/b"));
+        Assert.assertFalse(matcher.matches("a/bc"));
+        Assert.assertFalse(matcher.matches("a.b"));
+        Assert.assertTrue(matcher.matches("c/1"));
+        Assert.assertFalse(matcher.matches("d/c/1"));
+    }
+
+    @Test
+    public void testTopicAuthMatcher_NoRules() {
+        TopicAuthMatcher matcher = new TopicAuthMatcher(Collections.emptyList());
+
+        Assert.assertFalse(matcher.matches("a/b"));
+        Assert.assertFalse(matcher.matches(""));
+    }
 
-        authorizationRuleService.evict(CLIENT_ID);
+    @Test
+    public void testTopicAuthMatcher_RulesWithBackReferencesAndFlags() {
+        TopicAuthMatcher matcher = new TopicAuthMatcher(List.of(
+                Pattern.compile("(a)/\\1"), Pattern.compile("(b)/.+"), Pattern.compile("C/.*", Pattern.CASE_INSENSITIVE)));
 
-        Assert.assertEquals(0, authorizationRuleService.getPublishAuthMap().size());
+        Assert.assertTrue(matcher.matches("a/a"));
+        Assert.assertFalse(matcher.matches("a/b"));
+        Assert.assertTrue(matcher.matches("b/1"));
+        Assert.assertTrue(matcher.matches("c/1"));
     }
 }
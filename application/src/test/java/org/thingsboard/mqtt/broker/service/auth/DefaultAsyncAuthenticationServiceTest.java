@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.auth;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.exception.AuthenticationException;
+import org.thingsboard.mqtt.broker.exception.FullMsgQueueException;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthContext;
+import org.thingsboard.mqtt.broker.service.auth.providers.AuthResponse;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.stats.timer.StubTimerStats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultAsyncAuthenticationServiceTest {
+
+    AuthenticationService authenticationService;
+    AtomicInteger pendingAuthsCounter;
+    DefaultAsyncAuthenticationService asyncAuthenticationService;
+
+    @Before
+    public void setUp() {
+        authenticationService = mock(AuthenticationService.class);
+        pendingAuthsCounter = new AtomicInteger();
+        StatsManager statsManager = mock(StatsManager.class);
+        when(statsManager.createPendingAuthsCounter()).thenReturn(pendingAuthsCounter);
+        when(statsManager.getAuthenticationTimerStats()).thenReturn(new StubTimerStats());
+
+        asyncAuthenticationService = new DefaultAsyncAuthenticationService(authenticationService, statsManager);
+        ReflectionTestUtils.setField(asyncAuthenticationService, "threadsCount", 1);
+        ReflectionTestUtils.setField(asyncAuthenticationService, "maxPendingAuths", 2);
+        asyncAuthenticationService.init();
+    }
+
+    @After
+    public void tearDown() {
+        asyncAuthenticationService.destroy();
+    }
+
+    @Test
+    public void givenClient_whenAuthenticate_thenResponseReturned() throws Exception {
+        when(authenticationService.authenticate(any())).thenReturn(new AuthResponse(true, ClientType.DEVICE, null));
+
+        AuthResponse authResponse = asyncAuthenticationService.authenticate(getAuthContext()).get(1, TimeUnit.SECONDS);
+
+        assertTrue(authResponse.isSuccess());
+        assertEquals(ClientType.DEVICE, authResponse.getClientType());
+        assertEquals(0, pendingAuthsCounter.get());
+    }
+
+    @Test
+    public void givenAuthenticationException_whenAuthenticate_thenUnsuccessfulResponseReturned() throws Exception {
+        when(authenticationService.authenticate(any())).thenThrow(new AuthenticationException("Failed to authenticate client"));
+
+        AuthResponse authResponse = asyncAuthenticationService.authenticate(getAuthContext()).get(1, TimeUnit.SECONDS);
+
+        assertFalse(authResponse.isSuccess());
+        assertEquals(0, pendingAuthsCounter.get());
+    }
+
+    @Test
+    public void givenTooManyPendingClients_whenAuthenticate_thenClientRefused() throws Exception {
+        CountDownLatch authLatch = new CountDownLatch(1);
+        when(authenticationService.authenticate(any())).thenAnswer(invocation -> {
+            authLatch.await();
+            return new AuthResponse(true, ClientType.DEVICE, null);
+        });
+
+        ListenableFuture<AuthResponse> first = asyncAuthenticationService.authenticate(getAuthContext());
+        ListenableFuture<AuthResponse> second = asyncAuthenticationService.authenticate(getAuthContext());
+        ListenableFuture<AuthResponse> refused = asyncAuthenticationService.authenticate(getAuthContext());
+
+        ExecutionException e = assertThrows(ExecutionException.class, refused::get);
+        assertTrue(e.getCause() instanceof FullMsgQueueException);
+        assertEquals(2, pendingAuthsCounter.get());
+
+        authLatch.countDown();
+        assertTrue(first.get(1, TimeUnit.SECONDS).isSuccess());
+        assertTrue(second.get(1, TimeUnit.SECONDS).isSuccess());
+        assertEquals(0, pendingAuthsCounter.get());
+    }
+
+    private AuthContext getAuthContext() {
+        return AuthContext.builder().clientId("clientId").username("username").build();
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChannelBackpressureServiceImplTest {
+
+    AtomicInteger pendingPublishesCounter;
+    AtomicInteger pausedChannelsCounter;
+    ChannelBackpressureServiceImpl channelBackpressureService;
+
+    @Before
+    public void setUp() {
+        pendingPublishesCounter = new AtomicInteger();
+        pausedChannelsCounter = new AtomicInteger();
+        StatsManager statsManager = mock(StatsManager.class);
+        when(statsManager.createPendingPublishesCounter()).thenReturn(pendingPublishesCounter);
+        when(statsManager.createPausedChannelsCounter()).thenReturn(pausedChannelsCounter);
+
+        channelBackpressureService = new ChannelBackpressureServiceImpl(statsManager);
+        ReflectionTestUtils.setField(channelBackpressureService, "sessionMaxPendingPublishes", 4);
+        ReflectionTestUtils.setField(channelBackpressureService, "maxPendingPublishes", 6);
+    }
+
+    @Test
+    public void givenSessionLimitReached_whenPersistsFinish_thenReadingPausedAndResumedAtHalf() {
+        ChannelConfig config = mock(ChannelConfig.class);
+        ClientSessionCtx sessionCtx = createSessionCtx(config);
+
+        startPersists(sessionCtx, 3);
+        verify(config, never()).setAutoRead(false);
+
+        startPersists(sessionCtx, 1);
+        verify(config).setAutoRead(false);
+        assertEquals(1, pausedChannelsCounter.get());
+
+        channelBackpressureService.onPublishPersistFinished(sessionCtx);
+        verify(config, never()).setAutoRead(true);
+
+        channelBackpressureService.onPublishPersistFinished(sessionCtx);
+        verify(config).setAutoRead(true);
+        assertEquals(0, pausedChannelsCounter.get());
+        assertEquals(2, pendingPublishesCounter.get());
+    }
+
+    @Test
+    public void givenGlobalLimitReached_whenPersistsFinish_thenAllPausedSessionsResumed() {
+        ReflectionTestUtils.setField(channelBackpressureService, "sessionMaxPendingPublishes", 0);
+        ChannelConfig config1 = mock(ChannelConfig.class);
+        ChannelConfig config2 = mock(ChannelConfig.class);
+        ClientSessionCtx sessionCtx1 = createSessionCtx(config1);
+        ClientSessionCtx sessionCtx2 = createSessionCtx(config2);
+
+        startPersists(sessionCtx1, 3);
+        startPersists(sessionCtx2, 3);
+        verify(config1, never()).setAutoRead(false);
+        verify(config2).setAutoRead(false);
+
+        startPersists(sessionCtx1, 1);
+        verify(config1).setAutoRead(false);
+        assertEquals(2, pausedChannelsCounter.get());
+
+        channelBackpressureService.onPublishPersistFinished(sessionCtx1);
+        channelBackpressureService.onPublishPersistFinished(sessionCtx1);
+        channelBackpressureService.onPublishPersistFinished(sessionCtx1);
+        verify(config1, never()).setAutoRead(true);
+
+        channelBackpressureService.onPublishPersistFinished(sessionCtx1);
+        verify(config1).setAutoRead(true);
+        verify(config2).setAutoRead(true);
+        assertEquals(0, pausedChannelsCounter.get());
+    }
+
+    @Test
+    public void givenSeveralPauseReasons_whenOneIsResumed_thenReadingStaysPaused() {
+        ChannelConfig config = mock(ChannelConfig.class);
+        ClientSessionCtx sessionCtx = createSessionCtx(config);
+
+        channelBackpressureService.pauseReading(sessionCtx, ChannelReadPauseReason.ACTOR_MAILBOX_FULL);
+        startPersists(sessionCtx, 4);
+        assertEquals(1, pausedChannelsCounter.get());
+
+        channelBackpressureService.resumeReading(sessionCtx, ChannelReadPauseReason.ACTOR_MAILBOX_FULL);
+        verify(config, never()).setAutoRead(true);
+        assertEquals(1, pausedChannelsCounter.get());
+
+        channelBackpressureService.onChannelClosed(sessionCtx);
+        assertEquals(0, pausedChannelsCounter.get());
+        assertEquals(ChannelReadPauseReason.CHANNEL_CLOSED.getMask(), sessionCtx.getReadPauseReasons().get());
+    }
+
+    @Test
+    public void givenClosedChannel_whenPersistCallbacksCome_thenSessionIsNotPausedAgain() {
+        ClientSessionCtx sessionCtx = createSessionCtx(mock(ChannelConfig.class));
+        startPersists(sessionCtx, 4);
+        assertEquals(1, pausedChannelsCounter.get());
+
+        channelBackpressureService.onChannelClosed(sessionCtx);
+        assertEquals(0, pausedChannelsCounter.get());
+
+        // the persists of the msgs read before the close end after it, the global limit is reached by them
+        startPersists(sessionCtx, 2);
+        assertEquals(0, pausedChannelsCounter.get());
+        assertTrue(globallyPausedSessions().isEmpty());
+
+        for (int i = 0; i < 6; i++) {
+            channelBackpressureService.onPublishPersistFinished(sessionCtx);
+        }
+        assertEquals(0, pausedChannelsCounter.get());
+        assertEquals(0, pendingPublishesCounter.get());
+        assertEquals(ChannelReadPauseReason.CHANNEL_CLOSED.getMask(), sessionCtx.getReadPauseReasons().get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<ClientSessionCtx> globallyPausedSessions() {
+        return (Set<ClientSessionCtx>) ReflectionTestUtils.getField(channelBackpressureService, "globallyPausedSessions");
+    }
+
+    private void startPersists(ClientSessionCtx sessionCtx, int count) {
+        for (int i = 0; i < count; i++) {
+            channelBackpressureService.onPublishPersistStarted(sessionCtx);
+        }
+    }
+
+    private ClientSessionCtx createSessionCtx(ChannelConfig config) {
+        EventExecutor executor = mock(EventExecutor.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Runnable.class).run();
+            return null;
+        }).when(executor).execute(any());
+        ChannelHandlerContext channelHandlerContext = mock(ChannelHandlerContext.class, Mockito.RETURNS_DEEP_STUBS);
+        when(channelHandlerContext.executor()).thenReturn(executor);
+        when(channelHandlerContext.channel().config()).thenReturn(config);
+
+        ClientSessionCtx sessionCtx = new ClientSessionCtx(UUID.randomUUID(), null, 10);
+        sessionCtx.setChannel(channelHandlerContext);
+        return sessionCtx;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.util.AttributeKey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+import java.nio.charset.StandardCharsets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PublishMsgEncodingCacheTest {
+
+    @Test
+    public void givenQos0Msg_whenGetEncodedPublishMsg_thenSameBytesAsEncoder() {
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(0, true);
+        PublishMsgEncodingCache encodingCache = new PublishMsgEncodingCache();
+
+        ByteBuf encoded = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, msg, 0);
+        encodingCache.release();
+
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, msg, 0), encoded);
+    }
+
+    @Test
+    public void givenQos1Msg_whenGetEncodedPublishMsgForSeveralClients_thenPacketIdIsPatched() {
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(1, false);
+        PublishMsgEncodingCache encodingCache = new PublishMsgEncodingCache();
+
+        ByteBuf encoded1 = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, msg, 1);
+        ByteBuf encoded2 = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, msg, 65535);
+        encodingCache.release();
+
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, msg, 1), encoded1);
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, msg, 65535), encoded2);
+    }
+
+    @Test
+    public void givenMqtt5AndMqtt3Clients_whenGetEncodedPublishMsg_thenPropertiesOnlyForMqtt5() {
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(2, false).toBuilder()
+                .addUserProperties(QueueProtos.UserPropertyProto.newBuilder().setKey("key").setValue("value").build())
+                .build();
+        PublishMsgEncodingCache encodingCache = new PublishMsgEncodingCache();
+
+        ByteBuf mqtt5Encoded = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_5, msg, 7);
+        ByteBuf mqtt3Encoded = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1, msg, 8);
+        encodingCache.release();
+
+        assertEncodedEquals(encode(MqttVersion.MQTT_5, msg, 7), mqtt5Encoded);
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, msg, 8), mqtt3Encoded);
+    }
+
+    @Test
+    public void givenDifferentQos_whenGetEncodedPublishMsg_thenEncodedSeparately() {
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(1, false);
+        QueueProtos.PublishMsgProto qos0Msg = msg.toBuilder().setQos(0).build();
+        PublishMsgEncodingCache encodingCache = new PublishMsgEncodingCache();
+
+        ByteBuf encoded = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, msg, 3);
+        ByteBuf qos0Encoded = encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, qos0Msg, 0);
+        encodingCache.release();
+
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, msg, 3), encoded);
+        assertEncodedEquals(encode(MqttVersion.MQTT_3_1_1, qos0Msg, 0), qos0Encoded);
+    }
+
+    private void assertEncodedEquals(ByteBuf expected, ByteBuf actual) {
+        try {
+            Assert.assertEquals(ByteBufUtil.hexDump(expected), ByteBufUtil.hexDump(actual));
+        } finally {
+            expected.release();
+            Assert.assertTrue(actual.release());
+        }
+    }
+
+    private ByteBuf encode(MqttVersion mqttVersion, QueueProtos.PublishMsgProto msg, int packetId) {
+        EmbeddedChannel channel = new EmbeddedChannel(MqttEncoder.INSTANCE);
+        channel.attr(AttributeKey.<MqttVersion>valueOf("NETTY_CODEC_MQTT_VERSION")).set(mqttVersion);
+        channel.writeOutbound(new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(msg.getQos()), msg.getRetain(), 0),
+                new MqttPublishVariableHeader(msg.getTopicName(), packetId, ProtoConverter.createMqttProperties(msg.getUserPropertiesList())),
+                ProtoConverter.toPayloadByteBuf(msg)));
+        ByteBuf encoded = channel.readOutbound();
+        channel.finishAndReleaseAll();
+        return encoded;
+    }
+
+    private QueueProtos.PublishMsgProto newPublishMsgProto(int qos, boolean retain) {
+        return QueueProtos.PublishMsgProto.newBuilder()
+                .setTopicName("test/topic")
+                .setQos(qos)
+                .setRetain(retain)
+                .setPayload(ByteString.copyFrom("payload", StandardCharsets.UTF_8))
+                .build();
+    }
+}
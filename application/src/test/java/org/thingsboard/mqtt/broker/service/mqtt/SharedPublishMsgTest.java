@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.Test;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedPublishMsgTest {
+
+    private final QueueProtos.PublishMsgProto publishMsgProto = QueueProtos.PublishMsgProto.newBuilder()
+            .setTopicName("test/topic")
+            .setQos(2)
+            .setRetain(true)
+            .setPayload(ByteString.copyFrom("payload", StandardCharsets.UTF_8))
+            .addUserProperties(QueueProtos.UserPropertyProto.newBuilder().setKey("key").setValue("value").build())
+            .build();
+
+    @Test
+    public void givenSubscriberQosAndRetain_whenToPublishMsg_thenOverridesAreApplied() {
+        SharedPublishMsg sharedPublishMsg = new SharedPublishMsg(publishMsgProto);
+
+        PublishMsg publishMsg = sharedPublishMsg.toPublishMsg(5, 1, false);
+
+        assertEquals(5, publishMsg.getPacketId());
+        assertEquals("test/topic", publishMsg.getTopicName());
+        assertEquals(1, publishMsg.getQosLevel());
+        assertFalse(publishMsg.isRetained());
+        assertFalse(publishMsg.isDup());
+        assertArrayEquals("payload".getBytes(StandardCharsets.UTF_8), ByteBufUtil.getBytes(publishMsg.getByteBuf()));
+    }
+
+    @Test
+    public void givenManySubscribers_whenToPublishMsg_thenPropertiesAreSharedAndBuffersAreNot() {
+        SharedPublishMsg sharedPublishMsg = new SharedPublishMsg(publishMsgProto);
+
+        PublishMsg first = sharedPublishMsg.toPublishMsg(1, 2, true);
+        PublishMsg second = sharedPublishMsg.toPublishMsg(2, 0, false);
+
+        assertSame(first.getProperties(), second.getProperties());
+        assertNotSame(first.getByteBuf(), second.getByteBuf());
+        assertTrue(first.getByteBuf().release());
+        assertEquals(7, second.getByteBuf().readableBytes());
+    }
+
+    @Test
+    public void givenSameQosAndRetain_whenGetPublishMsgProto_thenProtoIsNotRebuilt() {
+        SharedPublishMsg sharedPublishMsg = new SharedPublishMsg(publishMsgProto);
+
+        assertSame(publishMsgProto, sharedPublishMsg.getPublishMsgProto(2, true));
+
+        QueueProtos.PublishMsgProto rebuilt = sharedPublishMsg.getPublishMsgProto(0, false);
+        assertEquals(0, rebuilt.getQos());
+        assertFalse(rebuilt.getRetain());
+        assertEquals(publishMsgProto.getPayload(), rebuilt.getPayload());
+    }
+}
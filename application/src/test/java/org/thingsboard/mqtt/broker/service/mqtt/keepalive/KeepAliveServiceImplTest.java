@@ -87,5 +87,43 @@ public class KeepAliveServiceImplTest {
         assertEquals(2, keepAliveService.getKeepAliveInfoSize());
     }
 
-}
+    @Test
+    public void givenAcknowledgedSession_whenFirstDeadlinePassed_thenSessionIsRescheduled() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        keepAliveService.registerSession("clientId", sessionId, 1);
+        keepAliveService.processKeepAlive();
+
+        Thread.sleep(1000);
+        keepAliveService.acknowledgeControlPacket(sessionId);
+        Thread.sleep(1000);
+        keepAliveService.processKeepAlive();
+
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+        assertEquals(1, keepAliveService.getKeepAliveInfoSize());
+
+        Thread.sleep(1600);
+        keepAliveService.processKeepAlive();
+
+        verify(clientMqttActorManager, times(1)).disconnect(any(), any());
+        assertEquals(0, keepAliveService.getKeepAliveInfoSize());
+        assertThrows(MqttException.class, () -> keepAliveService.acknowledgeControlPacket(sessionId));
+    }
 
+    @Test
+    public void givenUnregisteredAndReRegisteredSessions_whenProcessKeepAlive_thenNoDisconnect() throws Exception {
+        UUID sessionId1 = UUID.randomUUID();
+        UUID sessionId2 = UUID.randomUUID();
+        keepAliveService.registerSession("clientId1", sessionId1, 0);
+        keepAliveService.registerSession("clientId2", sessionId2, 0);
+
+        keepAliveService.unregisterSession(sessionId1);
+        keepAliveService.registerSession("clientId2", sessionId2, 10);
+
+        Thread.sleep(5);
+        keepAliveService.processKeepAlive();
+
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+        assertEquals(1, keepAliveService.getKeepAliveInfoSize());
+    }
+
+}
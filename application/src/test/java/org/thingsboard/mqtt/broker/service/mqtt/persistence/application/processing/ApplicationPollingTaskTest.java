@@ -0,0 +1,336 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ApplicationPollingTaskTest {
+
+    private static final int CLIENTS = 5_000;
+    private static final int PACKS_PER_CLIENT = 20;
+    private static final int POLLER_THREADS = 2;
+    private static final long IDLE_POLL_INTERVAL_MS = 5;
+    private static final long ACK_TIMEOUT_MS = 60_000;
+    private static final String BLOCKING_THREAD_NAME = "test-blocking";
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private ExecutorService ackExecutor;
+    private ExecutorService blockingExecutor;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(POLLER_THREADS);
+        scheduler.setRemoveOnCancelPolicy(true);
+        ackExecutor = Executors.newFixedThreadPool(4);
+        blockingExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName(BLOCKING_THREAD_NAME));
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        ackExecutor.shutdownNow();
+        blockingExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testManyClientsOnFewThreads() throws InterruptedException {
+        CountDownLatch allProcessed = new CountDownLatch(CLIENTS);
+        List<SimulatedClientTask> tasks = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            tasks.add(new SimulatedClientTask(allProcessed));
+        }
+
+        tasks.forEach(SimulatedClientTask::start);
+        boolean processed = allProcessed.await(60, TimeUnit.SECONDS);
+
+        Assert.assertTrue("Not all clients were processed in time", processed);
+        for (SimulatedClientTask task : tasks) {
+            Assert.assertEquals(PACKS_PER_CLIENT, task.acknowledgedPacks.get());
+            Assert.assertFalse(task.failed.get());
+        }
+        Assert.assertEquals(POLLER_THREADS, scheduler.getLargestPoolSize());
+    }
+
+    @Test
+    public void testBusyClientDoesNotStarveOthers() throws InterruptedException {
+        ScheduledThreadPoolExecutor singleThreadScheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            ApplicationPollingTask busyTask = new TestTask(singleThreadScheduler) {
+                @Override
+                protected long step() {
+                    return 0;
+                }
+            };
+            Future<?> busyFuture = busyTask.start();
+
+            int otherClients = 1_000;
+            CountDownLatch othersProcessed = new CountDownLatch(otherClients);
+            for (int i = 0; i < otherClients; i++) {
+                new TestTask(singleThreadScheduler) {
+                    @Override
+                    protected long step() {
+                        othersProcessed.countDown();
+                        return STOP;
+                    }
+                }.start();
+            }
+
+            Assert.assertTrue(othersProcessed.await(10, TimeUnit.SECONDS));
+            Assert.assertFalse(busyFuture.isDone());
+        } finally {
+            singleThreadScheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelFinishesWaitingTask() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger steps = new AtomicInteger();
+        ApplicationPollingTask task = new TestTask(scheduler) {
+            @Override
+            protected long step() {
+                steps.incrementAndGet();
+                return TimeUnit.HOURS.toMillis(1);
+            }
+
+            @Override
+            protected void onFinish() {
+                finished.countDown();
+            }
+        };
+        Future<?> future = task.start();
+        waitFor(() -> steps.get() == 1);
+
+        future.cancel(false);
+
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(task.isCancelled());
+        Assert.assertEquals(1, steps.get());
+    }
+
+    @Test
+    public void testStepFailureUsesFailureDelay() throws Exception {
+        AtomicInteger steps = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(1);
+        ApplicationPollingTask task = new TestTask(scheduler) {
+            @Override
+            protected long step() {
+                if (steps.incrementAndGet() == 1) {
+                    throw new RuntimeException("Failed to poll");
+                }
+                return STOP;
+            }
+
+            @Override
+            protected long onStepFailure(Throwable t) {
+                return 0;
+            }
+
+            @Override
+            protected void onFinish() {
+                finished.countDown();
+            }
+        };
+        Future<?> future = task.start();
+
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, steps.get());
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testTaskFinishesWhenSchedulerIsStopped() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        ApplicationPollingTask task = new TestTask(scheduler) {
+            @Override
+            protected long step() {
+                scheduler.shutdown();
+                return 0;
+            }
+
+            @Override
+            protected void onFinish() {
+                finished.countDown();
+            }
+        };
+        Future<?> future = task.start();
+
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testBlockingStepDoesNotHoldScheduler() throws Exception {
+        ScheduledThreadPoolExecutor singleThreadScheduler = new ScheduledThreadPoolExecutor(1);
+        CountDownLatch releaseBlockingStep = new CountDownLatch(1);
+        try {
+            AtomicInteger blockingSteps = new AtomicInteger();
+            AtomicBoolean stepsOnBlockingThread = new AtomicBoolean(true);
+            CountDownLatch blockingTaskFinished = new CountDownLatch(1);
+            new TestTask(singleThreadScheduler) {
+                @Override
+                protected long step() throws InterruptedException {
+                    if (!Thread.currentThread().getName().startsWith(BLOCKING_THREAD_NAME)) {
+                        stepsOnBlockingThread.set(false);
+                    }
+                    if (blockingSteps.incrementAndGet() == 1) {
+                        releaseBlockingStep.await();
+                        return 0;
+                    }
+                    return STOP;
+                }
+
+                @Override
+                protected boolean isBlockingStep() {
+                    return true;
+                }
+
+                @Override
+                protected void onFinish() {
+                    blockingTaskFinished.countDown();
+                }
+            }.start();
+            waitFor(() -> blockingSteps.get() == 1);
+
+            CountDownLatch otherProcessed = new CountDownLatch(1);
+            new TestTask(singleThreadScheduler) {
+                @Override
+                protected long step() {
+                    otherProcessed.countDown();
+                    return STOP;
+                }
+            }.start();
+
+            Assert.assertTrue(otherProcessed.await(5, TimeUnit.SECONDS));
+            releaseBlockingStep.countDown();
+            Assert.assertTrue(blockingTaskFinished.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, blockingSteps.get());
+            Assert.assertTrue(stepsOnBlockingThread.get());
+        } finally {
+            releaseBlockingStep.countDown();
+            singleThreadScheduler.shutdownNow();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition was not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private abstract class TestTask extends ApplicationPollingTask {
+
+        TestTask(ScheduledThreadPoolExecutor scheduler) {
+            super(scheduler, blockingExecutor);
+        }
+
+        @Override
+        protected long onStepFailure(Throwable t) {
+            return STOP;
+        }
+
+        @Override
+        protected boolean isReady() {
+            return false;
+        }
+
+        @Override
+        protected void onFinish() {
+        }
+    }
+
+    /*
+        Polls a pack, "delivers" it and waits for the acknowledgement that comes from another thread,
+        the same way as the consumer of the APPLICATION client does
+     */
+    private class SimulatedClientTask extends ApplicationPollingTask {
+
+        private final CountDownLatch allProcessed;
+        private final AtomicInteger acknowledgedPacks = new AtomicInteger();
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private volatile boolean packAcknowledged;
+        private boolean waitingForAck;
+        private int polls;
+
+        SimulatedClientTask(CountDownLatch allProcessed) {
+            super(scheduler, blockingExecutor);
+            this.allProcessed = allProcessed;
+        }
+
+        @Override
+        protected long step() {
+            if (waitingForAck) {
+                if (!packAcknowledged) {
+                    return ACK_TIMEOUT_MS;
+                }
+                waitingForAck = false;
+                if (acknowledgedPacks.incrementAndGet() == PACKS_PER_CLIENT) {
+                    allProcessed.countDown();
+                    return STOP;
+                }
+                return 0;
+            }
+            // every other poll is empty to exercise the idle path
+            if (polls++ % 2 == 0) {
+                return IDLE_POLL_INTERVAL_MS;
+            }
+            packAcknowledged = false;
+            waitingForAck = true;
+            ackExecutor.execute(() -> {
+                packAcknowledged = true;
+                wakeUp();
+            });
+            return ACK_TIMEOUT_MS;
+        }
+
+        @Override
+        protected long onStepFailure(Throwable t) {
+            failed.set(true);
+            return STOP;
+        }
+
+        @Override
+        protected boolean isReady() {
+            return waitingForAck && packAcknowledged;
+        }
+
+        @Override
+        protected void onFinish() {
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.mqtt.broker.common.data.DeviceSessionCtx;
+import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
+import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
+import org.thingsboard.mqtt.broker.dao.client.device.PacketIdAndSerialNumber;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DevicePacketIdAndSerialNumberStoreImplTest {
+
+    // device_session_ctx shared by the stores of different nodes
+    Map<String, DeviceSessionCtx> deviceSessionContexts;
+    DevicePacketIdAndSerialNumberService serialNumberService;
+    DeviceSessionCtxService deviceSessionCtxService;
+    DevicePacketIdAndSerialNumberStoreImpl serialNumberStore;
+
+    @Before
+    public void setUp() {
+        deviceSessionContexts = new ConcurrentHashMap<>();
+        serialNumberService = mock(DevicePacketIdAndSerialNumberService.class);
+        deviceSessionCtxService = mock(DeviceSessionCtxService.class);
+        when(deviceSessionCtxService.findAllContexts(any())).thenAnswer(invocation -> {
+            Collection<String> clientIds = invocation.getArgument(0);
+            return clientIds.stream().map(deviceSessionContexts::get).filter(ctx -> ctx != null).collect(Collectors.toList());
+        });
+        doAnswer(invocation -> {
+            Map<String, PacketIdAndSerialNumber> numbers = invocation.getArgument(0);
+            numbers.forEach((clientId, packetIdAndSerialNumber) -> saveToDb(clientId,
+                    packetIdAndSerialNumber.getPacketId().get(), packetIdAndSerialNumber.getSerialNumber().get()));
+            return null;
+        }).when(serialNumberService).saveLastSerialNumbers(anyMap());
+
+        serialNumberStore = newStore();
+    }
+
+    @Test
+    public void givenReservedNumbers_whenReserveWithinReserved_thenDbIsNotUsed() {
+        saveToDb("c1", 5, 50);
+
+        Map<String, PacketIdAndSerialNumber> first = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 1, "c2", 1));
+        assertEquals(5, first.get("c1").getPacketId().get());
+        assertEquals(50, first.get("c1").getSerialNumber().get());
+        assertEquals(0, first.get("c2").getPacketId().get());
+        assertEquals(-1, first.get("c2").getSerialNumber().get());
+        assertDb("c1", 16, 61);
+        assertDb("c2", 11, 10);
+
+        increment(first.get("c1"), 1);
+        Map<String, PacketIdAndSerialNumber> second = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 10));
+
+        assertSame(first.get("c1"), second.get("c1"));
+        verify(deviceSessionCtxService, times(1)).findAllContexts(any());
+        verify(serialNumberService, times(1)).saveLastSerialNumbers(anyMap());
+    }
+
+    @Test
+    public void givenNumbersPassingReserved_whenReserve_thenNumbersAreReservedBeforeUse() {
+        saveToDb("c1", 5, 50);
+        PacketIdAndSerialNumber numbers = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 1)).get("c1");
+        increment(numbers, 10);
+
+        numbers = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 2)).get("c1");
+
+        assertEquals(15, numbers.getPacketId().get());
+        assertEquals(60, numbers.getSerialNumber().get());
+        assertDb("c1", 27, 72);
+        verify(serialNumberService, times(2)).saveLastSerialNumbers(anyMap());
+    }
+
+    @Test
+    public void givenEvictedClient_whenReserve_thenNumbersAreLoadedFromDb() {
+        saveToDb("c1", 5, 50);
+        serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 1));
+
+        serialNumberStore.evict("c1");
+        PacketIdAndSerialNumber numbers = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 1)).get("c1");
+        assertEquals(61, numbers.getSerialNumber().get());
+
+        serialNumberStore.evictAll();
+        numbers = serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", 1)).get("c1");
+        assertEquals(72, numbers.getSerialNumber().get());
+
+        verify(deviceSessionCtxService, times(3)).findAllContexts(any());
+    }
+
+    @Test
+    public void givenReserveInDb_thenNumbersAreNotKeptInMemory() {
+        saveToDb("c1", 5, 50);
+
+        PacketIdAndSerialNumber numbers = serialNumberStore.reservePacketIdAndSerialNumbersInDb("c1", 3);
+        assertEquals(50, numbers.getSerialNumber().get());
+        assertDb("c1", 8, 53);
+
+        numbers = serialNumberStore.reservePacketIdAndSerialNumbersInDb("c1", 3);
+        assertEquals(53, numbers.getSerialNumber().get());
+        verify(deviceSessionCtxService, times(2)).findAllContexts(any());
+    }
+
+    @Test
+    public void givenTwoStores_whenUseNumbersOfSameClientInTurn_thenSerialNumbersNeverRepeat() {
+        DevicePacketIdAndSerialNumberStoreImpl otherStore = newStore();
+        Set<Long> usedSerialNumbers = new HashSet<>();
+        List<Integer> msgsCounts = List.of(3, 1, 7, 4, 10, 2, 9, 5);
+
+        for (int i = 0; i < 40; i++) {
+            int msgsCount = msgsCounts.get(i % msgsCounts.size());
+            switch (i % 3) {
+                case 0:
+                    useNumbers(serialNumberStore.reservePacketIdAndSerialNumbers(Map.of("c1", msgsCount)).get("c1"), msgsCount, usedSerialNumbers);
+                    break;
+                case 1:
+                    useNumbers(otherStore.reservePacketIdAndSerialNumbers(Map.of("c1", msgsCount)).get("c1"), msgsCount, usedSerialNumbers);
+                    break;
+                default:
+                    // the device actor of the node where the client is connected
+                    useNumbers(serialNumberStore.reservePacketIdAndSerialNumbersInDb("c1", msgsCount), msgsCount, usedSerialNumbers);
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void testAdvancePacketId() {
+        assertEquals(11, DevicePacketIdAndSerialNumberStoreImpl.advancePacketId(1, 10));
+        assertEquals(10, DevicePacketIdAndSerialNumberStoreImpl.advancePacketId(0, 10));
+        assertEquals(9, DevicePacketIdAndSerialNumberStoreImpl.advancePacketId(0xfffe - 1, 10));
+        assertEquals(0xfffe, DevicePacketIdAndSerialNumberStoreImpl.advancePacketId(0xfffe, 0xfffe));
+    }
+
+    private DevicePacketIdAndSerialNumberStoreImpl newStore() {
+        DevicePacketIdAndSerialNumberStoreImpl store = new DevicePacketIdAndSerialNumberStoreImpl(serialNumberService, deviceSessionCtxService);
+        ReflectionTestUtils.setField(store, "reserveSize", 10);
+        ReflectionTestUtils.setField(store, "maxClients", 100);
+        store.init();
+        return store;
+    }
+
+    private void useNumbers(PacketIdAndSerialNumber numbers, int msgsCount, Set<Long> usedSerialNumbers) {
+        for (int i = 0; i < msgsCount; i++) {
+            long serialNumber = numbers.getSerialNumber().incrementAndGet();
+            assertTrue(usedSerialNumbers.add(serialNumber), "Serial number " + serialNumber + " is used twice");
+        }
+    }
+
+    private void saveToDb(String clientId, int packetId, long serialNumber) {
+        deviceSessionContexts.put(clientId, DeviceSessionCtx.builder()
+                .clientId(clientId)
+                .lastPacketId(packetId)
+                .lastSerialNumber(serialNumber)
+                .build());
+    }
+
+    private void increment(PacketIdAndSerialNumber numbers, int count) {
+        numbers.getPacketId().addAndGet(count);
+        numbers.getSerialNumber().addAndGet(count);
+    }
+
+    private void assertDb(String clientId, int packetId, long serialNumber) {
+        DeviceSessionCtx deviceSessionCtx = deviceSessionContexts.get(clientId);
+        assertEquals(packetId, deviceSessionCtx.getLastPacketId());
+        assertEquals(serialNumber, deviceSessionCtx.getLastSerialNumber());
+    }
+}
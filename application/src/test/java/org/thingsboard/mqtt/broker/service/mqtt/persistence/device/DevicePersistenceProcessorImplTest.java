@@ -23,7 +23,7 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.thingsboard.mqtt.broker.cache.CacheConstants;
 import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
-import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 
 import static org.mockito.ArgumentMatchers.eq;
@@ -36,22 +36,24 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class DevicePersistenceProcessorImplTest {
 
-    DeviceMsgService deviceMsgService;
+    DeviceMsgWriteBehindService deviceMsgWriteBehindService;
     DeviceSessionCtxService deviceSessionCtxService;
     DeviceActorManager deviceActorManager;
     CacheManager cacheManager;
+    DevicePacketIdAndSerialNumberStore serialNumberStore;
     DevicePersistenceProcessorImpl devicePersistenceProcessor;
 
     String clientId;
 
     @Before
     public void setUp() {
-        deviceMsgService = mock(DeviceMsgService.class);
+        deviceMsgWriteBehindService = mock(DeviceMsgWriteBehindService.class);
         deviceSessionCtxService = mock(DeviceSessionCtxService.class);
         deviceActorManager = mock(DeviceActorManager.class);
         cacheManager = mock(CacheManager.class);
+        serialNumberStore = mock(DevicePacketIdAndSerialNumberStore.class);
         devicePersistenceProcessor = spy(new DevicePersistenceProcessorImpl(
-                deviceMsgService, deviceSessionCtxService, deviceActorManager, cacheManager));
+                deviceMsgWriteBehindService, deviceSessionCtxService, deviceActorManager, cacheManager, serialNumberStore));
 
         clientId = "clientId";
     }
@@ -63,8 +65,9 @@ public class DevicePersistenceProcessorImplTest {
 
         devicePersistenceProcessor.clearPersistedMsgs(clientId);
 
-        verify(deviceMsgService, times(1)).removePersistedMessages(eq(clientId));
+        verify(deviceMsgWriteBehindService, times(1)).removePersistedMessages(eq(clientId));
         verify(deviceSessionCtxService, times(1)).removeDeviceSessionContext(eq(clientId));
+        verify(serialNumberStore, times(1)).evict(eq(clientId));
         verify(cacheManager, times(1)).getCache(eq(CacheConstants.PACKET_ID_AND_SERIAL_NUMBER_CACHE));
         verify(cache, times(1)).evict(eq(clientId));
     }
@@ -104,5 +107,6 @@ public class DevicePersistenceProcessorImplTest {
         devicePersistenceProcessor.stopProcessingPersistedMessages(clientId);
 
         verify(deviceActorManager, times(1)).notifyClientDisconnected(eq(clientId));
+        verify(deviceMsgWriteBehindService, times(1)).flushPendingMsgs(eq(clientId));
     }
 }
\ No newline at end of file
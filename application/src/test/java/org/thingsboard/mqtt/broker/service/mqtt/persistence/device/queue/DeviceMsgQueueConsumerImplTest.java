@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device.queue;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryQueueStorage;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueConsumerTemplate;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueProducerTemplate;
+import org.thingsboard.mqtt.broker.queue.provider.DevicePersistenceMsgQueueFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.DevicePacketIdAndSerialNumberStore;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.processing.DeviceMsgProcessor;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind.DeviceMsgWriteBehindService;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceMsgQueueConsumerImplTest {
+
+    private static final String TOPIC = "device-msgs";
+    private static final String GROUP = "device-msgs-group";
+
+    InMemoryQueueStorage storage;
+    DeviceMsgProcessor deviceMsgProcessor;
+    DeviceMsgWriteBehindService deviceMsgWriteBehindService;
+    DeviceMsgQueueConsumerImpl deviceMsgQueueConsumer;
+    SettableFuture<Void> writtenFuture;
+
+    @Before
+    public void setUp() {
+        storage = new InMemoryQueueStorage(100, 100);
+        DevicePersistenceMsgQueueFactory queueFactory = mock(DevicePersistenceMsgQueueFactory.class);
+        when(queueFactory.createConsumer(anyString(), any())).thenAnswer(invocation -> newConsumer());
+        ServiceInfoProvider serviceInfoProvider = mock(ServiceInfoProvider.class);
+        when(serviceInfoProvider.getServiceId()).thenReturn("node1");
+
+        deviceMsgProcessor = mock(DeviceMsgProcessor.class);
+        when(deviceMsgProcessor.persistMessages(anyList(), any(), anyString())).thenReturn(Collections.emptyList());
+        deviceMsgWriteBehindService = mock(DeviceMsgWriteBehindService.class);
+        writtenFuture = SettableFuture.create();
+        when(deviceMsgWriteBehindService.getWrittenFuture(anyList())).thenReturn(writtenFuture);
+
+        deviceMsgQueueConsumer = new DeviceMsgQueueConsumerImpl(queueFactory, deviceMsgProcessor, new StatsManagerStub(),
+                serviceInfoProvider, mock(DevicePacketIdAndSerialNumberStore.class), deviceMsgWriteBehindService);
+        ReflectionTestUtils.setField(deviceMsgQueueConsumer, "consumersCount", 1);
+        ReflectionTestUtils.setField(deviceMsgQueueConsumer, "pollDuration", 10L);
+        ReflectionTestUtils.setField(deviceMsgQueueConsumer, "threadsCount", 1);
+        deviceMsgQueueConsumer.init();
+    }
+
+    @After
+    public void tearDown() {
+        deviceMsgQueueConsumer.destroy();
+    }
+
+    @Test
+    public void givenMsgsNotWritten_whenConsumerCrashes_thenMsgsAreConsumedAgain() {
+        sendMsgs(3);
+        deviceMsgQueueConsumer.startConsuming();
+        verify(deviceMsgProcessor, timeout(5000)).persistMessages(anyList(), any(), anyString());
+
+        deviceMsgQueueConsumer.destroy();
+
+        Assert.assertEquals(Optional.empty(), storage.getCommittedOffset(GROUP, TOPIC, 0));
+        var restartedConsumer = newConsumer();
+        restartedConsumer.subscribe();
+        Assert.assertEquals(3, restartedConsumer.poll(100).size());
+    }
+
+    @Test
+    public void givenMsgsWritten_whenConsumerRestarts_thenMsgsAreNotConsumedAgain() {
+        sendMsgs(3);
+        deviceMsgQueueConsumer.startConsuming();
+        verify(deviceMsgProcessor, timeout(5000)).persistMessages(anyList(), any(), anyString());
+
+        writtenFuture.set(null);
+        await()
+                .atMost(5, TimeUnit.SECONDS)
+                .until(() -> storage.getCommittedOffset(GROUP, TOPIC, 0).equals(Optional.of(3L)));
+        deviceMsgQueueConsumer.destroy();
+
+        var restartedConsumer = newConsumer();
+        restartedConsumer.subscribe();
+        Assert.assertTrue(restartedConsumer.poll(100).isEmpty());
+    }
+
+    private InMemoryTbQueueConsumerTemplate<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> newConsumer() {
+        return InMemoryTbQueueConsumerTemplate.<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>builder()
+                .storage(storage)
+                .topic(TOPIC)
+                .topicConfigs(Map.of(QueueConstants.PARTITIONS, "1"))
+                .groupId(GROUP)
+                .readFromBeginning(true)
+                .build();
+    }
+
+    private void sendMsgs(int count) {
+        var producer = InMemoryTbQueueProducerTemplate.<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>builder()
+                .storage(storage)
+                .defaultTopic(TOPIC)
+                .topicConfigs(Map.of(QueueConstants.PARTITIONS, "1"))
+                .build();
+        for (int i = 0; i < count; i++) {
+            producer.send(new TbProtoQueueMsg<>("client", QueueProtos.PublishMsgProto.newBuilder().setTopicName("topic/" + i).build()), null);
+        }
+    }
+}
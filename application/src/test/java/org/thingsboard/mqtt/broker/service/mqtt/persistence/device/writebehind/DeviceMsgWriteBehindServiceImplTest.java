@@ -0,0 +1,214 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.persistence.device.writebehind;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceMsgWriteBehindServiceImplTest {
+
+    private static final String SERVICE_ID = "node1";
+    private static final String CLIENT_ID = "clientId";
+
+    DeviceMsgService deviceMsgService;
+    ClientSessionCache clientSessionCache;
+    ServiceInfoProvider serviceInfoProvider;
+    DeviceMsgWriteBehindServiceImpl writeBehindService;
+
+    @Before
+    public void setUp() {
+        deviceMsgService = mock(DeviceMsgService.class);
+        clientSessionCache = mock(ClientSessionCache.class);
+        serviceInfoProvider = mock(ServiceInfoProvider.class);
+        writeBehindService = new DeviceMsgWriteBehindServiceImpl(deviceMsgService, clientSessionCache, serviceInfoProvider, new StatsManagerStub());
+        ReflectionTestUtils.setField(writeBehindService, "enabled", true);
+        ReflectionTestUtils.setField(writeBehindService, "writeDelayMs", 60000L);
+        ReflectionTestUtils.setField(writeBehindService, "flushIntervalMs", 60000L);
+        ReflectionTestUtils.setField(writeBehindService, "clientMaxPendingMsgs", 2);
+        ReflectionTestUtils.setField(writeBehindService, "maxPendingMsgs", 100);
+        writeBehindService.init();
+    }
+
+    @After
+    public void tearDown() {
+        writeBehindService.destroy();
+    }
+
+    @Test
+    public void givenAcknowledgedMsgs_whenFlushing_thenMsgsAreNotWritten() {
+        mockClientSession(SERVICE_ID);
+        List<DevicePublishMsg> msgs = List.of(newMsg(1), newMsg(2));
+
+        assertTrue(writeBehindService.addPendingMsgs(msgs).isEmpty());
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 1);
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 2);
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+
+        verify(deviceMsgService, never()).tryRemovePersistedMessage(any(), anyInt());
+        verify(deviceMsgService, never()).save(anyList(), anyBoolean());
+        verify(deviceMsgService, times(1)).findPersistedMessages(eq(CLIENT_ID));
+    }
+
+    @Test
+    public void givenNotAcknowledgedMsgs_whenFlushing_thenMsgsAreWritten() {
+        mockClientSession(SERVICE_ID);
+        List<DevicePublishMsg> msgs = List.of(newMsg(1), newMsg(2));
+
+        writeBehindService.addPendingMsgs(msgs);
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 1);
+        writeBehindService.tryUpdatePacketReceived(CLIENT_ID, 2);
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+
+        ArgumentCaptor<List<DevicePublishMsg>> savedMsgsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(deviceMsgService, times(1)).save(savedMsgsCaptor.capture(), eq(false));
+        assertEquals(List.of(msgs.get(1)), savedMsgsCaptor.getValue());
+        assertEquals(PersistedPacketType.PUBREL, savedMsgsCaptor.getValue().get(0).getPacketType());
+
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 2);
+        verify(deviceMsgService, times(1)).tryRemovePersistedMessage(eq(CLIENT_ID), eq(2));
+    }
+
+    @Test
+    public void givenFailedWrite_whenFlushingAgain_thenMsgsAreWritten() {
+        mockClientSession(SERVICE_ID);
+        doThrow(new RuntimeException()).doNothing().when(deviceMsgService).save(anyList(), anyBoolean());
+
+        writeBehindService.addPendingMsgs(List.of(newMsg(1)));
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+
+        verify(deviceMsgService, times(2)).save(anyList(), eq(false));
+    }
+
+    @Test
+    public void givenClientOfOtherNodeOrLimitReached_whenAddingMsgs_thenMsgsAreReturned() {
+        mockClientSession(SERVICE_ID);
+        List<DevicePublishMsg> msgs = List.of(newMsg(1), newMsg(2), newMsg(3));
+        assertEquals(List.of(msgs.get(2)), writeBehindService.addPendingMsgs(msgs));
+
+        mockClientSession("node2");
+        List<DevicePublishMsg> otherNodeMsgs = List.of(newMsg(4));
+        assertEquals(otherNodeMsgs, writeBehindService.addPendingMsgs(otherNodeMsgs));
+    }
+
+    @Test
+    public void givenDisabled_whenAddingMsgs_thenMsgsAreReturned() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", false);
+        List<DevicePublishMsg> msgs = List.of(newMsg(1));
+
+        assertEquals(msgs, writeBehindService.addPendingMsgs(msgs));
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 1);
+        verify(deviceMsgService, times(1)).tryRemovePersistedMessage(eq(CLIENT_ID), eq(1));
+    }
+
+    @Test
+    public void givenPendingMsgs_whenRemovingPersistedMsgs_thenMsgsAreDropped() {
+        mockClientSession(SERVICE_ID);
+        writeBehindService.addPendingMsgs(List.of(newMsg(1)));
+
+        writeBehindService.removePersistedMessages(CLIENT_ID);
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+
+        verify(deviceMsgService, times(1)).removePersistedMessages(eq(CLIENT_ID));
+        verify(deviceMsgService, never()).save(anyList(), anyBoolean());
+    }
+
+    @Test
+    public void givenPendingMsgs_whenMsgsAreWrittenOrAcknowledged_thenWrittenFutureIsDone() {
+        mockClientSession(SERVICE_ID);
+        doThrow(new RuntimeException()).doNothing().when(deviceMsgService).save(anyList(), anyBoolean());
+        List<DevicePublishMsg> msgs = List.of(newMsg(1), newMsg(2));
+        writeBehindService.addPendingMsgs(msgs);
+
+        ListenableFuture<Void> writtenFuture = writeBehindService.getWrittenFuture(msgs);
+        writeBehindService.tryRemovePersistedMessage(CLIENT_ID, 1);
+        assertFalse(writtenFuture.isDone());
+
+        // the failed write keeps the msg pending, so its offset is not committed and the msg is consumed again after a crash
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+        assertFalse(writtenFuture.isDone());
+
+        writeBehindService.findPersistedMessages(CLIENT_ID);
+        assertTrue(writtenFuture.isDone());
+        assertTrue(writeBehindService.getWrittenFuture(msgs).isDone());
+    }
+
+    @Test
+    public void givenDisabled_whenGettingWrittenFuture_thenFutureIsDone() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", false);
+
+        assertTrue(writeBehindService.getWrittenFuture(List.of(newMsg(1))).isDone());
+    }
+
+    @Test
+    public void givenPendingMsgs_whenClientDisconnects_thenMsgsAreWrittenBeforeReturning() {
+        mockClientSession(SERVICE_ID);
+        writeBehindService.addPendingMsgs(List.of(newMsg(1)));
+
+        writeBehindService.flushPendingMsgs(CLIENT_ID);
+        verify(deviceMsgService, times(1)).save(anyList(), eq(false));
+
+        // the msgs that come before the session is handed over are written by the caller
+        List<DevicePublishMsg> closedSessionMsgs = List.of(newMsg(2));
+        assertEquals(closedSessionMsgs, writeBehindService.addPendingMsgs(closedSessionMsgs));
+
+        mockClientSession(SERVICE_ID);
+        assertTrue(writeBehindService.addPendingMsgs(List.of(newMsg(3))).isEmpty());
+    }
+
+    private void mockClientSession(String serviceId) {
+        when(serviceInfoProvider.getServiceId()).thenReturn(SERVICE_ID);
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID)).thenReturn(ClientSessionInfoFactory.getClientSessionInfo(CLIENT_ID, serviceId, true));
+    }
+
+    private DevicePublishMsg newMsg(int packetId) {
+        return new DevicePublishMsg(CLIENT_ID, "test/topic", (long) packetId, System.currentTimeMillis(), 1, packetId,
+                PersistedPacketType.PUBLISH, "payload".getBytes(), MqttProperties.NO_PROPERTIES, false);
+    }
+}
@@ -22,13 +22,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -39,14 +46,17 @@ public class ConcurrentMapRetainMsgTrieTest {
     private ConcurrentMapRetainMsgTrie<String> retainMsgTrie;
     private AtomicInteger retainedMsgCounter;
     private AtomicLong nodesCounter;
+    private AtomicLong reclaimedNodesCounter;
 
     @Before
     public void before() {
         this.retainedMsgCounter = new AtomicInteger(0);
         this.nodesCounter = new AtomicLong(0);
+        this.reclaimedNodesCounter = new AtomicLong(0);
         StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
         Mockito.when(statsManagerMock.createRetainMsgSizeCounter()).thenReturn(retainedMsgCounter);
         Mockito.when(statsManagerMock.createRetainMsgTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createRetainMsgTrieReclaimedNodesCounter()).thenReturn(reclaimedNodesCounter);
         this.retainMsgTrie = new ConcurrentMapRetainMsgTrie<>(statsManagerMock);
     }
 
@@ -172,7 +182,30 @@ public class ConcurrentMapRetainMsgTrieTest {
             retainMsgTrie.delete(Integer.toString(i));
             retainMsgTrie.delete(Integer.toString(i));
         }
-        Assert.assertEquals(10, nodesCounter.get());
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(10, reclaimedNodesCounter.get());
+    }
+
+    @Test
+    public void testNodeCount_ReclaimOnDelete() {
+        retainMsgTrie.put("1/2/3", "val1");
+        retainMsgTrie.put("1/2", "val2");
+        retainMsgTrie.put("1/4", "val3");
+        Assert.assertEquals(4, nodesCounter.get());
+
+        retainMsgTrie.delete("1/2/3");
+        // only 3 is reclaimed, 2 still has a value
+        Assert.assertEquals(3, nodesCounter.get());
+
+        retainMsgTrie.delete("1/2");
+        Assert.assertEquals(2, nodesCounter.get());
+
+        retainMsgTrie.delete("1/4");
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(4, reclaimedNodesCounter.get());
+
+        retainMsgTrie.put("1/2/3", "val1");
+        Assert.assertEquals(List.of("val1"), retainMsgTrie.get("1/+/3"));
     }
 
     @Test
@@ -187,7 +220,7 @@ public class ConcurrentMapRetainMsgTrieTest {
     }
 
     @Test
-    public void testClearTrie_Basic() throws RetainMsgTrieClearException {
+    public void testClearTrie_Basic() {
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 3; j++) {
                 retainMsgTrie.put(i + "/" + j, "val");
@@ -198,26 +231,80 @@ public class ConcurrentMapRetainMsgTrieTest {
         retainMsgTrie.delete("0/1");
         retainMsgTrie.delete("0/2");
         retainMsgTrie.delete("1/0");
+        // 0/0, 0/1, 0/2, 0 and 1/0 nodes are already reclaimed on delete
+        Assert.assertEquals(40 - 5, nodesCounter.get());
 
-        retainMsgTrie.setWaitForClearLockMs(100);
         retainMsgTrie.clearEmptyNodes();
-        // should clear 0/0, 0/1, 0/2, 0 and 1/0 nodes
         Assert.assertEquals(40 - 5, nodesCounter.get());
     }
 
     @Test
-    public void testClearTrie_ClearAll() throws RetainMsgTrieClearException {
+    public void testClearTrie_ClearAll() {
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 3; j++) {
                 retainMsgTrie.put(i + "/" + j, "val");
                 retainMsgTrie.delete(i + "/" + j);
             }
         }
-        Assert.assertEquals(40, nodesCounter.get());
+        // the first level node is recreated and reclaimed again with every second level node
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(30 + 30, reclaimedNodesCounter.get());
 
-        retainMsgTrie.setWaitForClearLockMs(100);
         retainMsgTrie.clearEmptyNodes();
 
         Assert.assertEquals(0, nodesCounter.get());
     }
+
+    @Test
+    public void testReclaim_ConcurrentChurnWithLookups() throws Exception {
+        retainMsgTrie.put("devices/device1/telemetry", "stable");
+        long stableNodes = nodesCounter.get();
+
+        int churnThreads = 4;
+        int lookupThreads = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(churnThreads + lookupThreads);
+        AtomicBoolean churnFinished = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < churnThreads; t++) {
+                // every thread churns its own topics, so the value it has just put must be there
+                String prefix = "devices/device" + (t + 2);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20_000; i++) {
+                        String topic = prefix + "/" + ThreadLocalRandom.current().nextInt(3) + "/telemetry";
+                        retainMsgTrie.put(topic, topic);
+                        Assert.assertEquals(List.of(topic), retainMsgTrie.get(topic));
+                        retainMsgTrie.delete(topic);
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < lookupThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (!churnFinished.get()) {
+                        Assert.assertTrue(retainMsgTrie.get("devices/+/telemetry").contains("stable"));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < churnThreads; i++) {
+                futures.get(i).get(60, TimeUnit.SECONDS);
+            }
+            churnFinished.set(true);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, retainedMsgCounter.get());
+        Assert.assertEquals(stableNodes, nodesCounter.get());
+        Assert.assertTrue(reclaimedNodesCounter.get() > 0);
+        Assert.assertEquals(List.of("stable"), retainMsgTrie.get("devices/#"));
+    }
 }
\ No newline at end of file
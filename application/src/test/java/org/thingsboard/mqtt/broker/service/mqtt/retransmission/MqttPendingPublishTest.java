@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MqttPendingPublishTest {
+
+    static final int PACKET_ID = 1;
+    static final long NOW = 1_000_000L;
+
+    AtomicInteger pendingRetransmissionsCounter;
+    ByteBuf payload;
+    MqttPendingPublish pendingPublish;
+
+    @Before
+    public void setUp() {
+        pendingRetransmissionsCounter = new AtomicInteger();
+        payload = Unpooled.copiedBuffer("payload", StandardCharsets.UTF_8);
+        MqttPublishMessage publishMessage = new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttPublishVariableHeader("topic", PACKET_ID),
+                payload);
+        pendingPublish = new MqttPendingPublish(PACKET_ID, payload, MqttQoS.AT_LEAST_ONCE, publishMessage, 10, 5, pendingRetransmissionsCounter);
+    }
+
+    @After
+    public void tearDown() {
+        if (payload.refCnt() > 0) {
+            payload.release(payload.refCnt());
+        }
+    }
+
+    @Test
+    public void testRetransmissionIsNotDueBeforeDelay() {
+        assertEquals(NOW + 10_000, pendingPublish.startPublishRetransmission(NOW));
+        assertEquals(1, pendingRetransmissionsCounter.get());
+
+        assertNull(pendingPublish.getRetransmissionMsgIfDue(NOW + 9_999));
+    }
+
+    @Test
+    public void testRetransmissionDelayIsIncreasedByPeriod() {
+        pendingPublish.startPublishRetransmission(NOW);
+
+        MqttMessage msg = pendingPublish.getRetransmissionMsgIfDue(NOW + 10_000);
+        assertTrue(msg instanceof MqttPublishMessage);
+        assertTrue(msg.fixedHeader().isDup());
+        assertEquals(2, payload.refCnt());
+        ((MqttPublishMessage) msg).release();
+        assertEquals(NOW + 10_000 + 15_000, pendingPublish.getRetransmissionTime());
+
+        assertNull(pendingPublish.getRetransmissionMsgIfDue(NOW + 24_999));
+        assertEquals(1, pendingRetransmissionsCounter.get());
+    }
+
+    @Test
+    public void testPubAckStopsRetransmissionAndReleasesPayload() {
+        pendingPublish.startPublishRetransmission(NOW);
+
+        pendingPublish.onPubAckReceived();
+        pendingPublish.onChannelClosed();
+
+        assertEquals(0, pendingRetransmissionsCounter.get());
+        assertEquals(0, pendingPublish.getRetransmissionTime());
+        assertNull(pendingPublish.getRetransmissionMsgIfDue(NOW + 10_000));
+        assertEquals(0, payload.refCnt());
+    }
+
+    @Test
+    public void testPubRelIsRetransmittedAfterPubRec() {
+        pendingPublish.startPublishRetransmission(NOW);
+        pendingPublish.onPubRecReceived();
+        assertEquals(0, pendingRetransmissionsCounter.get());
+
+        MqttMessage pubRel = new MqttMessage(
+                new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                MqttMessageIdVariableHeader.from(PACKET_ID));
+        pendingPublish.startPubRelRetransmission(pubRel, NOW + 1_000);
+        assertEquals(1, pendingRetransmissionsCounter.get());
+
+        MqttMessage msg = pendingPublish.getRetransmissionMsgIfDue(NOW + 11_000);
+        assertEquals(MqttMessageType.PUBREL, msg.fixedHeader().messageType());
+        assertEquals(1, payload.refCnt());
+
+        pendingPublish.onPubCompReceived();
+        assertEquals(0, pendingRetransmissionsCounter.get());
+        assertEquals(0, payload.refCnt());
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retransmission;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class RetransmissionQueueTest {
+
+    static final long NOW = 1_000_000L;
+
+    AtomicInteger pendingRetransmissionsCounter;
+    RetransmissionQueue retransmissionQueue;
+
+    @Before
+    public void setUp() {
+        pendingRetransmissionsCounter = new AtomicInteger();
+        retransmissionQueue = new RetransmissionQueue();
+    }
+
+    @Test
+    public void testDueMsgsArePolledInOrderOfTime() {
+        MqttPendingPublish later = schedule(2, NOW + 1_000);
+        MqttPendingPublish earlier = schedule(1, NOW);
+        MqttPendingPublish notDue = schedule(3, NOW + 10_000);
+
+        assertSame(earlier, retransmissionQueue.pollDue(NOW + 10_000 + 1_000));
+        assertSame(later, retransmissionQueue.pollDue(NOW + 10_000 + 1_000));
+        assertNull(retransmissionQueue.pollDue(NOW + 10_000 + 1_000));
+        assertEquals(NOW + 10_000 + 10_000, retransmissionQueue.getEarliestRetransmissionTime());
+        assertSame(notDue, retransmissionQueue.pollDue(NOW + 10_000 + 10_000));
+        assertEquals(0, retransmissionQueue.getEarliestRetransmissionTime());
+    }
+
+    @Test
+    public void testAcknowledgedAndRescheduledMsgsAreSkipped() {
+        MqttPendingPublish acknowledged = schedule(1, NOW);
+        MqttPendingPublish rescheduled = schedule(2, NOW);
+        acknowledged.onPubAckReceived();
+        long retransmissionTime = rescheduled.startPubRelRetransmission(null, NOW + 5_000);
+        retransmissionQueue.add(rescheduled, retransmissionTime);
+
+        assertNull(retransmissionQueue.pollDue(NOW + 10_000));
+        assertSame(rescheduled, retransmissionQueue.pollDue(retransmissionTime));
+        assertEquals(1, pendingRetransmissionsCounter.get());
+    }
+
+    private MqttPendingPublish schedule(int packetId, long now) {
+        MqttPendingPublish pendingPublish = new MqttPendingPublish(packetId, null, MqttQoS.AT_LEAST_ONCE, null, 10, 5, pendingRetransmissionsCounter);
+        retransmissionQueue.add(pendingPublish, pendingPublish.startPublishRetransmission(now));
+        return pendingPublish;
+    }
+}
@@ -18,17 +18,23 @@ package org.thingsboard.mqtt.broker.service.processing;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.thingsboard.mqtt.broker.actors.client.service.subscription.SubscriptionService;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.data.ClientType;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCacheFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
 import org.thingsboard.mqtt.broker.service.processing.data.MsgSubscriptions;
 import org.thingsboard.mqtt.broker.service.processing.data.PersistentMsgSubscriptions;
@@ -38,22 +44,29 @@ import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
 import org.thingsboard.mqtt.broker.service.subscription.ValueWithTopicFilter;
-import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.shared.RoundRobinStrategy;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionGroup;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategyFactory;
-import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptions;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessorImpl;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -82,6 +95,10 @@ public class MsgDispatcherServiceImplTest {
     SharedSubscriptionCacheService sharedSubscriptionCacheService;
     @MockBean
     TbMessageStatsReportClient tbMessageStatsReportClient;
+    @MockBean
+    ServiceInfoProvider serviceInfoProvider;
+    @MockBean
+    PublishMsgEncodingCacheFactory publishMsgEncodingCacheFactory;
     @SpyBean
     MsgDispatcherServiceImpl msgDispatcherService;
 
@@ -106,21 +123,6 @@ public class MsgDispatcherServiceImplTest {
         assertEquals(result, value1);
     }
 
-    @Test
-    public void testConvertToSharedSubscriptionList() {
-        Set<Subscription> subscriptions = Set.of(
-                newSubscription(0, "group1"),
-                newSubscription(1, "group1"),
-                newSubscription(2, "group2"),
-                newSubscription(0, "group2"),
-                newSubscription(1, "group3"),
-                newSubscription(2, "group3")
-        );
-        List<SharedSubscription> sharedSubscriptionList = msgDispatcherService.toSharedSubscriptionList(subscriptions);
-        assertEquals(3, sharedSubscriptionList.size());
-        sharedSubscriptionList.forEach(sharedSubscription -> assertEquals(2, sharedSubscription.getSubscriptions().size()));
-    }
-
     @Test
     public void testFilterHighestQosClientSubscriptions2() {
         List<ValueWithTopicFilter<ClientSubscription>> before = List.of(
@@ -162,26 +164,53 @@ public class MsgDispatcherServiceImplTest {
     }
 
     @Test
-    public void testFindAnyConnectedSubscription() {
-        List<Subscription> subscriptions = List.of(
-                new Subscription("topic1", 1, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic2", 0, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic3", 2, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic4", 0, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic5", 1, ClientSessionInfo.builder().connected(false).build())
-        );
-        Subscription subscription = msgDispatcherService.findAnyConnectedSubscription(subscriptions);
-        assertNull(subscription);
-
-        subscriptions = List.of(
-                new Subscription("topic1", 1, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic2", 0, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic3", 2, ClientSessionInfo.builder().connected(true).build()),
-                new Subscription("topic4", 0, ClientSessionInfo.builder().connected(false).build()),
-                new Subscription("topic5", 1, ClientSessionInfo.builder().connected(false).build())
-        );
-        subscription = msgDispatcherService.findAnyConnectedSubscription(subscriptions);
-        assertEquals("topic3", subscription.getTopicFilter());
+    public void testGetTargetDeviceSharedSubscriptions() {
+        ReflectionTestUtils.setField(msgDispatcherService, "sharedSubscriptionProcessingStrategy", new RoundRobinStrategy(new SharedSubscriptionProcessorImpl(mock(ClientSessionCtxService.class))));
+
+        TopicSharedSubscription connectedGroupKey = new TopicSharedSubscription("topic/+", "g1");
+        TopicSharedSubscription disconnectedGroupKey = new TopicSharedSubscription("topic/#", "g2");
+        when(sharedSubscriptionCacheService.get(connectedGroupKey)).thenReturn(SharedSubscriptionGroup.newInstance(
+                connectedGroupKey,
+                Set.of(),
+                new Subscription[]{
+                        new Subscription("topic/+", 1, ClientSessionInfo.builder().clientId("clientId1").connected(true).build(), "g1", SubscriptionOptions.newInstance()),
+                        new Subscription("topic/+", 1, ClientSessionInfo.builder().clientId("clientId2").connected(false).build(), "g1", SubscriptionOptions.newInstance())
+                }
+        ));
+        when(sharedSubscriptionCacheService.get(disconnectedGroupKey)).thenReturn(SharedSubscriptionGroup.newInstance(
+                disconnectedGroupKey,
+                Set.of(),
+                new Subscription[]{
+                        new Subscription("topic/#", 0, ClientSessionInfo.builder().clientId("clientId3").connected(false).build(), "g2", SubscriptionOptions.newInstance())
+                }
+        ));
+
+        var topic = "topic/test";
+        mockGetSubscriptions(topic, List.of(
+                newValueWithTopicFilter("clientId1", 1, "g1", "topic/+"),
+                newValueWithTopicFilter("clientId2", 1, "g1", "topic/+"),
+                newValueWithTopicFilter("clientId3", 0, "g2", "topic/#")
+        ));
+        QueueProtos.PublishMsgProto publishMsgProto = QueueProtos.PublishMsgProto
+                .newBuilder()
+                .setTopicName(topic)
+                .setQos(2)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            MsgSubscriptions msgSubscriptions = msgDispatcherService.getAllSubscriptionsForPubMsg(publishMsgProto, "clientId");
+
+            assertNull(msgSubscriptions.getAllApplicationSharedSubscriptions());
+            assertEquals(2, msgSubscriptions.getTargetDeviceSharedSubscriptions().size());
+            for (Subscription subscription : msgSubscriptions.getTargetDeviceSharedSubscriptions()) {
+                if ("g1".equals(subscription.getShareName())) {
+                    assertEquals("clientId1", subscription.getClientSessionInfo().getClientId());
+                } else {
+                    assertEquals(disconnectedGroupKey.getKey(), subscription.getClientSessionInfo().getClientId());
+                    assertEquals(2, subscription.getQos());
+                }
+            }
+        }
     }
 
     @Test
@@ -207,21 +236,19 @@ public class MsgDispatcherServiceImplTest {
                 .setTopicName(topic)
                 .build();
 
-        when(sharedSubscriptionCacheService.get(
-                Set.of(
-                        new TopicSharedSubscription("topic/+", "g1")
-                )
-        )).thenReturn(
-                new SharedSubscriptions(
+        TopicSharedSubscription topicSharedSubscription = new TopicSharedSubscription("topic/+", "g1");
+        when(sharedSubscriptionCacheService.get(topicSharedSubscription)).thenReturn(
+                SharedSubscriptionGroup.newInstance(
+                        topicSharedSubscription,
                         Set.of(
                                 new Subscription("topic/+", 1, clientSessionInfo1, "g1", SubscriptionOptions.newInstance()),
                                 new Subscription("topic/+", 1, clientSessionInfo2, "g1", SubscriptionOptions.newInstance())
                         ),
-                        Set.of()
+                        new Subscription[0]
                 )
         );
 
-        when(subscriptionService.getSubscriptions(topic)).thenReturn(List.of(
+        mockGetSubscriptions(topic, List.of(
                 newValueWithTopicFilter("clientId1", 0, "g1", "topic/+"),
                 newValueWithTopicFilter("clientId2", 0, "g1", "topic/+"),
                 newValueWithTopicFilter("clientId3", 1, "topic/#"),
@@ -308,12 +335,69 @@ public class MsgDispatcherServiceImplTest {
         assertTrue(appClientIds.containsAll(List.of("clientId1", "clientId2")));
     }
 
+    @Test
+    public void testProcessBasicSubscriptionsWithMulticastToRemoteNodes() {
+        ReflectionTestUtils.setField(msgDispatcherService, "multicastEnabled", true);
+        ReflectionTestUtils.setField(msgDispatcherService, "multicastMaxClientsPerMsg", 2);
+        try {
+            when(serviceInfoProvider.getServiceId()).thenReturn("node1");
+            MsgSubscriptions msgSubscriptions = new MsgSubscriptions(
+                    List.of(
+                            newBasicSubscription("clientId1", "node1", 1),
+                            newBasicSubscription("clientId2", "node2", 1),
+                            newBasicSubscription("clientId3", "node2", 0),
+                            newBasicSubscription("clientId4", "node2", 1),
+                            newBasicSubscription("clientId5", "node3", 0)
+                    ),
+                    null,
+                    null
+            );
+            QueueProtos.PublishMsgProto publishMsgProto = QueueProtos.PublishMsgProto
+                    .newBuilder()
+                    .setTopicName("topic/test")
+                    .setQos(1)
+                    .build();
+
+            msgDispatcherService.processBasicAndCollectPersistentSubscriptions(msgSubscriptions, publishMsgProto);
+
+            verify(downLinkProxy).sendBasicMsg(eq("node1"), eq("clientId1"), any(SharedPublishMsg.class), eq(1), eq(false), any());
+            verify(downLinkProxy).sendBasicMsg(eq("node3"), eq("clientId5"), eq(publishMsgProto.toBuilder().setQos(0).build()));
+            ArgumentCaptor<Collection<QueueProtos.ClientPublishTargetProto>> targetsCaptor = ArgumentCaptor.forClass(Collection.class);
+            verify(downLinkProxy, times(2)).sendBasicMsg(eq("node2"), eq(publishMsgProto), targetsCaptor.capture());
+            List<QueueProtos.ClientPublishTargetProto> targets = targetsCaptor.getAllValues().stream()
+                    .flatMap(Collection::stream)
+                    .collect(Collectors.toList());
+            assertEquals(3, targets.size());
+            assertEquals(List.of("clientId2", "clientId3", "clientId4"),
+                    targets.stream().map(QueueProtos.ClientPublishTargetProto::getClientId).collect(Collectors.toList()));
+            assertEquals(List.of(1, 0, 1),
+                    targets.stream().map(QueueProtos.ClientPublishTargetProto::getQos).collect(Collectors.toList()));
+        } finally {
+            ReflectionTestUtils.setField(msgDispatcherService, "multicastEnabled", false);
+        }
+    }
+
+    private Subscription newBasicSubscription(String clientId, String serviceId, int qos) {
+        ClientSessionInfo clientSessionInfo = mock(ClientSessionInfo.class);
+        when(clientSessionInfo.getClientId()).thenReturn(clientId);
+        when(clientSessionInfo.getServiceId()).thenReturn(serviceId);
+        return new Subscription("topic/test", qos, clientSessionInfo);
+    }
+
     private List<String> getClientIds(Stream<Subscription> msgSubscriptions) {
         return msgSubscriptions
                 .map(subscription -> subscription.getClientSessionInfo().getClientId())
                 .collect(Collectors.toList());
     }
 
+    @SuppressWarnings("unchecked")
+    private void mockGetSubscriptions(String topic, List<ValueWithTopicFilter<ClientSubscription>> clientSubscriptions) {
+        doAnswer(invocation -> {
+            clientSubscriptions.forEach(invocation.getArgument(1, Consumer.class));
+            return null;
+        }).when(subscriptionService).getSubscriptions(eq(topic), any());
+    }
+
     private void mockClientSessionCacheGetClientSession(String clientId, ClientSessionInfo clientSessionInfo) {
         when(clientSessionCache.getClientSessionInfo(clientId)).thenReturn(clientSessionInfo);
     }
@@ -322,10 +406,6 @@ public class MsgDispatcherServiceImplTest {
         when(clientSessionInfo.getClientId()).thenReturn(clientId);
     }
 
-    private Subscription newSubscription(int mqttQoSValue, String shareName) {
-        return new Subscription(TOPIC, mqttQoSValue, clientSessionInfo, shareName, SubscriptionOptions.newInstance());
-    }
-
     private ValueWithTopicFilter<ClientSubscription> newValueWithTopicFilter(String clientId, int qos, String topic) {
         return newValueWithTopicFilter(clientId, qos, null, topic);
     }
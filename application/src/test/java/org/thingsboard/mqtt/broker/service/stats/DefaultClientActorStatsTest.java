@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.mqtt.broker.actors.msg.MsgType;
+import org.thingsboard.mqtt.broker.common.stats.DefaultStatsFactory;
+import org.thingsboard.mqtt.broker.common.stats.ResettableTimer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultClientActorStatsTest {
+
+    DefaultClientActorStats clientActorStats;
+
+    @Before
+    public void setUp() {
+        clientActorStats = new DefaultClientActorStats(new DefaultStatsFactory(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void testTimersAreCreatedPerMsgType() {
+        assertTrue(clientActorStats.getTimers().isEmpty());
+
+        clientActorStats.logMsgProcessingTime(MsgType.MQTT_PING_MSG, System.nanoTime(), TimeUnit.NANOSECONDS);
+        clientActorStats.logMsgProcessingTime(MsgType.MQTT_PING_MSG, System.nanoTime(), TimeUnit.NANOSECONDS);
+        clientActorStats.logMsgProcessingTime(MsgType.MQTT_CONNECT_MSG, System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        Map<String, ResettableTimer> timers = clientActorStats.getTimers();
+        // ordered by the msg type
+        assertEquals(List.of(MsgType.MQTT_CONNECT_MSG.toString(), MsgType.MQTT_PING_MSG.toString()), List.copyOf(timers.keySet()));
+        assertEquals(1, timers.get(MsgType.MQTT_CONNECT_MSG.toString()).getCount());
+        assertEquals(2, timers.get(MsgType.MQTT_PING_MSG.toString()).getCount());
+    }
+
+    @Test
+    public void testReset() {
+        clientActorStats.logMsgProcessingTime(MsgType.MQTT_PING_MSG, System.nanoTime(), TimeUnit.NANOSECONDS);
+        ResettableTimer timer = clientActorStats.getTimers().get(MsgType.MQTT_PING_MSG.toString());
+
+        clientActorStats.reset();
+        assertEquals(0, timer.getCount());
+
+        clientActorStats.logMsgProcessingTime(MsgType.MQTT_PING_MSG, System.nanoTime(), TimeUnit.NANOSECONDS);
+        assertSame(timer, clientActorStats.getTimers().get(MsgType.MQTT_PING_MSG.toString()));
+        assertEquals(1, timer.getCount());
+    }
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+
+@Slf4j
+@RunWith(MockitoJUnitRunner.class)
+public class CompiledSubscriptionTrieTest {
+
+    private CompiledSubscriptionTrie<String> subscriptionTrie;
+    private AtomicInteger subscriptionCounter;
+    private AtomicLong nodesCounter;
+
+    @Before
+    public void before() {
+        this.subscriptionCounter = new AtomicInteger(0);
+        this.nodesCounter = new AtomicLong(0);
+        StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
+        Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(subscriptionCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(new AtomicLong());
+        this.subscriptionTrie = new CompiledSubscriptionTrie<>(statsManagerMock);
+    }
+
+    @Test
+    public void testSaveSameSession() {
+        subscriptionTrie.put("1/2", "test");
+        Assert.assertEquals(1, subscriptionTrie.get("1/2").size());
+        subscriptionTrie.put("1/2", "test");
+        Assert.assertEquals(1, subscriptionTrie.get("1/2").size());
+        Assert.assertEquals(1, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testDelete() {
+        subscriptionTrie.put("1/2", "test");
+        Assert.assertFalse(subscriptionTrie.delete("1/2", s -> s.equals("test2")));
+        Assert.assertFalse(subscriptionTrie.delete("1/3", s -> true));
+        Assert.assertTrue(subscriptionTrie.delete("1/2", s -> s.equals("test")));
+        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("1/2");
+        Assert.assertEquals(Collections.emptyList(), result);
+        Assert.assertEquals(0, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testGet() {
+        subscriptionTrie.put("1/22/3", "test1");
+        subscriptionTrie.put("1/+/3", "test2");
+        subscriptionTrie.put("1/#", "test3");
+        subscriptionTrie.put("1/22/#", "test4");
+        subscriptionTrie.put("1/+/4", "test5");
+        subscriptionTrie.put("1/22/4", "test6");
+        subscriptionTrie.put("#", "test7");
+        subscriptionTrie.put("+/22/3", "test8");
+        subscriptionTrie.put("+/22/+", "test9");
+        subscriptionTrie.put("1/+/#", "test10");
+        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("1/22/3");
+        Assert.assertEquals(Set.of(
+                        new ValueWithTopicFilter<>("test1", "1/22/3"),
+                        new ValueWithTopicFilter<>("test2", "1/+/3"),
+                        new ValueWithTopicFilter<>("test3", "1/#"),
+                        new ValueWithTopicFilter<>("test4", "1/22/#"),
+                        new ValueWithTopicFilter<>("test7", "#"),
+                        new ValueWithTopicFilter<>("test8", "+/22/3"),
+                        new ValueWithTopicFilter<>("test9", "+/22/+"),
+                        new ValueWithTopicFilter<>("test10", "1/+/#")
+                ),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void testGet_UnknownSegment() {
+        subscriptionTrie.put("1/+/3", "test1");
+        subscriptionTrie.put("1/22/3", "test2");
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("test1", "1/+/3")), subscriptionTrie.get("1/unknown/3"));
+        Assert.assertEquals(Collections.emptyList(), subscriptionTrie.get("unknown/22/3"));
+    }
+
+    @Test
+    public void testTopicsWith$() {
+        subscriptionTrie.put("#", "test1");
+        subscriptionTrie.put("+/monitor/Clients", "test2");
+        subscriptionTrie.put("$SYS/#", "test3");
+        subscriptionTrie.put("$SYS/monitor/+", "test4");
+        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("$SYS/monitor/Clients");
+        Assert.assertEquals(Set.of(new ValueWithTopicFilter<>("test3", "$SYS/#"),
+                        new ValueWithTopicFilter<>("test4", "$SYS/monitor/+")
+                ),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void testSubscriptionCount() {
+        for (int i = 0; i < 10; i++) {
+            subscriptionTrie.put(Integer.toString(i), "val");
+        }
+        Assert.assertEquals(10, subscriptionCounter.get());
+        for (int i = 0; i < 9; i++) {
+            subscriptionTrie.delete(Integer.toString(i), s -> true);
+        }
+        Assert.assertEquals(1, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testNodeCount_MultipleLevels() {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                subscriptionTrie.put(i + "/" + j, "val");
+            }
+        }
+        // 10 first level + 30 second level
+        Assert.assertEquals(10 + 30, nodesCounter.get());
+    }
+
+    @Test
+    public void testEmptyNodesArePrunedOnDelete() {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                subscriptionTrie.put(i + "/" + j, "val");
+            }
+        }
+
+        subscriptionTrie.delete("0/0", s -> true);
+        subscriptionTrie.delete("0/1", s -> true);
+        subscriptionTrie.delete("0/2", s -> true);
+        subscriptionTrie.delete("1/0", s -> true);
+
+        // 0/0, 0/1, 0/2, 0 and 1/0 nodes are removed right away
+        Assert.assertEquals(40 - 5, nodesCounter.get());
+        Assert.assertEquals(1, subscriptionTrie.get("1/1").size());
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                subscriptionTrie.delete(i + "/" + j, s -> true);
+            }
+        }
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(0, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testNodeWithValuesIsNotPruned() {
+        subscriptionTrie.put("1", "val1");
+        subscriptionTrie.put("1/2", "val2");
+        subscriptionTrie.delete("1/2", s -> true);
+        Assert.assertEquals(1, nodesCounter.get());
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("val1", "1")), subscriptionTrie.get("1"));
+    }
+
+    @Test
+    public void testSegmentReusedAfterPruning() {
+        subscriptionTrie.put("a/b", "val1");
+        subscriptionTrie.delete("a/b", s -> true);
+        subscriptionTrie.put("b/a", "val2");
+        Assert.assertEquals(Collections.emptyList(), subscriptionTrie.get("a/b"));
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("val2", "b/a")), subscriptionTrie.get("b/a"));
+    }
+
+    @Test
+    public void testConcurrentWritesAreAllApplied() throws Exception {
+        int threads = 8;
+        int subscriptionsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                String clientId = "client" + t;
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < subscriptionsPerThread; i++) {
+                            subscriptionTrie.put("topic/" + i, clientId);
+                            Assert.assertTrue(subscriptionTrie.get("topic/" + i).contains(new ValueWithTopicFilter<>(clientId, "topic/" + i)));
+                            if (i % 2 == 0) {
+                                Assert.assertTrue(subscriptionTrie.delete("topic/" + i, clientId::equals));
+                            }
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(threads * subscriptionsPerThread / 2, subscriptionCounter.get());
+        Assert.assertEquals(1 + subscriptionsPerThread / 2, nodesCounter.get());
+        Assert.assertEquals(threads, subscriptionTrie.get("topic/1").size());
+        Assert.assertEquals(0, subscriptionTrie.get("topic/0").size());
+    }
+
+    @Test
+    public void testLookupsDuringWrites() throws Exception {
+        subscriptionTrie.put("stable/+", "stable");
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.execute(() -> {
+                int i = 0;
+                while (running.get()) {
+                    subscriptionTrie.put("stable/" + (i % 100), "val" + i);
+                    subscriptionTrie.delete("stable/" + (i % 100), s -> true);
+                    i++;
+                }
+            });
+            List<ValueWithTopicFilter<String>> result = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                result.clear();
+                subscriptionTrie.get("stable/" + (i % 100), result::add);
+                Assert.assertTrue(result.contains(new ValueWithTopicFilter<>("stable", "stable/+")));
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLookupsDuringRemoveAndReAddOfSegment() throws Exception {
+        subscriptionTrie.put("t/x", "exact");
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // every snapshot has at least one of the filters matching 't/x', while the 'x' segment is removed and added again
+            executor.execute(() -> {
+                while (running.get()) {
+                    subscriptionTrie.put("t/+", "wildcard");
+                    subscriptionTrie.delete("t/x", s -> true);
+                    subscriptionTrie.put("t/x", "exact");
+                    subscriptionTrie.delete("t/+", s -> true);
+                }
+            });
+            List<ValueWithTopicFilter<String>> result = new ArrayList<>();
+            for (int i = 0; i < 1_000_000; i++) {
+                result.clear();
+                subscriptionTrie.get("t/x", result::add);
+                Assert.assertFalse(result.isEmpty());
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testManyValuesOfOneTopicFilter() {
+        for (int i = 0; i < 1000; i++) {
+            subscriptionTrie.put("a/b", "client-" + i);
+        }
+        subscriptionTrie.put("a/b", "client-500");
+        Assert.assertEquals(1000, subscriptionCounter.get());
+        Assert.assertEquals(1000, subscriptionTrie.get("a/b").size());
+
+        for (int i = 0; i < 1000; i += 2) {
+            String value = "client-" + i;
+            Assert.assertTrue(subscriptionTrie.delete("a/b", value::equals));
+        }
+        Set<String> expected = IntStream.range(0, 1000).filter(i -> i % 2 == 1)
+                .mapToObj(i -> "client-" + i).collect(Collectors.toSet());
+        Assert.assertEquals(expected, getValues("a/b"));
+        Assert.assertEquals(500, subscriptionCounter.get());
+
+        // the values left after dropping the index of positions are still found on put
+        Assert.assertTrue(subscriptionTrie.delete("a/b", s -> !s.equals("client-1") && !s.equals("client-3")));
+        subscriptionTrie.put("a/b", "client-1");
+        Assert.assertEquals(Set.of("client-1", "client-3"), getValues("a/b"));
+        Assert.assertEquals(2, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testPendingOperationsArePublishedAfterMaxCount() {
+        List<String> publishedTopicFilters = new ArrayList<>();
+        subscriptionTrie.setPublishedChangesListener(publishedTopicFilters::add);
+        subscriptionTrie.setMaxPendingOperations(3);
+        subscriptionTrie.setPublishIntervalMs(TimeUnit.HOURS.toMillis(1));
+        subscriptionTrie.init();
+        try {
+            subscriptionTrie.put("a/b", "test1");
+            subscriptionTrie.put("a/c", "test2");
+            Assert.assertTrue(subscriptionTrie.get("a/b").isEmpty());
+            Assert.assertTrue(publishedTopicFilters.isEmpty());
+
+            subscriptionTrie.put("a/+", "test3");
+            Assert.assertEquals(Set.of("test1", "test3"), getValues("a/b"));
+            Assert.assertEquals(Set.of("test2", "test3"), getValues("a/c"));
+            Assert.assertEquals(List.of("a/b", "a/c", "a/+"), publishedTopicFilters);
+        } finally {
+            subscriptionTrie.destroy();
+        }
+    }
+
+    @Test
+    public void testPendingOperationsArePublishedByScheduler() {
+        List<String> publishedTopicFilters = Collections.synchronizedList(new ArrayList<>());
+        subscriptionTrie.setPublishedChangesListener(publishedTopicFilters::add);
+        subscriptionTrie.setMaxPendingOperations(1000);
+        subscriptionTrie.setPublishIntervalMs(10);
+        subscriptionTrie.init();
+        try {
+            subscriptionTrie.put("a/b", "test");
+            await().atMost(5, TimeUnit.SECONDS).until(() -> getValues("a/b").equals(Set.of("test")));
+            await().atMost(5, TimeUnit.SECONDS).until(() -> publishedTopicFilters.equals(List.of("a/b")));
+
+            Assert.assertTrue(subscriptionTrie.delete("a/b", "test"::equals));
+            await().atMost(5, TimeUnit.SECONDS).until(() -> subscriptionTrie.get("a/b").isEmpty());
+            Assert.assertEquals(0, nodesCounter.get());
+        } finally {
+            subscriptionTrie.destroy();
+        }
+    }
+
+    private Set<String> getValues(String topic) {
+        return subscriptionTrie.get(topic).stream().map(ValueWithTopicFilter::getValue).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.stats.StubSubscriptionLookupCacheStats;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SubscriptionLookupCacheImplTest {
+
+    private ConcurrentMapSubscriptionTrie<ClientSubscription> subscriptionTrie;
+    private SubscriptionLookupCacheImpl subscriptionLookupCache;
+    private AtomicInteger lookups;
+
+    @Before
+    public void before() {
+        StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
+        Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(new AtomicInteger());
+        Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(new AtomicLong());
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(new AtomicLong());
+        Mockito.when(statsManagerMock.getSubscriptionLookupCacheStats()).thenReturn(StubSubscriptionLookupCacheStats.STUB_SUBSCRIPTION_LOOKUP_CACHE_STATS);
+        this.subscriptionTrie = new ConcurrentMapSubscriptionTrie<>(statsManagerMock);
+        this.subscriptionLookupCache = new SubscriptionLookupCacheImpl(statsManagerMock);
+        this.subscriptionLookupCache.setEnabled(true);
+        this.subscriptionLookupCache.setMaxSize(1000);
+        this.subscriptionLookupCache.init();
+        this.lookups = new AtomicInteger();
+    }
+
+    @Test
+    public void testCachedLookup() {
+        subscribe("a/+", "client1");
+        Assert.assertEquals(1, get("a/b").size());
+        Assert.assertEquals(1, get("a/b").size());
+        Assert.assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testMatchingTopicsInvalidated() {
+        get("a/b");
+        get("a/c");
+        get("x/y");
+        Assert.assertEquals(3, lookups.get());
+
+        subscribe("a/+", "client1");
+        Assert.assertEquals(1, get("a/b").size());
+        Assert.assertEquals(1, get("a/c").size());
+        Assert.assertEquals(0, get("x/y").size());
+        Assert.assertEquals(5, lookups.get());
+    }
+
+    @Test
+    public void testMultiLevelWildcardInvalidation() {
+        get("a/b/c");
+        get("a");
+        get("b/c");
+
+        subscribe("a/#", "client1");
+        Assert.assertEquals(1, get("a/b/c").size());
+        Assert.assertEquals(0, get("b/c").size());
+        Assert.assertEquals(4, lookups.get());
+
+        subscribe("#", "client2");
+        Assert.assertEquals(2, get("a/b/c").size());
+        Assert.assertEquals(1, get("b/c").size());
+        Assert.assertEquals(6, lookups.get());
+    }
+
+    @Test
+    public void testInvalidationOnUnsubscribe() {
+        subscribe("a/b", "client1");
+        Assert.assertEquals(1, get("a/b").size());
+
+        subscriptionTrie.delete("a/b", s -> true);
+        subscriptionLookupCache.invalidate("a/b");
+        Assert.assertEquals(0, get("a/b").size());
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testChangeDuringLookupIsNotCached() {
+        List<ValueWithTopicFilter<ClientSubscription>> result = subscriptionLookupCache.get("a/b", topic -> {
+            List<ValueWithTopicFilter<ClientSubscription>> subscriptions = subscriptionTrie.get(topic);
+            subscribe("a/b", "client1");
+            return subscriptions;
+        });
+        Assert.assertEquals(0, result.size());
+        Assert.assertEquals(1, get("a/b").size());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        subscriptionLookupCache.setEnabled(false);
+        subscriptionLookupCache.init();
+        get("a/b");
+        get("a/b");
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testCachedTopicsIndex() {
+        CachedTopicsIndex index = new CachedTopicsIndex();
+        index.add("a/b/c");
+        index.add("a/b");
+        index.add("a/");
+        index.add("a");
+        Assert.assertEquals(List.of("a/b"), index.findMatchingTopics("+/b"));
+        Assert.assertEquals(2, index.findMatchingTopics("a").size());
+        Assert.assertEquals(4, index.findMatchingTopics("#").size());
+
+        index.remove("a/b/c");
+        index.remove("a/b");
+        index.remove("a/");
+        Assert.assertEquals(List.of("a"), index.findMatchingTopics("#"));
+        index.remove("a");
+        Assert.assertEquals(0, index.size());
+    }
+
+    private void subscribe(String topicFilter, String clientId) {
+        subscriptionTrie.put(topicFilter, new ClientSubscription(clientId, 1, null, SubscriptionOptions.newInstance()));
+        subscriptionLookupCache.invalidate(topicFilter);
+    }
+
+    private List<ValueWithTopicFilter<ClientSubscription>> get(String topic) {
+        return subscriptionLookupCache.get(topic, t -> {
+            lookups.incrementAndGet();
+            return subscriptionTrie.get(t);
+        });
+    }
+}
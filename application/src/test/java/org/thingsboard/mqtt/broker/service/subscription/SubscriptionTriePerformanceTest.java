@@ -77,6 +77,7 @@ public class SubscriptionTriePerformanceTest {
         StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
         Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(new AtomicInteger());
         Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(new AtomicLong());
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(new AtomicLong());
         this.subscriptionTrie = new ConcurrentMapSubscriptionTrie<>(statsManagerMock);
     }
 
@@ -22,13 +22,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -39,14 +46,17 @@ public class SubscriptionTrieSuiteTest {
     private ConcurrentMapSubscriptionTrie<String> subscriptionTrie;
     private AtomicInteger subscriptionCounter;
     private AtomicLong nodesCounter;
+    private AtomicLong reclaimedNodesCounter;
 
     @Before
     public void before() {
         this.subscriptionCounter = new AtomicInteger(0);
         this.nodesCounter = new AtomicLong(0);
+        this.reclaimedNodesCounter = new AtomicLong(0);
         StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
         Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(subscriptionCounter);
         Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(reclaimedNodesCounter);
         this.subscriptionTrie = new ConcurrentMapSubscriptionTrie<>(statsManagerMock);
     }
 
@@ -92,6 +102,68 @@ public class SubscriptionTrieSuiteTest {
                 new HashSet<>(result));
     }
 
+    @Test
+    public void testGetWithConsumer() {
+        subscriptionTrie.put("1/22/3", "test1");
+        subscriptionTrie.put("1/+/3", "test2");
+        subscriptionTrie.put("1/#", "test3");
+        subscriptionTrie.put("$SYS/#", "test4");
+        subscriptionTrie.put("1/22", "test5");
+        List<ValueWithTopicFilter<String>> result = new ArrayList<>();
+        subscriptionTrie.get("1/22/3", result::add);
+        Assert.assertEquals(Set.of(
+                        new ValueWithTopicFilter<>("test1", "1/22/3"),
+                        new ValueWithTopicFilter<>("test2", "1/+/3"),
+                        new ValueWithTopicFilter<>("test3", "1/#")
+                ),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void testGetWithConsumer_ReentrantLookup() {
+        subscriptionTrie.put("1/+", "test1");
+        subscriptionTrie.put("2/#", "test2");
+        List<ValueWithTopicFilter<String>> result = new ArrayList<>();
+        subscriptionTrie.get("1/2", value -> {
+            result.add(value);
+            subscriptionTrie.get("2/3/4", result::add);
+        });
+        Assert.assertEquals(List.of(
+                        new ValueWithTopicFilter<>("test1", "1/+"),
+                        new ValueWithTopicFilter<>("test2", "2/#")
+                ),
+                result);
+    }
+
+    @Test
+    public void testGetWithConsumer_RepeatedLookupsOfDifferentDepth() {
+        subscriptionTrie.put("devices/+/telemetry", "test1");
+        subscriptionTrie.put("devices/#", "test2");
+        subscriptionTrie.put("devices/device1/telemetry", "test3");
+        subscriptionTrie.put("+/device1/+", "test4");
+        subscriptionTrie.put("devices/device1/telemetry/+/+/+", "test5");
+        subscriptionTrie.put("#", "test6");
+        Set<String> deepTopicMatches = Set.of("devices/#", "devices/device1/telemetry/+/+/+", "#");
+        Set<String> shortTopicMatches = Set.of("#");
+        Set<String> midTopicMatches = Set.of("devices/+/telemetry", "devices/#", "devices/device1/telemetry", "+/device1/+", "#");
+        // the lookups reuse the same per-thread state, a deep topic must not leave anything behind for the next one
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(deepTopicMatches, getMatchedTopicFilters("devices/device1/telemetry/a/b/c"));
+            Assert.assertEquals(shortTopicMatches, getMatchedTopicFilters("devices"));
+            Assert.assertEquals(midTopicMatches, getMatchedTopicFilters("devices/device1/telemetry"));
+            Assert.assertEquals(Set.of("+/device1/+", "#"), getMatchedTopicFilters("other/device1/x"));
+            Assert.assertEquals(Set.of("devices/+/telemetry", "devices/#", "#"), getMatchedTopicFilters("devices//telemetry"));
+        }
+    }
+
+    private Set<String> getMatchedTopicFilters(String topic) {
+        List<String> topicFilters = new ArrayList<>();
+        subscriptionTrie.get(topic, value -> topicFilters.add(value.getTopicFilter()));
+        Set<String> result = new HashSet<>(topicFilters);
+        Assert.assertEquals("Duplicate matches for " + topic, topicFilters.size(), result.size());
+        return result;
+    }
+
     @Test
     public void testTopicsWith$() {
         subscriptionTrie.put("#", "test1");
@@ -142,7 +214,39 @@ public class SubscriptionTrieSuiteTest {
             subscriptionTrie.delete(Integer.toString(i), "val1"::equals);
             subscriptionTrie.delete(Integer.toString(i), "val2"::equals);
         }
-        Assert.assertEquals(10, nodesCounter.get());
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(10, reclaimedNodesCounter.get());
+    }
+
+    @Test
+    public void testNodeCount_ReclaimOnDelete() {
+        subscriptionTrie.put("1/2/3", "val1");
+        subscriptionTrie.put("1/2", "val2");
+        subscriptionTrie.put("1/4", "val3");
+        Assert.assertEquals(4, nodesCounter.get());
+
+        subscriptionTrie.delete("1/2/3", s -> true);
+        // only 3 is reclaimed, 2 still has a value
+        Assert.assertEquals(3, nodesCounter.get());
+
+        subscriptionTrie.delete("1/2", s -> true);
+        Assert.assertEquals(2, nodesCounter.get());
+
+        subscriptionTrie.delete("1/4", s -> true);
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(4, reclaimedNodesCounter.get());
+
+        subscriptionTrie.put("1/2/3", "val1");
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("val1", "1/2/3")), subscriptionTrie.get("1/2/3"));
+    }
+
+    @Test
+    public void testNodeCount_NoReclaimOnMissingValue() {
+        subscriptionTrie.put("1/2", "val1");
+        Assert.assertFalse(subscriptionTrie.delete("1/2", "val2"::equals));
+        Assert.assertFalse(subscriptionTrie.delete("1", s -> true));
+        Assert.assertEquals(2, nodesCounter.get());
+        Assert.assertEquals(0, reclaimedNodesCounter.get());
     }
 
     @Test
@@ -157,7 +261,7 @@ public class SubscriptionTrieSuiteTest {
     }
 
     @Test
-    public void testClearTrie_Basic() throws SubscriptionTrieClearException {
+    public void testClearTrie_Basic() {
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 3; j++) {
                 subscriptionTrie.put(i + "/" + j, "val");
@@ -168,26 +272,85 @@ public class SubscriptionTrieSuiteTest {
         subscriptionTrie.delete("0/1", s -> true);
         subscriptionTrie.delete("0/2", s -> true);
         subscriptionTrie.delete("1/0", s -> true);
+        // 0/0, 0/1, 0/2, 0 and 1/0 nodes are already reclaimed on delete
+        Assert.assertEquals(40 - 5, nodesCounter.get());
 
-        subscriptionTrie.setWaitForClearLockMs(100);
         subscriptionTrie.clearEmptyNodes();
-        // should clear 0/0, 0/1, 0/2, 0 and 1/0 nodes
         Assert.assertEquals(40 - 5, nodesCounter.get());
     }
 
     @Test
-    public void testClearTrie_ClearAll() throws SubscriptionTrieClearException {
+    public void testClearTrie_ClearAll() {
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 3; j++) {
                 subscriptionTrie.put(i + "/" + j, "val");
                 subscriptionTrie.delete(i + "/" + j, s -> true);
             }
         }
-        Assert.assertEquals(40, nodesCounter.get());
+        // the first level node is recreated and reclaimed again with every second level node
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(30 + 30, reclaimedNodesCounter.get());
 
-        subscriptionTrie.setWaitForClearLockMs(100);
         subscriptionTrie.clearEmptyNodes();
 
         Assert.assertEquals(0, nodesCounter.get());
     }
+
+    @Test
+    public void testReclaim_ConcurrentChurnWithLookups() throws Exception {
+        subscriptionTrie.put("devices/+/telemetry", "stable1");
+        subscriptionTrie.put("devices/#", "stable2");
+        long stableNodes = nodesCounter.get();
+        String[] topicFilters = {"devices/device1/telemetry", "devices/device1", "devices/device1/telemetry/1",
+                "devices/+/telemetry/#", "devices/device2/#", "devices/device1/+"};
+
+        int churnThreads = 4;
+        int lookupThreads = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(churnThreads + lookupThreads);
+        AtomicBoolean churnFinished = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < churnThreads; t++) {
+                String value = "churn" + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20_000; i++) {
+                        String topicFilter = topicFilters[ThreadLocalRandom.current().nextInt(topicFilters.length)];
+                        subscriptionTrie.put(topicFilter, value);
+                        // a put must never be lost because of a concurrently reclaimed node
+                        Assert.assertTrue(subscriptionTrie.get(topicFilter).contains(new ValueWithTopicFilter<>(value, topicFilter)));
+                        Assert.assertTrue(subscriptionTrie.delete(topicFilter, value::equals));
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < lookupThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (!churnFinished.get()) {
+                        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("devices/device1/telemetry");
+                        Assert.assertTrue(result.contains(new ValueWithTopicFilter<>("stable1", "devices/+/telemetry")));
+                        Assert.assertTrue(result.contains(new ValueWithTopicFilter<>("stable2", "devices/#")));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < churnThreads; i++) {
+                futures.get(i).get(60, TimeUnit.SECONDS);
+            }
+            churnFinished.set(true);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(2, subscriptionCounter.get());
+        Assert.assertEquals(stableNodes, nodesCounter.get());
+        Assert.assertTrue(reclaimedNodesCounter.get() > 0);
+        Assert.assertEquals(2, subscriptionTrie.get("devices/device1/telemetry").size());
+    }
 }
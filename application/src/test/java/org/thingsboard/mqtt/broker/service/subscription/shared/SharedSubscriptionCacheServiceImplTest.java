@@ -27,13 +27,16 @@ import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.List;
-import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -63,6 +66,7 @@ public class SharedSubscriptionCacheServiceImplTest {
     @After
     public void destroy() {
         sharedSubscriptionCache.getSharedSubscriptionsMap().clear();
+        sharedSubscriptionCache.getSharedSubscriptionGroupsMap().clear();
     }
 
     @Test
@@ -159,6 +163,7 @@ public class SharedSubscriptionCacheServiceImplTest {
 
         sharedSubscriptionCache.remove(CLIENT_ID_1, new TopicSubscription("#", 0, "g2"));
         assertEquals(2, sharedSubscriptionCache.getSharedSubscriptionsMap().size());
+        assertNull(sharedSubscriptionCache.get(new TopicSharedSubscription("#", "g2")));
 
         when(clientSessionCache.getClientSessionInfo(CLIENT_ID_2)).thenReturn(null);
         sharedSubscriptionCache.remove(CLIENT_ID_2, new TopicSubscription("/test/topic/1", 0, "g1"));
@@ -174,8 +179,7 @@ public class SharedSubscriptionCacheServiceImplTest {
 
     @Test
     public void testGetNothing() {
-        assertNull(sharedSubscriptionCache.get(null));
-        assertNull(sharedSubscriptionCache.get(Set.of()));
+        assertNull(sharedSubscriptionCache.get(new TopicSharedSubscription("/test/topic/1", "g1")));
     }
 
     @Test
@@ -196,14 +200,12 @@ public class SharedSubscriptionCacheServiceImplTest {
                 new TopicSubscription("/test/topic/1", 1, "g1")
         ));
 
-        SharedSubscriptions sharedSubscriptions = sharedSubscriptionCache.get(Set.of(
-                new TopicSharedSubscription("/test/topic/1", "g1"),
-                new TopicSharedSubscription("#", "g2"),
-                new TopicSharedSubscription("/test/topic/+", "g3")
-        ));
+        SharedSubscriptionGroup sharedSubscriptionGroup = sharedSubscriptionCache.get(new TopicSharedSubscription("/test/topic/1", "g1"));
 
-        assertEquals(2, sharedSubscriptions.getDeviceSubscriptions().size());
-        for (Subscription subscription : sharedSubscriptions.getDeviceSubscriptions()) {
+        assertEquals(2, sharedSubscriptionGroup.getVersion());
+        assertTrue(sharedSubscriptionGroup.getApplicationSubscriptions().isEmpty());
+        assertEquals(2, sharedSubscriptionGroup.getDeviceSubscriptions().length);
+        for (Subscription subscription : sharedSubscriptionGroup.getDeviceSubscriptions()) {
             assertEquals("/test/topic/1", subscription.getTopicFilter());
             if (subscription.getClientSessionInfo().getClientId().equals(CLIENT_ID_1)) {
                 assertEquals(2, subscription.getQos());
@@ -211,5 +213,99 @@ public class SharedSubscriptionCacheServiceImplTest {
                 assertEquals(1, subscription.getQos());
             }
         }
+
+        sharedSubscriptionGroup = sharedSubscriptionCache.get(new TopicSharedSubscription("#", "g2"));
+        assertEquals(1, sharedSubscriptionGroup.getVersion());
+        assertEquals(1, sharedSubscriptionGroup.getDeviceSubscriptions().length);
+    }
+
+    @Test
+    public void testProcessSessionUpdate() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(
+                new TopicSubscription("/test/topic/1", 1, "g1")
+        ));
+
+        TopicSharedSubscription key = new TopicSharedSubscription("/test/topic/1", "g1");
+        SharedSubscriptionGroup sharedSubscriptionGroup = sharedSubscriptionCache.get(key);
+        assertTrue(sharedSubscriptionGroup.hasDeviceSubscriptions());
+        assertFalse(sharedSubscriptionGroup.hasConnectedDeviceSubscriptions());
+
+        ClientSessionInfo connectedClientSessionInfo = mock(ClientSessionInfo.class);
+        when(connectedClientSessionInfo.getClientId()).thenReturn(CLIENT_ID_1);
+        when(connectedClientSessionInfo.isConnected()).thenReturn(true);
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(connectedClientSessionInfo);
+
+        sharedSubscriptionCache.processSessionUpdate(CLIENT_ID_1);
+
+        SharedSubscriptionGroup newSharedSubscriptionGroup = sharedSubscriptionCache.get(key);
+        assertEquals(sharedSubscriptionGroup.getVersion() + 1, newSharedSubscriptionGroup.getVersion());
+        assertEquals(CLIENT_ID_1, newSharedSubscriptionGroup.nextConnectedDeviceSubscription().getClientSessionInfo().getClientId());
+
+        sharedSubscriptionCache.processSessionUpdate(CLIENT_ID_2);
+        assertSame(newSharedSubscriptionGroup, sharedSubscriptionCache.get(key));
+    }
+
+    @Test
+    public void testProcessSessionUpdate_OnlyChangedMemberReplaced() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+        when(clientSessionInfo2.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo2.getClientId()).thenReturn(CLIENT_ID_2);
+        when(clientSessionInfo2.isConnected()).thenReturn(true);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(new TopicSubscription("/test/topic/1", 1, "g1")));
+        sharedSubscriptionCache.put(CLIENT_ID_2, List.of(new TopicSubscription("/test/topic/1", 1, "g1")));
+
+        TopicSharedSubscription key = new TopicSharedSubscription("/test/topic/1", "g1");
+        SharedSubscriptionGroup sharedSubscriptionGroup = sharedSubscriptionCache.get(key);
+        assertEquals(1, sharedSubscriptionGroup.getConnectedDeviceSubscriptions().length);
+        Subscription client2Subscription = findSubscription(sharedSubscriptionGroup.getDeviceSubscriptions(), CLIENT_ID_2);
+
+        ClientSessionInfo connectedClientSessionInfo = mock(ClientSessionInfo.class);
+        when(connectedClientSessionInfo.getClientId()).thenReturn(CLIENT_ID_1);
+        when(connectedClientSessionInfo.isConnected()).thenReturn(true);
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(connectedClientSessionInfo);
+
+        sharedSubscriptionCache.processSessionUpdate(CLIENT_ID_1);
+
+        SharedSubscriptionGroup newSharedSubscriptionGroup = sharedSubscriptionCache.get(key);
+        assertEquals(sharedSubscriptionGroup.getVersion() + 1, newSharedSubscriptionGroup.getVersion());
+        assertEquals(2, newSharedSubscriptionGroup.getConnectedDeviceSubscriptions().length);
+        assertSame(connectedClientSessionInfo,
+                findSubscription(newSharedSubscriptionGroup.getDeviceSubscriptions(), CLIENT_ID_1).getClientSessionInfo());
+        assertSame(client2Subscription, findSubscription(newSharedSubscriptionGroup.getDeviceSubscriptions(), CLIENT_ID_2));
+        // the session of the other member is read only by the puts that rebuilt the group
+        verify(clientSessionCache, times(2)).getClientSessionInfo(CLIENT_ID_2);
+    }
+
+    @Test
+    public void testProcessSessionUpdate_MemberRemovedAndAddedBack() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(new TopicSubscription("/test/topic/1", 1, "g1")));
+        TopicSharedSubscription key = new TopicSharedSubscription("/test/topic/1", "g1");
+
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(null);
+        sharedSubscriptionCache.processSessionUpdate(CLIENT_ID_1);
+        assertFalse(sharedSubscriptionCache.get(key).hasDeviceSubscriptions());
+
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(clientSessionInfo1);
+        sharedSubscriptionCache.processSessionUpdate(CLIENT_ID_1);
+        SharedSubscriptionGroup sharedSubscriptionGroup = sharedSubscriptionCache.get(key);
+        assertEquals(3, sharedSubscriptionGroup.getVersion());
+        assertSame(clientSessionInfo1, sharedSubscriptionGroup.getDeviceSubscriptions()[0].getClientSessionInfo());
+    }
+
+    private Subscription findSubscription(Subscription[] subscriptions, String clientId) {
+        for (Subscription subscription : subscriptions) {
+            if (clientId.equals(subscription.getClientSessionInfo().getClientId())) {
+                return subscription;
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
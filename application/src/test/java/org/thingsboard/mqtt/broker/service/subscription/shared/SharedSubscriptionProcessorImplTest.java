@@ -15,7 +15,6 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
-import com.google.common.collect.Iterables;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -23,26 +22,35 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.mqtt.broker.common.data.ClientSession;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory.getClientInfo;
 import static org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory.getConnectionInfo;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SharedSubscriptionProcessorImplTest {
 
+    ClientSessionCtxService clientSessionCtxService;
     SharedSubscriptionProcessorImpl subscriptionProcessor;
 
     @Before
     public void setUp() {
-        subscriptionProcessor = new SharedSubscriptionProcessorImpl();
+        clientSessionCtxService = mock(ClientSessionCtxService.class);
+        subscriptionProcessor = new SharedSubscriptionProcessorImpl(clientSessionCtxService);
     }
 
     @Test
@@ -54,15 +62,15 @@ public class SharedSubscriptionProcessorImplTest {
 
         List<Subscription> subscriptions = getSubscriptions(expectedSessionInfo1, expectedSessionInfo2);
 
-        SharedSubscription sharedSubscription = getSharedSubscription(subscriptions);
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
 
-        Subscription subscription1 = subscriptionProcessor.processRoundRobin(sharedSubscription);
-        Subscription subscription2 = subscriptionProcessor.processRoundRobin(sharedSubscription);
+        Subscription subscription1 = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
+        Subscription subscription2 = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
 
         Assert.assertEquals(new HashSet<>(Set.of(subscription1, subscription2)), new HashSet<>(subscriptions));
 
-        Subscription subscription3 = subscriptionProcessor.processRoundRobin(sharedSubscription);
-        Subscription subscription4 = subscriptionProcessor.processRoundRobin(sharedSubscription);
+        Subscription subscription3 = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
+        Subscription subscription4 = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
 
         Assert.assertEquals(subscription1, subscription3);
         Assert.assertEquals(subscription2, subscription4);
@@ -77,14 +85,6 @@ public class SharedSubscriptionProcessorImplTest {
         SessionInfo expectedSessionInfo2 = getSessionInfo(sessionId, "clientId");
 
         Assert.assertEquals(expectedSessionInfo1, expectedSessionInfo2);
-
-        List<Subscription> subscriptions1 = getSubscriptions(expectedSessionInfo1, expectedSessionInfo2);
-        List<Subscription> subscriptions2 = getSubscriptions(expectedSessionInfo1, expectedSessionInfo2);
-
-        SharedSubscription sharedSubscription1 = getSharedSubscription(subscriptions1);
-        SharedSubscription sharedSubscription2 = getSharedSubscription(subscriptions2);
-
-        Assert.assertEquals(sharedSubscription1, sharedSubscription2);
     }
 
     @Test
@@ -102,10 +102,150 @@ public class SharedSubscriptionProcessorImplTest {
         ClientSession clientSession3 = new ClientSession(true, expectedSessionInfo3);
 
         List<Subscription> subscriptions = getSubscriptions(clientSession1, clientSession2, clientSession3);
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        for (int i = 0; i < 3; i++) {
+            Subscription subscription = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
+            Assert.assertEquals(sessionId3, subscription.getClientSessionInfo().getSessionId());
+        }
+    }
+
+    @Test
+    public void testProcessRoundRobinWhenAllDisconnected() {
+        ClientSession clientSession1 = new ClientSession(false, getSessionInfo(UUID.randomUUID(), "clientId1"));
+        ClientSession clientSession2 = new ClientSession(false, getSessionInfo(UUID.randomUUID(), "clientId2"));
+
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(List.of(
+                Subscription.newInstance("topic1", 1, clientSession1),
+                Subscription.newInstance("topic1", 2, clientSession2)
+        ));
+
+        Assert.assertTrue(sharedSubscriptionGroup.hasDeviceSubscriptions());
+        Assert.assertFalse(sharedSubscriptionGroup.hasConnectedDeviceSubscriptions());
+        Assert.assertNull(subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup));
+    }
+
+    @Test
+    public void testProcessRoundRobinKeepsCursorBetweenVersions() {
+        List<Subscription> subscriptions = getSubscriptions(
+                getSessionInfo(UUID.randomUUID(), "clientId1"), getSessionInfo(UUID.randomUUID(), "clientId2"));
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        Subscription subscription1 = subscriptionProcessor.processRoundRobin(sharedSubscriptionGroup);
+
+        SharedSubscriptionGroup newVersion = SharedSubscriptionGroup.newVersion(sharedSubscriptionGroup, newTopicAndGroup(),
+                Set.of(), subscriptions.toArray(Subscription[]::new));
+        Assert.assertEquals(2, newVersion.getVersion());
+
+        Subscription subscription2 = subscriptionProcessor.processRoundRobin(newVersion);
+        Assert.assertNotEquals(subscription1, subscription2);
+    }
+
+    @Test
+    public void testProcessLeastInFlight() {
+        List<Subscription> subscriptions = getConnectedSubscriptions("clientId1", "clientId2", "clientId3");
+        ClientSessionCtx ctx1 = mockClientSessionCtx("clientId1");
+        ClientSessionCtx ctx2 = mockClientSessionCtx("clientId2");
+        ClientSessionCtx ctx3 = mockClientSessionCtx("clientId3");
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        sendPublishes(ctx1, 5);
+        sendPublishes(ctx2, 1);
+        sendPublishes(ctx3, 3);
+        Assert.assertEquals("clientId2", getClientId(subscriptionProcessor.processLeastInFlight(sharedSubscriptionGroup)));
+
+        sendPublishes(ctx2, 3);
+        Assert.assertEquals("clientId3", getClientId(subscriptionProcessor.processLeastInFlight(sharedSubscriptionGroup)));
+
+        ctx1.getPublishDeliveryLoadCtx().onPublishAcknowledged(1);
+        ctx1.getPublishDeliveryLoadCtx().onPublishAcknowledged(2);
+        ctx1.getPublishDeliveryLoadCtx().onPublishAcknowledged(3);
+        ctx3.getPublishDeliveryLoadCtx().onPublishAcknowledged(1);
+        Set<String> clientIds = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            clientIds.add(getClientId(subscriptionProcessor.processLeastInFlight(sharedSubscriptionGroup)));
+        }
+        Assert.assertEquals(Set.of("clientId1", "clientId3"), clientIds);
+    }
+
+    @Test
+    public void testProcessLeastInFlightWithRemoteMembers() {
+        List<Subscription> subscriptions = getConnectedSubscriptions("clientId1", "remoteClientId");
+        ClientSessionCtx ctx1 = mockClientSessionCtx("clientId1");
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        sendPublishes(ctx1, 10);
+
+        Set<String> clientIds = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            clientIds.add(getClientId(subscriptionProcessor.processLeastInFlight(sharedSubscriptionGroup)));
+        }
+        Assert.assertEquals(Set.of("clientId1", "remoteClientId"), clientIds);
+    }
+
+    @Test
+    public void testProcessAckLatencyWeighted() throws InterruptedException {
+        List<Subscription> subscriptions = getConnectedSubscriptions("slowClientId", "fastClientId");
+        ClientSessionCtx slowCtx = mockClientSessionCtx("slowClientId");
+        ClientSessionCtx fastCtx = mockClientSessionCtx("fastClientId");
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        fastCtx.getPublishDeliveryLoadCtx().onPublishSent(1);
+        fastCtx.getPublishDeliveryLoadCtx().onPublishAcknowledged(1);
+        // the acknowledgement is never received
+        slowCtx.getPublishDeliveryLoadCtx().onPublishSent(1);
+        Thread.sleep(50);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            counts.merge(getClientId(subscriptionProcessor.processAckLatencyWeighted(sharedSubscriptionGroup)), 1, Integer::sum);
+        }
+        Assert.assertTrue(counts.get("fastClientId") > 900);
+    }
+
+    @Test
+    public void testProcessConsistentHash() {
+        List<Subscription> subscriptions = getConnectedSubscriptions("clientId1", "clientId2", "clientId3", "clientId4");
+        SharedSubscriptionGroup sharedSubscriptionGroup = getSharedSubscriptionGroup(subscriptions);
+
+        Map<String, String> members = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            String publisher = "publisher" + i;
+            String member = getClientId(subscriptionProcessor.processConsistentHash(sharedSubscriptionGroup, publisher));
+            Assert.assertEquals(member, getClientId(subscriptionProcessor.processConsistentHash(sharedSubscriptionGroup, publisher)));
+            members.put(publisher, member);
+        }
+        Assert.assertEquals(4, new HashSet<>(members.values()).size());
+
+        SharedSubscriptionGroup withoutMember = getSharedSubscriptionGroup(subscriptions.subList(0, 3));
+        members.forEach((publisher, member) -> {
+            String newMember = getClientId(subscriptionProcessor.processConsistentHash(withoutMember, publisher));
+            if (!"clientId4".equals(member)) {
+                Assert.assertEquals(member, newMember);
+            }
+        });
+    }
+
+    private List<Subscription> getConnectedSubscriptions(String... clientIds) {
+        return Arrays.stream(clientIds)
+                .map(clientId -> Subscription.newInstance("topic", 1, new ClientSession(true, getSessionInfo(UUID.randomUUID(), clientId))))
+                .collect(Collectors.toList());
+    }
+
+    private ClientSessionCtx mockClientSessionCtx(String clientId) {
+        ClientSessionCtx ctx = new ClientSessionCtx(UUID.randomUUID(), null, 1);
+        when(clientSessionCtxService.getClientSessionCtx(clientId)).thenReturn(ctx);
+        return ctx;
+    }
+
+    private void sendPublishes(ClientSessionCtx ctx, int count) {
+        for (int i = 0; i < count; i++) {
+            ctx.getPublishDeliveryLoadCtx().onPublishSent(ctx.getMsgIdSeq().nextMsgId());
+        }
+    }
 
-        Iterator<Subscription> iterator = Iterables.cycle(subscriptions).iterator();
-        Subscription subscription = subscriptionProcessor.getOneSubscription(iterator);
-        Assert.assertEquals(sessionId3, subscription.getClientSessionInfo().getSessionId());
+    private String getClientId(Subscription subscription) {
+        return subscription.getClientSessionInfo().getClientId();
     }
 
     private List<Subscription> getSubscriptions(ClientSession clientSession1, ClientSession clientSession2, ClientSession clientSession3) {
@@ -137,7 +277,7 @@ public class SharedSubscriptionProcessorImplTest {
         return new TopicSharedSubscription("topic", "group");
     }
 
-    private SharedSubscription getSharedSubscription(List<Subscription> subscriptions) {
-        return new SharedSubscription(new TopicSharedSubscription("topic", "group"), subscriptions);
+    private SharedSubscriptionGroup getSharedSubscriptionGroup(List<Subscription> subscriptions) {
+        return SharedSubscriptionGroup.newInstance(newTopicAndGroup(), Set.of(), subscriptions.toArray(Subscription[]::new));
     }
 }
\ No newline at end of file
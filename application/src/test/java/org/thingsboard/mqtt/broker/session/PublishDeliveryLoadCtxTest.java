@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PublishDeliveryLoadCtxTest {
+
+    PublishDeliveryLoadCtx loadCtx;
+
+    @Before
+    public void setUp() {
+        loadCtx = new PublishDeliveryLoadCtx();
+    }
+
+    @Test
+    public void testInFlightMsgs() {
+        loadCtx.onPublishSent(1);
+        loadCtx.onPublishSent(2);
+        assertEquals(2, loadCtx.getInFlightMsgs());
+
+        loadCtx.onPublishAcknowledged(1);
+        loadCtx.onPublishAcknowledged(2);
+        loadCtx.onPublishAcknowledged(2);
+        assertEquals(0, loadCtx.getInFlightMsgs());
+    }
+
+    @Test
+    public void testAckLatency() throws InterruptedException {
+        assertEquals(0, loadCtx.getAckLatencyNanos());
+
+        loadCtx.onPublishSent(1);
+        loadCtx.onPublishSent(2);
+        Thread.sleep(20);
+        // only the first packet is sampled
+        loadCtx.onPublishAcknowledged(2);
+        assertTrue(loadCtx.getAckLatencyNanos() >= 20_000_000);
+
+        loadCtx.onPublishAcknowledged(1);
+        long latency = loadCtx.getAckLatencyNanos();
+        assertTrue(latency >= 20_000_000);
+
+        loadCtx.onPublishSent(3);
+        loadCtx.onPublishAcknowledged(3);
+        assertTrue(loadCtx.getAckLatencyNanos() < latency);
+    }
+}
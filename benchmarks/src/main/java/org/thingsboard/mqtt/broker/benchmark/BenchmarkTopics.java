@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+import java.util.Random;
+
+/*
+    Deterministic topics and topic filters for the benchmarks, every topic level has SEGMENTS_PER_LEVEL distinct values
+ */
+public final class BenchmarkTopics {
+
+    public static final int SEGMENTS_PER_LEVEL = 10;
+    public static final long SEED = 42;
+
+    private BenchmarkTopics() {
+    }
+
+    public static String[] topics(Random random, int count, int depth) {
+        String[] topics = new String[count];
+        for (int i = 0; i < count; i++) {
+            topics[i] = topic(random, depth);
+        }
+        return topics;
+    }
+
+    public static String[] topicFilters(Random random, int count, int depth, double wildcardRatio) {
+        String[] topicFilters = new String[count];
+        for (int i = 0; i < count; i++) {
+            topicFilters[i] = random.nextDouble() < wildcardRatio ? wildcardTopicFilter(random, depth) : topic(random, depth);
+        }
+        return topicFilters;
+    }
+
+    public static String topic(Random random, int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            if (level > 0) {
+                sb.append(BrokerConstants.TOPIC_DELIMITER);
+            }
+            sb.append(segment(level, random.nextInt(SEGMENTS_PER_LEVEL)));
+        }
+        return sb.toString();
+    }
+
+    /*
+        Half of the wildcard filters replace one level with '+', the other half cut the topic with '#'
+     */
+    private static String wildcardTopicFilter(Random random, int depth) {
+        boolean multiLevel = depth > 1 && random.nextBoolean();
+        int wildcardLevel = multiLevel ? 1 + random.nextInt(depth - 1) : random.nextInt(depth);
+        StringBuilder sb = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            if (level > 0) {
+                sb.append(BrokerConstants.TOPIC_DELIMITER);
+            }
+            if (level == wildcardLevel) {
+                if (multiLevel) {
+                    sb.append(BrokerConstants.MULTI_LEVEL_WILDCARD);
+                    break;
+                }
+                sb.append(BrokerConstants.SINGLE_LEVEL_WILDCARD);
+            } else {
+                sb.append(segment(level, random.nextInt(SEGMENTS_PER_LEVEL)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String segment(int level, int value) {
+        return "l" + level + "s" + value;
+    }
+}
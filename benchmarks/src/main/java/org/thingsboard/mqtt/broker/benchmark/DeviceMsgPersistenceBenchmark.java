@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import com.google.common.io.Resources;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.dao.messages.sql.DeviceMsgCopyConfiguration;
+import org.thingsboard.mqtt.broker.dao.messages.sql.SqlLowLevelDeviceMsgRepository;
+import org.thingsboard.mqtt.broker.dao.model.sql.DevicePublishMsgEntity;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Needs a running PostgreSQL, e.g. 'docker run -p 5432:5432 -e POSTGRES_DB=thingsboard_mqtt_broker -e POSTGRES_PASSWORD=postgres postgres:12',
+    the connection is set with the 'benchmark.jdbc.url', 'benchmark.jdbc.username' and 'benchmark.jdbc.password' system properties.
+    Every invocation saves one pack of msgs with new serial numbers, the score is in msgs per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DeviceMsgPersistenceBenchmark {
+
+    private static final int PACK_SIZE = 1000;
+    private static final String CLIENT_ID_PREFIX = "benchmark-device-";
+
+    @Param({"false", "true"})
+    private boolean copyEnabled;
+    @Param({"1", "100"})
+    private int clientsCount;
+    @Param({"64", "1024"})
+    private int payloadSize;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private SqlLowLevelDeviceMsgRepository repository;
+    private byte[] payload;
+    private long serialNumber;
+    private List<DevicePublishMsgEntity> pack;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/thingsboard_mqtt_broker"),
+                System.getProperty("benchmark.jdbc.username", "postgres"),
+                System.getProperty("benchmark.jdbc.password", "postgres"),
+                true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(Resources.toString(Resources.getResource("sql/schema-entities.sql"), StandardCharsets.UTF_8));
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        DeviceMsgCopyConfiguration copyConfiguration = new DeviceMsgCopyConfiguration();
+        copyConfiguration.setEnabled(copyEnabled);
+        copyConfiguration.setMinPackSize(1);
+        repository = new SqlLowLevelDeviceMsgRepository(jdbcTemplate, copyConfiguration);
+        payload = new byte[payloadSize];
+        removeMsgs();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPack() {
+        pack = new ArrayList<>(PACK_SIZE);
+        for (int i = 0; i < PACK_SIZE; i++) {
+            DevicePublishMsg msg = new DevicePublishMsg(CLIENT_ID_PREFIX + i % clientsCount, "sensors/temperature",
+                    serialNumber++, System.currentTimeMillis(), 1, i + 1, PersistedPacketType.PUBLISH, payload,
+                    MqttProperties.NO_PROPERTIES, false);
+            pack.add(new DevicePublishMsgEntity(msg));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        removeMsgs();
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACK_SIZE)
+    public void insert() {
+        transactionTemplate.executeWithoutResult(status -> repository.insert(pack));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACK_SIZE)
+    public void insertOrUpdate() {
+        transactionTemplate.executeWithoutResult(status -> repository.insertOrUpdate(pack));
+    }
+
+    private void removeMsgs() {
+        jdbcTemplate.update("DELETE FROM device_publish_msg WHERE client_id LIKE ?", CLIENT_ID_PREFIX + "%");
+    }
+}
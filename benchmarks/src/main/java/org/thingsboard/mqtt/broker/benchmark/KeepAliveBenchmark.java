@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.actors.client.messages.ConnectionAcceptedMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.SessionInitMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.SubscribeCommandMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.UnsubscribeCommandMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttConnectMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.QueueableMqttMsg;
+import org.thingsboard.mqtt.broker.exception.MqttException;
+import org.thingsboard.mqtt.broker.service.mqtt.keepalive.KeepAliveServiceImpl;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of one keep-alive monitoring tick for a fixed number of active clients and a growing number of idle ones,
+    only the sessions with a due deadline are visited, so the tick cost should not depend on the idle sessions
+ */
+@Fork(1)
+public class KeepAliveBenchmark {
+
+    private static final int ACTIVE_SESSIONS_COUNT = 1000;
+    private static final long TICK_MS = 10;
+
+    @State(Scope.Benchmark)
+    public static class Sessions {
+
+        @Param({"10000", "100000", "500000"})
+        private int idleSessionsCount;
+
+        private KeepAliveServiceImpl keepAliveService;
+        private UUID[] activeSessionIds;
+
+        @Setup(Level.Trial)
+        public void setup() throws MqttException {
+            keepAliveService = new KeepAliveServiceImpl(new NoOpClientMqttActorManager());
+            for (int i = 0; i < idleSessionsCount; i++) {
+                keepAliveService.registerSession("idle-" + i, UUID.randomUUID(), 600);
+            }
+            activeSessionIds = new UUID[ACTIVE_SESSIONS_COUNT];
+            for (int i = 0; i < ACTIVE_SESSIONS_COUNT; i++) {
+                activeSessionIds[i] = UUID.randomUUID();
+                keepAliveService.registerSession("active-" + i, activeSessionIds[i], 1);
+            }
+            keepAliveService.processKeepAlive();
+        }
+
+        void acknowledgeActiveSessions() throws MqttException {
+            for (UUID sessionId : activeSessionIds) {
+                keepAliveService.acknowledgeControlPacket(sessionId);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Tick {
+
+        @Setup(Level.Invocation)
+        public void waitForNextTick(Sessions sessions) throws Exception {
+            Thread.sleep(TICK_MS);
+            sessions.acknowledgeActiveSessions();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Acknowledge {
+        private int index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 100)
+    @Measurement(iterations = 300)
+    public void processKeepAlive(Sessions sessions, Tick tick) {
+        sessions.keepAliveService.processKeepAlive();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void acknowledgeControlPacket(Sessions sessions, Acknowledge acknowledge) throws MqttException {
+        UUID[] sessionIds = sessions.activeSessionIds;
+        sessions.keepAliveService.acknowledgeControlPacket(sessionIds[acknowledge.index++ % sessionIds.length]);
+    }
+
+    private static class NoOpClientMqttActorManager implements ClientMqttActorManager {
+
+        @Override
+        public void initSession(String clientId, boolean isClientIdGenerated, SessionInitMsg sessionInitMsg) {
+        }
+
+        @Override
+        public void disconnect(String clientId, MqttDisconnectMsg disconnectMsg) {
+        }
+
+        @Override
+        public void connect(String clientId, MqttConnectMsg connectMsg) {
+        }
+
+        @Override
+        public void processMqttMsg(String clientId, QueueableMqttMsg mqttMsg) {
+        }
+
+        @Override
+        public void notifyConnectionAccepted(String clientId, ConnectionAcceptedMsg connectionAcceptedMsg) {
+        }
+
+        @Override
+        public void subscribe(String clientId, SubscribeCommandMsg subscribeCommandMsg) {
+        }
+
+        @Override
+        public void unsubscribe(String clientId, UnsubscribeCommandMsg unsubscribeCommandMsg) {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.UserPropertyProto;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Preparing one msg for the subscribers connected to this node, one invocation prepares the msg for one subscriber.
+    A new msg comes every 'subscribersCount' invocations, so the time per invocation includes the share of the per-msg work.
+    Half of the subscribers have a lower QoS than the msg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalDeliveryBenchmark {
+
+    private static final String TOPIC = "sensors/building-1/floor-2/room-3/temperature";
+
+    @Param({"1", "100", "10000"})
+    private int subscribersCount;
+    @Param({"0", "3"})
+    private int userPropertiesCount;
+
+    private PublishMsgProto publishMsgProto;
+    private SharedPublishMsg sharedPublishMsg;
+    private int subscriberIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PublishMsgProto.Builder builder = PublishMsgProto.newBuilder()
+                .setTopicName(TOPIC)
+                .setQos(1)
+                .setRetain(false)
+                .setPayload(ByteString.copyFrom(new byte[256]));
+        for (int i = 0; i < userPropertiesCount; i++) {
+            builder.addUserProperties(UserPropertyProto.newBuilder().setKey("key" + i).setValue("value" + i).build());
+        }
+        publishMsgProto = builder.build();
+    }
+
+    /*
+        Proto is rebuilt with the subscriber's QoS and converted to the PublishMsg for every subscriber
+     */
+    @Benchmark
+    public PublishMsg protoPerSubscriber() {
+        int qos = nextSubscriberQos();
+        PublishMsgProto msg = qos == publishMsgProto.getQos() ? publishMsgProto : publishMsgProto.toBuilder()
+                .setQos(qos)
+                .setRetain(false)
+                .build();
+        return PublishMsg.builder()
+                .packetId(subscriberIndex + 1)
+                .topicName(msg.getTopicName())
+                .byteBuf(ProtoConverter.toPayloadByteBuf(msg))
+                .qosLevel(msg.getQos())
+                .isRetained(msg.getRetain())
+                .isDup(false)
+                .properties(ProtoConverter.createMqttProperties(msg.getUserPropertiesList()))
+                .build();
+    }
+
+    @Benchmark
+    public PublishMsg sharedMsg() {
+        if (subscriberIndex == 0) {
+            sharedPublishMsg = new SharedPublishMsg(publishMsgProto);
+        }
+        int qos = nextSubscriberQos();
+        return sharedPublishMsg.toPublishMsg(subscriberIndex + 1, qos, false);
+    }
+
+    private int nextSubscriberQos() {
+        subscriberIndex = subscriberIndex + 1 == subscribersCount ? 0 : subscriberIndex + 1;
+        return subscriberIndex % 2;
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.actors.client.service.subscription.SubscriptionServiceImpl;
+import org.thingsboard.mqtt.broker.common.data.ClientSession;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.ClientPublishTargetProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.DevicePublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCacheFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.SharedPublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.processing.MsgDispatcherServiceImpl;
+import org.thingsboard.mqtt.broker.service.processing.PublishMsgCallback;
+import org.thingsboard.mqtt.broker.service.processing.downlink.DownLinkProxy;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionLookupCacheImpl;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionTrie;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.shared.RoundRobinStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionGroup;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategyFactory;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessorImpl;
+import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Measures the lookup and the fan-out of one PUBLISH to non-persistent subscribers,
+    the downlink only counts the messages, so the cost of the transport is not included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MsgDispatcherBenchmark {
+
+    private static final int TOPICS_COUNT = 1024;
+    private static final String SERVICE_ID = "benchmark-node";
+    private static final String PUBLISHER_CLIENT_ID = "benchmark-publisher";
+
+    @Param({"CONCURRENT_MAP", "COMPILED"})
+    private String trieType;
+    @Param({"1000", "100000"})
+    private int subscriptionsCount;
+    @Param({"3", "7"})
+    private int topicDepth;
+    @Param({"0.0", "0.1", "0.5"})
+    private double wildcardRatio;
+    @Param({"false", "true"})
+    private boolean lookupCacheEnabled;
+    @Param({"256"})
+    private int payloadSize;
+
+    private MsgDispatcherServiceImpl msgDispatcherService;
+    private CountingDownLinkProxy downLinkProxy;
+    private PublishMsgProto[] publishMsgs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StatsManagerStub statsManager = new StatsManagerStub();
+        SubscriptionTrie<ClientSubscription> subscriptionTrie = SubscriptionTrieBenchmark.newSubscriptionTrie(trieType);
+        SubscriptionLookupCacheImpl subscriptionLookupCache = new SubscriptionLookupCacheImpl(statsManager);
+        subscriptionLookupCache.setEnabled(lookupCacheEnabled);
+        subscriptionLookupCache.setMaxSize(TOPICS_COUNT);
+        subscriptionLookupCache.init();
+        SubscriptionServiceImpl subscriptionService = new SubscriptionServiceImpl(subscriptionTrie, subscriptionLookupCache, statsManager);
+
+        Random random = new Random(BenchmarkTopics.SEED);
+        Map<String, ClientSessionInfo> clientSessionInfos = new HashMap<>();
+        String[] topicFilters = BenchmarkTopics.topicFilters(random, subscriptionsCount, topicDepth, wildcardRatio);
+        for (int i = 0; i < topicFilters.length; i++) {
+            String clientId = "client-" + i;
+            subscriptionService.subscribe(clientId, List.of(new TopicSubscription(topicFilters[i], 1)));
+            clientSessionInfos.put(clientId, newClientSessionInfo(clientId));
+        }
+
+        downLinkProxy = new CountingDownLinkProxy();
+        // persistence and the queue publisher are not reached with non-persistent subscribers, there are no shared subscriptions
+        // to apply the strategy to, the service info is used by the multicast to the other nodes only, which is disabled
+        msgDispatcherService = new MsgDispatcherServiceImpl(
+                subscriptionService,
+                statsManager,
+                null,
+                new StaticClientSessionCache(clientSessionInfos),
+                downLinkProxy,
+                (clientId, eventLocation, eventDescription) -> {
+                },
+                null,
+                new RoundRobinStrategyFactory(),
+                new EmptySharedSubscriptionCacheService(),
+                key -> {
+                },
+                null,
+                new PublishMsgEncodingCacheFactory()
+        );
+        msgDispatcherService.init();
+
+        ByteString payload = ByteString.copyFrom(new byte[payloadSize]);
+        String[] topics = BenchmarkTopics.topics(random, TOPICS_COUNT, topicDepth);
+        publishMsgs = new PublishMsgProto[TOPICS_COUNT];
+        for (int i = 0; i < TOPICS_COUNT; i++) {
+            publishMsgs[i] = PublishMsgProto.newBuilder()
+                    .setTopicName(topics[i])
+                    .setQos(1)
+                    .setPayload(payload)
+                    .setClientId(PUBLISHER_CLIENT_ID)
+                    .build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (TOPICS_COUNT - 1);
+        }
+    }
+
+    @Benchmark
+    public long processPublishMsg(Cursor cursor) {
+        msgDispatcherService.processPublishMsg(publishMsgs[cursor.next()], NoOpPublishMsgCallback.INSTANCE);
+        return downLinkProxy.delivered;
+    }
+
+    private static ClientSessionInfo newClientSessionInfo(String clientId) {
+        return ClientSessionInfo.builder()
+                .connected(true)
+                .serviceId(SERVICE_ID)
+                .sessionId(UUID.randomUUID())
+                .cleanStart(true)
+                .sessionExpiryInterval(0)
+                .clientId(clientId)
+                .type(ClientType.DEVICE)
+                .build();
+    }
+
+    private static class CountingDownLinkProxy implements DownLinkProxy {
+        private long delivered;
+
+        @Override
+        public void sendBasicMsg(String targetServiceId, String clientId, PublishMsgProto msg) {
+            delivered++;
+        }
+
+        @Override
+        public void sendBasicMsg(String targetServiceId, String clientId, SharedPublishMsg msg, int qos, boolean retain,
+                                 PublishMsgEncodingCache encodingCache) {
+            delivered++;
+        }
+
+        @Override
+        public void sendBasicMsg(String targetServiceId, PublishMsgProto msg, Collection<ClientPublishTargetProto> targets) {
+            delivered += targets.size();
+        }
+
+        @Override
+        public void sendPersistentMsg(String targetServiceId, String clientId, DevicePublishMsgProto msg) {
+            delivered++;
+        }
+    }
+
+    private static class StaticClientSessionCache implements ClientSessionCache {
+        private final Map<String, ClientSessionInfo> clientSessionInfos;
+
+        StaticClientSessionCache(Map<String, ClientSessionInfo> clientSessionInfos) {
+            this.clientSessionInfos = clientSessionInfos;
+        }
+
+        @Override
+        public Map<String, ClientSessionInfo> getPersistentClientSessionInfos() {
+            return Map.of();
+        }
+
+        @Override
+        public ClientSession getClientSession(String clientId) {
+            return null;
+        }
+
+        @Override
+        public ClientSessionInfo getClientSessionInfo(String clientId) {
+            return clientSessionInfos.get(clientId);
+        }
+
+        @Override
+        public Map<String, ClientSessionInfo> getAllClientSessions() {
+            return clientSessionInfos;
+        }
+    }
+
+    private static class EmptySharedSubscriptionCacheService implements SharedSubscriptionCacheService {
+        @Override
+        public void put(String clientId, Collection<TopicSubscription> topicSubscriptions) {
+        }
+
+        @Override
+        public void remove(String clientId, TopicSubscription topicSubscription) {
+        }
+
+        @Override
+        public SharedSubscriptionGroup get(TopicSharedSubscription topicSharedSubscription) {
+            return null;
+        }
+
+        @Override
+        public void processSessionUpdate(String clientId) {
+        }
+    }
+
+    // the round-robin doesn't read the load of the sessions, so no session contexts are needed
+    private static class RoundRobinStrategyFactory extends SharedSubscriptionProcessingStrategyFactory {
+        RoundRobinStrategyFactory() {
+            super(new SharedSubscriptionProcessorImpl(null));
+        }
+
+        @Override
+        public SharedSubscriptionProcessingStrategy newInstance() {
+            return new RoundRobinStrategy(new SharedSubscriptionProcessorImpl(null));
+        }
+    }
+
+    private enum NoOpPublishMsgCallback implements PublishMsgCallback {
+        INSTANCE;
+
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttPublishMsg;
+import org.thingsboard.mqtt.broker.adaptor.NettyMqttConverter;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NettyMqttConverterBenchmark {
+
+    private static final String TOPIC = "sensors/building-1/floor-2/room-3/temperature";
+
+    @Param({"64", "1024", "65536"})
+    private int payloadSize;
+
+    private UUID sessionId;
+    private MqttPublishMessage nettyPublishMsg;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionId = UUID.randomUUID();
+        ByteBuf payload = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize);
+        payload.writeZero(payloadSize);
+        nettyPublishMsg = new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttPublishVariableHeader(TOPIC, 1, MqttProperties.NO_PROPERTIES),
+                payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nettyPublishMsg.release();
+    }
+
+    /*
+        The converted message keeps a retained reference to the payload, it is released the same way the broker does after processing
+     */
+    @Benchmark
+    public MqttPublishMsg createMqttPublishMsg() {
+        MqttPublishMsg mqttPublishMsg = NettyMqttConverter.createMqttPublishMsg(sessionId, nettyPublishMsg);
+        mqttPublishMsg.getPublishMsg().getByteBuf().release();
+        return mqttPublishMsg;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.common.data.ClientInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.common.data.ConnectionInfo;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.DevicePublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtoConverterBenchmark {
+
+    private static final String TOPIC = "sensors/building-1/floor-2/room-3/temperature";
+
+    @Param({"64", "1024", "65536"})
+    private int payloadSize;
+    @Param({"0", "5"})
+    private int userPropertiesCount;
+
+    private SessionInfo sessionInfo;
+    private byte[] payload;
+    private MqttProperties properties;
+    private PublishMsgProto publishMsgProto;
+    private DevicePublishMsg devicePublishMsg;
+    private DevicePublishMsgProto devicePublishMsgProto;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionInfo = SessionInfo.builder()
+                .serviceId("benchmark-node")
+                .sessionId(UUID.randomUUID())
+                .cleanStart(true)
+                .sessionExpiryInterval(0)
+                .clientInfo(new ClientInfo("benchmark-publisher", ClientType.DEVICE, new byte[]{127, 0, 0, 1}))
+                .connectionInfo(new ConnectionInfo(System.currentTimeMillis(), 0, 60))
+                .build();
+        payload = new byte[payloadSize];
+        properties = new MqttProperties();
+        if (userPropertiesCount > 0) {
+            MqttProperties.UserProperties userProperties = new MqttProperties.UserProperties();
+            for (int i = 0; i < userPropertiesCount; i++) {
+                userProperties.add("key-" + i, "value-" + i);
+            }
+            properties.add(userProperties);
+        }
+        publishMsgProto = ProtoConverter.convertToPublishProtoMessage(sessionInfo, newPublishMsg());
+        // the serial number, the time and the packet id are assigned by the device msg processor before the conversion
+        devicePublishMsg = ProtoConverter.toDevicePublishMsg("benchmark-subscriber", publishMsgProto).toBuilder()
+                .serialNumber(1L)
+                .time(System.currentTimeMillis())
+                .packetId(1)
+                .packetType(PersistedPacketType.PUBLISH)
+                .build();
+        devicePublishMsgProto = ProtoConverter.toDevicePublishMsgProto(devicePublishMsg);
+    }
+
+    /*
+        The conversion releases the buffer of the message, so every invocation needs a new one
+     */
+    @Benchmark
+    public PublishMsgProto convertToPublishProtoMessage() {
+        return ProtoConverter.convertToPublishProtoMessage(sessionInfo, newPublishMsg());
+    }
+
+    @Benchmark
+    public PublishMsg convertToPublishMsg() {
+        return ProtoConverter.convertToPublishMsg(publishMsgProto, 1, 1, false);
+    }
+
+    @Benchmark
+    public DevicePublishMsgProto toDevicePublishMsgProto() {
+        return ProtoConverter.toDevicePublishMsgProto(devicePublishMsg);
+    }
+
+    @Benchmark
+    public DevicePublishMsg toDevicePublishMsg() {
+        return ProtoConverter.toDevicePublishMsg(devicePublishMsgProto);
+    }
+
+    private PublishMsg newPublishMsg() {
+        return new PublishMsg(1, TOPIC, payload, 1, false, false).toBuilder()
+                .properties(properties)
+                .build();
+    }
+}
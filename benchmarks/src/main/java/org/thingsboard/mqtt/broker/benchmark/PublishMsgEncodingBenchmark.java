@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgEncodingCache;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Delivery of one msg to many subscribers of the node: the channel is a sink that only runs the MQTT encoder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublishMsgEncodingBenchmark {
+
+    private static final String TOPIC = "sensors/building-1/floor-2/room-3/temperature";
+
+    @Param({"1", "10", "1000"})
+    private int subscribersCount;
+    @Param({"64", "1024", "65536"})
+    private int payloadSize;
+    @Param({"0", "1"})
+    private int qos;
+
+    private PublishMsgProto publishMsgProto;
+    private EmbeddedChannel channel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        publishMsgProto = PublishMsgProto.newBuilder()
+                .setTopicName(TOPIC)
+                .setQos(qos)
+                .setRetain(false)
+                .setPayload(ByteString.copyFrom(new byte[payloadSize]))
+                .build();
+        channel = new EmbeddedChannel(MqttEncoder.INSTANCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public long encodePerSubscriber() {
+        long bytes = 0;
+        for (int i = 0; i < subscribersCount; i++) {
+            MqttPublishMessage mqttPubMsg = new MqttPublishMessage(
+                    new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(qos), false, 0),
+                    new MqttPublishVariableHeader(TOPIC, i + 1, ProtoConverter.createMqttProperties(publishMsgProto.getUserPropertiesList())),
+                    ProtoConverter.toPayloadByteBuf(publishMsgProto));
+            channel.writeOutbound(mqttPubMsg);
+            bytes += readAndRelease();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public long encodeShared() {
+        long bytes = 0;
+        PublishMsgEncodingCache encodingCache = new PublishMsgEncodingCache();
+        for (int i = 0; i < subscribersCount; i++) {
+            channel.writeOutbound(encodingCache.getEncodedPublishMsg(MqttVersion.MQTT_3_1_1, publishMsgProto, i + 1));
+            bytes += readAndRelease();
+        }
+        encodingCache.release();
+        return bytes;
+    }
+
+    private int readAndRelease() {
+        ByteBuf encoded = channel.readOutbound();
+        int bytes = encoded.readableBytes();
+        encoded.release();
+        return bytes;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.ConcurrentMapRetainMsgTrie;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainMsgTrie;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetainMsgTrieBenchmark {
+
+    private static final int TOPICS_COUNT = 1024;
+
+    @Param({"1000", "100000"})
+    private int retainedMsgCount;
+    @Param({"3", "7"})
+    private int topicDepth;
+    @Param({"0.0", "0.1", "0.5"})
+    private double wildcardRatio;
+
+    private RetainMsgTrie<String> retainMsgTrie;
+    private String[] topicFilters;
+    private String[] writerTopics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        retainMsgTrie = new ConcurrentMapRetainMsgTrie<>(new StatsManagerStub());
+        Random random = new Random(BenchmarkTopics.SEED);
+        for (String topic : BenchmarkTopics.topics(random, retainedMsgCount, topicDepth)) {
+            retainMsgTrie.put(topic, topic);
+        }
+        topicFilters = BenchmarkTopics.topicFilters(random, TOPICS_COUNT, topicDepth, wildcardRatio);
+        // a separate level keeps the writer from replacing the retained messages that were put during setup
+        writerTopics = BenchmarkTopics.topics(random, TOPICS_COUNT, topicDepth);
+        for (int i = 0; i < writerTopics.length; i++) {
+            writerTopics[i] = "writer/" + writerTopics[i];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (TOPICS_COUNT - 1);
+        }
+    }
+
+    @Benchmark
+    public void get(Cursor cursor, Blackhole blackhole) {
+        blackhole.consume(retainMsgTrie.get(topicFilters[cursor.next()]));
+    }
+
+    @Benchmark
+    public void putAndDelete(Cursor cursor) {
+        String topic = writerTopics[cursor.next()];
+        retainMsgTrie.put(topic, topic);
+        retainMsgTrie.delete(topic);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
+import org.thingsboard.mqtt.broker.service.subscription.shared.AckLatencyWeightedStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.ClientIdConsistentHashStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.LeastInFlightStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.RoundRobinStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionGroup;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategy;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingType;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessor;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessorImpl;
+import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Msgs of a shared subscription group where the first member acknowledges at most one msg per 'slowAckIntervalMicros',
+    while the other members acknowledge every msg right after receiving it.
+    One invocation chooses the member for one msg, 'delivered' counts the acknowledged msgs and 'sentToSlowMember'
+    the msgs given to the slow member, the msgs it can't acknowledge in time stay in flight
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedSubscriptionStrategyBenchmark {
+
+    private static final int PUBLISHERS_COUNT = 16;
+    private static final int MAX_PACKET_ID = 0xfffe;
+
+    @Param({"ROUND_ROBIN", "LEAST_IN_FLIGHT", "ACK_LATENCY_WEIGHTED", "CONSISTENT_HASH_BY_CLIENT_ID"})
+    private SharedSubscriptionProcessingType strategyType;
+    @Param({"4"})
+    private int membersCount;
+    @Param({"200"})
+    private int slowAckIntervalMicros;
+
+    private SharedSubscriptionProcessingStrategy strategy;
+    private SharedSubscriptionGroup group;
+    private Map<String, Member> members;
+    private Member slowMember;
+    private PublishMsgProto[] publishMsgs;
+    private int msgIndex;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long delivered;
+        public long sentToSlowMember;
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        members = new HashMap<>();
+        Subscription[] subscriptions = new Subscription[membersCount];
+        for (int i = 0; i < membersCount; i++) {
+            String clientId = "member-" + i;
+            subscriptions[i] = new Subscription("sensors/+", 1,
+                    ClientSessionInfo.builder().clientId(clientId).type(ClientType.DEVICE).connected(true).build(),
+                    "group", SubscriptionOptions.newInstance());
+            members.put(clientId, new Member(new ClientSessionCtx(UUID.randomUUID(), null, 0)));
+        }
+        slowMember = members.get("member-0");
+        group = SharedSubscriptionGroup.newInstance(new TopicSharedSubscription("sensors/+", "group"), Set.of(), subscriptions);
+        strategy = newStrategy(new SharedSubscriptionProcessorImpl(new StaticClientSessionCtxService(members)));
+
+        publishMsgs = new PublishMsgProto[PUBLISHERS_COUNT];
+        for (int i = 0; i < PUBLISHERS_COUNT; i++) {
+            publishMsgs[i] = PublishMsgProto.newBuilder()
+                    .setTopicName("sensors/" + i)
+                    .setClientId("publisher-" + i)
+                    .setQos(1)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public Subscription chooseMember(Counters counters) {
+        Subscription subscription = strategy.analyze(group, publishMsgs[msgIndex++ & (PUBLISHERS_COUNT - 1)]);
+        Member member = members.get(subscription.getClientSessionInfo().getClientId());
+        int packetId = member.send();
+        if (member == slowMember) {
+            counters.sentToSlowMember++;
+        } else {
+            member.ack(packetId);
+            counters.delivered++;
+        }
+        counters.delivered += slowMember.ackDue(System.nanoTime(), TimeUnit.MICROSECONDS.toNanos(slowAckIntervalMicros));
+        return subscription;
+    }
+
+    private SharedSubscriptionProcessingStrategy newStrategy(SharedSubscriptionProcessor processor) {
+        switch (strategyType) {
+            case ROUND_ROBIN:
+                return new RoundRobinStrategy(processor);
+            case LEAST_IN_FLIGHT:
+                return new LeastInFlightStrategy(processor);
+            case ACK_LATENCY_WEIGHTED:
+                return new AckLatencyWeightedStrategy(processor);
+            case CONSISTENT_HASH_BY_CLIENT_ID:
+                return new ClientIdConsistentHashStrategy(processor);
+            default:
+                throw new IllegalArgumentException("Unsupported strategy " + strategyType);
+        }
+    }
+
+    /*
+        The packet ids are sent and acknowledged in order, so the member keeps only the next ones
+     */
+    private static class Member {
+        private final ClientSessionCtx ctx;
+        private int nextPacketId = 1;
+        private int nextAckPacketId = 1;
+        private int inFlight;
+        private long lastAckTime;
+
+        Member(ClientSessionCtx ctx) {
+            this.ctx = ctx;
+        }
+
+        int send() {
+            int packetId = nextPacketId;
+            nextPacketId = next(packetId);
+            inFlight++;
+            ctx.getPublishDeliveryLoadCtx().onPublishSent(packetId);
+            return packetId;
+        }
+
+        void ack(int packetId) {
+            nextAckPacketId = next(packetId);
+            inFlight--;
+            ctx.getPublishDeliveryLoadCtx().onPublishAcknowledged(packetId);
+        }
+
+        int ackDue(long now, long ackIntervalNanos) {
+            if (inFlight == 0 || now - lastAckTime < ackIntervalNanos) {
+                return 0;
+            }
+            lastAckTime = now;
+            ack(nextAckPacketId);
+            return 1;
+        }
+
+        private static int next(int packetId) {
+            return packetId == MAX_PACKET_ID ? 1 : packetId + 1;
+        }
+    }
+
+    private static class StaticClientSessionCtxService implements ClientSessionCtxService {
+        private final Map<String, Member> members;
+
+        StaticClientSessionCtxService(Map<String, Member> members) {
+            this.members = members;
+        }
+
+        @Override
+        public void registerSession(ClientSessionCtx clientSessionCtx) {
+        }
+
+        @Override
+        public void unregisterSession(String clientId) {
+        }
+
+        @Override
+        public ClientSessionCtx getClientSessionCtx(String clientId) {
+            Member member = members.get(clientId);
+            return member == null ? null : member.ctx;
+        }
+
+        @Override
+        public Collection<ClientSessionCtx> getAllClientSessionCtx() {
+            return null;
+        }
+    }
+}
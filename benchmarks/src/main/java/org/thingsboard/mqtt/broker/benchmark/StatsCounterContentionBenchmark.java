@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.common.stats.DefaultCounter;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    All the threads count msgs on the same stats, as the processing threads do for every msg.
+    The 'atomic' benchmarks keep the former shape of the counters: one AtomicLong per historical key in a map
+    and an AtomicInteger next to the micrometer counter, the others use the striped counters of the stats.
+    JMH doesn't take the number of threads as a parameter, so every nested class runs the same benchmarks with its own number
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class StatsCounterContentionBenchmark {
+
+    private static final TbMessageStatsType[] STATS_TYPES = TbMessageStatsType.values();
+
+    private ConcurrentMap<String, AtomicLong> atomicHistoricalStats;
+    private LongAdder[] stripedHistoricalStats;
+    private AtomicInteger atomicCounter;
+    private Counter micrometerCounter;
+    private DefaultCounter defaultCounter;
+
+    @Setup
+    public void setup() {
+        atomicHistoricalStats = new ConcurrentHashMap<>();
+        stripedHistoricalStats = new LongAdder[STATS_TYPES.length];
+        for (TbMessageStatsType type : STATS_TYPES) {
+            atomicHistoricalStats.put(type.getKey(), new AtomicLong());
+            stripedHistoricalStats[type.ordinal()] = new LongAdder();
+        }
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        atomicCounter = new AtomicInteger();
+        micrometerCounter = meterRegistry.counter("benchmark.atomic");
+        defaultCounter = new DefaultCounter(meterRegistry.counter("benchmark.striped"));
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        TbMessageStatsType next() {
+            int index = next;
+            next = index == STATS_TYPES.length - 1 ? 0 : index + 1;
+            return STATS_TYPES[index];
+        }
+    }
+
+    @Benchmark
+    public long historicalAtomic(Cursor cursor) {
+        return atomicHistoricalStats.get(cursor.next().getKey()).incrementAndGet();
+    }
+
+    @Benchmark
+    public void historicalStriped(Cursor cursor) {
+        stripedHistoricalStats[cursor.next().ordinal()].increment();
+    }
+
+    @Benchmark
+    public int counterAtomic() {
+        micrometerCounter.increment();
+        return atomicCounter.incrementAndGet();
+    }
+
+    @Benchmark
+    public void counterStriped() {
+        defaultCounter.increment();
+    }
+
+    @Threads(1)
+    public static class Threads1 extends StatsCounterContentionBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends StatsCounterContentionBenchmark {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends StatsCounterContentionBenchmark {
+    }
+
+    @Threads(64)
+    public static class Threads64 extends StatsCounterContentionBenchmark {
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.CompiledSubscriptionTrie;
+import org.thingsboard.mqtt.broker.service.subscription.ConcurrentMapSubscriptionTrie;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionTrie;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The writer in the 'readWrite' group puts and deletes its own subscription, so the trie keeps its size during the run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionTrieBenchmark {
+
+    private static final int TOPICS_COUNT = 1024;
+    private static final String WRITER_CLIENT_ID = "benchmark-writer";
+
+    @Param({"CONCURRENT_MAP", "COMPILED"})
+    private String trieType;
+    @Param({"1000", "100000"})
+    private int subscriptionsCount;
+    @Param({"3", "7"})
+    private int topicDepth;
+    @Param({"0.0", "0.1", "0.5"})
+    private double wildcardRatio;
+
+    private SubscriptionTrie<ClientSubscription> subscriptionTrie;
+    private String[] topics;
+    private String[] writerTopicFilters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        subscriptionTrie = newSubscriptionTrie(trieType);
+        Random random = new Random(BenchmarkTopics.SEED);
+        String[] topicFilters = BenchmarkTopics.topicFilters(random, subscriptionsCount, topicDepth, wildcardRatio);
+        for (int i = 0; i < topicFilters.length; i++) {
+            subscriptionTrie.put(topicFilters[i], newClientSubscription("client-" + i));
+        }
+        topics = BenchmarkTopics.topics(random, TOPICS_COUNT, topicDepth);
+        writerTopicFilters = BenchmarkTopics.topicFilters(random, TOPICS_COUNT, topicDepth, wildcardRatio);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (TOPICS_COUNT - 1);
+        }
+    }
+
+    @Benchmark
+    public void get(Cursor cursor, Blackhole blackhole) {
+        blackhole.consume(subscriptionTrie.get(topics[cursor.next()]));
+    }
+
+    @Benchmark
+    public boolean putAndDelete(Cursor cursor) {
+        return putAndDelete(writerTopicFilters[cursor.next()]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void readWriteGet(Cursor cursor, Blackhole blackhole) {
+        blackhole.consume(subscriptionTrie.get(topics[cursor.next()]));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean readWritePutAndDelete(Cursor cursor) {
+        return putAndDelete(writerTopicFilters[cursor.next()]);
+    }
+
+    private boolean putAndDelete(String topicFilter) {
+        subscriptionTrie.put(topicFilter, newClientSubscription(WRITER_CLIENT_ID));
+        return subscriptionTrie.delete(topicFilter, val -> WRITER_CLIENT_ID.equals(val.getClientId()));
+    }
+
+    static SubscriptionTrie<ClientSubscription> newSubscriptionTrie(String trieType) {
+        StatsManagerStub statsManager = new StatsManagerStub();
+        switch (trieType) {
+            case "CONCURRENT_MAP":
+                return new ConcurrentMapSubscriptionTrie<>(statsManager);
+            case "COMPILED":
+                return new CompiledSubscriptionTrie<>(statsManager);
+            default:
+                throw new IllegalArgumentException("Unsupported subscription trie type " + trieType);
+        }
+    }
+
+    static ClientSubscription newClientSubscription(String clientId) {
+        return new ClientSubscription(clientId, 1, null, SubscriptionOptions.newInstance());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.CompiledSubscriptionTrie;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionTrie;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Subscribe/unsubscribe throughput, the counterpart of the lookups in SubscriptionTrieBenchmark.
+    Every topic filter has subscribersPerTopicFilter subscribers, so a write to the COMPILED trie touches a large node.
+    COMPILED_BATCHED publishes the snapshots with the defaults from the yml, COMPILED publishes every write
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionTrieWriteBenchmark {
+
+    private static final int TOPIC_FILTERS_COUNT = 64;
+    private static final int TOPIC_DEPTH = 3;
+
+    @Param({"CONCURRENT_MAP", "COMPILED", "COMPILED_BATCHED"})
+    private String trieType;
+    @Param({"1", "10000"})
+    private int subscribersPerTopicFilter;
+
+    private final AtomicInteger writersCount = new AtomicInteger();
+
+    private SubscriptionTrie<ClientSubscription> subscriptionTrie;
+    private String[] topicFilters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("COMPILED_BATCHED".equals(trieType)) {
+            CompiledSubscriptionTrie<ClientSubscription> compiledSubscriptionTrie = new CompiledSubscriptionTrie<>(new StatsManagerStub());
+            compiledSubscriptionTrie.setMaxPendingOperations(1000);
+            compiledSubscriptionTrie.setPublishIntervalMs(10);
+            compiledSubscriptionTrie.init();
+            subscriptionTrie = compiledSubscriptionTrie;
+        } else {
+            subscriptionTrie = SubscriptionTrieBenchmark.newSubscriptionTrie(trieType);
+        }
+        topicFilters = BenchmarkTopics.topicFilters(new Random(BenchmarkTopics.SEED), TOPIC_FILTERS_COUNT, TOPIC_DEPTH, 0.1);
+        for (String topicFilter : topicFilters) {
+            for (int i = 0; i < subscribersPerTopicFilter; i++) {
+                subscriptionTrie.put(topicFilter, SubscriptionTrieBenchmark.newClientSubscription("client-" + i));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (subscriptionTrie instanceof CompiledSubscriptionTrie) {
+            ((CompiledSubscriptionTrie<ClientSubscription>) subscriptionTrie).destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private String clientId;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(SubscriptionTrieWriteBenchmark benchmark) {
+            clientId = "benchmark-writer-" + benchmark.writersCount.getAndIncrement();
+        }
+
+        int next() {
+            return next++ & (TOPIC_FILTERS_COUNT - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean subscribeAndUnsubscribe(Writer writer) {
+        return subscribeAndUnsubscribe(writer, topicFilters[writer.next()]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean subscribeAndUnsubscribeConcurrently(Writer writer) {
+        return subscribeAndUnsubscribe(writer, topicFilters[writer.next()]);
+    }
+
+    private boolean subscribeAndUnsubscribe(Writer writer, String topicFilter) {
+        String clientId = writer.clientId;
+        subscriptionTrie.put(topicFilter, SubscriptionTrieBenchmark.newClientSubscription(clientId));
+        return subscriptionTrie.delete(topicFilter, val -> clientId.equals(val.getClientId()));
+    }
+}
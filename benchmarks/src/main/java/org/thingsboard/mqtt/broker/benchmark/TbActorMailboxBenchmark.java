@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.actors.AbstractTbActor;
+import org.thingsboard.mqtt.broker.actors.DefaultTbActorSystem;
+import org.thingsboard.mqtt.broker.actors.MailboxOverflowPolicy;
+import org.thingsboard.mqtt.broker.actors.TbActor;
+import org.thingsboard.mqtt.broker.actors.TbActorCreator;
+import org.thingsboard.mqtt.broker.actors.TbActorId;
+import org.thingsboard.mqtt.broker.actors.TbActorRef;
+import org.thingsboard.mqtt.broker.actors.TbActorSystemSettings;
+import org.thingsboard.mqtt.broker.actors.TbStringActorId;
+import org.thingsboard.mqtt.broker.actors.msg.MsgType;
+import org.thingsboard.mqtt.broker.actors.msg.TbActorMsg;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Every invocation sends a batch of messages spread over the actors and waits until all of them are processed,
+    so the result includes the enqueue, the hand-off to the dispatcher threads and the mailbox processing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TbActorMailboxBenchmark {
+
+    private static final String DISPATCHER_ID = "benchmark-dispatcher";
+    private static final int BATCH_SIZE = 10_000;
+    private static final TbActorMsg MSG = () -> MsgType.MQTT_PUBLISH_MSG;
+
+    @Param({"1", "1000"})
+    private int actorsCount;
+    @Param({"4"})
+    private int dispatcherThreads;
+    @Param({"5", "50"})
+    private int actorThroughput;
+
+    private final AtomicLong processed = new AtomicLong();
+    private DefaultTbActorSystem actorSystem;
+    private TbActorRef[] actors;
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        actorSystem = new DefaultTbActorSystem(new TbActorSystemSettings(actorThroughput, 1, 1, 0, MailboxOverflowPolicy.DROP),
+                new StatsManagerStub());
+        actorSystem.createDispatcher(DISPATCHER_ID, ThingsBoardExecutors.newWorkStealingPool(dispatcherThreads, DISPATCHER_ID));
+        actors = new TbActorRef[actorsCount];
+        for (int i = 0; i < actorsCount; i++) {
+            actors[i] = actorSystem.createRootActor(DISPATCHER_ID, new CountingActorCreator(new TbStringActorId("actor-" + i), processed));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long tellAndProcess() {
+        expected += BATCH_SIZE;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            actors[i % actorsCount].tell(MSG);
+        }
+        while (processed.get() < expected) {
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+
+    private static class CountingActorCreator implements TbActorCreator {
+        private final TbActorId actorId;
+        private final AtomicLong processed;
+
+        CountingActorCreator(TbActorId actorId, AtomicLong processed) {
+            this.actorId = actorId;
+            this.processed = processed;
+        }
+
+        @Override
+        public TbActorId createActorId() {
+            return actorId;
+        }
+
+        @Override
+        public TbActor createActor() {
+            return new AbstractTbActor() {
+                @Override
+                public boolean process(TbActorMsg msg) {
+                    processed.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.benchmark;
+
+import com.google.protobuf.ByteString;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.UserPropertyProto;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.kafka.KafkaTbQueueMsg;
+import org.thingsboard.mqtt.broker.queue.kafka.TbKafkaDecoder;
+import org.thingsboard.mqtt.broker.queue.kafka.TbKafkaEncoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The encoder and the decoder are the ones used by the Kafka producer and the publish msg consumers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TbKafkaCodecBenchmark {
+
+    private static final String TOPIC = "sensors/building-1/floor-2/room-3/temperature";
+
+    @Param({"64", "1024", "65536"})
+    private int payloadSize;
+    @Param({"0", "5"})
+    private int userPropertiesCount;
+
+    private final TbKafkaEncoder<TbProtoQueueMsg<PublishMsgProto>> encoder = TbProtoQueueMsg::getData;
+    private final TbKafkaDecoder<TbProtoQueueMsg<PublishMsgProto>> decoder =
+            msg -> new TbProtoQueueMsg<>(msg.getKey(), PublishMsgProto.parseFrom(msg.getData()), msg.getHeaders());
+
+    private TbProtoQueueMsg<PublishMsgProto> msg;
+    private ConsumerRecord<String, byte[]> record;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PublishMsgProto.Builder builder = PublishMsgProto.newBuilder()
+                .setPacketId(1)
+                .setTopicName(TOPIC)
+                .setQos(1)
+                .setPayload(ByteString.copyFrom(new byte[payloadSize]))
+                .setClientId("benchmark-publisher");
+        for (int i = 0; i < userPropertiesCount; i++) {
+            builder.addUserProperties(UserPropertyProto.newBuilder().setKey("key-" + i).setValue("value-" + i).build());
+        }
+        msg = new TbProtoQueueMsg<>(TOPIC, builder.build());
+        record = new ConsumerRecord<>("tbmq.msg.all", 0, 0, msg.getKey(), encoder.encode(msg));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(msg);
+    }
+
+    @Benchmark
+    public TbProtoQueueMsg<PublishMsgProto> decode() throws IOException {
+        return decoder.decode(new KafkaTbQueueMsg(record));
+    }
+}
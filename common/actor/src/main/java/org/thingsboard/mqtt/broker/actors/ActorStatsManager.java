@@ -15,8 +15,14 @@
  */
 package org.thingsboard.mqtt.broker.actors;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public interface ActorStatsManager {
     void registerActorsStats(Map<?, ?> actorsMap);
+
+    void registerActorMailboxesStats(Collection<TbActorMailbox> mailboxes);
+
+    AtomicLong createMailboxOverflowsCounter();
 }
@@ -0,0 +1,28 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.actors;
+
+/*
+    Applied to the normal priority msgs told to the actor with the full mailbox, high priority msgs are never rejected
+ */
+public enum MailboxOverflowPolicy {
+    // the msg is dropped
+    DROP,
+    // the msg is dropped and the actor is notified to disconnect its client
+    DISCONNECT,
+    // the msg is enqueued and the actor is notified to pause its producer until the mailbox is drained to the half of its capacity
+    BACKPRESSURE
+}
@@ -33,6 +33,20 @@ public interface TbActor {
         return InitFailureStrategy.retryWithDelay(5000 * attempt);
     }
 
+    /**
+     * Executed in the thread that tells the msg, when the msg is dropped due to the full mailbox
+     * with {@link MailboxOverflowPolicy#DISCONNECT} policy.
+     */
+    default void onMailboxOverflow(TbActorMsg msg) {
+    }
+
+    /**
+     * Executed in the actor thread, when the mailbox with {@link MailboxOverflowPolicy#BACKPRESSURE} policy
+     * becomes full (backpressure is true) and when it is drained to the half of its capacity (backpressure is false).
+     */
+    default void onMailboxBackpressure(boolean backpressure) {
+    }
+
     default ProcessFailureStrategy onProcessFailure(Throwable t) {
         if (t instanceof Error) {
             return ProcessFailureStrategy.stop();
@@ -23,6 +23,8 @@ import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -45,11 +47,20 @@ public final class TbActorMailbox implements TbActorCtx {
     private final TbActorRef parentRef;
     private final TbActor actor;
     private final Dispatcher dispatcher;
+    private final AtomicLong mailboxOverflowsCounter;
     private final ConcurrentLinkedQueue<TbActorMsg> highPriorityMsgs = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+    // the size of the queues above, ConcurrentLinkedQueue.size() traverses the whole queue
+    private final AtomicInteger highPriorityMsgsCount = new AtomicInteger();
+    private final AtomicInteger normalPriorityMsgsCount = new AtomicInteger();
     private final AtomicBoolean busy = new AtomicBoolean(FREE);
     private final AtomicBoolean ready = new AtomicBoolean(NOT_READY);
     private final AtomicBoolean destroyInProgress = new AtomicBoolean();
+    // set by the thread that overflows the mailbox with BACKPRESSURE policy, the actor is notified from its own thread
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    private boolean backpressure;
+    // the same task is submitted to the dispatcher every time instead of allocating a new lambda
+    private final Runnable processMailboxTask = this::processMailbox;
 
     private final boolean isTraceEnabled = log.isTraceEnabled();
     private final boolean isDebugEnabled = log.isDebugEnabled();
@@ -101,18 +112,49 @@ public final class TbActorMailbox implements TbActorCtx {
             return;
         }
         if (highPriority) {
+            highPriorityMsgsCount.incrementAndGet();
             highPriorityMsgs.add(msg);
         } else {
+            if (settings.getMailboxCapacity() > 0 && normalPriorityMsgsCount.get() >= settings.getMailboxCapacity() && !onOverflow(msg)) {
+                return;
+            }
+            normalPriorityMsgsCount.incrementAndGet();
             normalPriorityMsgs.add(msg);
         }
         tryProcessQueue(true);
     }
 
+    /*
+        Returns true if the msg should still be enqueued
+     */
+    private boolean onOverflow(TbActorMsg msg) {
+        switch (settings.getMailboxOverflowPolicy()) {
+            case BACKPRESSURE:
+                if (overflowed.compareAndSet(false, true)) {
+                    mailboxOverflowsCounter.incrementAndGet();
+                }
+                return true;
+            case DISCONNECT:
+                mailboxOverflowsCounter.incrementAndGet();
+                if (isDebugEnabled) {
+                    log.debug("[{}] Mailbox is full, dropping msg {} and notifying the actor", selfId, msg.getMsgType());
+                }
+                actor.onMailboxOverflow(msg);
+                return false;
+            default:
+                mailboxOverflowsCounter.incrementAndGet();
+                if (isDebugEnabled) {
+                    log.debug("[{}] Mailbox is full, dropping msg {}", selfId, msg.getMsgType());
+                }
+                return false;
+        }
+    }
+
     private void tryProcessQueue(boolean newMsg) {
         if (ready.get() == READY) {
             if (newMsg || !highPriorityMsgs.isEmpty() || !normalPriorityMsgs.isEmpty()) {
                 if (busy.compareAndSet(FREE, BUSY)) {
-                    dispatcher.getExecutor().execute(this::processMailbox);
+                    dispatcher.getExecutor().execute(processMailboxTask);
                 } else {
                     if (isTraceEnabled) {
                         log.trace("[{}] MessageBox is busy, new msg: {}", selfId, newMsg);
@@ -133,9 +175,15 @@ public final class TbActorMailbox implements TbActorCtx {
     private void processMailbox() {
         boolean noMoreElements = false;
         for (int i = 0; i < settings.getActorThroughput(); i++) {
+            checkBackpressure();
             TbActorMsg msg = highPriorityMsgs.poll();
-            if (msg == null) {
+            if (msg != null) {
+                highPriorityMsgsCount.decrementAndGet();
+            } else {
                 msg = normalPriorityMsgs.poll();
+                if (msg != null) {
+                    normalPriorityMsgsCount.decrementAndGet();
+                }
             }
             if (msg != null) {
                 try {
@@ -159,10 +207,39 @@ public final class TbActorMailbox implements TbActorCtx {
         }
         if (noMoreElements) {
             busy.set(FREE);
-            dispatcher.getExecutor().execute(() -> tryProcessQueue(false));
+            // the msgs enqueued after the last poll are picked up here, without an extra task submission
+            tryProcessQueue(false);
         } else {
-            dispatcher.getExecutor().execute(this::processMailbox);
+            dispatcher.getExecutor().execute(processMailboxTask);
+        }
+    }
+
+    private void checkBackpressure() {
+        if (!backpressure) {
+            if (overflowed.get()) {
+                backpressure = true;
+                notifyBackpressure(true);
+            }
+        } else if (normalPriorityMsgsCount.get() <= settings.getMailboxCapacity() / 2) {
+            backpressure = false;
+            overflowed.set(false);
+            notifyBackpressure(false);
+        }
+    }
+
+    private void notifyBackpressure(boolean backpressure) {
+        if (isDebugEnabled) {
+            log.debug("[{}] Mailbox backpressure: {}, msgs count: {}", selfId, backpressure, normalPriorityMsgsCount.get());
         }
+        try {
+            actor.onMailboxBackpressure(backpressure);
+        } catch (Throwable t) {
+            log.warn("[{}] Failed to notify actor about the mailbox backpressure", selfId, t);
+        }
+    }
+
+    public int getMsgsCount() {
+        return highPriorityMsgsCount.get() + normalPriorityMsgsCount.get();
     }
 
     @Override
@@ -23,5 +23,8 @@ public class TbActorSystemSettings {
     private final int actorThroughput;
     private final int schedulerPoolSize;
     private final int maxActorInitAttempts;
+    // 0 means unbounded mailbox
+    private final int mailboxCapacity;
+    private final MailboxOverflowPolicy mailboxOverflowPolicy;
 
 }
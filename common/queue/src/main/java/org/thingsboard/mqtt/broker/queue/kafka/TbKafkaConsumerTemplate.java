@@ -18,6 +18,7 @@ package org.thingsboard.mqtt.broker.queue.kafka;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -27,6 +28,7 @@ import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
 import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+import org.thingsboard.mqtt.broker.queue.TbQueueRebalanceListener;
 import org.thingsboard.mqtt.broker.queue.common.AbstractTbQueueConsumerTemplate;
 import org.thingsboard.mqtt.broker.queue.kafka.stats.TbKafkaConsumerStatsService;
 import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
@@ -35,6 +37,7 @@ import org.thingsboard.mqtt.broker.queue.stats.Timer;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +54,7 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
     private final KafkaConsumer<String, byte[]> consumer;
     private final TbKafkaDecoder<T> decoder;
     private final Map<String, String> topicConfigs;
+    private final TbQueueRebalanceListener rebalanceListener;
 
     private final TbKafkaConsumerStatsService statsService;
     private final String groupId;
@@ -72,7 +76,8 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
                                     TbQueueAdmin admin, TbKafkaConsumerStatsService statsService,
                                     Boolean createTopicIfNotExists,
                                     Map<String, String> topicConfigs,
-                                    ConsumerStatsManager statsManager) {
+                                    ConsumerStatsManager statsManager,
+                                    TbQueueRebalanceListener rebalanceListener) {
         super(topic);
         properties.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
         if (groupId != null) {
@@ -96,6 +101,7 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         this.consumer = new KafkaConsumer<>(properties);
         this.decoder = decoder;
         this.topicConfigs = topicConfigs;
+        this.rebalanceListener = rebalanceListener;
         this.createTopicIfNotExists = createTopicIfNotExists != null ? createTopicIfNotExists : true;
         this.commitTimer = statsManager != null ? statsManager.createCommitTimer(clientId) : (amount, unit) -> {
         };
@@ -106,7 +112,20 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         if (createTopicIfNotExists) {
             admin.createTopicIfNotExists(topic, topicConfigs);
         }
-        consumer.subscribe(Collections.singletonList(topic));
+        if (rebalanceListener == null) {
+            consumer.subscribe(Collections.singletonList(topic));
+        } else {
+            consumer.subscribe(Collections.singletonList(topic), new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    rebalanceListener.onPartitionsRevoked();
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                }
+            });
+        }
     }
 
     @Override
@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import lombok.Getter;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+
+import java.util.List;
+
+/*
+    Bounded ring buffer of one partition. When the buffer is full the oldest record is dropped, the same way
+    as Kafka drops records by retention, so a consumer that lags behind continues from the oldest available record.
+ */
+public class InMemoryQueuePartition {
+
+    @Getter
+    private final int partition;
+    private final InMemoryQueueRecord[] buffer;
+
+    private long startOffset;
+    private long endOffset;
+    private long droppedCount;
+
+    public InMemoryQueuePartition(int partition, int capacity) {
+        this.partition = partition;
+        this.buffer = new InMemoryQueueRecord[capacity];
+    }
+
+    public synchronized InMemoryQueueRecord append(TbQueueMsg msg) {
+        if (endOffset - startOffset == buffer.length) {
+            buffer[index(startOffset)] = null;
+            startOffset++;
+            droppedCount++;
+        }
+        InMemoryQueueRecord record = new InMemoryQueueRecord(msg, partition, endOffset);
+        buffer[index(endOffset)] = record;
+        endOffset++;
+        return record;
+    }
+
+    /*
+        Adds up to maxRecords records starting from the offset to the result and returns the offset of the next record to read
+     */
+    public synchronized long read(long offset, int maxRecords, List<InMemoryQueueRecord> result) {
+        long currentOffset = Math.max(offset, startOffset);
+        long lastOffset = Math.min(endOffset, currentOffset + maxRecords);
+        for (; currentOffset < lastOffset; currentOffset++) {
+            result.add(buffer[index(currentOffset)]);
+        }
+        return currentOffset;
+    }
+
+    public synchronized long getStartOffset() {
+        return startOffset;
+    }
+
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized int size() {
+        return (int) (endOffset - startOffset);
+    }
+
+    private int index(long offset) {
+        return (int) (offset % buffer.length);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+    Topics and committed offsets of the consumer groups that are kept in the broker memory.
+    Works only within one broker node and is lost on restart
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "in-memory")
+public class InMemoryQueueStorage {
+
+    private final int partitionCapacity;
+    @Getter
+    private final int maxPollRecords;
+
+    private final ConcurrentMap<String, InMemoryQueueTopic> topics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<TopicPartition, Long>> committedOffsets = new ConcurrentHashMap<>();
+
+    public InMemoryQueueStorage(@Value("${queue.in-memory.partition-capacity:100000}") int partitionCapacity,
+                                @Value("${queue.in-memory.max-poll-records:500}") int maxPollRecords) {
+        this.partitionCapacity = partitionCapacity;
+        this.maxPollRecords = maxPollRecords;
+    }
+
+    public InMemoryQueueTopic getOrCreateTopic(String topic, Map<String, String> topicConfigs) {
+        InMemoryQueueTopic queueTopic = topics.get(topic);
+        if (queueTopic != null) {
+            return queueTopic;
+        }
+        return topics.computeIfAbsent(topic, name -> {
+            int partitionsCount = extractPartitionsNumber(topicConfigs);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Creating topic with {} partitions", name, partitionsCount);
+            }
+            return new InMemoryQueueTopic(name, partitionsCount, partitionCapacity);
+        });
+    }
+
+    public InMemoryQueueTopic getTopic(String topic) {
+        return topics.get(topic);
+    }
+
+    public Collection<InMemoryQueueTopic> getTopics() {
+        return topics.values();
+    }
+
+    public boolean deleteTopic(String topic) {
+        boolean deleted = topics.remove(topic) != null;
+        committedOffsets.values().forEach(groupOffsets -> groupOffsets.keySet().removeIf(topicPartition -> topicPartition.topic().equals(topic)));
+        return deleted;
+    }
+
+    public void commit(String groupId, String topic, int partition, long offset) {
+        if (groupId == null) {
+            return;
+        }
+        committedOffsets.computeIfAbsent(groupId, id -> new ConcurrentHashMap<>()).put(new TopicPartition(topic, partition), offset);
+    }
+
+    public Optional<Long> getCommittedOffset(String groupId, String topic, int partition) {
+        if (groupId == null) {
+            return Optional.empty();
+        }
+        Map<TopicPartition, Long> groupOffsets = committedOffsets.get(groupId);
+        return groupOffsets == null ? Optional.empty() : Optional.ofNullable(groupOffsets.get(new TopicPartition(topic, partition)));
+    }
+
+    public Map<TopicPartition, Long> getCommittedOffsets(String groupId) {
+        Map<TopicPartition, Long> groupOffsets = committedOffsets.get(groupId);
+        return groupOffsets == null ? Collections.emptyMap() : Collections.unmodifiableMap(groupOffsets);
+    }
+
+    public void deleteConsumerGroup(String groupId) {
+        committedOffsets.remove(groupId);
+    }
+
+    public Set<String> getConsumerGroupIds() {
+        Set<String> groupIds = new HashSet<>(committedOffsets.keySet());
+        topics.values().forEach(topic -> groupIds.addAll(topic.getGroupMembersCount().keySet()));
+        return groupIds;
+    }
+
+    private int extractPartitionsNumber(Map<String, String> topicConfigs) {
+        String numPartitionsStr = topicConfigs != null ? topicConfigs.get(QueueConstants.PARTITIONS) : null;
+        return numPartitionsStr != null ? Integer.parseInt(numPartitionsStr) : 1;
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import lombok.Getter;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class InMemoryQueueTopic {
+
+    @Getter
+    private final String name;
+    private final InMemoryQueuePartition[] partitions;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    /*
+        Consumers wait for new records on the condition, producers signal it only if somebody waits.
+        The version is incremented before the check of waiters and is read by a consumer before it looks for records,
+        so a record appended in between is never missed
+     */
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final Lock lock = new ReentrantLock();
+    private final Condition newRecords = lock.newCondition();
+
+    private final Map<String, List<Object>> groupMembers = new HashMap<>();
+    private volatile long membershipVersion;
+
+    public InMemoryQueueTopic(String name, int partitionsCount, int partitionCapacity) {
+        this.name = name;
+        this.partitions = new InMemoryQueuePartition[partitionsCount];
+        for (int i = 0; i < partitionsCount; i++) {
+            partitions[i] = new InMemoryQueuePartition(i, partitionCapacity);
+        }
+    }
+
+    public InMemoryQueueRecord append(Integer partition, TbQueueMsg msg) {
+        InMemoryQueueRecord record = getPartition(resolvePartition(partition, msg.getKey())).append(msg);
+        version.incrementAndGet();
+        if (waitingConsumers.get() > 0) {
+            lock.lock();
+            try {
+                newRecords.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return record;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /*
+        Waits until a record is appended after the version was read or the timeout elapses
+     */
+    public void awaitNewRecords(long seenVersion, long timeoutNanos) {
+        lock.lock();
+        waitingConsumers.incrementAndGet();
+        try {
+            long nanos = timeoutNanos;
+            while (version.get() == seenVersion && nanos > 0) {
+                nanos = newRecords.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    public int getPartitionsCount() {
+        return partitions.length;
+    }
+
+    public InMemoryQueuePartition getPartition(int partition) {
+        if (partition < 0 || partition >= partitions.length) {
+            throw new IllegalArgumentException("Topic " + name + " has no partition " + partition + ", partitions count - " + partitions.length);
+        }
+        return partitions[partition];
+    }
+
+    public long getEndOffset(int partition) {
+        return getPartition(partition).getEndOffset();
+    }
+
+    public int size() {
+        int size = 0;
+        for (InMemoryQueuePartition partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    public synchronized void join(String groupId, Object member) {
+        groupMembers.computeIfAbsent(groupId, id -> new ArrayList<>()).add(member);
+        membershipVersion++;
+    }
+
+    public synchronized void leave(String groupId, Object member) {
+        List<Object> members = groupMembers.get(groupId);
+        if (members != null && members.remove(member)) {
+            if (members.isEmpty()) {
+                groupMembers.remove(groupId);
+            }
+            membershipVersion++;
+        }
+    }
+
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    /*
+        Partitions are spread between the members of the group in the order the members joined
+     */
+    public synchronized int[] getAssignedPartitions(String groupId, Object member) {
+        List<Object> members = groupMembers.get(groupId);
+        int memberIndex = members != null ? members.indexOf(member) : -1;
+        if (memberIndex < 0) {
+            return new int[0];
+        }
+        int membersCount = members.size();
+        int[] assignedPartitions = new int[(partitions.length - memberIndex + membersCount - 1) / membersCount];
+        for (int i = 0; i < assignedPartitions.length; i++) {
+            assignedPartitions[i] = memberIndex + i * membersCount;
+        }
+        return assignedPartitions;
+    }
+
+    public synchronized Map<String, Integer> getGroupMembersCount() {
+        Map<String, Integer> result = new HashMap<>();
+        groupMembers.forEach((groupId, members) -> result.put(groupId, members.size()));
+        return result;
+    }
+
+    private int resolvePartition(Integer partition, String key) {
+        if (partition != null) {
+            return partition;
+        }
+        if (partitions.length == 1) {
+            return 0;
+        }
+        if (key != null) {
+            return Math.floorMod(key.hashCode(), partitions.length);
+        }
+        return Math.floorMod(nextPartition.getAndIncrement(), partitions.length);
+    }
+}
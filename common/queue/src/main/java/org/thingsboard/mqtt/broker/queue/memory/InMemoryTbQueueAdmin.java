@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.common.data.BasicCallback;
+import org.thingsboard.mqtt.broker.common.data.page.PageData;
+import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroupState;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
+import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+    Sizes of the topics are not tracked since the messages are not serialized, the number of records is reported instead
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "in-memory")
+public class InMemoryTbQueueAdmin implements TbQueueAdmin {
+
+    private static final int BROKER_ID = 0;
+    private static final String BROKER_ADDRESS = "in-memory";
+
+    @Value("${queue.kafka.client-session-event-response.topic-prefix}")
+    private String clientSessionEventRespTopicPrefix;
+
+    private final InMemoryQueueStorage storage;
+
+    @Override
+    public void createTopicIfNotExists(String topic, Map<String, String> topicConfigs) {
+        storage.getOrCreateTopic(topic, topicConfigs);
+    }
+
+    @Override
+    public void createTopic(String topic, Map<String, String> topicConfigs) {
+        storage.getOrCreateTopic(topic, topicConfigs);
+    }
+
+    @Override
+    public void deleteTopic(String topic, BasicCallback callback) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Deleting topic", topic);
+        }
+        storage.deleteTopic(topic);
+        if (callback != null) {
+            callback.onSuccess();
+        }
+    }
+
+    @Override
+    public void deleteConsumerGroups(Collection<String> consumerGroups) {
+        if (log.isDebugEnabled()) {
+            log.debug("Deleting Consumer Groups - {}", consumerGroups);
+        }
+        consumerGroups.forEach(storage::deleteConsumerGroup);
+    }
+
+    @Override
+    public int getNumberOfPartitions(String topic) {
+        InMemoryQueueTopic queueTopic = storage.getTopic(topic);
+        if (queueTopic == null) {
+            throw new RuntimeException("Topic " + topic + " does not exist");
+        }
+        return queueTopic.getPartitionsCount();
+    }
+
+    @Override
+    public PageData<KafkaBroker> getClusterInfo() {
+        long totalSize = storage.getTopics().stream().mapToLong(InMemoryQueueTopic::size).sum();
+        List<KafkaBroker> brokers = List.of(new KafkaBroker(BROKER_ID, BROKER_ADDRESS, totalSize));
+        return new PageData<>(brokers, 1, brokers.size(), false);
+    }
+
+    @Override
+    public PageData<KafkaTopic> getTopics(PageLink pageLink) {
+        List<KafkaTopic> topics = storage.getTopics().stream()
+                .map(this::toKafkaTopic)
+                .filter(topic -> pageLink.getTextSearch() == null || topic.getName().toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))
+                .collect(Collectors.toList());
+        return toPageData(topics, pageLink, KafkaTopic.sorted(pageLink));
+    }
+
+    @Override
+    public List<String> getBrokerServiceIds() {
+        return storage.getTopics().stream()
+                .map(InMemoryQueueTopic::getName)
+                .filter(topic -> topic.startsWith(clientSessionEventRespTopicPrefix))
+                .map(topic -> topic.replace(clientSessionEventRespTopicPrefix + ".", ""))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public PageData<KafkaConsumerGroup> getConsumerGroups(PageLink pageLink) {
+        Map<String, Integer> membersCount = new HashMap<>();
+        storage.getTopics().forEach(topic -> topic.getGroupMembersCount().forEach((groupId, count) -> membersCount.merge(groupId, count, Integer::sum)));
+
+        List<KafkaConsumerGroup> consumerGroups = new ArrayList<>();
+        for (String groupId : storage.getConsumerGroupIds()) {
+            if (groupId == null || (pageLink.getTextSearch() != null && !groupId.toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))) {
+                continue;
+            }
+            int members = membersCount.getOrDefault(groupId, 0);
+            KafkaConsumerGroup consumerGroup = new KafkaConsumerGroup();
+            consumerGroup.setGroupId(groupId);
+            consumerGroup.setMembers(members);
+            consumerGroup.setState(members > 0 ? KafkaConsumerGroupState.STABLE : KafkaConsumerGroupState.EMPTY);
+            consumerGroup.setLag(getLag(storage.getCommittedOffsets(groupId)));
+            consumerGroups.add(consumerGroup);
+        }
+        return toPageData(consumerGroups, pageLink, KafkaConsumerGroup.sorted(pageLink));
+    }
+
+    private long getLag(Map<TopicPartition, Long> committedOffsets) {
+        long totalLag = 0L;
+        for (Map.Entry<TopicPartition, Long> entry : committedOffsets.entrySet()) {
+            InMemoryQueueTopic topic = storage.getTopic(entry.getKey().topic());
+            if (topic != null && entry.getKey().partition() < topic.getPartitionsCount()) {
+                totalLag += Math.max(topic.getEndOffset(entry.getKey().partition()) - entry.getValue(), 0);
+            }
+        }
+        return totalLag;
+    }
+
+    private KafkaTopic toKafkaTopic(InMemoryQueueTopic topic) {
+        KafkaTopic kafkaTopic = new KafkaTopic();
+        kafkaTopic.setName(topic.getName());
+        kafkaTopic.setPartitions(topic.getPartitionsCount());
+        kafkaTopic.setReplicationFactor(1);
+        kafkaTopic.setSize(topic.size());
+        return kafkaTopic;
+    }
+
+    private <T> PageData<T> toPageData(List<T> items, PageLink pageLink, Comparator<? super T> comparator) {
+        List<T> data = items.stream()
+                .sorted(comparator)
+                .skip((long) pageLink.getPage() * pageLink.getPageSize())
+                .limit(pageLink.getPageSize())
+                .collect(Collectors.toList());
+        return new PageData<>(data,
+                items.size() / pageLink.getPageSize(),
+                items.size(),
+                pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < items.size());
+    }
+}
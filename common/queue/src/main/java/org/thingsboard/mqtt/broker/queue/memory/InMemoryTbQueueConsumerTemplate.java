@@ -0,0 +1,266 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import com.google.protobuf.GeneratedMessageV3;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsgHeaders;
+import org.thingsboard.mqtt.broker.queue.common.AbstractTbQueueConsumerTemplate;
+import org.thingsboard.mqtt.broker.queue.common.DefaultTbQueueMsgHeaders;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
+import org.thingsboard.mqtt.broker.queue.stats.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Follows the offset semantics of the Kafka consumer: poll() moves the position of the consumer,
+    commitSync() commits the positions of the assigned partitions for the consumer group, commit(partition, offset) commits the given offset.
+    A consumer that subscribed to the topic shares its partitions with the other members of the group
+    and starts from the committed offset of the group, or from the beginning/end of the partition if nothing was committed.
+ */
+@Slf4j
+public class InMemoryTbQueueConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<InMemoryQueueRecord, T> {
+
+    private static final int[] NO_PARTITIONS = new int[0];
+
+    private final InMemoryQueueStorage storage;
+    private final Map<String, String> topicConfigs;
+    private final String groupId;
+    private final boolean readFromBeginning;
+    private final Timer commitTimer;
+
+    private InMemoryQueueTopic queueTopic;
+    private boolean groupMember;
+    private long membershipVersion = -1;
+    private int[] assignedPartitions = NO_PARTITIONS;
+    private long[] positions = new long[0];
+    private int firstPartitionIndex;
+
+    /*
+        Not thread-safe, the same as the Kafka consumer
+     */
+
+    @Builder
+    private InMemoryTbQueueConsumerTemplate(InMemoryQueueStorage storage, String topic, Map<String, String> topicConfigs,
+                                            String clientId, String groupId, boolean readFromBeginning,
+                                            ConsumerStatsManager statsManager) {
+        super(topic);
+        this.storage = storage;
+        this.topicConfigs = topicConfigs != null ? topicConfigs : Collections.emptyMap();
+        this.groupId = groupId;
+        this.readFromBeginning = readFromBeginning;
+        this.commitTimer = statsManager != null ? statsManager.createCommitTimer(clientId) : (amount, unit) -> {
+        };
+    }
+
+    @Override
+    protected void doSubscribe(String topic) {
+        leaveGroup();
+        queueTopic = storage.getOrCreateTopic(topic, topicConfigs);
+        queueTopic.join(groupId, this);
+        groupMember = true;
+        membershipVersion = -1;
+        assign(NO_PARTITIONS);
+    }
+
+    @Override
+    protected void doAssignPartition(String topic, int partition) {
+        leaveGroup();
+        queueTopic = storage.getOrCreateTopic(topic, topicConfigs);
+        assign(new int[]{partition});
+    }
+
+    @Override
+    protected void doAssignAllPartitions(String topic) {
+        leaveGroup();
+        queueTopic = storage.getOrCreateTopic(topic, topicConfigs);
+        int[] allPartitions = new int[queueTopic.getPartitionsCount()];
+        for (int i = 0; i < allPartitions.length; i++) {
+            allPartitions[i] = i;
+        }
+        assign(allPartitions);
+    }
+
+    @Override
+    protected List<InMemoryQueueRecord> doPoll(long durationInMillis) {
+        if (queueTopic == null) {
+            return Collections.emptyList();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationInMillis);
+        while (true) {
+            long version = queueTopic.getVersion();
+            refreshAssignment();
+            List<InMemoryQueueRecord> records = fetch();
+            long remainingNanos = deadline - System.nanoTime();
+            if (!records.isEmpty() || stopped || remainingNanos <= 0) {
+                return records;
+            }
+            queueTopic.awaitNewRecords(version, remainingNanos);
+        }
+    }
+
+    private List<InMemoryQueueRecord> fetch() {
+        if (assignedPartitions.length == 0) {
+            return Collections.emptyList();
+        }
+        int maxRecords = storage.getMaxPollRecords();
+        List<InMemoryQueueRecord> records = null;
+        // the first partition to read rotates, so one busy partition doesn't take the whole poll every time
+        for (int i = 0; i < assignedPartitions.length; i++) {
+            int index = (firstPartitionIndex + i) % assignedPartitions.length;
+            InMemoryQueuePartition partition = queueTopic.getPartition(assignedPartitions[index]);
+            if (partition.getEndOffset() <= positions[index]) {
+                continue;
+            }
+            if (records == null) {
+                records = new ArrayList<>(Math.min(maxRecords, 512));
+            }
+            int readBefore = records.size();
+            long position = positions[index];
+            positions[index] = partition.read(position, maxRecords - readBefore, records);
+            if (records.size() > readBefore && records.get(readBefore).getOffset() > position) {
+                log.warn("[{}][{}] Consumer of group {} lagged behind, records from offset {} to {} were dropped.",
+                        queueTopic.getName(), partition.getPartition(), groupId, position, records.get(readBefore).getOffset());
+            }
+            if (records.size() >= maxRecords) {
+                break;
+            }
+        }
+        firstPartitionIndex = (firstPartitionIndex + 1) % assignedPartitions.length;
+        return records != null ? records : Collections.emptyList();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected T decode(InMemoryQueueRecord record) throws IOException {
+        TbQueueMsg msg = record.getMsg();
+        if (!(msg instanceof TbProtoQueueMsg)) {
+            throw new IOException("Unsupported message type " + msg.getClass().getName());
+        }
+        return (T) copy((TbProtoQueueMsg<?>) msg, record);
+    }
+
+    /*
+        Proto values are immutable and are shared between the consumers, the headers are mutable so every consumer gets a copy
+     */
+    private static <V extends GeneratedMessageV3> TbProtoQueueMsg<V> copy(TbProtoQueueMsg<V> msg, InMemoryQueueRecord record) {
+        TbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        msg.getHeaders().getData().forEach(headers::put);
+        return new TbProtoQueueMsg<>(msg.getKey(), msg.getValue(), headers, record.getPartition(), record.getOffset());
+    }
+
+    @Override
+    protected void doCommitSync() {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < assignedPartitions.length; i++) {
+            storage.commit(groupId, queueTopic.getName(), assignedPartitions[i], positions[i]);
+        }
+        commitTimer.logTime(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void doCommit(String topic, int partition, long offset) {
+        storage.commit(groupId, topic, partition, offset);
+    }
+
+    @Override
+    protected void doUnsubscribeAndClose() {
+        leaveGroup();
+        queueTopic = null;
+        assignedPartitions = NO_PARTITIONS;
+        positions = new long[0];
+    }
+
+    @Override
+    protected void doSeekToTheBeginning() {
+        refreshAssignment();
+        for (int i = 0; i < assignedPartitions.length; i++) {
+            positions[i] = queueTopic.getPartition(assignedPartitions[i]).getStartOffset();
+        }
+    }
+
+    @Override
+    protected long doGetEndOffset(String topic, int partition) {
+        InMemoryQueueTopic topicToCheck = storage.getTopic(topic);
+        return topicToCheck != null ? topicToCheck.getEndOffset(partition) : 0L;
+    }
+
+    @Override
+    protected Optional<Long> doGetCommittedOffset(String topic, int partition) {
+        return storage.getCommittedOffset(groupId, topic, partition);
+    }
+
+    @Override
+    public String getConsumerGroupId() {
+        return groupId;
+    }
+
+    private void refreshAssignment() {
+        if (!groupMember) {
+            return;
+        }
+        long currentMembershipVersion = queueTopic.getMembershipVersion();
+        if (currentMembershipVersion != membershipVersion) {
+            membershipVersion = currentMembershipVersion;
+            assign(queueTopic.getAssignedPartitions(groupId, this));
+        }
+    }
+
+    /*
+        Keeps the positions of the partitions that stay assigned, the new partitions start from the committed offset
+     */
+    private void assign(int[] partitions) {
+        long[] newPositions = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            int previousIndex = indexOf(assignedPartitions, partitions[i]);
+            newPositions[i] = previousIndex >= 0 ? positions[previousIndex] : getInitialPosition(partitions[i]);
+        }
+        assignedPartitions = partitions;
+        positions = newPositions;
+        firstPartitionIndex = 0;
+    }
+
+    private long getInitialPosition(int partition) {
+        InMemoryQueuePartition queuePartition = queueTopic.getPartition(partition);
+        return storage.getCommittedOffset(groupId, queueTopic.getName(), partition)
+                .orElseGet(() -> readFromBeginning ? queuePartition.getStartOffset() : queuePartition.getEndOffset());
+    }
+
+    private void leaveGroup() {
+        if (groupMember && queueTopic != null) {
+            queueTopic.leave(groupId, this);
+        }
+        groupMember = false;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
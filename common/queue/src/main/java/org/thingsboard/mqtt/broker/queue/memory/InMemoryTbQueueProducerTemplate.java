@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.thingsboard.mqtt.broker.common.data.StringUtils;
+import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
+import org.thingsboard.mqtt.broker.queue.stats.Timer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class InMemoryTbQueueProducerTemplate<T extends TbQueueMsg> implements TbQueueProducer<T> {
+
+    private final InMemoryQueueStorage storage;
+    private final String defaultTopic;
+    private final Map<String, String> topicConfigs;
+    private final Timer sendTimer;
+
+    @Builder
+    private InMemoryTbQueueProducerTemplate(InMemoryQueueStorage storage, String defaultTopic, String clientId,
+                                            Map<String, String> topicConfigs, ProducerStatsManager statsManager) {
+        this.storage = storage;
+        this.defaultTopic = defaultTopic;
+        this.topicConfigs = topicConfigs != null ? topicConfigs : Collections.emptyMap();
+        this.sendTimer = statsManager != null ? statsManager.createSendTimer(clientId) : (amount, unit) -> {};
+    }
+
+    @Override
+    public String getDefaultTopic() {
+        return defaultTopic;
+    }
+
+    @Override
+    public void send(T msg, TbQueueCallback callback) {
+        if (StringUtils.isEmpty(defaultTopic)) {
+            throw new RuntimeException("No default topic defined for producer.");
+        }
+        send(defaultTopic, null, msg, callback);
+    }
+
+    /*
+        The message is stored as is without serialization, the callback is called in the current thread
+     */
+    @Override
+    public void send(String topic, Integer partition, T msg, TbQueueCallback callback) {
+        long startTime = System.nanoTime();
+        InMemoryQueueRecord record;
+        try {
+            record = storage.getOrCreateTopic(topic, topicConfigs).append(partition, msg);
+        } catch (Exception e) {
+            if (callback != null) {
+                callback.onFailure(e);
+            } else {
+                log.warn("Producer template failure: {}", e.getMessage(), e);
+            }
+            return;
+        }
+        sendTimer.logTime(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        if (callback != null) {
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(topic, record.getPartition()), record.getOffset(),
+                    0, System.currentTimeMillis(), -1, -1);
+            callback.onSuccess(new InMemoryTbQueueMsgMetadata(metadata));
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+}
@@ -18,11 +18,12 @@ package org.thingsboard.mqtt.broker.queue.provider;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.TbQueueRebalanceListener;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 
 public interface DevicePersistenceMsgQueueFactory {
     TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createProducer();
 
-    TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id);
+    TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id, TbQueueRebalanceListener rebalanceListener);
 
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.provider;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.ApplicationPersistenceMsgKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.ApplicationSharedTopicMsgKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryQueueStorage;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueConsumerTemplate;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueProducerTemplate;
+import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
+import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
+import org.thingsboard.mqtt.broker.queue.util.QueueUtil;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "in-memory")
+public class InMemoryApplicationPersistenceMsgQueueFactory implements ApplicationPersistenceMsgQueueFactory {
+
+    private final InMemoryQueueStorage storage;
+    private final ApplicationPersistenceMsgKafkaSettings applicationPersistenceMsgSettings;
+    private final ApplicationSharedTopicMsgKafkaSettings applicationSharedTopicMsgSettings;
+
+    @Autowired(required = false)
+    private ProducerStatsManager producerStatsManager;
+    @Autowired(required = false)
+    private ConsumerStatsManager consumerStatsManager;
+
+    private Map<String, String> topicConfigs;
+    private Map<String, String> sharedTopicConfigs;
+
+    @PostConstruct
+    public void init() {
+        this.topicConfigs = new HashMap<>(QueueUtil.getConfigs(applicationPersistenceMsgSettings.getTopicProperties()));
+        topicConfigs.put(QueueConstants.PARTITIONS, "1");
+        this.sharedTopicConfigs = QueueUtil.getConfigs(applicationSharedTopicMsgSettings.getTopicProperties());
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createProducer(String serviceId) {
+        InMemoryTbQueueProducerTemplate.InMemoryTbQueueProducerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> producerBuilder = InMemoryTbQueueProducerTemplate.builder();
+        producerBuilder.storage(storage);
+        producerBuilder.clientId("application-persisted-msg-producer-" + serviceId);
+        producerBuilder.topicConfigs(topicConfigs);
+        producerBuilder.statsManager(producerStatsManager);
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createSharedSubsProducer(String serviceId) {
+        InMemoryTbQueueProducerTemplate.InMemoryTbQueueProducerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> producerBuilder = InMemoryTbQueueProducerTemplate.builder();
+        producerBuilder.storage(storage);
+        producerBuilder.clientId("application-shared-msg-producer-" + serviceId);
+        producerBuilder.topicConfigs(sharedTopicConfigs);
+        producerBuilder.statsManager(producerStatsManager);
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String topic, String consumerGroup, String consumerId) {
+        InMemoryTbQueueConsumerTemplate.InMemoryTbQueueConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumerBuilder = InMemoryTbQueueConsumerTemplate.builder();
+        consumerBuilder.storage(storage);
+        consumerBuilder.topic(topic);
+        consumerBuilder.topicConfigs(topicConfigs);
+        consumerBuilder.clientId("application-persisted-msg-consumer-" + consumerId);
+        consumerBuilder.groupId(consumerGroup);
+        consumerBuilder.statsManager(consumerStatsManager);
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumerForSharedTopic(String topic, String consumerGroup, String consumerId) {
+        InMemoryTbQueueConsumerTemplate.InMemoryTbQueueConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumerBuilder = InMemoryTbQueueConsumerTemplate.builder();
+        consumerBuilder.storage(storage);
+        consumerBuilder.topic(topic);
+        consumerBuilder.topicConfigs(sharedTopicConfigs);
+        consumerBuilder.clientId("application-shared-msg-consumer-" + consumerId);
+        consumerBuilder.groupId(consumerGroup);
+        consumerBuilder.statsManager(consumerStatsManager);
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public Map<String, String> getTopicConfigs() {
+        return topicConfigs;
+    }
+
+    @Override
+    public Map<String, String> getSharedTopicConfigs() {
+        return sharedTopicConfigs;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.provider;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.ClientSessionEventKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.ClientSessionEventResponseKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryQueueStorage;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueConsumerTemplate;
+import org.thingsboard.mqtt.broker.queue.memory.InMemoryTbQueueProducerTemplate;
+import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
+import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
+import org.thingsboard.mqtt.broker.queue.util.QueueUtil;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "in-memory")
+public class InMemoryClientSessionEventQueueFactory implements ClientSessionEventQueueFactory {
+
+    private final InMemoryQueueStorage storage;
+    private final ClientSessionEventKafkaSettings clientSessionEventSettings;
+    private final ClientSessionEventResponseKafkaSettings clientSessionEventResponseSettings;
+
+    @Autowired(required = false)
+    private ProducerStatsManager producerStatsManager;
+    @Autowired(required = false)
+    private ConsumerStatsManager consumerStatsManager;
+
+    private Map<String, String> topicConfigs;
+    private Map<String, String> responseTopicConfigs;
+
+    @PostConstruct
+    public void init() {
+        this.topicConfigs = QueueUtil.getConfigs(clientSessionEventSettings.getTopicProperties());
+        this.responseTopicConfigs = QueueUtil.getConfigs(clientSessionEventResponseSettings.getTopicProperties());
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<QueueProtos.ClientSessionEventProto>> createEventProducer(String serviceId) {
+        InMemoryTbQueueProducerTemplate.InMemoryTbQueueProducerTemplateBuilder<TbProtoQueueMsg<QueueProtos.ClientSessionEventProto>> producerBuilder = InMemoryTbQueueProducerTemplate.builder();
+        producerBuilder.storage(storage);
+        producerBuilder.clientId("client-session-event-producer-" + serviceId);
+        producerBuilder.defaultTopic(clientSessionEventSettings.getTopic());
+        producerBuilder.topicConfigs(topicConfigs);
+        producerBuilder.statsManager(producerStatsManager);
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.ClientSessionEventProto>> createEventConsumer(String consumerName) {
+        InMemoryTbQueueConsumerTemplate.InMemoryTbQueueConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.ClientSessionEventProto>> consumerBuilder = InMemoryTbQueueConsumerTemplate.builder();
+        consumerBuilder.storage(storage);
+        consumerBuilder.topic(clientSessionEventSettings.getTopic());
+        consumerBuilder.topicConfigs(topicConfigs);
+        consumerBuilder.clientId("client-session-event-consumer-" + consumerName);
+        consumerBuilder.groupId("client-session-event-consumer-group");
+        consumerBuilder.statsManager(consumerStatsManager);
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<QueueProtos.ClientSessionEventResponseProto>> createEventResponseProducer(String serviceId) {
+        InMemoryTbQueueProducerTemplate.InMemoryTbQueueProducerTemplateBuilder<TbProtoQueueMsg<QueueProtos.ClientSessionEventResponseProto>> producerBuilder = InMemoryTbQueueProducerTemplate.builder();
+        producerBuilder.storage(storage);
+        producerBuilder.clientId("client-session-event-response-" + serviceId);
+        producerBuilder.topicConfigs(responseTopicConfigs);
+        producerBuilder.statsManager(producerStatsManager);
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.ClientSessionEventResponseProto>> createEventResponseConsumer(String serviceId) {
+        InMemoryTbQueueConsumerTemplate.InMemoryTbQueueConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.ClientSessionEventResponseProto>> consumerBuilder = InMemoryTbQueueConsumerTemplate.builder();
+        consumerBuilder.storage(storage);
+        consumerBuilder.topic(clientSessionEventResponseSettings.getTopicPrefix() + "." + serviceId);
+        consumerBuilder.topicConfigs(responseTopicConfigs);
+        consumerBuilder.clientId("client-session-event-response-consumer-" + serviceId);
+        consumerBuilder.groupId("client-session-event-response-consumer-group-" + serviceId);
+        consumerBuilder.statsManager(consumerStatsManager);
+        return consumerBuilder.build();
+    }
+}
@@ -18,11 +18,13 @@ package org.thingsboard.mqtt.broker.queue.provider;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
 import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.TbQueueRebalanceListener;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.kafka.TbKafkaConsumerTemplate;
 import org.thingsboard.mqtt.broker.queue.kafka.TbKafkaProducerTemplate;
@@ -40,6 +42,7 @@ import java.util.Properties;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "kafka", matchIfMissing = true)
 @RequiredArgsConstructor
 public class KafkaDevicePersistenceMsgQueueFactory implements DevicePersistenceMsgQueueFactory {
     private final Map<String, String> requiredConsumerProperties = Map.of("auto.offset.reset", "earliest");
@@ -76,7 +79,7 @@ public class KafkaDevicePersistenceMsgQueueFactory implements DevicePersistenceM
     }
 
     @Override
-    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id) {
+    public TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id, TbQueueRebalanceListener rebalanceListener) {
         TbKafkaConsumerTemplate.TbKafkaConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumerBuilder = TbKafkaConsumerTemplate.builder();
 
         Properties props = consumerSettings.toProps(devicePersistenceMsgSettings.getTopic(), devicePersistenceMsgSettings.getAdditionalConsumerConfig());
@@ -87,11 +90,13 @@ public class KafkaDevicePersistenceMsgQueueFactory implements DevicePersistenceM
         consumerBuilder.topicConfigs(topicConfigs);
         consumerBuilder.clientId("device-persisted-msg-consumer-" + id);
         consumerBuilder.groupId("device-persisted-msg-consumer-group");
-        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueProtos.PublishMsgProto.parseFrom(msg.getData()), msg.getHeaders()));
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueUtil.parseWithAliasing(QueueProtos.PublishMsgProto.parser(), msg.getData()), msg.getHeaders(),
+                msg.getPartition(), msg.getOffset()));
         consumerBuilder.admin(queueAdmin);
         consumerBuilder.autoCommit(false);
         consumerBuilder.statsService(consumerStatsService);
         consumerBuilder.statsManager(consumerStatsManager);
+        consumerBuilder.rebalanceListener(rebalanceListener);
         return consumerBuilder.build();
     }
 }
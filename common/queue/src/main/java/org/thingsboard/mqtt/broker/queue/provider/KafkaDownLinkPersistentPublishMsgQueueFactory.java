@@ -18,6 +18,7 @@ package org.thingsboard.mqtt.broker.queue.provider;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
@@ -40,6 +41,7 @@ import java.util.Map;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "kafka", matchIfMissing = true)
 @RequiredArgsConstructor
 public class KafkaDownLinkPersistentPublishMsgQueueFactory implements DownLinkPersistentPublishMsgQueueFactory {
 
@@ -80,7 +82,7 @@ public class KafkaDownLinkPersistentPublishMsgQueueFactory implements DownLinkPe
         consumerBuilder.topicConfigs(topicConfigs);
         consumerBuilder.clientId("persisted-downlink-msg-consumer-" + consumerId);
         consumerBuilder.groupId(BrokerConstants.PERSISTED_DOWNLINK_CG_PREFIX + groupId);
-        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueProtos.DevicePublishMsgProto.parseFrom(msg.getData()), msg.getHeaders()));
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueUtil.parseWithAliasing(QueueProtos.DevicePublishMsgProto.parser(), msg.getData()), msg.getHeaders()));
         consumerBuilder.admin(queueAdmin);
         consumerBuilder.statsService(consumerStatsService);
         consumerBuilder.statsManager(consumerStatsManager);
@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.queue.provider;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
@@ -37,6 +38,7 @@ import javax.annotation.PostConstruct;
 import java.util.Map;
 
 @Component
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "kafka", matchIfMissing = true)
 @RequiredArgsConstructor
 public class KafkaPublishMsgQueueFactory implements PublishMsgQueueFactory {
 
@@ -78,7 +80,7 @@ public class KafkaPublishMsgQueueFactory implements PublishMsgQueueFactory {
         consumerBuilder.topicConfigs(topicConfigs);
         consumerBuilder.clientId("msg-all-consumer-" + id);
         consumerBuilder.groupId("msg-all-consumer-group");
-        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueProtos.PublishMsgProto.parseFrom(msg.getData()), msg.getHeaders()));
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueUtil.parseWithAliasing(QueueProtos.PublishMsgProto.parser(), msg.getData()), msg.getHeaders()));
         consumerBuilder.admin(queueAdmin);
         consumerBuilder.statsService(consumerStatsService);
         consumerBuilder.statsManager(consumerStatsManager);
@@ -15,6 +15,10 @@
  */
 package org.thingsboard.mqtt.broker.queue.util;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 
@@ -50,4 +54,15 @@ public class QueueUtil {
         });
     }
 
+    /*
+        Bytes fields of the parsed msg (e.g. the PUBLISH payload) are views of 'data' instead of copies,
+        'data' must not be modified afterwards - records polled from the queue are never reused
+     */
+    public static <T> T parseWithAliasing(Parser<T> parser, byte[] data) throws InvalidProtocolBufferException {
+        // aliasing is applied only to input that is known to be immutable
+        CodedInputStream input = UnsafeByteOperations.unsafeWrap(data).newCodedInput();
+        input.enableAliasing(true);
+        return parser.parseFrom(input);
+    }
+
 }
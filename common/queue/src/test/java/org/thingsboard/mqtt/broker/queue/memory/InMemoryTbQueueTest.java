@@ -0,0 +1,309 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.memory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InMemoryTbQueueTest {
+
+    private static final String TOPIC = "test-topic";
+    private static final String GROUP = "test-group";
+    private static final Map<String, String> TOPIC_CONFIGS = Map.of(QueueConstants.PARTITIONS, "4");
+
+    private InMemoryQueueStorage storage;
+    private InMemoryTbQueueProducerTemplate<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> producer;
+
+    @Before
+    public void setUp() {
+        storage = new InMemoryQueueStorage(10, 100);
+        producer = InMemoryTbQueueProducerTemplate.<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>builder()
+                .storage(storage)
+                .defaultTopic(TOPIC)
+                .topicConfigs(TOPIC_CONFIGS)
+                .build();
+    }
+
+    @Test
+    public void testSameKeyGoesToSamePartitionInOrder() {
+        var consumer = newConsumer(GROUP, true);
+        consumer.subscribe();
+
+        for (int i = 0; i < 5; i++) {
+            send("client", "topic/" + i);
+        }
+
+        List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs = consumer.poll(100);
+        Assert.assertEquals(5, msgs.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("topic/" + i, msgs.get(i).getValue().getTopicName());
+            Assert.assertEquals(msgs.get(0).getPartition(), msgs.get(i).getPartition());
+            Assert.assertEquals(i, msgs.get(i).getOffset());
+            Assert.assertEquals("client", msgs.get(i).getKey());
+        }
+    }
+
+    @Test
+    public void testCallbackGetsPartitionAndOffset() throws Exception {
+        CompletableFuture<TbQueueMsgMetadata> result = new CompletableFuture<>();
+        producer.send(TOPIC, 2, newMsg("client", "a"), new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                result.complete(metadata);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        TbQueueMsgMetadata metadata = result.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, metadata.getMetadata().partition());
+        Assert.assertEquals(0, metadata.getMetadata().offset());
+    }
+
+    @Test
+    public void testSendToMissingPartitionFails() {
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        producer.send(TOPIC, 10, newMsg("client", "a"), new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failure.complete(t);
+            }
+        });
+
+        Assert.assertTrue(failure.isDone());
+    }
+
+    @Test
+    public void testNewConsumerStartsFromCommittedOffset() {
+        var consumer = newConsumer(GROUP, false);
+        consumer.assignPartition(0);
+        for (int i = 0; i < 3; i++) {
+            producer.send(TOPIC, 0, newMsg("client", "t" + i), null);
+        }
+
+        List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs = consumer.poll(0);
+        Assert.assertEquals(3, msgs.size());
+        consumer.commit(0, msgs.get(1).getOffset());
+        consumer.unsubscribeAndClose();
+
+        var nextConsumer = newConsumer(GROUP, false);
+        nextConsumer.assignPartition(0);
+        Assert.assertEquals(Optional.of(1L), nextConsumer.getCommittedOffset(TOPIC, 0));
+        Assert.assertEquals(3, nextConsumer.getEndOffset(TOPIC, 0));
+
+        msgs = nextConsumer.poll(0);
+        Assert.assertEquals(2, msgs.size());
+        Assert.assertEquals("t1", msgs.get(0).getValue().getTopicName());
+    }
+
+    @Test
+    public void testCommitSyncCommitsPolledPositions() {
+        var consumer = newConsumer(GROUP, true);
+        consumer.subscribe();
+        send("a", "t");
+        send("b", "t");
+
+        int polled = consumer.poll(0).size();
+        consumer.commitSync();
+
+        long committed = 0;
+        for (int partition = 0; partition < 4; partition++) {
+            committed += consumer.getCommittedOffset(TOPIC, partition).orElse(0L);
+        }
+        Assert.assertEquals(2, polled);
+        Assert.assertEquals(2, committed);
+    }
+
+    @Test
+    public void testLatestConsumerSkipsExistingRecords() {
+        send("client", "old");
+        var latestConsumer = newConsumer(GROUP, false);
+        latestConsumer.subscribe();
+        var earliestConsumer = newConsumer("other-group", true);
+        earliestConsumer.subscribe();
+
+        Assert.assertTrue(latestConsumer.poll(0).isEmpty());
+        send("client", "new");
+
+        List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> latest = latestConsumer.poll(0);
+        Assert.assertEquals(1, latest.size());
+        Assert.assertEquals("new", latest.get(0).getValue().getTopicName());
+        Assert.assertEquals(2, earliestConsumer.poll(0).size());
+    }
+
+    @Test
+    public void testPartitionsAreSharedByGroupMembers() {
+        var first = newConsumer(GROUP, true);
+        var second = newConsumer(GROUP, true);
+        first.subscribe();
+        second.subscribe();
+
+        for (int partition = 0; partition < 4; partition++) {
+            producer.send(TOPIC, partition, newMsg("client", "t"), null);
+        }
+
+        Set<Integer> firstPartitions = partitions(first.poll(0));
+        Set<Integer> secondPartitions = partitions(second.poll(0));
+        Assert.assertEquals(Set.of(0, 2), firstPartitions);
+        Assert.assertEquals(Set.of(1, 3), secondPartitions);
+
+        second.unsubscribeAndClose();
+        for (int partition = 0; partition < 4; partition++) {
+            producer.send(TOPIC, partition, newMsg("client", "t"), null);
+        }
+        // partitions of the second consumer are read from the committed offset (nothing committed - from the beginning)
+        Assert.assertEquals(6, first.poll(0).size());
+    }
+
+    @Test
+    public void testOldestRecordsAreDroppedWhenPartitionIsFull() {
+        var consumer = newConsumer(GROUP, true);
+        consumer.assignPartition(0);
+        for (int i = 0; i < 15; i++) {
+            producer.send(TOPIC, 0, newMsg("client", "t" + i), null);
+        }
+
+        List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs = consumer.poll(0);
+        Assert.assertEquals(10, msgs.size());
+        Assert.assertEquals(5, msgs.get(0).getOffset());
+        Assert.assertEquals("t14", msgs.get(9).getValue().getTopicName());
+        Assert.assertEquals(5, storage.getTopic(TOPIC).getPartition(0).getDroppedCount());
+    }
+
+    @Test
+    public void testSeekToTheBeginning() {
+        var consumer = newConsumer(GROUP, false);
+        consumer.assignAllPartitions();
+        send("a", "t");
+        Assert.assertEquals(1, consumer.poll(0).size());
+
+        consumer.seekToTheBeginning();
+
+        Assert.assertEquals(1, consumer.poll(0).size());
+    }
+
+    @Test
+    public void testHeadersAreCopiedForEveryConsumer() {
+        var first = newConsumer(GROUP, true);
+        var second = newConsumer("other-group", true);
+        first.subscribe();
+        second.subscribe();
+        TbProtoQueueMsg<QueueProtos.PublishMsgProto> msg = newMsg("client", "t");
+        msg.getHeaders().put("header", "value".getBytes(StandardCharsets.UTF_8));
+        producer.send(msg, null);
+
+        TbProtoQueueMsg<QueueProtos.PublishMsgProto> firstMsg = first.poll(0).get(0);
+        firstMsg.getHeaders().put("header", "changed".getBytes(StandardCharsets.UTF_8));
+        TbProtoQueueMsg<QueueProtos.PublishMsgProto> secondMsg = second.poll(0).get(0);
+
+        Assert.assertEquals("value", new String(secondMsg.getHeaders().get("header"), StandardCharsets.UTF_8));
+        Assert.assertSame(msg.getValue(), secondMsg.getValue());
+    }
+
+    @Test
+    public void testPollWakesUpOnNewRecord() throws Exception {
+        var consumer = newConsumer(GROUP, false);
+        consumer.subscribe();
+        consumer.poll(0);
+        CountDownLatch received = new CountDownLatch(1);
+        AtomicLong waitedMs = new AtomicLong();
+        Thread consumerThread = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            if (!consumer.poll(10_000).isEmpty()) {
+                waitedMs.set(System.currentTimeMillis() - start);
+                received.countDown();
+            }
+        });
+        consumerThread.start();
+        Thread.sleep(50);
+
+        send("client", "t");
+
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue("Poll waited for " + waitedMs.get() + " ms", waitedMs.get() < 5_000);
+        consumerThread.join();
+    }
+
+    @Test
+    public void testAdmin() {
+        InMemoryTbQueueAdmin admin = new InMemoryTbQueueAdmin(storage);
+        admin.createTopicIfNotExists(TOPIC, TOPIC_CONFIGS);
+        Assert.assertEquals(4, admin.getNumberOfPartitions(TOPIC));
+
+        var consumer = newConsumer(GROUP, true);
+        consumer.assignPartition(0);
+        producer.send(TOPIC, 0, newMsg("client", "t"), null);
+        consumer.commit(0, 0);
+        Assert.assertEquals(Optional.of(0L), consumer.getCommittedOffset(TOPIC, 0));
+
+        admin.deleteConsumerGroups(List.of(GROUP));
+        Assert.assertEquals(Optional.empty(), consumer.getCommittedOffset(TOPIC, 0));
+
+        admin.deleteTopic(TOPIC, null);
+        Assert.assertNull(storage.getTopic(TOPIC));
+    }
+
+    private InMemoryTbQueueConsumerTemplate<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> newConsumer(String groupId, boolean readFromBeginning) {
+        return InMemoryTbQueueConsumerTemplate.<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>builder()
+                .storage(storage)
+                .topic(TOPIC)
+                .topicConfigs(TOPIC_CONFIGS)
+                .groupId(groupId)
+                .readFromBeginning(readFromBeginning)
+                .build();
+    }
+
+    private void send(String key, String topicName) {
+        producer.send(newMsg(key, topicName), null);
+    }
+
+    private TbProtoQueueMsg<QueueProtos.PublishMsgProto> newMsg(String key, String topicName) {
+        return new TbProtoQueueMsg<>(key, QueueProtos.PublishMsgProto.newBuilder().setTopicName(topicName).build());
+    }
+
+    private Set<Integer> partitions(List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs) {
+        Set<Integer> partitions = new HashSet<>();
+        msgs.forEach(msg -> partitions.add(msg.getPartition()));
+        return partitions;
+    }
+}
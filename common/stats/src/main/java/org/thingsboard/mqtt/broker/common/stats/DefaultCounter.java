@@ -17,32 +17,35 @@ package org.thingsboard.mqtt.broker.common.stats;
 
 import io.micrometer.core.instrument.Counter;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/*
+    Counters are incremented per msg from many threads and are read only when the stats are printed,
+    so the value is kept in a striped LongAdder instead of a single atomic that all the threads would contend on
+ */
 public class DefaultCounter {
-    private final AtomicInteger aiCounter;
+    private final LongAdder counter = new LongAdder();
     private final Counter micrometerCounter;
 
-    public DefaultCounter(AtomicInteger aiCounter, Counter micrometerCounter) {
-        this.aiCounter = aiCounter;
+    public DefaultCounter(Counter micrometerCounter) {
         this.micrometerCounter = micrometerCounter;
     }
 
     public void increment() {
-        aiCounter.incrementAndGet();
+        counter.increment();
         micrometerCounter.increment();
     }
 
     public void clear() {
-        aiCounter.set(0);
+        counter.reset();
     }
 
     public int get() {
-        return aiCounter.get();
+        return (int) counter.sum();
     }
 
     public void add(int delta){
-        aiCounter.addAndGet(delta);
+        counter.add(delta);
         micrometerCounter.increment(delta);
     }
 }
@@ -24,7 +24,6 @@ import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 
 import javax.annotation.PostConstruct;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ToDoubleFunction;
 
 import static org.thingsboard.mqtt.broker.common.stats.StatsConstantNames.FAILED_MSGS;
@@ -62,7 +61,6 @@ public class DefaultStatsFactory implements StatsFactory {
         updatedTags[tags.length] = STATS_NAME_TAG;
         updatedTags[tags.length + 1] = statsName;
         return new StatsCounter(
-                new AtomicInteger(0),
                 meterRegistry.counter(key, updatedTags),
                 statsName
         );
@@ -70,10 +68,7 @@ public class DefaultStatsFactory implements StatsFactory {
 
     @Override
     public DefaultCounter createDefaultCounter(String key, String... tags) {
-        return new DefaultCounter(
-                new AtomicInteger(0),
-                meterRegistry.counter(key, tags)
-        );
+        return new DefaultCounter(meterRegistry.counter(key, tags));
     }
 
     @Override
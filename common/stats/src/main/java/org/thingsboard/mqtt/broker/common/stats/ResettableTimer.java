@@ -18,13 +18,17 @@ package org.thingsboard.mqtt.broker.common.stats;
 import io.micrometer.core.instrument.Timer;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
+/*
+    Timers are logged concurrently by the processing threads, the count, the total and the max
+    are striped accumulators so the threads don't contend on the same cache lines, they are summed when the stats are printed
+ */
 public class ResettableTimer {
-    private final AtomicInteger logCount = new AtomicInteger(0);
-    private final AtomicLong passedNanoseconds = new AtomicLong(0);
-    private final AtomicLong currentMaxValue = new AtomicLong(0);
+    private final LongAdder logCount = new LongAdder();
+    private final LongAdder passedNanoseconds = new LongAdder();
+    private final LongAccumulator currentMaxValue = new LongAccumulator(Math::max, 0);
 
     private final Timer timer;
     private final boolean storeMaxValue;
@@ -40,16 +44,17 @@ public class ResettableTimer {
 
     public void logTime(long amount, TimeUnit unit) {
         timer.record(amount, unit);
-        passedNanoseconds.addAndGet(TimeUnit.NANOSECONDS.convert(amount, unit));
-        logCount.incrementAndGet();
-        if (storeMaxValue && currentMaxValue.get() < unit.toNanos(amount)) {
-            currentMaxValue.getAndSet(amount);
+        long nanos = unit.toNanos(amount);
+        passedNanoseconds.add(nanos);
+        logCount.increment();
+        if (storeMaxValue) {
+            currentMaxValue.accumulate(nanos);
         }
     }
 
     public double getAvg() {
-        double currentLogCount = logCount.get();
-        double currentPassedNanos = passedNanoseconds.get();
+        double currentLogCount = logCount.sum();
+        double currentPassedNanos = passedNanoseconds.sum();
         double avgNanoTime = currentLogCount > 0 ? currentPassedNanos / currentLogCount : 0;
         return avgNanoTime / 1_000_000;
     }
@@ -59,13 +64,13 @@ public class ResettableTimer {
     }
 
     public int getCount() {
-        return logCount.get();
+        return logCount.intValue();
     }
 
     public void reset() {
-        logCount.getAndSet(0);
-        passedNanoseconds.getAndSet(0);
-        currentMaxValue.getAndSet(0);
+        logCount.reset();
+        passedNanoseconds.reset();
+        currentMaxValue.reset();
     }
 
     public Timer getTimer() {
@@ -47,5 +47,14 @@ public class StatsConstantNames {
     public static final String NEW_RETAINED_MSGS = "newRetainedMsgs";
     public static final String CLEARED_RETAINED_MSGS = "clearedRetainedMsgs";
 
+    public static final String CACHE_HITS = "cacheHits";
+    public static final String CACHE_MISSES = "cacheMisses";
+    public static final String INVALIDATED_TOPICS = "invalidatedTopics";
+
+    public static final String RETRANSMITTED_MSGS = "retransmittedMsgs";
+
+    public static final String FLUSHES = "flushes";
+    public static final String FLUSHED_MSGS = "flushedMsgs";
+
     public static final String STATS_NAME_TAG = "statsName";
 }
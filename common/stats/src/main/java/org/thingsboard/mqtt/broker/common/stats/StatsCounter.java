@@ -17,13 +17,11 @@ package org.thingsboard.mqtt.broker.common.stats;
 
 import io.micrometer.core.instrument.Counter;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class StatsCounter extends DefaultCounter {
     private final String name;
 
-    public StatsCounter(AtomicInteger aiCounter, Counter micrometerCounter, String name) {
-        super(aiCounter, micrometerCounter);
+    public StatsCounter(Counter micrometerCounter, String name) {
+        super(micrometerCounter);
         this.name = name;
     }
 
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.dao.messages.sql;
+
+import org.thingsboard.mqtt.broker.dao.model.sql.DevicePublishMsgEntity;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+    Writes device publish msgs in the binary format of the PostgreSQL COPY command.
+    The fields are written in the order of COPY_COLUMNS, every field is prefixed with its length and NULL is written as length -1
+ */
+public final class DevicePublishMsgCopyEncoder {
+
+    public static final String COPY_COLUMNS = "client_id, topic, serial_number, packet_id, packet_type, time, qos, payload, user_properties, retain";
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short FIELDS_COUNT = 10;
+    private static final short TRAILER = -1;
+    private static final int NULL_LENGTH = -1;
+
+    private DevicePublishMsgCopyEncoder() {
+    }
+
+    public static void write(List<DevicePublishMsgEntity> entities, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        writeHeader(out);
+        for (DevicePublishMsgEntity entity : entities) {
+            writeRow(out, entity);
+        }
+        out.writeShort(TRAILER);
+        out.flush();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(SIGNATURE);
+        // flags field, no OIDs in the data
+        out.writeInt(0);
+        // header extension length
+        out.writeInt(0);
+    }
+
+    private static void writeRow(DataOutputStream out, DevicePublishMsgEntity entity) throws IOException {
+        out.writeShort(FIELDS_COUNT);
+        writeString(out, entity.getClientId());
+        writeString(out, entity.getTopic());
+        writeLong(out, entity.getSerialNumber());
+        writeInt(out, entity.getPacketId());
+        writeString(out, entity.getPacketType() != null ? entity.getPacketType().toString() : null);
+        writeLong(out, entity.getTime());
+        writeInt(out, entity.getQos());
+        writeBytes(out, entity.getPayload());
+        writeString(out, entity.getUserProperties());
+        out.writeInt(1);
+        out.writeBoolean(entity.isRetain());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // the driver always sets the client encoding to UTF8
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(Long.BYTES);
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(Integer.BYTES);
+            out.writeInt(value);
+        }
+    }
+}
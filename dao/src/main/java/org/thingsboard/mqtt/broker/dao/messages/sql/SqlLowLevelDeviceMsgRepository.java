@@ -17,7 +17,10 @@ package org.thingsboard.mqtt.broker.dao.messages.sql;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -26,8 +29,12 @@ import org.thingsboard.mqtt.broker.dao.messages.LowLevelDeviceMsgRepository;
 import org.thingsboard.mqtt.broker.dao.messages.UpdatePacketTypeInfo;
 import org.thingsboard.mqtt.broker.dao.model.sql.DevicePublishMsgEntity;
 
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -56,10 +63,41 @@ public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgReposito
     private static final String DELETE_PACKETS_BY_CLIENT_ID = "DELETE FROM device_publish_msg " +
             "WHERE client_id = ?;";
 
+    /*
+        The staging table lives as long as the connection and is emptied on every commit,
+        the primary key is not copied so the msgs are merged into device_publish_msg by one statement
+     */
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMP TABLE IF NOT EXISTS device_publish_msg_staging " +
+            "(LIKE device_publish_msg INCLUDING DEFAULTS) ON COMMIT DELETE ROWS;";
+
+    private static final String COPY_TO_STAGING = "COPY device_publish_msg_staging (" + DevicePublishMsgCopyEncoder.COPY_COLUMNS + ") " +
+            "FROM STDIN (FORMAT binary)";
+
+    // rows are inserted in the key order to lock them in the same order from all the nodes
+    private static final String INSERT_FROM_STAGING = "INSERT INTO device_publish_msg (" + DevicePublishMsgCopyEncoder.COPY_COLUMNS + ") " +
+            "SELECT " + DevicePublishMsgCopyEncoder.COPY_COLUMNS + " FROM device_publish_msg_staging " +
+            "ORDER BY client_id, serial_number";
+
+    private static final String INSERT_OR_UPDATE_FROM_STAGING = INSERT_FROM_STAGING + " " +
+            "ON CONFLICT (client_id, serial_number) DO UPDATE SET " +
+            "topic = EXCLUDED.topic, packet_id = EXCLUDED.packet_id, packet_type = EXCLUDED.packet_type, time = EXCLUDED.time, " +
+            "qos = EXCLUDED.qos, payload = EXCLUDED.payload, user_properties = EXCLUDED.user_properties, retain = EXCLUDED.retain;";
+
+    // 'ON CONFLICT DO UPDATE command cannot affect row a second time', the pack has the same key more than once
+    private static final String CARDINALITY_VIOLATION_SQL_STATE = "21000";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final JdbcTemplate jdbcTemplate;
+    private final DeviceMsgCopyConfiguration copyConfiguration;
 
     @Override
     public void insert(List<DevicePublishMsgEntity> entities) {
+        if (isCopyApplicable(entities)) {
+            // the conflicts are not resolved here, DuplicateKeyException is thrown the same way as for the batch insert
+            copyAndMerge(entities, INSERT_FROM_STAGING);
+            return;
+        }
         jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps, int i) throws SQLException {
@@ -85,6 +123,14 @@ public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgReposito
 
     @Override
     public void insertOrUpdate(List<DevicePublishMsgEntity> entities) {
+        if (isCopyApplicable(entities)) {
+            if (copyAndMerge(entities, INSERT_OR_UPDATE_FROM_STAGING)) {
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Pack of {} device msgs has duplicated keys, saving it with batch update", entities.size());
+            }
+        }
         jdbcTemplate.batchUpdate(INSERT_OR_UPDATE, new BatchPreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps, int i) throws SQLException {
@@ -116,6 +162,51 @@ public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgReposito
         });
     }
 
+    private boolean isCopyApplicable(List<DevicePublishMsgEntity> entities) {
+        return copyConfiguration.isEnabled() && entities.size() >= copyConfiguration.getMinPackSize();
+    }
+
+    /*
+        Returns false if the merge hit the same key twice, in this case the changes are rolled back
+        and the pack should be saved with the batch update that applies the rows one by one
+     */
+    private boolean copyAndMerge(List<DevicePublishMsgEntity> entities, String mergeSql) {
+        Boolean merged = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            try (Statement statement = con.createStatement()) {
+                statement.execute(CREATE_STAGING_TABLE);
+            }
+            Savepoint savepoint = con.setSavepoint();
+            try {
+                copyToStaging(con, entities);
+                try (Statement statement = con.createStatement()) {
+                    statement.executeUpdate(mergeSql);
+                }
+            } catch (SQLException e) {
+                if (CARDINALITY_VIOLATION_SQL_STATE.equals(e.getSQLState())) {
+                    con.rollback(savepoint);
+                    return false;
+                }
+                throw e;
+            }
+            con.releaseSavepoint(savepoint);
+            return true;
+        });
+        return Boolean.TRUE.equals(merged);
+    }
+
+    private void copyToStaging(Connection con, List<DevicePublishMsgEntity> entities) throws SQLException {
+        PGCopyOutputStream out = new PGCopyOutputStream(con.unwrap(PGConnection.class), COPY_TO_STAGING, COPY_BUFFER_SIZE);
+        try {
+            DevicePublishMsgCopyEncoder.write(entities, out);
+            out.endCopy();
+        } catch (IOException e) {
+            if (out.isActive()) {
+                out.cancelCopy();
+            }
+            throw new SQLException("Failed to copy device publish messages", e);
+        }
+    }
+
     @Override
     @Transactional
     public void updatePacketTypes(List<UpdatePacketTypeInfo> packets) {
@@ -25,6 +25,7 @@ import org.junit.runner.RunWith;
         "org.thingsboard.mqtt.broker.dao.client.device.*ServiceTest",
         "org.thingsboard.mqtt.broker.dao.data.*Test",
         "org.thingsboard.mqtt.broker.dao.sqlts.sql.*Test",
+        "org.thingsboard.mqtt.broker.dao.messages.sql.*Test",
         "org.thingsboard.mqtt.broker.dao.util.protocol.*Test"
 })
 public class DaoServiceTestSuite {
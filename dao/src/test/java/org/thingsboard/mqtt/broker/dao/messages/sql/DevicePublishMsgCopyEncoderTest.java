@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.dao.messages.sql;
+
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.dao.model.sql.DevicePublishMsgEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class DevicePublishMsgCopyEncoderTest {
+
+    @Test
+    public void testWrite() throws IOException {
+        MqttProperties properties = new MqttProperties();
+        properties.add(new MqttProperties.UserProperty("key", "value"));
+        DevicePublishMsgEntity first = newEntity(1L, "ключ/topic", properties, true);
+        DevicePublishMsgEntity second = newEntity(2L, "test/topic", MqttProperties.NO_PROPERTIES, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DevicePublishMsgCopyEncoder.write(List.of(first, second), out);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        Assert.assertArrayEquals(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        Assert.assertEquals(0, in.readInt());
+        Assert.assertEquals(0, in.readInt());
+
+        assertRow(in, first);
+        assertRow(in, second);
+
+        Assert.assertEquals(-1, in.readShort());
+        Assert.assertEquals(0, in.available());
+    }
+
+    private void assertRow(DataInputStream in, DevicePublishMsgEntity entity) throws IOException {
+        Assert.assertEquals(10, in.readShort());
+        Assert.assertEquals(entity.getClientId(), readString(in));
+        Assert.assertEquals(entity.getTopic(), readString(in));
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(entity.getSerialNumber().longValue(), in.readLong());
+        Assert.assertEquals(4, in.readInt());
+        Assert.assertEquals(entity.getPacketId().intValue(), in.readInt());
+        Assert.assertEquals(entity.getPacketType().toString(), readString(in));
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(entity.getTime().longValue(), in.readLong());
+        Assert.assertEquals(4, in.readInt());
+        Assert.assertEquals(entity.getQos().intValue(), in.readInt());
+        Assert.assertArrayEquals(entity.getPayload(), readBytes(in));
+        Assert.assertEquals(entity.getUserProperties(), readString(in));
+        Assert.assertEquals(1, in.readInt());
+        Assert.assertEquals(entity.isRetain(), in.readBoolean());
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private DevicePublishMsgEntity newEntity(long serialNumber, String topic, MqttProperties properties, boolean retain) {
+        return new DevicePublishMsgEntity(new DevicePublishMsg("testClientId", topic, serialNumber, System.currentTimeMillis(),
+                1, (int) serialNumber, PersistedPacketType.PUBLISH, "testPayload".getBytes(), properties, retain));
+    }
+}
@@ -20,11 +20,14 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
 import org.thingsboard.mqtt.broker.dao.DaoSqlTest;
 import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.dao.messages.sql.DeviceMsgCopyConfiguration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -34,6 +37,8 @@ import java.util.UUID;
 public class DeviceMsgServiceTest extends AbstractServiceTest {
     @Autowired
     private DeviceMsgService deviceMsgService;
+    @Autowired
+    private DeviceMsgCopyConfiguration copyConfiguration;
 
     private static final String TEST_CLIENT_ID = "testClientId";
     private static final byte[] TEST_PAYLOAD = "testPayload".getBytes();
@@ -52,6 +57,7 @@ public class DeviceMsgServiceTest extends AbstractServiceTest {
 
     @After
     public void clearState() {
+        copyConfiguration.setEnabled(false);
         deviceMsgService.removePersistedMessages(TEST_CLIENT_ID);
     }
 
@@ -85,4 +91,46 @@ public class DeviceMsgServiceTest extends AbstractServiceTest {
         deviceMsgService.save(TEST_MESSAGES, true);
         Assert.assertEquals(Collections.emptyList(), deviceMsgService.findPersistedMessages(TEST_CLIENT_ID, 5, 10));
     }
+
+    @Test
+    public void testSaveWithCopy() {
+        enableCopy();
+        deviceMsgService.save(TEST_MESSAGES, true);
+        Assert.assertEquals(TEST_MESSAGES, deviceMsgService.findPersistedMessages(TEST_CLIENT_ID, 0, 5));
+    }
+
+    @Test(expected = DuplicateKeyException.class)
+    public void testSaveWithCopyFailsOnConflict() {
+        deviceMsgService.save(TEST_MESSAGES.subList(0, 1), true);
+        enableCopy();
+        deviceMsgService.save(TEST_MESSAGES, true);
+    }
+
+    @Test
+    public void testSaveWithCopyRewritesOnConflict() {
+        deviceMsgService.save(TEST_MESSAGES.subList(0, 2), true);
+        enableCopy();
+        List<DevicePublishMsg> rewrittenMessages = new ArrayList<>(TEST_MESSAGES);
+        rewrittenMessages.set(1, newDevicePublishMsg(1L));
+        deviceMsgService.save(rewrittenMessages, false);
+        Assert.assertEquals(rewrittenMessages, deviceMsgService.findPersistedMessages(TEST_CLIENT_ID, 0, 5));
+    }
+
+    @Test
+    public void testSaveWithCopyFallsBackOnDuplicatesInPack() {
+        enableCopy();
+        DevicePublishMsg rewrittenMessage = newDevicePublishMsg(4L);
+        List<DevicePublishMsg> messages = new ArrayList<>(TEST_MESSAGES);
+        messages.add(rewrittenMessage);
+        deviceMsgService.save(messages, false);
+
+        List<DevicePublishMsg> expectedMessages = new ArrayList<>(TEST_MESSAGES.subList(0, 4));
+        expectedMessages.add(rewrittenMessage);
+        Assert.assertEquals(expectedMessages, deviceMsgService.findPersistedMessages(TEST_CLIENT_ID, 0, 5));
+    }
+
+    private void enableCopy() {
+        copyConfiguration.setEnabled(true);
+        copyConfiguration.setMinPackSize(1);
+    }
 }